@@ -28,6 +28,7 @@
 package org.alfresco.module.org_alfresco_module_rm.content;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.Set;
 
 import org.alfresco.module.org_alfresco_module_rm.content.cleanser.ContentCleanser;
@@ -108,6 +109,17 @@ public class EagerContentStoreCleaner extends org.alfresco.repo.content.cleanup.
         return super.deleteFromStore(contentUrl, store);
     }
     
+    /**
+     * Deletes each URL on its own, so that content registered for cleansing is cleansed first.
+     * 
+     * @see org.alfresco.repo.content.cleanup.EagerContentStoreCleaner#deleteFromStore(java.util.Collection, org.alfresco.repo.content.ContentStore)
+     */
+    @Override
+    protected Set<String> deleteFromStore(Collection<String> contentUrls, ContentStore store)
+    {
+        return deleteEachFromStore(contentUrls, store);
+    }
+    
     /**
      * Cleanse content
      * 
@@ -0,0 +1,346 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares two JMH result files written with <code>-rf json</code> and reports the change in score
+ * of every benchmark.
+ * <p>
+ * The report is one line per benchmark and parameter combination:
+ * <pre>
+ * STATUS     CHANGE    BASELINE              CURRENT               UNIT     BENCHMARK
+ * REGRESSED  -12.4%    1523410.120 +- 2.1%   1334512.771 +- 1.8%   ops/s    org.alfresco.repo.cache.TransactionalCacheBenchmark.nonTxnGet [keyCount=1000, opsPerTxn=20]
+ * </pre>
+ * A benchmark has <b>REGRESSED</b> (or <b>IMPROVED</b>) when its score moved by more than the threshold
+ * in the bad (or good) direction for its mode <u>and</u> the error margins of the two runs do not overlap;
+ * otherwise it is reported as <b>SAME</b>.  Benchmarks found in only one of the files are listed as
+ * <b>NEW</b> or <b>MISSING</b>.
+ * <p>
+ * Usage: <code>BaselineComparison &lt;baseline.json&gt; &lt;current.json&gt; [thresholdPercent]</code>.
+ * The process exits with status <tt>1</tt> if any benchmark regressed, so that it can gate a build.
+ */
+public class BaselineComparison
+{
+    /** The default relative change, in percent, that is tolerated before a change is reported */
+    public static final double DEFAULT_THRESHOLD_PERCENT = 5.0;
+
+    public enum Status
+    {
+        SAME, IMPROVED, REGRESSED, NEW, MISSING
+    }
+
+    /**
+     * The primary metric of one benchmark run
+     */
+    public static class Result
+    {
+        private final String name;
+        private final String mode;
+        private final double score;
+        private final double scoreError;
+        private final String unit;
+
+        public Result(String name, String mode, double score, double scoreError, String unit)
+        {
+            this.name = name;
+            this.mode = mode;
+            this.score = score;
+            this.scoreError = Double.isNaN(scoreError) ? 0.0 : scoreError;
+            this.unit = unit;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public String getMode()
+        {
+            return mode;
+        }
+
+        public double getScore()
+        {
+            return score;
+        }
+
+        public double getScoreError()
+        {
+            return scoreError;
+        }
+
+        public String getUnit()
+        {
+            return unit;
+        }
+
+        /**
+         * @return          <tt>true</tt> if a bigger score is better, which is only the case for throughput
+         */
+        public boolean isHigherBetter()
+        {
+            return "thrpt".equals(mode);
+        }
+    }
+
+    /**
+     * One line of the comparison report
+     */
+    public static class Comparison
+    {
+        private final String name;
+        private final Result baseline;
+        private final Result current;
+        private final Status status;
+
+        Comparison(String name, Result baseline, Result current, double thresholdPercent)
+        {
+            this.name = name;
+            this.baseline = baseline;
+            this.current = current;
+            this.status = evaluate(thresholdPercent);
+        }
+
+        private Status evaluate(double thresholdPercent)
+        {
+            if (baseline == null)
+            {
+                return Status.NEW;
+            }
+            if (current == null)
+            {
+                return Status.MISSING;
+            }
+            double change = getChangePercent();
+            if (Math.abs(change) <= thresholdPercent)
+            {
+                return Status.SAME;
+            }
+            // Within the error margins the runs cannot be told apart
+            double baselineLow = baseline.getScore() - baseline.getScoreError();
+            double baselineHigh = baseline.getScore() + baseline.getScoreError();
+            double currentLow = current.getScore() - current.getScoreError();
+            double currentHigh = current.getScore() + current.getScoreError();
+            if (currentLow <= baselineHigh && baselineLow <= currentHigh)
+            {
+                return Status.SAME;
+            }
+            boolean better = (change > 0) == baseline.isHigherBetter();
+            return better ? Status.IMPROVED : Status.REGRESSED;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public Result getBaseline()
+        {
+            return baseline;
+        }
+
+        public Result getCurrent()
+        {
+            return current;
+        }
+
+        public Status getStatus()
+        {
+            return status;
+        }
+
+        /**
+         * @return          the relative change of the score, in percent, or <tt>NaN</tt> if there is nothing to compare
+         */
+        public double getChangePercent()
+        {
+            if (baseline == null || current == null || baseline.getScore() == 0.0)
+            {
+                return Double.NaN;
+            }
+            return (current.getScore() - baseline.getScore()) * 100.0 / baseline.getScore();
+        }
+    }
+
+    private final double thresholdPercent;
+
+    public BaselineComparison(double thresholdPercent)
+    {
+        if (thresholdPercent < 0.0)
+        {
+            throw new IllegalArgumentException("The threshold may not be negative: " + thresholdPercent);
+        }
+        this.thresholdPercent = thresholdPercent;
+    }
+
+    /**
+     * Read the primary metrics from a JMH JSON result file, keyed by benchmark name and parameters
+     */
+    public static Map<String, Result> readResults(File file) throws IOException
+    {
+        JsonNode root = new ObjectMapper().readTree(file);
+        if (root == null || !root.isArray())
+        {
+            throw new IOException("Not a JMH JSON result file: " + file);
+        }
+        Map<String, Result> results = new LinkedHashMap<String, Result>();
+        for (JsonNode run : root)
+        {
+            String name = run.path("benchmark").asText() + formatParams(run.path("params"));
+            JsonNode metric = run.path("primaryMetric");
+            Result result = new Result(
+                    name,
+                    run.path("mode").asText(),
+                    metric.path("score").asDouble(),
+                    metric.path("scoreError").asDouble(Double.NaN),
+                    metric.path("scoreUnit").asText());
+            results.put(name, result);
+        }
+        return results;
+    }
+
+    private static String formatParams(JsonNode params)
+    {
+        if (params.isMissingNode() || params.size() == 0)
+        {
+            return "";
+        }
+        // Sort the parameters so that the key does not depend on the declaration order
+        Map<String, String> sorted = new TreeMap<String, String>();
+        Iterator<Map.Entry<String, JsonNode>> fields = params.fields();
+        while (fields.hasNext())
+        {
+            Map.Entry<String, JsonNode> field = fields.next();
+            sorted.put(field.getKey(), field.getValue().asText());
+        }
+        StringBuilder sb = new StringBuilder(" [");
+        boolean first = true;
+        for (Map.Entry<String, String> entry : sorted.entrySet())
+        {
+            if (!first)
+            {
+                sb.append(", ");
+            }
+            sb.append(entry.getKey()).append("=").append(entry.getValue());
+            first = false;
+        }
+        return sb.append("]").toString();
+    }
+
+    /**
+     * Compare the current results against the baseline
+     */
+    public List<Comparison> compare(Map<String, Result> baseline, Map<String, Result> current)
+    {
+        List<Comparison> comparisons = new ArrayList<Comparison>(baseline.size() + current.size());
+        for (Map.Entry<String, Result> entry : baseline.entrySet())
+        {
+            comparisons.add(new Comparison(entry.getKey(), entry.getValue(), current.get(entry.getKey()), thresholdPercent));
+        }
+        for (Map.Entry<String, Result> entry : current.entrySet())
+        {
+            if (!baseline.containsKey(entry.getKey()))
+            {
+                comparisons.add(new Comparison(entry.getKey(), null, entry.getValue(), thresholdPercent));
+            }
+        }
+        return comparisons;
+    }
+
+    /**
+     * Write the report in the format described in the class comment
+     */
+    public void writeReport(List<Comparison> comparisons, PrintStream out)
+    {
+        out.println(String.format(Locale.ENGLISH, "%-10s %-9s %-21s %-21s %-8s %s",
+                "STATUS", "CHANGE", "BASELINE", "CURRENT", "UNIT", "BENCHMARK"));
+        for (Comparison comparison : comparisons)
+        {
+            double change = comparison.getChangePercent();
+            Result any = comparison.getBaseline() != null ? comparison.getBaseline() : comparison.getCurrent();
+            out.println(String.format(Locale.ENGLISH, "%-10s %-9s %-21s %-21s %-8s %s",
+                    comparison.getStatus(),
+                    Double.isNaN(change) ? "-" : String.format(Locale.ENGLISH, "%+.1f%%", change),
+                    formatScore(comparison.getBaseline()),
+                    formatScore(comparison.getCurrent()),
+                    any.getUnit(),
+                    comparison.getName()));
+        }
+        out.println(String.format(Locale.ENGLISH, "Threshold: %.1f%%, regressions: %d",
+                thresholdPercent, countRegressions(comparisons)));
+    }
+
+    private static String formatScore(Result result)
+    {
+        if (result == null)
+        {
+            return "-";
+        }
+        double errorPercent = result.getScore() == 0.0 ? 0.0 : result.getScoreError() * 100.0 / result.getScore();
+        return String.format(Locale.ENGLISH, "%.3f +- %.1f%%", result.getScore(), errorPercent);
+    }
+
+    public static int countRegressions(List<Comparison> comparisons)
+    {
+        int count = 0;
+        for (Comparison comparison : comparisons)
+        {
+            if (comparison.getStatus() == Status.REGRESSED)
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 2 || args.length > 3)
+        {
+            System.err.println("Usage: BaselineComparison <baseline.json> <current.json> [thresholdPercent]");
+            System.exit(2);
+        }
+        double threshold = args.length == 3 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+        BaselineComparison comparison = new BaselineComparison(threshold);
+        List<Comparison> comparisons = comparison.compare(readResults(new File(args[0])), readResults(new File(args[1])));
+        comparison.writeReport(comparisons, System.out);
+        System.exit(countRegressions(comparisons) > 0 ? 1 : 0);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.benchmark;
+
+import java.util.List;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Drives the Spring transaction synchronization lifecycle on the current thread without a
+ * transaction manager or database.  This is enough for the transaction-aware caches and
+ * listeners (see <code>AlfrescoTransactionSupport</code>) to behave exactly as they would
+ * in a real transaction.
+ */
+public final class InMemoryTransaction
+{
+    private InMemoryTransaction()
+    {
+    }
+
+    /**
+     * Start a transaction on the current thread
+     * 
+     * @param readOnly          <tt>true</tt> for a read-only transaction
+     */
+    public static void begin(boolean readOnly)
+    {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+        {
+            throw new IllegalStateException("A transaction is already active on this thread");
+        }
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(readOnly);
+    }
+
+    /**
+     * Run the commit callbacks of all registered synchronizations and end the transaction
+     */
+    public static void commit()
+    {
+        boolean readOnly = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        try
+        {
+            for (TransactionSynchronization synchronization : synchronizations)
+            {
+                synchronization.beforeCommit(readOnly);
+            }
+            for (TransactionSynchronization synchronization : synchronizations)
+            {
+                synchronization.beforeCompletion();
+            }
+            for (TransactionSynchronization synchronization : synchronizations)
+            {
+                synchronization.afterCommit();
+            }
+        }
+        finally
+        {
+            end(synchronizations, TransactionSynchronization.STATUS_COMMITTED);
+        }
+    }
+
+    /**
+     * Run the rollback callbacks of all registered synchronizations and end the transaction
+     */
+    public static void rollback()
+    {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        for (TransactionSynchronization synchronization : synchronizations)
+        {
+            synchronization.beforeCompletion();
+        }
+        end(synchronizations, TransactionSynchronization.STATUS_ROLLED_BACK);
+    }
+
+    private static void end(List<TransactionSynchronization> synchronizations, int status)
+    {
+        try
+        {
+            for (TransactionSynchronization synchronization : synchronizations)
+            {
+                synchronization.afterCompletion(status);
+            }
+        }
+        finally
+        {
+            TransactionSynchronizationManager.clearSynchronization();
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds lightweight, in-memory stand-ins for the DAOs and services that the benchmarked components
+ * depend on.  Only the methods that are explicitly answered are supported; everything else fails fast
+ * so that a benchmark can never silently measure a code path that it did not set up.
+ * <p>
+ * Answers are resolved by method name, so all overloads of a method share the same answer.
+ */
+public final class StandIns
+{
+    /**
+     * The behaviour of a single stand-in method
+     */
+    @FunctionalInterface
+    public interface Answer
+    {
+        Object answer(Object[] args) throws Throwable;
+    }
+
+    private StandIns()
+    {
+    }
+
+    /**
+     * Start building a stand-in for the given interface
+     */
+    public static <T> Builder<T> of(Class<T> type)
+    {
+        return new Builder<T>(type);
+    }
+
+    /**
+     * Collects the answers for a stand-in
+     */
+    public static final class Builder<T>
+    {
+        private final Class<T> type;
+        private final Map<String, Answer> answers = new HashMap<String, Answer>();
+
+        private Builder(Class<T> type)
+        {
+            this.type = type;
+        }
+
+        /**
+         * Answer every call to the named method using the given function
+         */
+        public Builder<T> answer(String methodName, Answer answer)
+        {
+            answers.put(methodName, answer);
+            return this;
+        }
+
+        /**
+         * Answer every call to the named method with a fixed value
+         */
+        public Builder<T> returning(String methodName, Object value)
+        {
+            return answer(methodName, args -> value);
+        }
+
+        public T build()
+        {
+            Object proxy = Proxy.newProxyInstance(
+                    type.getClassLoader(),
+                    new Class<?>[] { type },
+                    new StandInHandler(type, new HashMap<String, Answer>(answers)));
+            return type.cast(proxy);
+        }
+    }
+
+    private static class StandInHandler implements InvocationHandler
+    {
+        private final Class<?> type;
+        private final Map<String, Answer> answers;
+
+        private StandInHandler(Class<?> type, Map<String, Answer> answers)
+        {
+            this.type = type;
+            this.answers = answers;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            Answer answer = answers.get(method.getName());
+            if (answer != null)
+            {
+                return answer.answer(args == null ? new Object[0] : args);
+            }
+            switch (method.getName())
+            {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "StandIn[" + type.getSimpleName() + "]";
+                default:
+                    throw new UnsupportedOperationException(
+                            "Stand-in for " + type.getName() + " does not support " + method.getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.benchmark.InMemoryTransaction;
+import org.alfresco.repo.cache.TransactionalCache.ValueHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of {@link TransactionalCache} reads and writes in short transactions, with the shared
+ * cache backed by {@link DefaultSimpleCache} as it is in a non-clustered repository.
+ * <p>
+ * Each invocation is one transaction of {@link #opsPerTxn} cache operations, including the
+ * commit-time flush to the shared cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionalCacheBenchmark
+{
+    @Param({"1000", "100000"})
+    public int keyCount;
+
+    @Param({"20"})
+    public int opsPerTxn;
+
+    private TransactionalCache<Long, String> cache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        SimpleCache<Serializable, ValueHolder<String>> sharedCache =
+                new DefaultSimpleCache<Serializable, ValueHolder<String>>(keyCount * 2, "benchmarkSharedCache");
+        cache = new TransactionalCache<Long, String>();
+        cache.setName("benchmarkTransactionalCache");
+        cache.setSharedCache(sharedCache);
+        cache.setMutable(true);
+        cache.setTenantAware(false);
+        cache.afterPropertiesSet();
+
+        // Warm the shared cache through the transactional cache, exactly as the repository would
+        InMemoryTransaction.begin(false);
+        for (long key = 0; key < keyCount; key++)
+        {
+            cache.put(key, "value-" + key);
+        }
+        InMemoryTransaction.commit();
+    }
+
+    private long nextKey()
+    {
+        return ThreadLocalRandom.current().nextLong(keyCount);
+    }
+
+    /**
+     * Read-only transactions that only hit the shared cache
+     */
+    @Benchmark
+    public void readOnlyTxnHits(Blackhole blackhole)
+    {
+        InMemoryTransaction.begin(true);
+        try
+        {
+            for (int i = 0; i < opsPerTxn; i++)
+            {
+                blackhole.consume(cache.get(nextKey()));
+            }
+        }
+        finally
+        {
+            InMemoryTransaction.commit();
+        }
+    }
+
+    /**
+     * Read-write transactions that update half of the keys they read
+     */
+    @Benchmark
+    public void readWriteTxnUpdates(Blackhole blackhole)
+    {
+        InMemoryTransaction.begin(false);
+        try
+        {
+            for (int i = 0; i < opsPerTxn; i++)
+            {
+                long key = nextKey();
+                String value = cache.get(key);
+                blackhole.consume(value);
+                if ((i & 1) == 0)
+                {
+                    cache.put(key, "value-" + key);
+                }
+            }
+        }
+        finally
+        {
+            InMemoryTransaction.commit();
+        }
+    }
+
+    /**
+     * Read-only transactions from many threads contending on the same shared cache
+     */
+    @Benchmark
+    @Threads(8)
+    public void concurrentReadOnlyTxnHits(Blackhole blackhole)
+    {
+        readOnlyTxnHits(blackhole);
+    }
+
+    /**
+     * Reads outside of any transaction go straight to the shared cache
+     */
+    @Benchmark
+    public String nonTxnGet()
+    {
+        return cache.get(nextKey());
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache.lookup;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupCallbackDAOAdaptor;
+import org.alfresco.util.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the two-way {@link EntityLookupCache} lookups against an in-memory entity DAO.
+ * <p>
+ * The {@link #cacheRatio} controls the size of the backing cache relative to the number of
+ * entities, so that the hit path (ratio of <tt>2</tt>) and the eviction-heavy path (ratio below
+ * <tt>1</tt>) can be measured separately.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityLookupCacheBenchmark
+{
+    @Param({"10000"})
+    public int entityCount;
+
+    @Param({"2", "0.5"})
+    public double cacheRatio;
+
+    private EntityLookupCache<Long, String, String> lookupCache;
+
+    /**
+     * An entity table held in memory.  The values are their own value keys, like mimetypes or encodings.
+     */
+    private static class InMemoryEntityDAO extends EntityLookupCallbackDAOAdaptor<Long, String, String>
+    {
+        private final Map<Long, String> valuesById = new ConcurrentHashMap<Long, String>();
+        private final Map<String, Long> idsByValue = new ConcurrentHashMap<String, Long>();
+        private final AtomicLong nextId = new AtomicLong();
+
+        @Override
+        public String getValueKey(String value)
+        {
+            return value;
+        }
+
+        @Override
+        public Pair<Long, String> findByKey(Long key)
+        {
+            String value = valuesById.get(key);
+            return value == null ? null : new Pair<Long, String>(key, value);
+        }
+
+        @Override
+        public Pair<Long, String> findByValue(String value)
+        {
+            Long id = idsByValue.get(value);
+            return id == null ? null : new Pair<Long, String>(id, value);
+        }
+
+        @Override
+        public Pair<Long, String> createValue(String value)
+        {
+            Long id = idsByValue.computeIfAbsent(value, v -> nextId.getAndIncrement());
+            valuesById.put(id, value);
+            return new Pair<Long, String>(id, value);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        InMemoryEntityDAO dao = new InMemoryEntityDAO();
+        for (int i = 0; i < entityCount; i++)
+        {
+            dao.createValue(valueFor(i));
+        }
+        int cacheSize = Math.max(1, (int) (entityCount * cacheRatio));
+        DefaultSimpleCache<Serializable, Object> cache =
+                new DefaultSimpleCache<Serializable, Object>(cacheSize, "benchmarkLookupCache");
+        lookupCache = new EntityLookupCache<Long, String, String>(cache, dao);
+        // Warm the cache in both directions
+        for (long id = 0; id < entityCount; id++)
+        {
+            lookupCache.getByKey(id);
+        }
+    }
+
+    private static String valueFor(long id)
+    {
+        return "application/x-benchmark-" + id;
+    }
+
+    private long nextId()
+    {
+        return ThreadLocalRandom.current().nextLong(entityCount);
+    }
+
+    @Benchmark
+    public Pair<Long, String> getByKey()
+    {
+        return lookupCache.getByKey(nextId());
+    }
+
+    @Benchmark
+    public Pair<Long, String> getByValue()
+    {
+        return lookupCache.getByValue(valueFor(nextId()));
+    }
+
+    @Benchmark
+    public Pair<Long, String> getOrCreateByValue()
+    {
+        return lookupCache.getOrCreateByValue(valueFor(nextId()));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Pair<Long, String> concurrentGetByKey()
+    {
+        return getByKey();
+    }
+}
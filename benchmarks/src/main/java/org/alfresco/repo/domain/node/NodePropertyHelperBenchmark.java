@@ -0,0 +1,170 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.benchmark.StandIns;
+import org.alfresco.repo.domain.contentdata.ContentDataDAO;
+import org.alfresco.repo.domain.locale.LocaleDAO;
+import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of translating node properties between their public form and the exploded form persisted in
+ * <b>alf_node_properties</b> using {@link NodePropertyHelper}.
+ * <p>
+ * The QName and locale DAOs are in-memory tables and the dictionary knows no properties, so the
+ * figures isolate the conversion itself from any database or model lookups.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NodePropertyHelperBenchmark
+{
+    /** The number of custom properties added to the standard content properties */
+    @Param({"0", "30"})
+    public int customPropertyCount;
+
+    private NodePropertyHelper helper;
+    private Map<QName, Serializable> publicProperties;
+    private Map<NodePropertyKey, NodePropertyValue> persistentProperties;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        Map<QName, Long> qnameIds = new ConcurrentHashMap<QName, Long>();
+        Map<Long, QName> qnamesById = new ConcurrentHashMap<Long, QName>();
+        AtomicLong nextQNameId = new AtomicLong(1L);
+        Pair<Long, Locale> defaultLocalePair = new Pair<Long, Locale>(1L, Locale.ENGLISH);
+
+        QNameDAO qnameDAO = StandIns.of(QNameDAO.class)
+                .answer("getOrCreateQName", args -> {
+                    QName qname = (QName) args[0];
+                    Long id = qnameIds.computeIfAbsent(qname, q -> {
+                        Long newId = nextQNameId.getAndIncrement();
+                        qnamesById.put(newId, q);
+                        return newId;
+                    });
+                    return new Pair<Long, QName>(id, qname);
+                })
+                .answer("getQName", args -> {
+                    if (args[0] instanceof Long)
+                    {
+                        QName qname = qnamesById.get(args[0]);
+                        return qname == null ? null : new Pair<Long, QName>((Long) args[0], qname);
+                    }
+                    Long id = qnameIds.get(args[0]);
+                    return id == null ? null : new Pair<Long, QName>(id, (QName) args[0]);
+                })
+                .build();
+        LocaleDAO localeDAO = StandIns.of(LocaleDAO.class)
+                .returning("getOrCreateDefaultLocalePair", defaultLocalePair)
+                .returning("getDefaultLocalePair", defaultLocalePair)
+                .answer("getOrCreateLocalePair", args -> defaultLocalePair)
+                .answer("getLocalePair", args -> defaultLocalePair)
+                .build();
+        DictionaryService dictionaryService = StandIns.of(DictionaryService.class)
+                .returning("getProperty", null)
+                .build();
+        ContentDataDAO contentDataDAO = StandIns.of(ContentDataDAO.class).build();
+
+        helper = new NodePropertyHelper(dictionaryService, qnameDAO, localeDAO, contentDataDAO);
+
+        publicProperties = new HashMap<QName, Serializable>();
+        publicProperties.put(ContentModel.PROP_NAME, "Quarterly report.docx");
+        publicProperties.put(ContentModel.PROP_TITLE, "Quarterly report");
+        publicProperties.put(ContentModel.PROP_DESCRIPTION, "Figures for the last quarter");
+        publicProperties.put(ContentModel.PROP_CREATOR, "admin");
+        publicProperties.put(ContentModel.PROP_MODIFIER, "admin");
+        publicProperties.put(ContentModel.PROP_CREATED, new Date(1700000000000L));
+        publicProperties.put(ContentModel.PROP_MODIFIED, new Date(1700000100000L));
+        publicProperties.put(ContentModel.PROP_NODE_DBID, 123456789L);
+        publicProperties.put(ContentModel.PROP_NODE_UUID, "6d3c3c4e-1f8a-4c5d-9a8f-1d4d7b3f9e21");
+        publicProperties.put(ContentModel.PROP_STORE_PROTOCOL, "workspace");
+        publicProperties.put(ContentModel.PROP_STORE_IDENTIFIER, "SpacesStore");
+        publicProperties.put(ContentModel.PROP_LOCALE, Locale.ENGLISH);
+        publicProperties.put(ContentModel.PROP_AUTO_VERSION, Boolean.TRUE);
+        ArrayList<Serializable> tags = new ArrayList<Serializable>();
+        for (int i = 0; i < 5; i++)
+        {
+            tags.add("tag-" + i);
+        }
+        publicProperties.put(ContentModel.PROP_TAGS, tags);
+        for (int i = 0; i < customPropertyCount; i++)
+        {
+            QName custom = QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "benchmarkProperty" + i);
+            publicProperties.put(custom, (i % 2 == 0) ? (Serializable) ("value " + i) : (Serializable) Long.valueOf(i));
+        }
+
+        persistentProperties = helper.convertToPersistentProperties(publicProperties);
+    }
+
+    @Benchmark
+    public Map<NodePropertyKey, NodePropertyValue> convertToPersistentProperties()
+    {
+        return helper.convertToPersistentProperties(publicProperties);
+    }
+
+    @Benchmark
+    public Map<QName, Serializable> convertToPublicProperties()
+    {
+        return helper.convertToPublicProperties(persistentProperties);
+    }
+
+    @Benchmark
+    public Map<QName, Serializable> roundTrip()
+    {
+        return helper.convertToPublicProperties(helper.convertToPersistentProperties(publicProperties));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.benchmark.StandIns;
+import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+
+/**
+ * Reports the heap used by the values of the node properties cache for a given number of nodes, both
+ * as the plain <code>HashMap</code>s that used to be cached and as {@link CompactPropertyMap}s.
+ * <p>
+ * Every node gets the properties of a typical versioned document.  As when they are read from the
+ * database, every node has its own copies of all values, including the ones shared by many nodes
+ * (mimetypes, encodings, locales, usernames and version labels).
+ * <p>
+ * Usage: <code>NodePropertyMapFootprint [nodeCount]</code>, the default being 1,000,000 nodes.  Give the
+ * JVM enough heap to hold the plain maps, e.g. <code>-Xmx4g</code> for the default.
+ */
+public class NodePropertyMapFootprint
+{
+    private static final QName PROP_DATE_TAKEN = QName.createQName("http://www.alfresco.org/model/exif/1.0", "dateTimeOriginal");
+    private static final QName PROP_PIXEL_WIDTH = QName.createQName("http://www.alfresco.org/model/exif/1.0", "pixelXDimension");
+
+    private static final String[] MIMETYPES = {"application/pdf", "image/jpeg", "text/plain", "application/msword"};
+    private static final String[] USERNAMES = new String[50];
+    static
+    {
+        for (int i = 0; i < USERNAMES.length; i++)
+        {
+            USERNAMES[i] = "user" + i;
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        QNameDAO qnameDAO = newQNameDAO();
+        PrintStream out = System.out;
+
+        long plainBytes = measure(nodeCount, i -> new HashMap<QName, Serializable>(newProperties(i)));
+        long compactBytes = measure(nodeCount, i -> CompactPropertyMap.valueOf(newProperties(i), qnameDAO));
+
+        out.println(String.format("%-10s %12s %14s", "LAYOUT", "TOTAL (MB)", "BYTES/NODE"));
+        report(out, "HashMap", plainBytes, nodeCount);
+        report(out, "Compact", compactBytes, nodeCount);
+        out.println(String.format("Nodes: %,d, saving: %.1f%%", nodeCount, 100.0 * (plainBytes - compactBytes) / plainBytes));
+    }
+
+    private static void report(PrintStream out, String layout, long bytes, int nodeCount)
+    {
+        out.println(String.format("%-10s %12.1f %14.1f", layout, bytes / (1024.0 * 1024.0), (double) bytes / nodeCount));
+    }
+
+    /**
+     * @return      the growth of the used heap while holding the maps for all the nodes
+     */
+    private static long measure(int nodeCount, IntFunction<Map<QName, Serializable>> mapFactory)
+    {
+        long before = usedHeap();
+        Object[] maps = new Object[nodeCount];
+        for (int i = 0; i < nodeCount; i++)
+        {
+            maps[i] = mapFactory.apply(i);
+        }
+        long after = usedHeap();
+        // Keep the maps reachable until the heap has been measured
+        if (maps[nodeCount - 1] == null)
+        {
+            throw new IllegalStateException();
+        }
+        return after - before;
+    }
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++)
+        {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    /**
+     * The public properties of the n<sup>th</sup> node, excluding the <b>cm:auditable</b> properties
+     */
+    private static Map<QName, Serializable> newProperties(int n)
+    {
+        String mimetype = MIMETYPES[n % MIMETYPES.length];
+        Map<QName, Serializable> properties = new HashMap<QName, Serializable>(23);
+        properties.put(ContentModel.PROP_NAME, "document-" + n + ".pdf");
+        properties.put(ContentModel.PROP_CONTENT, new ContentData(
+                "store://2024/1/2/3/4/" + n + ".bin",
+                new String(mimetype),
+                10_000L + n,
+                new String("UTF-8"),
+                new Locale("en", "GB")));
+        properties.put(ContentModel.PROP_TITLE, "");
+        properties.put(ContentModel.PROP_AUTHOR, new String(USERNAMES[n % USERNAMES.length]));
+        properties.put(ContentModel.PROP_VERSION_LABEL, new String("1.0"));
+        properties.put(ContentModel.PROP_VERSION_TYPE, new String("MAJOR"));
+        properties.put(ContentModel.PROP_INITIAL_VERSION, Boolean.valueOf(true));
+        properties.put(ContentModel.PROP_AUTO_VERSION, Boolean.valueOf(true));
+        properties.put(ContentModel.PROP_AUTO_VERSION_PROPS, Boolean.valueOf(false));
+        properties.put(PROP_DATE_TAKEN, new Date(1_700_000_000_000L + n * 1000L));
+        properties.put(PROP_PIXEL_WIDTH, Integer.valueOf(1024 + (n % 4) * 1024));
+        return properties;
+    }
+
+    private static QNameDAO newQNameDAO()
+    {
+        Map<QName, Long> ids = new ConcurrentHashMap<QName, Long>();
+        AtomicLong nextId = new AtomicLong(1L);
+        return StandIns.of(QNameDAO.class)
+                .answer("getQName", args ->
+                {
+                    QName qname = (QName) args[0];
+                    Long id = ids.computeIfAbsent(qname, q -> nextId.getAndIncrement());
+                    return new Pair<Long, QName>(id, qname);
+                })
+                .build();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search.impl.parsers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.tree.CommonTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time taken by the generated {@link FTSLexer} and {@link FTSParser} to turn AFTS query strings into
+ * the syntax tree consumed by {@link FTSQueryParser}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FTSParserBenchmark
+{
+    @Param({
+        "SIMPLE",
+        "FIELDS",
+        "SHARE_SEARCH",
+        "RANGES"
+    })
+    public String query;
+
+    /**
+     * Representative queries, from a single term up to what the Share search box generates
+     */
+    private enum Query
+    {
+        SIMPLE("budget"),
+        FIELDS("cm:name:\"Quarterly report*\" AND TYPE:\"cm:content\" AND -ASPECT:\"sys:hidden\""),
+        SHARE_SEARCH("((budget AND PATH:\"/app:company_home/st:sites/cm:finance//*\" AND TYPE:\"cm:content\")"
+                + " OR (budget AND TYPE:\"cm:folder\")) AND -TYPE:\"cm:thumbnail\" AND -TYPE:\"cm:failedThumbnail\""
+                + " AND -TYPE:\"cm:rating\" AND -TYPE:\"fm:post\" AND -ASPECT:\"sys:hidden\" AND -cm:creator:System"
+                + " AND -QNAME:comment\\-*"),
+        RANGES("cm:created:[2020-01-01 TO NOW] AND cm:content.size:[1048576 TO MAX] AND cm:modifier:(admin OR"
+                + " \"john doe\" OR jane~) AND =cm:title:'Budget'^2 AND cm:description:(\"net profit\"~3)");
+
+        private final String text;
+
+        Query(String text)
+        {
+            this.text = text;
+        }
+    }
+
+    private CommonTree parse(FTSParser.Mode mode) throws RecognitionException
+    {
+        FTSLexer lexer = new FTSLexer(new ANTLRStringStream(Query.valueOf(query).text));
+        FTSParser parser = new FTSParser(new CommonTokenStream(lexer));
+        parser.setMode(mode);
+        parser.setDefaultFieldConjunction(true);
+        return (CommonTree) parser.ftsQuery().getTree();
+    }
+
+    @Benchmark
+    public CommonTree parseDefaultConjunction() throws RecognitionException
+    {
+        return parse(FTSParser.Mode.DEFAULT_CONJUNCTION);
+    }
+
+    @Benchmark
+    public CommonTree parseDefaultDisjunction() throws RecognitionException
+    {
+        return parse(FTSParser.Mode.DEFAULT_DISJUNCTION);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search.impl.solr;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time taken to read the body of a Solr query response, either as a whole JSONObject (as
+ * {@link AbstractSolrQueryHTTPClient#postQuery} did for every query) or with the {@link SolrJSONResponseParser}
+ * now used for result sets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolrJSONResponseBenchmark
+{
+    @Param({"10", "100", "1000"})
+    public int rows;
+
+    @Param({"false", "true"})
+    public boolean facetsAndHighlighting;
+
+    private String response;
+
+    /**
+     * Builds a response shaped like the ones returned by Search Services for <code>fl=DBID,score</code> queries.
+     */
+    @Setup
+    public void setUp()
+    {
+        StringBuilder sb = new StringBuilder(rows * 200);
+        sb.append("{\"responseHeader\":{\"status\":0,\"QTime\":14,\"params\":{\"fl\":\"DBID,score\",\"rows\":\"")
+                .append(rows).append("\",\"start\":\"0\",\"wt\":\"json\",\"fq\":[\"{!afts}AUTHORITY_FILTER_FROM_JSON\",")
+                .append("\"{!afts}TENANT_FILTER_FROM_JSON\"],\"df\":\"TEXT\",\"locale\":\"en_US\"}},")
+                .append("\"_original_parameters_\":{\"carrot.url\":\"id\",\"spellcheck\":\"false\",\"facet\":\"")
+                .append(facetsAndHighlighting).append("\"},\"lastIndexedTx\":1234567,\"txRemaining\":0,")
+                .append("\"processedDenies\":true,\"response\":{\"numFound\":").append(rows * 37)
+                .append(",\"start\":0,\"maxScore\":3.8210945,\"docs\":[");
+        for (int i = 0; i < rows; i++)
+        {
+            if (i > 0)
+            {
+                sb.append(',');
+            }
+            sb.append("{\"id\":\"_DEFAULT_!800000000000000b!").append(Long.toHexString(0x8000000000000000L + i))
+                    .append("\",\"_version_\":0,\"DBID\":").append(1000 + i).append(",\"score\":")
+                    .append(3.8210945f - i * 0.001f).append('}');
+        }
+        sb.append("]}");
+        if (facetsAndHighlighting)
+        {
+            sb.append(",\"facet_counts\":{\"facet_queries\":{},\"facet_fields\":{\"content.mimetype\":[");
+            String[] mimetypes = {"application/pdf", "text/plain", "image/jpeg", "application/msword", "text/html"};
+            for (int i = 0; i < mimetypes.length; i++)
+            {
+                sb.append(i > 0 ? "," : "").append('"').append(mimetypes[i]).append("\",").append(rows * (5 - i));
+            }
+            sb.append("],\"creator\":[\"admin\",").append(rows).append(",\"abeecher\",").append(rows / 2)
+                    .append("]},\"facet_dates\":{},\"facet_ranges\":{},\"facet_intervals\":{}},\"highlighting\":{");
+            for (int i = 0; i < rows; i++)
+            {
+                sb.append(i > 0 ? "," : "").append("\"_DEFAULT_!800000000000000b!")
+                        .append(Long.toHexString(0x8000000000000000L + i)).append("\":{\"DBID\":\"").append(1000 + i)
+                        .append("\",\"cm:name\":[\"Quarterly <em>budget</em> ").append(i)
+                        .append(".pdf\"],\"cm:content\":[\"... the <em>budget</em> for the next quarter was agreed ...\"]}");
+            }
+            sb.append('}');
+        }
+        sb.append('}');
+        response = sb.toString();
+    }
+
+    @Benchmark
+    public SolrJSONDocs jsonObject()
+    {
+        JSONObject json = new JSONObject(new JSONTokener(new StringReader(response)));
+        return SolrJSONDocs.fromJSON(json.getJSONObject("response").getJSONArray("docs"));
+    }
+
+    @Benchmark
+    public SolrJSONDocs streaming() throws IOException
+    {
+        SolrJSONDocs docs = new SolrJSONDocs();
+        SolrJSONResponseParser.parse(new StringReader(response), docs);
+        return docs;
+    }
+}
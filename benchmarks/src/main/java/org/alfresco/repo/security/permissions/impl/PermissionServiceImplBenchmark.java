@@ -0,0 +1,204 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.benchmark.StandIns;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.domain.permissions.AclDAO;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.permissions.ACEType;
+import org.alfresco.repo.security.permissions.ACLType;
+import org.alfresco.repo.security.permissions.AccessControlEntry;
+import org.alfresco.repo.security.permissions.PermissionReference;
+import org.alfresco.repo.security.permissions.SimpleAccessControlEntry;
+import org.alfresco.repo.security.permissions.SimpleAccessControlList;
+import org.alfresco.repo.security.permissions.SimpleAccessControlListProperties;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.AuthorityService;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.service.namespace.QName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of {@link PermissionServiceImpl#hasPermission(NodeRef, PermissionReference)} for a node with a
+ * <tt>DEFINING</tt> ACL, which is the path taken for every node in the live stores.
+ * <p>
+ * The permission model, the ACL DAO and the authority service are in-memory stand-ins, so the figures
+ * cover the ACL evaluation itself: collecting the caller's authorities, building the {@link PermissionContext}
+ * and walking the ACL entries.  The ACL grants <tt>Consumer</tt> to {@link #aceCount} groups and the
+ * caller belongs to {@link #groupCount} groups; when {@link #granted} is set, the caller's groups include
+ * the <u>last</u> entry of the ACL so that every entry is visited.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PermissionServiceImplBenchmark
+{
+    private static final String USER_NAME = "benchmarkUser";
+    private static final Long ACL_ID = 42L;
+
+    @Param({"10", "100"})
+    public int aceCount;
+
+    @Param({"10", "500"})
+    public int groupCount;
+
+    @Param({"true", "false"})
+    public boolean granted;
+
+    private PermissionServiceImpl permissionService;
+    private PermissionReference readPermission;
+    private NodeRef nodeRef;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        Map<String, PermissionReference> permissions = new HashMap<String, PermissionReference>();
+        for (String name : new String[] {
+                PermissionService.ALL_PERMISSIONS, PermissionService.READ, PermissionService.CONSUMER,
+                PermissionService.CONTRIBUTOR, PermissionService.EDITOR,
+                PermissionService.COORDINATOR, PermissionService.FULL_CONTROL })
+        {
+            permissions.put(name, SimplePermissionReference.getPermissionReference(ContentModel.TYPE_BASE, name));
+        }
+        readPermission = permissions.get(PermissionService.READ);
+        Set<PermissionReference> readGranters = new HashSet<PermissionReference>();
+        for (String name : new String[] {
+                PermissionService.CONSUMER, PermissionService.CONTRIBUTOR,
+                PermissionService.EDITOR, PermissionService.COORDINATOR })
+        {
+            readGranters.add(permissions.get(name));
+        }
+
+        // The ACL
+        List<AccessControlEntry> entries = new ArrayList<AccessControlEntry>(aceCount);
+        for (int i = 0; i < aceCount; i++)
+        {
+            SimpleAccessControlEntry entry = new SimpleAccessControlEntry();
+            entry.setAccessStatus(AccessStatus.ALLOWED);
+            entry.setAceType(ACEType.ALL);
+            entry.setAuthority("GROUP_site_" + i + "_SiteConsumer");
+            entry.setPermission(permissions.get(PermissionService.CONSUMER));
+            entry.setPosition(0);
+            entries.add(entry);
+        }
+        SimpleAccessControlListProperties aclProperties = new SimpleAccessControlListProperties();
+        aclProperties.setId(ACL_ID);
+        aclProperties.setAclType(ACLType.DEFINING);
+        aclProperties.setInherits(true);
+        SimpleAccessControlList acl = new SimpleAccessControlList();
+        acl.setProperties(aclProperties);
+        acl.setEntries(entries);
+
+        // The caller's groups
+        Set<String> groups = new HashSet<String>();
+        for (int i = 0; i < groupCount; i++)
+        {
+            groups.add("GROUP_member_" + i);
+        }
+        if (granted)
+        {
+            groups.add("GROUP_site_" + (aceCount - 1) + "_SiteConsumer");
+        }
+
+        nodeRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "6d3c3c4e-1f8a-4c5d-9a8f-1d4d7b3f9e21");
+
+        permissionService = new PermissionServiceImpl();
+        permissionService.setModelDAO(StandIns.of(ModelDAO.class)
+                .answer("getPermissionReference", args -> permissions.get(args[1]))
+                .returning("getRequiredPermissions", Collections.emptySet())
+                .answer("getGrantingPermissions", args -> readPermission.equals(args[0]) ? readGranters : Collections.emptySet())
+                .returning("getGranteePermissions", Collections.emptySet())
+                .returning("checkPermission", Boolean.TRUE)
+                .returning("getGlobalPermissionEntries", Collections.emptySet())
+                .answer("getAllPermissions", args -> new HashSet<PermissionReference>(permissions.values()))
+                .build());
+        permissionService.setNodeService(StandIns.of(NodeService.class)
+                .returning("exists", Boolean.TRUE)
+                .returning("getType", ContentModel.TYPE_CONTENT)
+                .answer("getAspects", args -> new HashSet<QName>(Collections.singleton(ContentModel.ASPECT_AUDITABLE)))
+                .build());
+        permissionService.setTenantService(StandIns.of(TenantService.class)
+                .answer("getName", args -> args[0])
+                .build());
+        permissionService.setPermissionsDaoComponent(StandIns.of(PermissionsDaoComponent.class)
+                .returning("getAccessControlListProperties", aclProperties)
+                .build());
+        permissionService.setAclDAO(StandIns.of(AclDAO.class)
+                .answer("getAccessControlList", args -> ACL_ID.equals(args[0]) ? acl : null)
+                .build());
+        permissionService.setAuthorityService(StandIns.of(AuthorityService.class)
+                .answer("getAuthoritiesForUser", args -> new HashSet<String>(groups))
+                .build());
+        permissionService.setAccessCache(new DefaultSimpleCache<Serializable, AccessStatus>(10000, "benchmarkAccessCache"));
+        permissionService.setAccessGenerationCache(new DefaultSimpleCache<Serializable, Long>(10000, "benchmarkAccessGenerationCache"));
+        permissionService.allPermissionReference = permissions.get(PermissionService.ALL_PERMISSIONS);
+
+        AuthenticationUtil.setFullyAuthenticatedUser(USER_NAME);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
+    @Benchmark
+    public AccessStatus hasReadPermission()
+    {
+        return permissionService.hasPermission(nodeRef, readPermission);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.repo.benchmark.BaselineComparison.Comparison;
+import org.alfresco.repo.benchmark.BaselineComparison.Result;
+import org.alfresco.repo.benchmark.BaselineComparison.Status;
+import org.junit.Test;
+
+/**
+ * @see BaselineComparison
+ */
+public class BaselineComparisonTest
+{
+    private final BaselineComparison comparison = new BaselineComparison(5.0);
+
+    private static Map<String, Result> results(Result... results)
+    {
+        Map<String, Result> map = new HashMap<String, Result>();
+        for (Result result : results)
+        {
+            map.put(result.getName(), result);
+        }
+        return map;
+    }
+
+    private Status compare(Result baseline, Result current)
+    {
+        List<Comparison> comparisons = comparison.compare(results(baseline), results(current));
+        assertEquals(1, comparisons.size());
+        return comparisons.get(0).getStatus();
+    }
+
+    @Test
+    public void testThroughputDropIsRegression()
+    {
+        assertEquals(Status.REGRESSED, compare(
+                new Result("x", "thrpt", 1000.0, 10.0, "ops/s"),
+                new Result("x", "thrpt", 800.0, 10.0, "ops/s")));
+    }
+
+    @Test
+    public void testAverageTimeDropIsImprovement()
+    {
+        assertEquals(Status.IMPROVED, compare(
+                new Result("x", "avgt", 100.0, 1.0, "ns/op"),
+                new Result("x", "avgt", 80.0, 1.0, "ns/op")));
+    }
+
+    @Test
+    public void testChangeWithinThresholdIsSame()
+    {
+        assertEquals(Status.SAME, compare(
+                new Result("x", "avgt", 100.0, 1.0, "ns/op"),
+                new Result("x", "avgt", 104.0, 1.0, "ns/op")));
+    }
+
+    @Test
+    public void testOverlappingErrorsAreSame()
+    {
+        assertEquals(Status.SAME, compare(
+                new Result("x", "avgt", 100.0, 20.0, "ns/op"),
+                new Result("x", "avgt", 130.0, 20.0, "ns/op")));
+    }
+
+    @Test
+    public void testNewAndMissing()
+    {
+        List<Comparison> comparisons = comparison.compare(
+                results(new Result("old", "avgt", 1.0, 0.0, "ns/op")),
+                results(new Result("new", "avgt", 1.0, 0.0, "ns/op")));
+        assertEquals(2, comparisons.size());
+        assertEquals(Status.MISSING, comparisons.get(0).getStatus());
+        assertEquals(Status.NEW, comparisons.get(1).getStatus());
+        assertTrue(Double.isNaN(comparisons.get(0).getChangePercent()));
+        assertEquals(0, BaselineComparison.countRegressions(comparisons));
+    }
+}
@@ -166,6 +166,14 @@ public class HttpClientConfig
         return getIntegerProperty(HttpClientPropertiesEnum.MAX_HOST_CONNECTIONS);
     }
 
+    /**
+     * How long, in milliseconds, a pooled connection may stay idle before it is closed.
+     */
+    public Optional<Integer> getIdleConnectionTimeout()
+    {
+        return getIntegerProperty(HttpClientPropertiesEnum.IDLE_CONNECTION_TIMEOUT);
+    }
+
     public boolean isMTLSEnabled()
     {
         return getBooleanProperty(HttpClientPropertiesEnum.MTLS_ENABLED).orElse(Boolean.FALSE);
@@ -183,6 +191,7 @@ public class HttpClientConfig
         CONNECTION_REQUEST_TIMEOUT("connectionRequestTimeout"),
         MAX_TOTAL_CONNECTIONS("maxTotalConnections"),
         MAX_HOST_CONNECTIONS("maxHostConnections"),
+        IDLE_CONNECTION_TIMEOUT("idleConnectionTimeout"),
         HOSTNAME_VERIFICATION_DISABLED("hostnameVerificationDisabled"),
         MTLS_ENABLED("mTLSEnabled");
 
@@ -34,7 +34,9 @@ import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.service.cmr.repository.DirectAccessUrl;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 
 
@@ -242,6 +244,48 @@ public interface ContentStore
      */
     public boolean delete(String contentUrl);
 
+    /**
+     * Deletes the content at each of the given URLs.
+     * <p>
+     * The default implementation calls {@link #delete(String)} for each URL in turn.  Stores
+     * that can remove binaries more efficiently in bulk (e.g. concurrently or in a single
+     * remote call) should override this.  The semantics of each individual delete are the
+     * same as for {@link #delete(String)}, but a failure to delete one URL does not prevent
+     * the remaining URLs from being deleted.
+     * 
+     * @param contentUrls
+     *      the URLs of the content to delete
+     * @return
+     *      Returns the URLs that could <b>not</b> be deleted, mapped to the exception that caused
+     *      the failure or to <tt>null</tt> if the store simply reported that the delete failed.
+     *      An empty map means that all the content was deleted.
+     * @throws UnsupportedOperationException
+     *      if the store is unable to perform the action
+     */
+    default Map<String, Throwable> delete(Collection<String> contentUrls)
+    {
+        Map<String, Throwable> failures = new HashMap<>();
+        for (String contentUrl : contentUrls)
+        {
+            try
+            {
+                if (!delete(contentUrl))
+                {
+                    failures.put(contentUrl, null);
+                }
+            }
+            catch (UnsupportedOperationException e)
+            {
+                throw e;
+            }
+            catch (RuntimeException e)
+            {
+                failures.put(contentUrl, e);
+            }
+        }
+        return failures;
+    }
+
     /**
      * Checks if the store supports the retrieving of direct access URLs.
      *
@@ -26,10 +26,13 @@
 package org.alfresco.service.cmr.repository;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 import org.alfresco.api.AlfrescoPublicApi;
 
@@ -150,6 +153,103 @@ public interface ContentReader extends ContentAccessor
      */
     public void getContent(File file) throws ContentIOException;
 
+    /**
+     * Transfers a range of the content directly to the given channel.
+     * <p>
+     * Where the content is backed by a file, i.e. the {@link #getReadableChannel() readable channel}
+     * is a {@link FileChannel}, {@link FileChannel#transferTo(long, long, WritableByteChannel)} is used
+     * so that the operating system can move the bytes without copying them through the heap
+     * (e.g. using <tt>sendfile</tt> when the target is a socket).  Otherwise the content is copied
+     * through a buffer.
+     * <p>
+     * The reader's channel will be closed automatically but the target channel is left open.
+     * 
+     * @param position the position in the content of the first byte to transfer
+     * @param count the maximum number of bytes to transfer
+     * @param target the channel to transfer the content to
+     * @return Returns the number of bytes transferred, which is less than <code>count</code>
+     *      only if the end of the content was reached
+     * @throws ContentIOException if the content could not be read or written to the target
+     * @throws IllegalArgumentException if the position or count is negative
+     * 
+     * @see #getReadableChannel()
+     */
+    default long transferTo(long position, long count, WritableByteChannel target) throws ContentIOException
+    {
+        if (position < 0L || count < 0L)
+        {
+            throw new IllegalArgumentException("Position and count must be 0 or greater");
+        }
+        ReadableByteChannel channel = getReadableChannel();
+        try
+        {
+            long transferred = 0L;
+            if (channel instanceof FileChannel)
+            {
+                FileChannel fileChannel = (FileChannel) channel;
+                long remaining = Math.min(count, Math.max(0L, fileChannel.size() - position));
+                while (transferred < remaining)
+                {
+                    long written = fileChannel.transferTo(position + transferred, remaining - transferred, target);
+                    if (written <= 0L)
+                    {
+                        break;
+                    }
+                    transferred += written;
+                }
+                return transferred;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(64L * 1024L, Math.max(1L, Math.max(position, count))));
+            // Skip to the requested position
+            long skipped = 0L;
+            while (skipped < position)
+            {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), position - skipped));
+                int read = channel.read(buffer);
+                if (read < 0)
+                {
+                    return 0L;
+                }
+                skipped += read;
+            }
+            while (transferred < count)
+            {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), count - transferred));
+                int read = channel.read(buffer);
+                if (read < 0)
+                {
+                    break;
+                }
+                buffer.flip();
+                while (buffer.hasRemaining())
+                {
+                    target.write(buffer);
+                }
+                transferred += read;
+            }
+            return transferred;
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to transfer content to channel: \n" +
+                    "   accessor: " + this,
+                    e);
+        }
+        finally
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                // Nothing more can be done; the transfer result stands
+            }
+        }
+    }
+
     /**
      * Gets content from the repository direct to <code>String</code>.
      * <p>
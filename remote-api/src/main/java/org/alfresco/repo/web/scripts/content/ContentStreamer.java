@@ -33,6 +33,7 @@ import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.SocketException;
 import java.net.URLEncoder;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -434,7 +435,17 @@ public class ContentStreamer implements ResourceLoaderAware
                // get the content and stream directly to the response output stream
                // assuming the repository is capable of streaming in chunks, this should allow large files
                // to be streamed directly to the browser response stream.
-               reader.getContent( res.getOutputStream() );
+               OutputStream os = res.getOutputStream();
+               if (os instanceof WritableByteChannel)
+               {
+                   // the container accepts bytes from a channel, so file content is sent without heap copies
+                   reader.transferTo(0L, size, (WritableByteChannel) os);
+                   os.close();
+               }
+               else
+               {
+                   reader.getContent(os);
+               }
             }
         }
         catch (SocketException e1)
@@ -0,0 +1,149 @@
+/*
+ * #%L
+ * Alfresco Remote API
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.web.scripts.solr;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+import org.json.JSONObject;
+
+/**
+ * Writes SOLR tracking results as newline delimited JSON: one compact JSON object per line, written as soon as it
+ * has been built.  The writer is flushed every <tt>flushInterval</tt> lines, so that the servlet container sends the
+ * response in chunks while the rest of the results are still being read.
+ * <p/>
+ * The last line is a trailer, e.g. <tt>{"end":true,"count":1000}</tt>.  A client that does not receive it must treat
+ * the response as incomplete, as an error part way through can no longer change the status of the response.
+ * 
+ * @since 23.2
+ */
+class NDJSONStreamWriter
+{
+    /** The format argument that selects streaming e.g. <tt>/api/solr/metadata?format=ndjson</tt> */
+    static final String FORMAT = "ndjson";
+    static final String MIMETYPE = "application/x-ndjson";
+
+    private final Writer writer;
+    private final int flushInterval;
+    private final StringBuilder line = new StringBuilder(1024);
+    private int count;
+
+    /**
+     * @param writer            the response writer
+     * @param flushInterval     the number of lines between flushes
+     */
+    NDJSONStreamWriter(Writer writer, int flushInterval)
+    {
+        this.writer = writer;
+        this.flushInterval = Math.max(1, flushInterval);
+    }
+
+    /**
+     * @return              Returns the buffer for the next line, emptied
+     */
+    protected StringBuilder startLine()
+    {
+        line.setLength(0);
+        return line;
+    }
+
+    /**
+     * Write the line built since {@link #startLine()}
+     */
+    protected void endLine()
+    {
+        try
+        {
+            line.append('\n');
+            writer.append(line);
+            if (++count % flushInterval == 0)
+            {
+                writer.flush();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Failed to write to the response", e);
+        }
+    }
+
+    /**
+     * Write the trailer and flush
+     */
+    public void finish() throws IOException
+    {
+        writer.write("{\"end\":true,\"count\":" + count + "}\n");
+        writer.flush();
+    }
+
+    /**
+     * @return              Returns the number of lines written, excluding the trailer
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+    static StringBuilder appendName(StringBuilder sb, String name)
+    {
+        if (sb.charAt(sb.length() - 1) != '{')
+        {
+            sb.append(',');
+        }
+        return sb.append(JSONObject.quote(name)).append(':');
+    }
+
+    static StringBuilder appendString(StringBuilder sb, String value)
+    {
+        return value == null ? sb.append("null") : sb.append(JSONObject.quote(value));
+    }
+
+    /**
+     * Append JSON that has already been serialized.  A compact fragment can only hold a line break within a string,
+     * where it is escaped so that the fragment stays on one line.
+     */
+    static StringBuilder appendJSON(StringBuilder sb, String json)
+    {
+        for (int i = 0; i < json.length(); i++)
+        {
+            char c = json.charAt(i);
+            if (c == '\n')
+            {
+                sb.append("\\n");
+            }
+            else if (c == '\r')
+            {
+                sb.append("\\r");
+            }
+            else
+            {
+                sb.append(c);
+            }
+        }
+        return sb;
+    }
+}
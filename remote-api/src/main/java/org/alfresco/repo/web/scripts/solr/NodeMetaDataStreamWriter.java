@@ -0,0 +1,188 @@
+/*
+ * #%L
+ * Alfresco Remote API
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.web.scripts.solr;
+
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Map;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.search.SearchTrackingComponent.NodeMetaDataQueryCallback;
+import org.alfresco.repo.solr.NodeMetaData;
+import org.alfresco.repo.web.scripts.solr.NodesMetaDataGet.FreemarkerNodeMetaData;
+import org.alfresco.service.namespace.NamespaceException;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+
+/**
+ * Streams node metadata as it is produced by the tracking component, one node per line.  Each line holds the same
+ * fields as a node of the <tt>nodesMetaData.post.json.ftl</tt> response, without the whitespace.
+ * 
+ * @since 23.2
+ */
+class NodeMetaDataStreamWriter extends NDJSONStreamWriter implements NodeMetaDataQueryCallback
+{
+    private final SOLRSerializer solrSerializer;
+    private final NamespaceService namespaceService;
+
+    NodeMetaDataStreamWriter(Writer writer, int flushInterval, SOLRSerializer solrSerializer, NamespaceService namespaceService)
+    {
+        super(writer, flushInterval);
+        this.solrSerializer = solrSerializer;
+        this.namespaceService = namespaceService;
+    }
+
+    @Override
+    public boolean handleNodeMetaData(NodeMetaData nodeMetaData)
+    {
+        FreemarkerNodeMetaData node;
+        try
+        {
+            node = new FreemarkerNodeMetaData(solrSerializer, nodeMetaData, 0);
+        }
+        catch (Exception e)
+        {
+            throw new AlfrescoRuntimeException("Problem converting node " + nodeMetaData.getNodeId(), e);
+        }
+
+        StringBuilder sb = startLine();
+        sb.append("{\"id\":").append(node.getNodeId());
+        if (node.getTenantDomain() != null)
+        {
+            appendString(appendName(sb, "tenantDomain"), node.getTenantDomain());
+        }
+        if (node.getNodeRef() != null)
+        {
+            appendString(appendName(sb, "nodeRef"), node.getNodeRef().toString());
+        }
+        if (node.getNodeType() != null)
+        {
+            appendString(appendName(sb, "type"), toPrefixString(node.getNodeType()));
+        }
+        if (node.getAclId() != null)
+        {
+            appendName(sb, "aclId").append(node.getAclId());
+        }
+        if (node.getTxnId() != null)
+        {
+            appendName(sb, "txnId").append(node.getTxnId());
+        }
+        if (node.getProperties() != null)
+        {
+            appendName(sb, "properties").append('{');
+            for (Map.Entry<String, PropertyValue> property : node.getProperties().entrySet())
+            {
+                appendJSON(appendName(sb, property.getKey()), property.getValue().toString());
+            }
+            sb.append('}');
+        }
+        if (node.getAspects() != null)
+        {
+            appendName(sb, "aspects").append('[');
+            for (QName aspect : node.getAspects())
+            {
+                appendString(sb, toPrefixString(aspect)).append(',');
+            }
+            endArray(sb);
+        }
+        if (node.getPaths() != null)
+        {
+            appendArray(appendName(sb, "paths"), node.getPaths());
+        }
+        if (node.getAncestors() != null && !node.getAncestors().isEmpty())
+        {
+            appendName(sb, "ancestors").append('[');
+            for (String ancestor : node.getAncestors())
+            {
+                appendString(sb, ancestor).append(',');
+            }
+            endArray(sb);
+        }
+        if (node.getNamePaths() != null)
+        {
+            appendArray(appendName(sb, "namePaths"), node.getNamePaths());
+        }
+        if (node.getParentAssocs() != null && !node.getParentAssocs().isEmpty())
+        {
+            appendArray(appendName(sb, "parentAssocs"), node.getParentAssocs());
+            appendName(sb, "parentAssocsCrc").append(node.getParentAssocsCrc());
+        }
+        if (node.getChildAssocs() != null && !node.getChildAssocs().isEmpty())
+        {
+            appendArray(appendName(sb, "childAssocs"), node.getChildAssocs());
+        }
+        if (node.getChildIds() != null && !node.getChildIds().isEmpty())
+        {
+            appendName(sb, "childIds").append('[');
+            for (Long childId : node.getChildIds())
+            {
+                sb.append(childId).append(',');
+            }
+            endArray(sb);
+        }
+        if (node.getOwner() != null)
+        {
+            appendString(appendName(sb, "owner"), node.getOwner());
+        }
+        sb.append('}');
+        endLine();
+        return true;
+    }
+
+    /**
+     * As the <tt>shortQName</tt> template method
+     */
+    private String toPrefixString(QName qName)
+    {
+        try
+        {
+            return qName.toPrefixString(namespaceService);
+        }
+        catch (NamespaceException e)
+        {
+            return qName.toString();
+        }
+    }
+
+    private static void appendArray(StringBuilder sb, Collection<String> jsonValues)
+    {
+        sb.append('[');
+        for (String json : jsonValues)
+        {
+            appendJSON(sb, json).append(',');
+        }
+        endArray(sb);
+    }
+
+    private static void endArray(StringBuilder sb)
+    {
+        if (sb.charAt(sb.length() - 1) == ',')
+        {
+            sb.setLength(sb.length() - 1);
+        }
+        sb.append(']');
+    }
+}
@@ -26,6 +26,7 @@
 package org.alfresco.repo.web.scripts.solr;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -52,6 +53,7 @@ import org.springframework.extensions.webscripts.DeclarativeWebScript;
 import org.springframework.extensions.webscripts.Status;
 import org.springframework.extensions.webscripts.WebScriptException;
 import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.extensions.webscripts.WebScriptResponse;
 
 /**
  * Support for SOLR: Get a list of nodes in the given transactions.
@@ -72,6 +74,8 @@ public class NodesGet extends DeclarativeWebScript
     
     private QNameDAO qnameDAO;
     
+    private int streamFlushInterval = 50;
+    
     public void setSearchTrackingComponent(SearchTrackingComponent searchTrackingComponent)
     {
         this.searchTrackingComponent = searchTrackingComponent;
@@ -87,119 +91,57 @@ public class NodesGet extends DeclarativeWebScript
         this.qnameDAO = qnameDAO;
     }
 
+    /**
+     * @param streamFlushInterval   the number of nodes written between flushes of a streamed response
+     */
+    public void setStreamFlushInterval(int streamFlushInterval)
+    {
+        this.streamFlushInterval = streamFlushInterval;
+    }
+
+    /**
+     * Streams the nodes as newline delimited JSON when the <tt>ndjson</tt> format is requested, otherwise builds
+     * the model for the JSON template.
+     */
     @Override
-    protected Map<String, Object> executeImpl(WebScriptRequest req, Status status)
+    public void execute(WebScriptRequest req, WebScriptResponse res) throws IOException
     {
+        if (!NDJSONStreamWriter.FORMAT.equals(req.getFormat()))
+        {
+            super.execute(req, res);
+            return;
+        }
         try
         {
-            Content content = req.getContent();
-            if(content == null)
-            {
-                throw new WebScriptException("Failed to convert request to String");
-            }
-            JSONObject o = new JSONObject(content.getContent());
+            JSONObject o = getRequestJSON(req);
+            NodeParameters nodeParameters = getNodeParameters(o);
 
-            JSONArray aTxnIds = o.has("txnIds") ? o.getJSONArray("txnIds") : null;
-            Long fromTxnId = o.has("fromTxnId") ? o.getLong("fromTxnId") : null;
-            Long toTxnId = o.has("toTxnId") ? o.getLong("toTxnId") : null;
-
-            Long fromNodeId = o.has("fromNodeId") ? o.getLong("fromNodeId") : null;
-            Long toNodeId = o.has("toNodeId") ? o.getLong("toNodeId") : null;
-            
-            Set<QName> excludeAspects = null;
-            if(o.has("excludeAspects"))
-            {
-                JSONArray aExcludeAspects = o.getJSONArray("excludeAspects");
-                excludeAspects = new HashSet<QName>(aExcludeAspects.length());
-                for(int i = 0; i < aExcludeAspects.length(); i++)
-                {
-                    excludeAspects.add(QName.createQName(aExcludeAspects.getString(i).trim()));
-                }
-            }
+            res.setContentType(NDJSONStreamWriter.MIMETYPE);
+            res.setContentEncoding("UTF-8");
+            NodeStreamWriter writer = new NodeStreamWriter(res.getWriter(), streamFlushInterval, getFilterStoreRef(o));
+            searchTrackingComponent.getNodes(nodeParameters, writer);
+            writer.finish();
 
-            Set<QName> includeAspects = null;
-            if(o.has("includeAspects"))
-            {
-                JSONArray aIncludeAspects = o.getJSONArray("includeAspects");
-                includeAspects = new HashSet<QName>(aIncludeAspects.length());
-                for(int i = 0; i < aIncludeAspects.length(); i++)
-                {
-                    includeAspects.add(QName.createQName(aIncludeAspects.getString(i).trim()));
-                }
-            }
-            
-            Set<QName> excludeNodeTypes = null;
-            if(o.has("excludeNodeTypes"))
+            if (logger.isDebugEnabled())
             {
-                JSONArray aExcludeNodeTypes = o.getJSONArray("excludeNodeTypes");
-                excludeNodeTypes = new HashSet<QName>(aExcludeNodeTypes.length());
-                for(int i = 0; i < aExcludeNodeTypes.length(); i++)
-                {
-                    excludeNodeTypes.add(QName.createQName(aExcludeNodeTypes.getString(i).trim()));
-                }
+                logger.debug("Streamed " + writer.getCount() + " nodes for request: " + req);
             }
+        }
+        catch(JSONException e)
+        {
+            throw new WebScriptException("Invalid JSON", e);
+        }
+    }
 
-            Set<QName> includeNodeTypes = null;
-            if(o.has("includeNodeTypes"))
-            {
-                JSONArray aIncludeNodeTypes = o.getJSONArray("includeNodeTypes");
-                includeNodeTypes = new HashSet<QName>(aIncludeNodeTypes.length());
-                for(int i = 0; i < aIncludeNodeTypes.length(); i++)
-                {
-                    includeNodeTypes.add(QName.createQName(aIncludeNodeTypes.getString(i).trim()));
-                }
-            }
-            
-            // 0 or Integer.MAX_VALUE => ignore
-            int maxResults = o.has("maxResults") ? o.getInt("maxResults") : 0;
-            
-            String storeProtocol = o.has("storeProtocol") ? o.getString("storeProtocol") : null;
-            String storeIdentifier = o.has("storeIdentifier") ? o.getString("storeIdentifier") : null;
-            String coreName = o.has("coreName") ? o.getString("coreName") : null;
-            
-            List<Long> txnIds = null;
-            if(aTxnIds != null)
-            {
-                txnIds = new ArrayList<Long>(aTxnIds.length());
-                for(int i = 0; i < aTxnIds.length(); i++)
-                {
-                    txnIds.add(aTxnIds.getLong(i));
-                }
-            }
-            
-            String shardProperty = o.has("shardProperty") ? o.getString("shardProperty") : null;
-            
-            NodeParameters nodeParameters = new NodeParameters();
-            nodeParameters.setTransactionIds(txnIds);
-            nodeParameters.setFromTxnId(fromTxnId);
-            nodeParameters.setToTxnId(toTxnId);
-            nodeParameters.setFromNodeId(fromNodeId);
-            nodeParameters.setToNodeId(toNodeId);
-            nodeParameters.setExcludeAspects(excludeAspects);
-            nodeParameters.setIncludeAspects(includeAspects);
-            nodeParameters.setExcludeNodeTypes(excludeNodeTypes);
-            nodeParameters.setIncludeNodeTypes(includeNodeTypes);
-            nodeParameters.setShardProperty(shardProperty);
-            nodeParameters.setCoreName(coreName);
+    @Override
+    protected Map<String, Object> executeImpl(WebScriptRequest req, Status status)
+    {
+        try
+        {
+            JSONObject o = getRequestJSON(req);
+            NodeParameters nodeParameters = getNodeParameters(o);
 
-            
-            StoreRef storeRef = null;
-            
-            if (AuthenticationUtil.isMtEnabled())
-            {
-                // MT - use Java filter (post query) and then add tenant context for each node
-                storeRef = new StoreRef(storeProtocol, storeIdentifier);
-            }
-            else
-            {
-                // non-MT - use DB filter (in query)
-                nodeParameters.setStoreProtocol(storeProtocol);
-                nodeParameters.setStoreIdentifier(storeIdentifier);
-            }
-            
-            nodeParameters.setMaxResults(maxResults);
-            
-            WebNodeQueryCallback nodeQueryCallback = new WebNodeQueryCallback(maxResults, storeRef, tenantService, qnameDAO);
+            WebNodeQueryCallback nodeQueryCallback = new WebNodeQueryCallback(nodeParameters.getMaxResults(), getFilterStoreRef(o), tenantService, qnameDAO);
 
             searchTrackingComponent.getNodes(nodeParameters, nodeQueryCallback);
             
@@ -224,6 +166,138 @@ public class NodesGet extends DeclarativeWebScript
         }
     }
 
+    private JSONObject getRequestJSON(WebScriptRequest req) throws IOException, JSONException
+    {
+        Content content = req.getContent();
+        if(content == null)
+        {
+            throw new WebScriptException("Failed to convert request to String");
+        }
+        return new JSONObject(content.getContent());
+    }
+
+    private NodeParameters getNodeParameters(JSONObject o) throws JSONException
+    {
+        JSONArray aTxnIds = o.has("txnIds") ? o.getJSONArray("txnIds") : null;
+        Long fromTxnId = o.has("fromTxnId") ? o.getLong("fromTxnId") : null;
+        Long toTxnId = o.has("toTxnId") ? o.getLong("toTxnId") : null;
+
+        Long fromNodeId = o.has("fromNodeId") ? o.getLong("fromNodeId") : null;
+        Long toNodeId = o.has("toNodeId") ? o.getLong("toNodeId") : null;
+        
+        Set<QName> excludeAspects = null;
+        if(o.has("excludeAspects"))
+        {
+            JSONArray aExcludeAspects = o.getJSONArray("excludeAspects");
+            excludeAspects = new HashSet<QName>(aExcludeAspects.length());
+            for(int i = 0; i < aExcludeAspects.length(); i++)
+            {
+                excludeAspects.add(QName.createQName(aExcludeAspects.getString(i).trim()));
+            }
+        }
+
+        Set<QName> includeAspects = null;
+        if(o.has("includeAspects"))
+        {
+            JSONArray aIncludeAspects = o.getJSONArray("includeAspects");
+            includeAspects = new HashSet<QName>(aIncludeAspects.length());
+            for(int i = 0; i < aIncludeAspects.length(); i++)
+            {
+                includeAspects.add(QName.createQName(aIncludeAspects.getString(i).trim()));
+            }
+        }
+        
+        Set<QName> excludeNodeTypes = null;
+        if(o.has("excludeNodeTypes"))
+        {
+            JSONArray aExcludeNodeTypes = o.getJSONArray("excludeNodeTypes");
+            excludeNodeTypes = new HashSet<QName>(aExcludeNodeTypes.length());
+            for(int i = 0; i < aExcludeNodeTypes.length(); i++)
+            {
+                excludeNodeTypes.add(QName.createQName(aExcludeNodeTypes.getString(i).trim()));
+            }
+        }
+
+        Set<QName> includeNodeTypes = null;
+        if(o.has("includeNodeTypes"))
+        {
+            JSONArray aIncludeNodeTypes = o.getJSONArray("includeNodeTypes");
+            includeNodeTypes = new HashSet<QName>(aIncludeNodeTypes.length());
+            for(int i = 0; i < aIncludeNodeTypes.length(); i++)
+            {
+                includeNodeTypes.add(QName.createQName(aIncludeNodeTypes.getString(i).trim()));
+            }
+        }
+        
+        // 0 or Integer.MAX_VALUE => ignore
+        int maxResults = o.has("maxResults") ? o.getInt("maxResults") : 0;
+        
+        String coreName = o.has("coreName") ? o.getString("coreName") : null;
+        
+        List<Long> txnIds = null;
+        if(aTxnIds != null)
+        {
+            txnIds = new ArrayList<Long>(aTxnIds.length());
+            for(int i = 0; i < aTxnIds.length(); i++)
+            {
+                txnIds.add(aTxnIds.getLong(i));
+            }
+        }
+        
+        String shardProperty = o.has("shardProperty") ? o.getString("shardProperty") : null;
+        
+        NodeParameters nodeParameters = new NodeParameters();
+        nodeParameters.setTransactionIds(txnIds);
+        nodeParameters.setFromTxnId(fromTxnId);
+        nodeParameters.setToTxnId(toTxnId);
+        nodeParameters.setFromNodeId(fromNodeId);
+        nodeParameters.setToNodeId(toNodeId);
+        nodeParameters.setExcludeAspects(excludeAspects);
+        nodeParameters.setIncludeAspects(includeAspects);
+        nodeParameters.setExcludeNodeTypes(excludeNodeTypes);
+        nodeParameters.setIncludeNodeTypes(includeNodeTypes);
+        nodeParameters.setShardProperty(shardProperty);
+        nodeParameters.setCoreName(coreName);
+
+        if (!AuthenticationUtil.isMtEnabled())
+        {
+            // non-MT - use DB filter (in query)
+            nodeParameters.setStoreProtocol(o.has("storeProtocol") ? o.getString("storeProtocol") : null);
+            nodeParameters.setStoreIdentifier(o.has("storeIdentifier") ? o.getString("storeIdentifier") : null);
+        }
+        
+        nodeParameters.setMaxResults(maxResults);
+        return nodeParameters;
+    }
+
+    /**
+     * @return              Returns the store to filter the nodes by after the query, or <tt>null</tt> if the query
+     *                      filters by store
+     */
+    private StoreRef getFilterStoreRef(JSONObject o) throws JSONException
+    {
+        if (AuthenticationUtil.isMtEnabled())
+        {
+            // MT - use Java filter (post query) and then add tenant context for each node
+            String storeProtocol = o.has("storeProtocol") ? o.getString("storeProtocol") : null;
+            String storeIdentifier = o.has("storeIdentifier") ? o.getString("storeIdentifier") : null;
+            return new StoreRef(storeProtocol, storeIdentifier);
+        }
+        return null;
+    }
+
+    private static boolean isInStore(Node node, StoreRef storeRef, TenantService tenantService)
+    {
+        if (storeRef == null)
+        {
+            return true;
+        }
+        // MT - since storeRef is not null, filter by store here
+        StoreRef tenantStoreRef = node.getStore().getStoreRef();
+        StoreRef baseStoreRef = new StoreRef(tenantStoreRef.getProtocol(), tenantService.getBaseName(tenantStoreRef.getIdentifier(), true));
+        return storeRef.equals(baseStoreRef);
+    }
+
     public static class NodeRecord
     {
         private final Long id;
@@ -315,17 +389,7 @@ public class NodesGet extends DeclarativeWebScript
         @Override
         public boolean handleNode(Node node)
         {
-            if (storeRef != null)
-            {
-                // MT - since storeRef is not null, filter by store here
-                StoreRef tenantStoreRef = node.getStore().getStoreRef();
-                StoreRef baseStoreRef = new StoreRef(tenantStoreRef.getProtocol(), tenantService.getBaseName(tenantStoreRef.getIdentifier(), true));
-                if (storeRef.equals(baseStoreRef))
-                {
-                    nodes.add(new NodeRecord(node, qnameDAO, tenantService));
-                }
-            }
-            else
+            if (isInStore(node, storeRef, tenantService))
             {
                 nodes.add(new NodeRecord(node, qnameDAO, tenantService));
             }
@@ -339,4 +403,49 @@ public class NodesGet extends DeclarativeWebScript
             return nodes;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Callback for DAO get nodes query that streams each node, with the fields of <tt>solr.lib.ftl#nodeJSON</tt>
+     */
+    private class NodeStreamWriter extends NDJSONStreamWriter implements NodeQueryCallback
+    {
+        private final StoreRef storeRef;
+
+        NodeStreamWriter(Writer writer, int flushInterval, StoreRef storeRef)
+        {
+            super(writer, flushInterval);
+            this.storeRef = storeRef;
+        }
+
+        @Override
+        public boolean handleNode(Node node)
+        {
+            if (!isInStore(node, storeRef, tenantService))
+            {
+                return true;
+            }
+            NodeRecord record = new NodeRecord(node, qnameDAO, tenantService);
+            StringBuilder sb = startLine();
+            sb.append("{\"id\":").append(record.getId());
+            appendString(appendName(sb, "nodeRef"), record.getNodeRef());
+            appendName(sb, "txnId").append(record.getTxnId());
+            appendString(appendName(sb, "status"), record.isDeleted() ? "d" : "u");
+            if (record.getAclId() != null)
+            {
+                appendName(sb, "aclId").append(record.getAclId());
+            }
+            if (record.getShardPropertyValue() != null)
+            {
+                appendString(appendName(sb, "shardPropertyValue"), record.getShardPropertyValue());
+            }
+            if (record.getExplicitShardId() != null)
+            {
+                appendString(appendName(sb, "explicitShardId"), record.getExplicitShardId().toString());
+            }
+            appendString(appendName(sb, "tenant"), record.getTenant());
+            sb.append('}');
+            endLine();
+            return true;
+        }
+    }
+}
@@ -48,6 +48,7 @@ import org.alfresco.repo.tenant.TenantUtil.TenantRunAsWork;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.Path;
+import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.util.Pair;
 import org.apache.commons.logging.Log;
@@ -60,6 +61,7 @@ import org.springframework.extensions.webscripts.DeclarativeWebScript;
 import org.springframework.extensions.webscripts.Status;
 import org.springframework.extensions.webscripts.WebScriptException;
 import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.extensions.webscripts.WebScriptResponse;
 
 // todo url parameter to remove whitespace in results - make it the default?
 /**
@@ -76,6 +78,8 @@ public class NodesMetaDataGet extends DeclarativeWebScript
     
     private SearchTrackingComponent searchTrackingComponent;
     private SOLRSerializer solrSerializer;
+    private NamespaceService namespaceService;
+    private int streamFlushInterval = BATCH_SIZE;
     
     public void setSearchTrackingComponent(SearchTrackingComponent searchTrackingComponent)
     {
@@ -87,35 +91,67 @@ public class NodesMetaDataGet extends DeclarativeWebScript
         this.solrSerializer = solrSerializer;
     }
 
+    public void setNamespaceService(NamespaceService namespaceService)
+    {
+        this.namespaceService = namespaceService;
+    }
+
+    /**
+     * @param streamFlushInterval   the number of nodes written between flushes of a streamed response
+     */
+    public void setStreamFlushInterval(int streamFlushInterval)
+    {
+        this.streamFlushInterval = streamFlushInterval;
+    }
+
+    /**
+     * Streams the metadata as newline delimited JSON when the <tt>ndjson</tt> format is requested, otherwise
+     * builds the model for the JSON template.
+     */
     @Override
-    protected Map<String, Object> executeImpl(WebScriptRequest req, Status status)
+    public void execute(WebScriptRequest req, WebScriptResponse res) throws IOException
     {
+        if (!NDJSONStreamWriter.FORMAT.equals(req.getFormat()))
+        {
+            super.execute(req, res);
+            return;
+        }
         try
         {
-            Content content = req.getContent();
-            if(content == null)
-            {
-                throw new WebScriptException("Failed to convert request to String");
-            }
-            JSONObject o = new JSONObject(content.getContent());
-            
-            List<Long> nodeIds = null;
-            if(o.has("nodeIds"))
+            JSONObject o = getRequestJSON(req);
+            NodeMetaDataParameters params = getParameters(o);
+            MetaDataResultsFilter filter = getFilter(o);
+
+            res.setContentType(NDJSONStreamWriter.MIMETYPE);
+            res.setContentEncoding("UTF-8");
+            NodeMetaDataStreamWriter writer = new NodeMetaDataStreamWriter(res.getWriter(), streamFlushInterval, solrSerializer, namespaceService);
+            searchTrackingComponent.getNodesMetadata(params, filter, writer);
+            writer.finish();
+
+            if (logger.isDebugEnabled())
             {
-                JSONArray jsonNodeIds =  o.getJSONArray("nodeIds");
-                nodeIds = new ArrayList<Long>(jsonNodeIds.length());
-                for(int i = 0; i < jsonNodeIds.length(); i++)
-                {
-                    Long nodeId = jsonNodeIds.getLong(i);
-                    nodeIds.add(nodeId);
-                }
+                logger.debug("Streamed " + writer.getCount() + " nodes for request: " + req);
             }
-            
-            Long fromNodeId = o.has("fromNodeId") ? o.getLong("fromNodeId") : null;
-            Long toNodeId = o.has("toNodeId") ? o.getLong("toNodeId") : null;
-            
-            // 0 or Integer.MAX_VALUE => ignore
-            int maxResults = o.has("maxResults") ? o.getInt("maxResults") : 0;
+        }
+        catch(JSONException e)
+        {
+            throw new WebScriptException("Invalid JSON", e);
+        }
+    }
+
+    @Override
+    protected Map<String, Object> executeImpl(WebScriptRequest req, Status status)
+    {
+        try
+        {
+            JSONObject o = getRequestJSON(req);
+            NodeMetaDataParameters params = getParameters(o);
+            MetaDataResultsFilter filter = getFilter(o);
+
+            List<Long> nodeIds = params.getNodeIds();
+            Long fromNodeId = params.getFromNodeId();
+            Long toNodeId = params.getToNodeId();
+            int maxResults = params.getMaxResults();
 
             int size = 0;
             if(maxResults != 0 && maxResults != Integer.MAX_VALUE)
@@ -137,56 +173,8 @@ public class NodesMetaDataGet extends DeclarativeWebScript
 
             final boolean noSizeCalculated = (size == 0);
 
-            // filters, defaults are 'true'
-            MetaDataResultsFilter filter = new MetaDataResultsFilter();
-            if(o.has("includeAclId"))
-            {
-                filter.setIncludeAclId(o.getBoolean("includeAclId"));
-            }
-            if(o.has("includeAspects"))
-            {
-                filter.setIncludeAspects(o.getBoolean("includeAspects"));
-            }
-            if(o.has("includeNodeRef"))
-            {
-                filter.setIncludeNodeRef(o.getBoolean("includeNodeRef"));
-            }
-            if(o.has("includeOwner"))
-            {
-                filter.setIncludeOwner(o.getBoolean("includeOwner"));
-            }
-            if(o.has("includeProperties"))
-            {
-                filter.setIncludeProperties(o.getBoolean("includeProperties"));
-            }
-            if(o.has("includePaths"))
-            {
-                filter.setIncludePaths(o.getBoolean("includePaths"));
-            }
-            if(o.has("includeType"))
-            {
-                filter.setIncludeType(o.getBoolean("includeType"));
-            }
-            if(o.has("includeParentAssociations"))
-            {
-                filter.setIncludeParentAssociations(o.getBoolean("includeParentAssociations"));
-            }
-            if(o.has("includeChildIds"))
-            {
-                filter.setIncludeChildIds(o.getBoolean("includeChildIds"));
-            }
-            if(o.has("includeTxnId"))
-            {
-                filter.setIncludeTxnId(o.getBoolean("includeTxnId"));
-            }
-            
             final ArrayList<FreemarkerNodeMetaData> nodesMetaData = 
                 new ArrayList<FreemarkerNodeMetaData>(size > 0 ? size : INITIAL_DEFAULT_SIZE);
-            NodeMetaDataParameters params = new NodeMetaDataParameters();
-            params.setNodeIds(nodeIds);
-            params.setFromNodeId(fromNodeId);
-            params.setToNodeId(toNodeId);
-            params.setMaxResults(maxResults);
 
             searchTrackingComponent.getNodesMetadata(params, filter, new NodeMetaDataQueryCallback()
             {
@@ -239,6 +227,86 @@ public class NodesMetaDataGet extends DeclarativeWebScript
         }
     }
 
+    private JSONObject getRequestJSON(WebScriptRequest req) throws IOException, JSONException
+    {
+        Content content = req.getContent();
+        if(content == null)
+        {
+            throw new WebScriptException("Failed to convert request to String");
+        }
+        return new JSONObject(content.getContent());
+    }
+
+    private NodeMetaDataParameters getParameters(JSONObject o) throws JSONException
+    {
+        List<Long> nodeIds = null;
+        if(o.has("nodeIds"))
+        {
+            JSONArray jsonNodeIds =  o.getJSONArray("nodeIds");
+            nodeIds = new ArrayList<Long>(jsonNodeIds.length());
+            for(int i = 0; i < jsonNodeIds.length(); i++)
+            {
+                Long nodeId = jsonNodeIds.getLong(i);
+                nodeIds.add(nodeId);
+            }
+        }
+
+        NodeMetaDataParameters params = new NodeMetaDataParameters();
+        params.setNodeIds(nodeIds);
+        params.setFromNodeId(o.has("fromNodeId") ? o.getLong("fromNodeId") : null);
+        params.setToNodeId(o.has("toNodeId") ? o.getLong("toNodeId") : null);
+        // 0 or Integer.MAX_VALUE => ignore
+        params.setMaxResults(o.has("maxResults") ? o.getInt("maxResults") : 0);
+        return params;
+    }
+
+    private MetaDataResultsFilter getFilter(JSONObject o) throws JSONException
+    {
+        // filters, defaults are 'true'
+        MetaDataResultsFilter filter = new MetaDataResultsFilter();
+        if(o.has("includeAclId"))
+        {
+            filter.setIncludeAclId(o.getBoolean("includeAclId"));
+        }
+        if(o.has("includeAspects"))
+        {
+            filter.setIncludeAspects(o.getBoolean("includeAspects"));
+        }
+        if(o.has("includeNodeRef"))
+        {
+            filter.setIncludeNodeRef(o.getBoolean("includeNodeRef"));
+        }
+        if(o.has("includeOwner"))
+        {
+            filter.setIncludeOwner(o.getBoolean("includeOwner"));
+        }
+        if(o.has("includeProperties"))
+        {
+            filter.setIncludeProperties(o.getBoolean("includeProperties"));
+        }
+        if(o.has("includePaths"))
+        {
+            filter.setIncludePaths(o.getBoolean("includePaths"));
+        }
+        if(o.has("includeType"))
+        {
+            filter.setIncludeType(o.getBoolean("includeType"));
+        }
+        if(o.has("includeParentAssociations"))
+        {
+            filter.setIncludeParentAssociations(o.getBoolean("includeParentAssociations"));
+        }
+        if(o.has("includeChildIds"))
+        {
+            filter.setIncludeChildIds(o.getBoolean("includeChildIds"));
+        }
+        if(o.has("includeTxnId"))
+        {
+            filter.setIncludeTxnId(o.getBoolean("includeTxnId"));
+        }
+        return filter;
+    }
+
     /**
      * Bean to store node meta data for use by FreeMarker templates
      * 
@@ -265,6 +333,15 @@ public class NodesMetaDataGet extends DeclarativeWebScript
         
         public FreemarkerNodeMetaData(final SOLRSerializer solrSerializer, final NodeMetaData nodeMetaData)
         		throws IOException, JSONException
+        {
+            this(solrSerializer, nodeMetaData, 3);
+        }
+
+        /**
+         * @param indentFactor      the indentation of the JSON held for paths and name paths, 0 for a single line
+         */
+        FreemarkerNodeMetaData(final SOLRSerializer solrSerializer, final NodeMetaData nodeMetaData, final int indentFactor)
+                throws IOException, JSONException
         {
             this.nodeId = nodeMetaData.getNodeId();
             this.tenantDomain = nodeMetaData.getTenantDomain();
@@ -296,7 +373,7 @@ public class NodesMetaDataGet extends DeclarativeWebScript
                     }
                    
                     o.put("apath",  ancestorPath);
-                    paths.add(o.toString(3));
+                    paths.add(o.toString(indentFactor));
                 }
             }
             this.ancestors = ancestors;
@@ -316,7 +393,7 @@ public class NodesMetaDataGet extends DeclarativeWebScript
                         array.put(solrSerializer.serializeValue(String.class, element));
                     }
                     o.put("namePath", array);
-                    namePaths.add(o.toString(3));
+                    namePaths.add(o.toString(indentFactor));
                 }
             }
             this.namePaths = namePaths;
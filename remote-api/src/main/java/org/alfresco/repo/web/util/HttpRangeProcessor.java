@@ -28,6 +28,7 @@ package org.alfresco.repo.web.util;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -36,6 +37,7 @@ import java.util.StringTokenizer;
 import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.http.HttpServletResponse;
 
+import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -230,9 +232,17 @@ public class HttpRangeProcessor
           {
              os = webScriptResponse.getOutputStream();
           }
-          is = reader.getContentInputStream();
-          
-          streamRangeBytes(r, is, os, 0L);
+          if (os instanceof WritableByteChannel)
+          {
+             // the container accepts bytes from a channel, so the range is sent straight from the file
+             transferRangeBytes(r, reader, (WritableByteChannel) os);
+          }
+          else
+          {
+             is = reader.getContentInputStream();
+             
+             streamRangeBytes(r, is, os, 0L);
+          }
           
           os.close();
           processedRange = true;
@@ -407,10 +417,17 @@ public class HttpRangeProcessor
                    
                    // output the binary data for the range
                    // need a new reader for each new InputStream
-                   is = contentService.getReader(ref, property).getContentInputStream();
-                   streamRangeBytes(r, is, os, 0L);
-                   is.close();
-                   is = null;
+                   if (os instanceof WritableByteChannel)
+                   {
+                      transferRangeBytes(r, contentService.getReader(ref, property), (WritableByteChannel) os);
+                   }
+                   else
+                   {
+                      is = contentService.getReader(ref, property).getContentInputStream();
+                      streamRangeBytes(r, is, os, 0L);
+                      is.close();
+                      is = null;
+                   }
                    
                    // section marker and flush stream
                    if (os instanceof ServletOutputStream)
@@ -458,7 +475,7 @@ public class HttpRangeProcessor
        final Log logger = getLogger();
        final boolean trace = logger.isTraceEnabled();
        
-       // TODO: investigate using getFileChannel() on ContentReader
+       // see transferRangeBytes() for responses that expose a channel
        
        if (r.start != 0L && r.start > offset)
        {
@@ -512,6 +529,35 @@ public class HttpRangeProcessor
     }
     
     
+    /**
+     * Transfer a range of bytes from the given ContentReader to the channel exposed by the response,
+     * avoiding the heap buffers used by {@link #streamRangeBytes(Range, InputStream, OutputStream, long)}
+     * 
+     * @param r       Byte Range to process
+     * @param reader  ContentReader - a new reader is required for each range
+     * @param target  Channel of the ServletOutputStream
+     */
+    private void transferRangeBytes(final Range r, final ContentReader reader, final WritableByteChannel target)
+       throws IOException
+    {
+       try
+       {
+          long transferred = reader.transferTo(r.start, (r.end - r.start) + 1L, target);
+          if (getLogger().isTraceEnabled())
+             getLogger().trace("...transferred " + transferred + " bytes");
+       }
+       catch (ContentIOException err)
+       {
+          // report client aborts etc. in the same way as the stream based copy
+          if (err.getCause() instanceof IOException)
+          {
+             throw (IOException) err.getCause();
+          }
+          throw err;
+       }
+    }
+    
+    
     /**
      * Representation of a single byte range.
      */
@@ -40,6 +40,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.web.scripts.solr.StatsGetTest.class,
     org.alfresco.repo.web.scripts.solr.SOLRSerializerTest.class,
     org.alfresco.repo.web.scripts.solr.SOLRAuthenticationFilterTest.class,
+    org.alfresco.repo.web.scripts.solr.NDJSONStreamWriterTest.class,
     org.alfresco.web.app.servlet.AlfrescoX509ServletFilterTest.class,
     org.alfresco.repo.web.util.PagingCursorTest.class,
     org.alfresco.repo.web.util.paging.PagingTest.class,
@@ -0,0 +1,184 @@
+/*
+ * #%L
+ * Alfresco Remote API
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.web.scripts.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.util.testing.category.PerformanceTests;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Compares a mock tracker client reading node metadata that is streamed as it is produced with one that waits for
+ * the whole response to be built, as the template response is.
+ */
+@Category(PerformanceTests.class)
+public class NDJSONStreamThroughputTest
+{
+    private static final Log logger = LogFactory.getLog(NDJSONStreamThroughputTest.class);
+
+    private static final int NODE_COUNT = Integer.getInteger("solr.stream.perf.nodes", 200000);
+    private static final int FLUSH_INTERVAL = 50;
+
+    private SOLRSerializer solrSerializer;
+    private NamespaceService namespaceService;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp()
+    {
+        namespaceService = mock(NamespaceService.class);
+        when(namespaceService.getPrefixes(NamespaceService.CONTENT_MODEL_1_0_URI)).thenReturn(Collections.singleton("cm"));
+        solrSerializer = new SOLRSerializer();
+        solrSerializer.setDictionaryService(mock(DictionaryService.class));
+        solrSerializer.setNamespaceService(namespaceService);
+        solrSerializer.init();
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testStreamedAgainstBuffered() throws Exception
+    {
+        // Warm up both code paths before measuring
+        streamed(NODE_COUNT / 10);
+        buffered(NODE_COUNT / 10);
+
+        long[] streamed = streamed(NODE_COUNT);
+        long[] buffered = buffered(NODE_COUNT);
+
+        logger.info(String.format(
+                "Read %d nodes:%n" +
+                "   streamed: %6d ms to first node, %6d ms, %10.1f nodes/s%n" +
+                "   buffered: %6d ms to first node, %6d ms, %10.1f nodes/s, %,d chars held",
+                NODE_COUNT,
+                streamed[0], streamed[1], NODE_COUNT * 1000.0 / Math.max(1L, streamed[1]),
+                buffered[0], buffered[1], NODE_COUNT * 1000.0 / Math.max(1L, buffered[1]), buffered[2]));
+
+        assertTrue("The first streamed node must arrive before the whole response is built", streamed[0] <= buffered[0]);
+    }
+
+    /**
+     * The tracking component feeds the stream writer while the client reads from the other end of a pipe.
+     * 
+     * @return          Returns the milliseconds to the first node and to the last
+     */
+    private long[] streamed(int count) throws Exception
+    {
+        PipedWriter pipe = new PipedWriter();
+        PipedReader reader = new PipedReader(pipe, 64 * 1024);
+        long start = System.nanoTime();
+        Future<long[]> client = executor.submit(() -> read(reader, start, count));
+        try (Writer writer = pipe)
+        {
+            NodeMetaDataStreamWriter streamWriter = new NodeMetaDataStreamWriter(writer, FLUSH_INTERVAL, solrSerializer, namespaceService);
+            produce(streamWriter, count);
+            streamWriter.finish();
+        }
+        return client.get();
+    }
+
+    /**
+     * The whole response is built before the client can read any of it.
+     * 
+     * @return          Returns the milliseconds to the first node and to the last, and the size of the response
+     */
+    private long[] buffered(int count) throws Exception
+    {
+        long start = System.nanoTime();
+        StringWriter writer = new StringWriter();
+        NodeMetaDataStreamWriter streamWriter = new NodeMetaDataStreamWriter(writer, FLUSH_INTERVAL, solrSerializer, namespaceService);
+        produce(streamWriter, count);
+        streamWriter.finish();
+        String response = writer.toString();
+        long[] times = read(new StringReader(response), start, count);
+        return new long[] {times[0], times[1], response.length()};
+    }
+
+    private void produce(NodeMetaDataStreamWriter streamWriter, int count)
+    {
+        for (long id = 1; id <= count; id++)
+        {
+            streamWriter.handleNodeMetaData(NDJSONStreamWriterTest.newNodeMetaData(id, "node " + id));
+        }
+    }
+
+    /**
+     * The mock tracker client: parses each line as it arrives.
+     */
+    private static long[] read(Reader in, long start, int count) throws Exception
+    {
+        long first = -1L;
+        int nodes = 0;
+        try (BufferedReader reader = new BufferedReader(in))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                JSONObject o = new JSONObject(line);
+                if (o.has("end"))
+                {
+                    assertEquals(count, o.getInt("count"));
+                    break;
+                }
+                if (first < 0)
+                {
+                    first = (System.nanoTime() - start) / 1000000L;
+                }
+                nodes++;
+            }
+        }
+        assertEquals(count, nodes);
+        return new long[] {first, (System.nanoTime() - start) / 1000000L};
+    }
+}
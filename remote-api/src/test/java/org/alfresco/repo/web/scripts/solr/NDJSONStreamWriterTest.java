@@ -0,0 +1,237 @@
+/*
+ * #%L
+ * Alfresco Remote API
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.web.scripts.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.Serializable;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.domain.node.Node;
+import org.alfresco.repo.domain.node.TransactionEntity;
+import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.repo.search.SearchTrackingComponent;
+import org.alfresco.repo.search.SearchTrackingComponent.NodeQueryCallback;
+import org.alfresco.repo.solr.NodeMetaData;
+import org.alfresco.repo.solr.NodeParameters;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.extensions.surf.util.Content;
+import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.extensions.webscripts.WebScriptResponse;
+
+/**
+ * Tests the newline delimited JSON responses of the SOLR tracking web scripts.
+ */
+public class NDJSONStreamWriterTest
+{
+    private SOLRSerializer solrSerializer;
+    private NamespaceService namespaceService;
+
+    @Before
+    public void setUp()
+    {
+        namespaceService = mock(NamespaceService.class);
+        when(namespaceService.getPrefixes(NamespaceService.CONTENT_MODEL_1_0_URI)).thenReturn(Collections.singleton("cm"));
+        solrSerializer = new SOLRSerializer();
+        solrSerializer.setDictionaryService(mock(DictionaryService.class));
+        solrSerializer.setNamespaceService(namespaceService);
+        solrSerializer.init();
+    }
+
+    @Test
+    public void testOneLinePerNode() throws Exception
+    {
+        StringWriter out = new StringWriter();
+        NodeMetaDataStreamWriter writer = new NodeMetaDataStreamWriter(out, 10, solrSerializer, namespaceService);
+        for (long id = 1; id <= 3; id++)
+        {
+            assertTrue(writer.handleNodeMetaData(newNodeMetaData(id, "node " + id)));
+        }
+        writer.finish();
+
+        List<JSONObject> lines = readLines(out.toString());
+        assertEquals(4, lines.size());
+        for (int i = 0; i < 3; i++)
+        {
+            JSONObject node = lines.get(i);
+            assertEquals(i + 1, node.getLong("id"));
+            assertEquals("workspace://SpacesStore/node" + (i + 1), node.getString("nodeRef"));
+            assertEquals("cm:content", node.getString("type"));
+            assertEquals(7, node.getLong("txnId"));
+            assertEquals("node " + (i + 1), node.getJSONObject("properties").getString("{http://www.alfresco.org/model/content/1.0}name"));
+            JSONArray aspects = node.getJSONArray("aspects");
+            assertEquals(1, aspects.length());
+            assertEquals("cm:titled", aspects.getString(0));
+            assertEquals(2, node.getJSONArray("childIds").length());
+            assertFalse(node.has("parentAssocs"));
+        }
+        assertTrue(lines.get(3).getBoolean("end"));
+        assertEquals(3, lines.get(3).getInt("count"));
+        assertEquals(3, writer.getCount());
+    }
+
+    @Test
+    public void testLineBreaksAreEscaped() throws Exception
+    {
+        StringWriter out = new StringWriter();
+        NodeMetaDataStreamWriter writer = new NodeMetaDataStreamWriter(out, 10, solrSerializer, namespaceService);
+        writer.handleNodeMetaData(newNodeMetaData(1L, "two\nlines\r"));
+        writer.finish();
+
+        List<JSONObject> lines = readLines(out.toString());
+        assertEquals(2, lines.size());
+        assertEquals("two\nlines\r", lines.get(0).getJSONObject("properties").getString("{http://www.alfresco.org/model/content/1.0}name"));
+    }
+
+    @Test
+    public void testFlushInterval() throws Exception
+    {
+        StringWriter out = spy(new StringWriter());
+        NodeMetaDataStreamWriter writer = new NodeMetaDataStreamWriter(out, 2, solrSerializer, namespaceService);
+        for (long id = 1; id <= 5; id++)
+        {
+            writer.handleNodeMetaData(newNodeMetaData(id, "node"));
+        }
+        verify(out, times(2)).flush();
+        writer.finish();
+        verify(out, times(3)).flush();
+    }
+
+    @Test
+    public void testNodesGetStreamsNodes() throws Exception
+    {
+        TenantService tenantService = mock(TenantService.class);
+        when(tenantService.getDomain("SpacesStore")).thenReturn("");
+        SearchTrackingComponent searchTrackingComponent = mock(SearchTrackingComponent.class);
+        Mockito.doAnswer(invocation -> {
+            NodeQueryCallback callback = invocation.getArgument(1);
+            callback.handleNode(newNode(1L, false));
+            callback.handleNode(newNode(2L, true));
+            return null;
+        }).when(searchTrackingComponent).getNodes(any(NodeParameters.class), any(NodeQueryCallback.class));
+
+        NodesGet nodesGet = new NodesGet();
+        nodesGet.setSearchTrackingComponent(searchTrackingComponent);
+        nodesGet.setTenantService(tenantService);
+        nodesGet.setQnameDAO(mock(QNameDAO.class));
+
+        Content content = mock(Content.class);
+        when(content.getContent()).thenReturn("{\"fromTxnId\":1,\"toTxnId\":10}");
+        WebScriptRequest req = mock(WebScriptRequest.class);
+        when(req.getFormat()).thenReturn(NDJSONStreamWriter.FORMAT);
+        when(req.getContent()).thenReturn(content);
+        StringWriter out = new StringWriter();
+        WebScriptResponse res = mock(WebScriptResponse.class);
+        when(res.getWriter()).thenReturn(out);
+
+        nodesGet.execute(req, res);
+
+        verify(res).setContentType(NDJSONStreamWriter.MIMETYPE);
+        List<JSONObject> lines = readLines(out.toString());
+        assertEquals(3, lines.size());
+        assertEquals(1, lines.get(0).getLong("id"));
+        assertEquals("u", lines.get(0).getString("status"));
+        assertEquals("workspace://SpacesStore/node1", lines.get(0).getString("nodeRef"));
+        assertEquals(5, lines.get(0).getLong("txnId"));
+        assertEquals("", lines.get(0).getString("tenant"));
+        assertEquals("d", lines.get(1).getString("status"));
+        assertEquals(2, lines.get(2).getInt("count"));
+    }
+
+    private static List<JSONObject> readLines(String response) throws Exception
+    {
+        List<JSONObject> lines = new ArrayList<>();
+        assertTrue("The response must end with a line break", response.endsWith("\n"));
+        try (BufferedReader reader = new BufferedReader(new StringReader(response)))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                lines.add(new JSONObject(line));
+            }
+        }
+        return lines;
+    }
+
+    static NodeMetaData newNodeMetaData(long id, String name)
+    {
+        NodeMetaData nodeMetaData = new NodeMetaData();
+        nodeMetaData.setNodeId(id);
+        nodeMetaData.setTenantDomain("");
+        nodeMetaData.setNodeRef(new NodeRef("workspace://SpacesStore/node" + id));
+        nodeMetaData.setNodeType(ContentModel.TYPE_CONTENT);
+        nodeMetaData.setAclId(3L);
+        nodeMetaData.setTxnId(7L);
+        Map<QName, Serializable> properties = new HashMap<>();
+        properties.put(ContentModel.PROP_NAME, name);
+        nodeMetaData.setProperties(properties);
+        nodeMetaData.setAspects(Collections.singleton(ContentModel.ASPECT_TITLED));
+        List<Long> childIds = new ArrayList<>();
+        childIds.add(id * 10);
+        childIds.add(id * 10 + 1);
+        nodeMetaData.setChildIds(childIds);
+        nodeMetaData.setOwner("admin");
+        return nodeMetaData;
+    }
+
+    private static Node newNode(long id, boolean deleted)
+    {
+        NodeRef nodeRef = new NodeRef("workspace://SpacesStore/node" + id);
+        TransactionEntity txn = new TransactionEntity();
+        txn.setId(5L);
+        Node node = mock(Node.class);
+        when(node.getId()).thenReturn(id);
+        when(node.getTransaction()).thenReturn(txn);
+        when(node.getNodeRef()).thenReturn(nodeRef);
+        when(node.getNodeStatus(any())).thenReturn(new NodeRef.Status(id, nodeRef, "change", 5L, deleted));
+        return node;
+    }
+}
@@ -27,10 +27,19 @@ package org.alfresco.repo.web.util;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
 import jakarta.servlet.http.HttpServletResponse;
 
 import org.alfresco.service.cmr.repository.ContentReader;
@@ -85,6 +94,30 @@ public class HttpRangeProcessorTest
         testRange("20000-", HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
     }
     
+    @Test
+    public void testRangeTransferredToChannel() throws IOException
+    {
+        ChannelServletOutputStream os = new ChannelServletOutputStream();
+        MockHttpServletResponse response = new MockHttpServletResponse()
+        {
+            @Override
+            public ServletOutputStream getOutputStream()
+            {
+                return os;
+            }
+        };
+        when(reader.transferTo(eq(700L), eq(101L), any(WritableByteChannel.class))).thenReturn(101L);
+        
+        boolean result = httpRangeProcessor.processRange(response, reader, "700-800", null, null, null, null);
+        
+        assertTrue(result);
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+        assertEquals("101", response.getHeader("Content-Length"));
+        verify(reader).transferTo(700L, 101L, os);
+        verify(reader, never()).getContentInputStream();
+        reader.getContentInputStream().close();
+    }
+    
     protected void testRange(String range, int expectedStatus) throws IOException
     {
         MockHttpServletResponse response = new MockHttpServletResponse();
@@ -96,4 +129,45 @@ public class HttpRangeProcessorTest
         reader.getContentInputStream().close();
     }
     
+    /**
+     * A response stream that, like some servlet containers, also accepts bytes from a channel.
+     */
+    private static class ChannelServletOutputStream extends ServletOutputStream implements WritableByteChannel
+    {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        
+        @Override
+        public void write(int b)
+        {
+            bytes.write(b);
+        }
+        
+        @Override
+        public int write(ByteBuffer src)
+        {
+            int count = src.remaining();
+            while (src.hasRemaining())
+            {
+                bytes.write(src.get());
+            }
+            return count;
+        }
+        
+        @Override
+        public boolean isOpen()
+        {
+            return true;
+        }
+        
+        @Override
+        public boolean isReady()
+        {
+            return true;
+        }
+        
+        @Override
+        public void setWriteListener(WriteListener writeListener)
+        {
+        }
+    }
 }
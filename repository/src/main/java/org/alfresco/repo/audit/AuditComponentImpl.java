@@ -81,6 +81,7 @@ public class AuditComponentImpl implements AuditComponent
     private TransactionService transactionService;
     private AuditFilter auditFilter;
     private UserAuditFilter userAuditFilter;
+    private WriteBehindAuditJournal auditJournal;
     
     /**
      * Default constructor
@@ -137,6 +138,15 @@ public class AuditComponentImpl implements AuditComponent
         this.userAuditFilter = userAuditFilter;
     }
 
+    /**
+     * Set the journal used to insert audit entries after their transaction has committed.
+     * Entries are inserted in the transaction that generates them if this is not set or not enabled.
+     */
+    public void setAuditJournal(WriteBehindAuditJournal auditJournal)
+    {
+        this.auditJournal = auditJournal;
+    }
+
     /**
      * {@inheritDoc}
      * @since 3.2
@@ -747,7 +757,8 @@ public class AuditComponentImpl implements AuditComponent
         {
             // Persist the values (if not just gathering data in a pre call for use in a post call)
             boolean justGatherPreCallData = application.isApplicationJustGeneratingPreCallData();
-            if (!justGatherPreCallData)
+            if (!justGatherPreCallData &&
+                    (auditJournal == null || !auditJournal.recordOnCommit(applicationId, time, username, auditData)))
             {
                 entryId = auditDAO.createAuditEntry(applicationId, time, username, auditData);
             }
@@ -0,0 +1,786 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import org.alfresco.repo.domain.audit.AuditDAO;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
+import org.alfresco.util.transaction.TransactionListenerAdapter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Takes the persistence of audit entries out of the transactions that generate them.
+ * <p>
+ * Entries are appended to a journal on local disk once their transaction has committed, and a single background
+ * thread inserts them, up to <code>batchSize</code> entries per transaction. Entries from transactions that roll back
+ * are never recorded. The journal is replayed on startup, so entries that had not been inserted when the server
+ * stopped are not lost. A checkpoint records the last entry inserted, so after a crash at most one batch is
+ * inserted twice.
+ * <p>
+ * The {@link Durability} sets how far an entry has been written before the committing thread carries on. When the
+ * journal already holds <code>maxQueuedEntries</code> entries, or an entry cannot be written to it, the entry is
+ * inserted by the committing thread as if the journal were not there.
+ */
+public class WriteBehindAuditJournal
+{
+    /**
+     * How far an entry is written before the transaction that generated it completes.
+     * <p>
+     * Entries are only appended once their transaction has committed, so that rolled back entries are never
+     * recorded. Whatever the durability, the entries of a transaction are lost if the server stops between the
+     * commit and the append.
+     */
+    public enum Durability
+    {
+        /** Entries are only held in memory and are lost if the server stops before they have been inserted */
+        MEMORY,
+        /** Entries are written to the journal but not forced to disk, so they survive the server but not the OS stopping */
+        WRITE,
+        /** Entries are forced to disk */
+        FSYNC
+    }
+
+    private static final String KEY_PENDING_ENTRIES = WriteBehindAuditJournal.class.getName() + ".pendingEntries";
+    private static final String SEGMENT_PREFIX = "audit-journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "audit-journal.checkpoint";
+    private static final int MAX_INSERT_ATTEMPTS = 3;
+
+    private static Log logger = LogFactory.getLog(WriteBehindAuditJournal.class);
+
+    private AuditDAO auditDAO;
+    private TransactionService transactionService;
+    private boolean enabled;
+    private Durability durability = Durability.FSYNC;
+    private File journalDirectory;
+    private int batchSize = 500;
+    private long drainIntervalMs = 200;
+    private int maxQueuedEntries = 100000;
+    private long maxSegmentBytes = 16L * 1024 * 1024;
+
+    private final BlockingQueue<JournalEntry> queue = new LinkedBlockingQueue<>();
+    private final Object writeLock = new Object();
+    private FileChannel segmentChannel;
+    private long segmentNumber;
+    private long checkpointSegment = -1;
+    private ScheduledExecutorService drainer;
+
+    private final LongAdder journalledEntries = new LongAdder();
+    private final LongAdder insertedEntries = new LongAdder();
+    private final LongAdder insertNanos = new LongAdder();
+    private final LongAdder failedEntries = new LongAdder();
+    private final LongAdder bypassedEntries = new LongAdder();
+
+    /**
+     * Set the DAO used to insert the entries
+     */
+    public void setAuditDAO(AuditDAO auditDAO)
+    {
+        this.auditDAO = auditDAO;
+    }
+
+    /**
+     * Set the service used to start the transactions that insert the entries
+     */
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param enabled {@code false} to insert every entry in the transaction that generated it
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param durability how far an entry is written before its transaction completes. Defaults to
+     *                   {@link Durability#FSYNC}. Entries are appended after the commit, so none of the
+     *                   settings covers a stop between the commit and the append.
+     */
+    public void setDurability(Durability durability)
+    {
+        this.durability = durability;
+    }
+
+    /**
+     * @param journalDirectory the directory holding the journal files. Not needed for {@link Durability#MEMORY}.
+     */
+    public void setJournalDirectory(File journalDirectory)
+    {
+        this.journalDirectory = journalDirectory;
+    }
+
+    /**
+     * @param batchSize the maximum number of entries inserted in one transaction
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param drainIntervalMs how often the journal is checked for entries to insert
+     */
+    public void setDrainIntervalMs(long drainIntervalMs)
+    {
+        this.drainIntervalMs = drainIntervalMs;
+    }
+
+    /**
+     * @param maxQueuedEntries the number of entries waiting to be inserted above which new entries are inserted
+     *                         straight away
+     */
+    public void setMaxQueuedEntries(int maxQueuedEntries)
+    {
+        this.maxQueuedEntries = maxQueuedEntries;
+    }
+
+    /**
+     * @param maxSegmentBytes the size at which a new journal file is started
+     */
+    public void setMaxSegmentBytes(long maxSegmentBytes)
+    {
+        this.maxSegmentBytes = maxSegmentBytes;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void init() throws IOException
+    {
+        if (!enabled)
+        {
+            return;
+        }
+        PropertyCheck.mandatory(this, "auditDAO", auditDAO);
+        PropertyCheck.mandatory(this, "transactionService", transactionService);
+        if (durability != Durability.MEMORY)
+        {
+            PropertyCheck.mandatory(this, "journalDirectory", journalDirectory);
+            if (!journalDirectory.isDirectory() && !journalDirectory.mkdirs())
+            {
+                throw new AuditException("Failed to create the audit journal directory: " + journalDirectory);
+            }
+            long lastSegment = recover();
+            openSegment(lastSegment + 1);
+        }
+
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix("AuditJournalDrainer");
+        drainer = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        drainer.scheduleWithFixedDelay(this::drain, drainIntervalMs, drainIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown()
+    {
+        if (drainer == null)
+        {
+            return;
+        }
+        drainer.shutdown();
+        try
+        {
+            if (!drainer.awaitTermination(30, TimeUnit.SECONDS))
+            {
+                drainer.shutdownNow();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            drainer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        drainer = null;
+
+        if (durability == Durability.MEMORY)
+        {
+            // Nothing else will insert these entries
+            drain();
+        }
+        synchronized (writeLock)
+        {
+            closeSegment();
+        }
+    }
+
+    /**
+     * @return the number of entries waiting to be inserted
+     */
+    public int getQueuedEntryCount()
+    {
+        return queue.size();
+    }
+
+    /**
+     * @return how long the oldest entry waiting to be inserted has been waiting, in milliseconds
+     */
+    public long getJournalLagMillis()
+    {
+        JournalEntry oldest = queue.peek();
+        return oldest == null ? 0 : Math.max(0, System.currentTimeMillis() - oldest.journalledAt);
+    }
+
+    /**
+     * @return the number of entries added to the journal
+     */
+    public long getJournalledEntryCount()
+    {
+        return journalledEntries.sum();
+    }
+
+    /**
+     * @return the number of entries inserted from the journal
+     */
+    public long getInsertedEntryCount()
+    {
+        return insertedEntries.sum();
+    }
+
+    /**
+     * @return the number of entries inserted per second of time spent inserting
+     */
+    public long getDrainThroughputPerSecond()
+    {
+        long nanos = insertNanos.sum();
+        return nanos == 0 ? 0 : insertedEntries.sum() * TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    /**
+     * @return the number of entries discarded because they could not be inserted
+     */
+    public long getFailedEntryCount()
+    {
+        return failedEntries.sum();
+    }
+
+    /**
+     * @return the number of entries inserted straight away because the journal was full or could not be written
+     */
+    public long getBypassedEntryCount()
+    {
+        return bypassedEntries.sum();
+    }
+
+    /**
+     * Record an audit entry once the current transaction commits.
+     *
+     * @return {@code false} if the journal is not taking entries, in which case the caller must insert the entry itself
+     */
+    public boolean recordOnCommit(Long applicationId, long time, String username, Map<String, Serializable> values)
+    {
+        if (!enabled || drainer == null || queue.size() >= maxQueuedEntries)
+        {
+            if (enabled)
+            {
+                bypassedEntries.increment();
+            }
+            return false;
+        }
+        List<JournalEntry> entries = TransactionalResourceHelper.getList(KEY_PENDING_ENTRIES);
+        if (entries.isEmpty())
+        {
+            AlfrescoTransactionSupport.bindListener(new JournalTransactionListener(entries));
+        }
+        entries.add(new JournalEntry(applicationId, time, username, new HashMap<>(values)));
+        return true;
+    }
+
+    private void append(List<JournalEntry> entries)
+    {
+        if (!appendToJournal(entries))
+        {
+            bypassedEntries.add(entries.size());
+            transactionService.getRetryingTransactionHelper().doInTransaction(() ->
+            {
+                insertEntries(entries);
+                return null;
+            }, false, true);
+        }
+    }
+
+    private boolean appendToJournal(List<JournalEntry> entries)
+    {
+        long now = System.currentTimeMillis();
+        entries.forEach(entry -> entry.journalledAt = now);
+        synchronized (writeLock)
+        {
+            if (durability != Durability.MEMORY)
+            {
+                if (segmentChannel == null)
+                {
+                    return false;
+                }
+                long start = 0;
+                try
+                {
+                    start = segmentChannel.position();
+                    for (JournalEntry entry : entries)
+                    {
+                        writeRecord(entry);
+                        entry.segment = segmentNumber;
+                        entry.endOffset = segmentChannel.position();
+                    }
+                    if (durability == Durability.FSYNC)
+                    {
+                        segmentChannel.force(false);
+                    }
+                }
+                catch (IOException e)
+                {
+                    logger.error("Failed to append " + entries.size() + " entries to the audit journal", e);
+                    try
+                    {
+                        // Leave no partial batch to be replayed
+                        segmentChannel.truncate(start);
+                    }
+                    catch (IOException ignored)
+                    {
+                    }
+                    return false;
+                }
+            }
+            queue.addAll(entries);
+            journalledEntries.add(entries.size());
+            if (durability != Durability.MEMORY)
+            {
+                rollSegmentIfFull();
+            }
+        }
+        return true;
+    }
+
+    private void writeRecord(JournalEntry entry) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeLong(entry.applicationId);
+            out.writeLong(entry.time);
+            out.writeObject(entry.username);
+            out.writeObject(entry.values);
+        }
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer buffer = ByteBuffer.allocate(12 + payload.length);
+        buffer.putInt(payload.length).putLong(crc.getValue()).put(payload).flip();
+        while (buffer.hasRemaining())
+        {
+            segmentChannel.write(buffer);
+        }
+    }
+
+    private void rollSegmentIfFull()
+    {
+        try
+        {
+            if (segmentChannel.position() >= maxSegmentBytes)
+            {
+                closeSegment();
+                openSegment(segmentNumber + 1);
+            }
+        }
+        catch (IOException e)
+        {
+            logger.error("Failed to start a new audit journal file", e);
+        }
+    }
+
+    private void openSegment(long number) throws IOException
+    {
+        segmentNumber = number;
+        segmentChannel = FileChannel.open(segmentFile(number).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void closeSegment()
+    {
+        if (segmentChannel != null)
+        {
+            try
+            {
+                segmentChannel.close();
+            }
+            catch (IOException e)
+            {
+                logger.warn("Failed to close the audit journal file", e);
+            }
+            segmentChannel = null;
+        }
+    }
+
+    private File segmentFile(long number)
+    {
+        return new File(journalDirectory, SEGMENT_PREFIX + number + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Queues the entries in the journal that come after the checkpoint.
+     *
+     * @return the number of the last journal file found
+     */
+    private long recover() throws IOException
+    {
+        long[] checkpoint = readCheckpoint();
+        checkpointSegment = checkpoint[0];
+        File[] files = journalDirectory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        long[] segments = files == null ? new long[0] : Arrays.stream(files)
+                .map(File::getName)
+                .mapToLong(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                .sorted()
+                .toArray();
+        long lastSegment = Math.max(0, checkpoint[0]);
+        int recovered = 0;
+        for (long segment : segments)
+        {
+            lastSegment = Math.max(lastSegment, segment);
+            if (segment < checkpoint[0])
+            {
+                Files.deleteIfExists(segmentFile(segment).toPath());
+                continue;
+            }
+            long skipTo = segment == checkpoint[0] ? checkpoint[1] : 0;
+            recovered += readSegment(segment, skipTo);
+        }
+        if (recovered > 0)
+        {
+            logger.info("Replaying " + recovered + " audit entries from the journal in " + journalDirectory);
+        }
+        return lastSegment;
+    }
+
+    private int readSegment(long segment, long skipTo) throws IOException
+    {
+        int count = 0;
+        long now = System.currentTimeMillis();
+        long fileLength = segmentFile(segment).length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile(segment)))))
+        {
+            long offset = 0;
+            while (true)
+            {
+                int length;
+                try
+                {
+                    length = in.readInt();
+                }
+                catch (EOFException e)
+                {
+                    break;
+                }
+                try
+                {
+                    long expectedCrc = in.readLong();
+                    if (length < 0 || length > fileLength - offset - 12)
+                    {
+                        // A torn length cannot be trusted to size the payload
+                        logger.warn("Ignoring a partly written entry at the end of audit journal file " + segmentFile(segment));
+                        break;
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    CRC32 crc = new CRC32();
+                    crc.update(payload);
+                    if (crc.getValue() != expectedCrc)
+                    {
+                        logger.warn("Ignoring the rest of corrupt audit journal file " + segmentFile(segment));
+                        break;
+                    }
+                    offset += 12 + length;
+                    if (offset <= skipTo)
+                    {
+                        continue;
+                    }
+                    JournalEntry entry = readEntry(payload);
+                    entry.segment = segment;
+                    entry.endOffset = offset;
+                    entry.journalledAt = now;
+                    queue.add(entry);
+                    count++;
+                }
+                catch (EOFException e)
+                {
+                    // The server stopped part way through writing the last entry
+                    logger.warn("Ignoring a partly written entry at the end of audit journal file " + segmentFile(segment));
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private JournalEntry readEntry(byte[] payload) throws IOException
+    {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload)))
+        {
+            long applicationId = in.readLong();
+            long time = in.readLong();
+            String username = (String) in.readObject();
+            Map<String, Serializable> values = (Map<String, Serializable>) in.readObject();
+            return new JournalEntry(applicationId, time, username, values);
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new IOException("Failed to read an audit journal entry", e);
+        }
+    }
+
+    private long[] readCheckpoint() throws IOException
+    {
+        File file = new File(journalDirectory, CHECKPOINT_FILE);
+        if (!file.exists())
+        {
+            return new long[] {-1, 0};
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file)))
+        {
+            return new long[] {in.readLong(), in.readLong()};
+        }
+    }
+
+    private void writeCheckpoint(JournalEntry last)
+    {
+        File file = new File(journalDirectory, CHECKPOINT_FILE);
+        File tempFile = new File(journalDirectory, CHECKPOINT_FILE + ".tmp");
+        try
+        {
+            try (OutputStream fileOut = Files.newOutputStream(tempFile.toPath());
+                 DataOutputStream out = new DataOutputStream(fileOut))
+            {
+                out.writeLong(last.segment);
+                out.writeLong(last.endOffset);
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            // Every earlier journal file has now been inserted
+            for (long segment = Math.max(0, checkpointSegment); segment < last.segment; segment++)
+            {
+                Files.deleteIfExists(segmentFile(segment).toPath());
+            }
+            checkpointSegment = last.segment;
+        }
+        catch (IOException e)
+        {
+            // Only means that more entries are replayed after a restart
+            logger.warn("Failed to write the audit journal checkpoint", e);
+        }
+    }
+
+    /**
+     * Inserts the queued entries in batches, oldest first.
+     */
+    private void drain()
+    {
+        try
+        {
+            List<JournalEntry> batch = new ArrayList<>(batchSize);
+            while (true)
+            {
+                // Only this thread takes entries off the queue, so they are left there until they are inserted
+                Iterator<JournalEntry> iterator = queue.iterator();
+                while (iterator.hasNext() && batch.size() < batchSize)
+                {
+                    batch.add(iterator.next());
+                }
+                if (batch.isEmpty() || !insertBatch(batch))
+                {
+                    return;
+                }
+                batch.clear();
+            }
+        }
+        catch (RuntimeException e)
+        {
+            // Keep the drainer running
+            logger.error("Failed to drain the audit journal", e);
+        }
+    }
+
+    /**
+     * @return {@code true} if every entry in the batch was dealt with
+     */
+    private boolean insertBatch(List<JournalEntry> batch)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            transactionService.getRetryingTransactionHelper().doInTransaction(() ->
+            {
+                insertEntries(batch);
+                return null;
+            }, false, true);
+            entriesDone(batch, start, true);
+            return true;
+        }
+        catch (RuntimeException e)
+        {
+            logger.warn("Failed to insert a batch of " + batch.size() + " audit entries. Inserting them one at a time.", e);
+        }
+
+        for (JournalEntry entry : batch)
+        {
+            start = System.nanoTime();
+            try
+            {
+                transactionService.getRetryingTransactionHelper().doInTransaction(() ->
+                {
+                    insertEntries(List.of(entry));
+                    return null;
+                }, false, true);
+                entriesDone(List.of(entry), start, true);
+            }
+            catch (RuntimeException e)
+            {
+                if (++entry.attempts < MAX_INSERT_ATTEMPTS)
+                {
+                    // Try again on the next drain, keeping the entries in order
+                    logger.warn("Failed to insert an audit entry for application " + entry.applicationId + ". It will be retried.", e);
+                    return false;
+                }
+                logger.error("Discarding an audit entry for application " + entry.applicationId + " after " +
+                        entry.attempts + " failed attempts: " + entry.values, e);
+                failedEntries.increment();
+                entriesDone(List.of(entry), start, false);
+            }
+        }
+        return true;
+    }
+
+    private void insertEntries(List<JournalEntry> entries)
+    {
+        for (JournalEntry entry : entries)
+        {
+            auditDAO.createAuditEntry(entry.applicationId, entry.time, entry.username, entry.values);
+        }
+    }
+
+    /**
+     * Takes entries off the journal once they have been inserted or discarded.
+     */
+    private void entriesDone(List<JournalEntry> entries, long startNanos, boolean inserted)
+    {
+        for (int i = 0; i < entries.size(); i++)
+        {
+            queue.poll();
+        }
+        if (inserted)
+        {
+            insertNanos.add(System.nanoTime() - startNanos);
+            insertedEntries.add(entries.size());
+        }
+        if (durability != Durability.MEMORY)
+        {
+            writeCheckpoint(entries.get(entries.size() - 1));
+        }
+    }
+
+    private class JournalTransactionListener extends TransactionListenerAdapter
+    {
+        private final List<JournalEntry> entries;
+
+        private JournalTransactionListener(List<JournalEntry> entries)
+        {
+            this.entries = entries;
+        }
+
+        @Override
+        public void afterCommit()
+        {
+            try
+            {
+                append(new ArrayList<>(entries));
+            }
+            catch (RuntimeException e)
+            {
+                logger.error("Failed to record " + entries.size() + " audit entries", e);
+            }
+        }
+    }
+
+    private static class JournalEntry
+    {
+        private final long applicationId;
+        private final long time;
+        private final String username;
+        private final Map<String, Serializable> values;
+        private long segment;
+        private long endOffset;
+        private long journalledAt;
+        private int attempts;
+
+        private JournalEntry(long applicationId, long time, String username, Map<String, Serializable> values)
+        {
+            this.applicationId = applicationId;
+            this.time = time;
+            this.username = username;
+            this.values = values;
+        }
+    }
+}
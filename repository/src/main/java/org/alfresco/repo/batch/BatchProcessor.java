@@ -51,9 +51,12 @@ import java.util.NoSuchElementException;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A <code>BatchProcessor</code> manages the running and monitoring of a potentially long-running transactional batch
@@ -64,6 +67,11 @@ import java.util.concurrent.TimeUnit;
  * ERROR level. Each individual error is logged at WARN level and progress information is logged at INFO level. Through
  * the {@link BatchMonitor} interface, it also supports the real-time monitoring of batch metrics (e.g. over JMX in the
  * Enterprise Edition).
+ * <p/>
+ * By default batches are queued on a fixed size thread pool. In {@link #setStreaming(boolean) streaming} mode the
+ * work provider is instead only read as fast as the workers consume it: batches are handed over through a small
+ * bounded pipeline, extra workers may be started (up to {@link #setMaxWorkerThreads(int)}) while the pipeline stays
+ * full, and the batch size can be {@link #setAdaptiveBatchSize(int, int, long) adapted} to the observed commit time.
  * 
  * @author dward
  */
@@ -93,9 +101,30 @@ public class BatchProcessor<T> implements BatchMonitor
 
     /** The number of entries we process at a time in a transaction. */
     private final int batchSize;
-    
+
+    /** The number of entries that will go into the next batch. Only differs from {@link #batchSize} when adaptive. */
+    private volatile int currentBatchSize;
+
+    /** The smallest batch size the adaptive sizing may choose. */
+    private int minBatchSize;
+
+    /** The largest batch size the adaptive sizing may choose. */
+    private int maxBatchSize;
+
+    /** The commit time the adaptive sizing aims for, or <tt>0</tt> to keep a fixed batch size. */
+    private long targetCommitMillis;
+
+    /** Should batches be streamed to the workers through a bounded pipeline? */
+    private boolean streaming;
+
+    /** The number of worker threads the streaming pipeline may grow to. */
+    private int maxWorkerThreads;
+
+    /** Should the workers run on virtual threads, where the JVM provides them? */
+    private boolean useVirtualThreads;
+
     /** The current entry id. */
-    private String currentEntryId;
+    private volatile String currentEntryId;
 
     /** The number of batches currently executing. */
     private int executingCount;
@@ -104,22 +133,25 @@ public class BatchProcessor<T> implements BatchMonitor
     private SortedSet<Integer> retryTxns = new TreeSet<Integer>();
 
     /** The last error. */
-    private Throwable lastError;
+    private volatile Throwable lastError;
 
     /** The last error entry id. */
-    private String lastErrorEntryId;
+    private volatile String lastErrorEntryId;
 
     /** The total number of errors. */
-    private long totalErrors;
+    private final AtomicLong totalErrors = new AtomicLong();
 
     /** The number of successfully processed entries. */
-    private long successfullyProcessedEntries;
+    private final AtomicLong successfullyProcessedEntries = new AtomicLong();
+
+    /** The number of processed entries, successful or not. Used to detect logging interval crossings. */
+    private final AtomicLong processedEntries = new AtomicLong();
 
     /** The start time. */
-    private Date startTime;
+    private volatile Date startTime;
 
     /** The end time. */
-    private Date endTime;
+    private volatile Date endTime;
 
     /**
      * Instantiates a new batch processor.
@@ -226,7 +258,9 @@ public class BatchProcessor<T> implements BatchMonitor
         this.retryingTransactionHelper = retryingTransactionHelper;
         this.workProvider = workProvider;
         this.workerThreads = workerThreads;
+        this.maxWorkerThreads = workerThreads;
         this.batchSize = batchSize;
+        this.currentBatchSize = batchSize;
         if (logger == null)
         {
             this.logger = LogFactory.getLog(this.getClass());
@@ -244,10 +278,78 @@ public class BatchProcessor<T> implements BatchMonitor
         }
     }
 
+    /**
+     * Streams batches to the workers through a bounded pipeline instead of queueing them on a thread pool. The work
+     * provider is then only asked for more work once a worker is ready for it, so memory use no longer grows with the
+     * thread pool's backlog. Only applies when transactions are split.
+     * 
+     * @param streaming
+     *            <tt>true</tt> to stream batches to the workers (default <tt>false</tt>)
+     */
+    public void setStreaming(boolean streaming)
+    {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Sets the number of worker threads a {@link #setStreaming(boolean) streaming} run may grow to. A further worker
+     * is started whenever the pipeline is full while all current workers are busy.
+     * 
+     * @param maxWorkerThreads
+     *            the maximum number of workers (defaults to the initial number of worker threads)
+     */
+    public void setMaxWorkerThreads(int maxWorkerThreads)
+    {
+        this.maxWorkerThreads = Math.max(this.workerThreads, maxWorkerThreads);
+    }
+
+    /**
+     * Runs the workers on virtual threads when the JVM supports them. Platform threads are used otherwise.
+     * 
+     * @param useVirtualThreads
+     *            <tt>true</tt> to use virtual threads where available (default <tt>false</tt>)
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads)
+    {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    /**
+     * Adapts the batch size to the time taken to commit each batch. Batches committing slower than the target shrink
+     * and batches committing well within it grow, always staying within the given bounds. Only applies when
+     * transactions are split.
+     * 
+     * @param minBatchSize
+     *            the smallest batch size to use
+     * @param maxBatchSize
+     *            the largest batch size to use
+     * @param targetCommitMillis
+     *            the commit time to aim for, or <tt>0</tt> to keep a fixed batch size
+     */
+    public void setAdaptiveBatchSize(int minBatchSize, int maxBatchSize, long targetCommitMillis)
+    {
+        if (minBatchSize < 1 || maxBatchSize < minBatchSize)
+        {
+            throw new IllegalArgumentException("Invalid batch size bounds: " + minBatchSize + " - " + maxBatchSize);
+        }
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.targetCommitMillis = targetCommitMillis;
+        this.currentBatchSize = Math.max(minBatchSize, Math.min(maxBatchSize, this.batchSize));
+    }
+
+    /**
+     * @return the number of entries that will go into the next batch
+     */
+    int getCurrentBatchSize()
+    {
+        return this.currentBatchSize;
+    }
+
     /**
      * {@inheritDoc}
      */
-    public synchronized String getCurrentEntryId()
+    public String getCurrentEntryId()
     {
         return this.currentEntryId;
     }
@@ -255,15 +357,16 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    public synchronized String getLastError()
+    public String getLastError()
     {
-        if (this.lastError == null)
+        Throwable lastError = this.lastError;
+        if (lastError == null)
         {
             return null;
         }
         Writer buff = new StringWriter(1024);
         PrintWriter out = new PrintWriter(buff);
-        this.lastError.printStackTrace(out);
+        lastError.printStackTrace(out);
         out.close();
         return buff.toString();
     }
@@ -271,7 +374,7 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    public synchronized String getLastErrorEntryId()
+    public String getLastErrorEntryId()
     {
         return this.lastErrorEntryId;
     }
@@ -279,7 +382,7 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    public synchronized String getProcessName()
+    public String getProcessName()
     {
         return this.processName;
     }
@@ -287,26 +390,26 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    @Deprecated public synchronized int getSuccessfullyProcessedEntries()
+    @Deprecated public int getSuccessfullyProcessedEntries()
     {
-        return Math.toIntExact(this.successfullyProcessedEntries);
+        return Math.toIntExact(this.successfullyProcessedEntries.get());
     }
 
     /**
      * {@inheritDoc}
      */
-    public synchronized long getSuccessfullyProcessedEntriesLong()
+    public long getSuccessfullyProcessedEntriesLong()
     {
-        return this.successfullyProcessedEntries;
+        return this.successfullyProcessedEntries.get();
     }
 
     /**
      * {@inheritDoc}
      */
-    public synchronized String getPercentComplete()
+    public String getPercentComplete()
     {
         long totalResults = this.workProvider.getTotalEstimatedWorkSizeLong();
-        long processed = this.successfullyProcessedEntries + this.totalErrors;
+        long processed = this.processedEntries.get();
         return processed <= totalResults ? NumberFormat.getPercentInstance().format(
                 totalResults == 0 ? 1.0F : (float) processed / totalResults) : "Unknown";
     }
@@ -314,9 +417,9 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    @Deprecated public synchronized int getTotalErrors()
+    @Deprecated public int getTotalErrors()
     {
-        return Math.toIntExact(this.totalErrors);
+        return Math.toIntExact(this.totalErrors.get());
     }
 
     /**
@@ -330,9 +433,9 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    public synchronized long getTotalErrorsLong()
+    public long getTotalErrorsLong()
     {
-        return this.totalErrors;
+        return this.totalErrors.get();
     }
 
     /**
@@ -346,7 +449,7 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    public synchronized Date getEndTime()
+    public Date getEndTime()
     {
         return this.endTime;
     }
@@ -354,7 +457,7 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    public synchronized Date getStartTime()
+    public Date getStartTime()
     {
         return this.startTime;
     }
@@ -425,7 +528,7 @@ public class BatchProcessor<T> implements BatchMonitor
         }
 
         // Create a thread pool executor with the specified number of threads and a finite blocking queue of jobs
-        ExecutorService executorService = splitTxns && this.workerThreads > 1 ?
+        ExecutorService executorService = splitTxns && !this.streaming && this.workerThreads > 1 ?
                     new ThreadPoolExecutor(
                                 this.workerThreads, this.workerThreads, 0L, TimeUnit.MILLISECONDS,
                                 new ArrayBlockingQueue<Runnable>(this.workerThreads * this.batchSize * 10)
@@ -446,22 +549,27 @@ public class BatchProcessor<T> implements BatchMonitor
                                     }
 
                                 },
-                                threadFactory) : null;
+                                getWorkerThreadFactory()) : null;
         try
         {
+            if (splitTxns && this.streaming)
+            {
+                streamBatches(worker);
+                return count;
+            }
             Iterator<T> iterator = new WorkProviderIterator<T>(this.workProvider);
             int id=0;
-            List<T> batch = new ArrayList<T>(this.batchSize);
+            List<T> batch = new ArrayList<T>(this.currentBatchSize);
             while (iterator.hasNext())
             {
                 batch.add(iterator.next());
                 boolean hasNext = iterator.hasNext();
-                if (batch.size() >= this.batchSize || !hasNext)
+                if (batch.size() >= this.currentBatchSize || !hasNext)
                 {
                     final TxnCallback callback = new TxnCallback(id++, worker, batch, splitTxns);
                     if (hasNext)
                     {
-                        batch = new ArrayList<T>(this.batchSize);
+                        batch = new ArrayList<T>(this.currentBatchSize);
                     }
 
                     if (executorService == null)
@@ -491,7 +599,7 @@ public class BatchProcessor<T> implements BatchMonitor
             }
             synchronized (this)
             {
-                reportProgress(true);
+                reportProgress(this.processedEntries.get(), true);
                 this.endTime = new Date();
                 if (this.logger.isInfoEnabled())
                 {
@@ -505,26 +613,229 @@ public class BatchProcessor<T> implements BatchMonitor
 
                     }
                 }
-                if (this.totalErrors > 0 && this.logger.isErrorEnabled())
+                if (this.totalErrors.get() > 0 && this.logger.isErrorEnabled())
                 {
-                    this.logger.error(getProcessName() + ": " + this.totalErrors
+                    this.logger.error(getProcessName() + ": " + this.totalErrors.get()
                                             + " error(s) detected. Last error from entry \"" + this.lastErrorEntryId + "\"",
                                 this.lastError);
                 }
             }
         }
     }
+
+    /**
+     * Feeds batches to the workers through a bounded pipeline, so that the work provider is read no faster than the
+     * batches are processed. Workers are added, up to {@link #maxWorkerThreads}, whenever the pipeline is full.
+     * 
+     * @param worker
+     *            the worker
+     */
+    private void streamBatches(final BatchProcessWorker<T> worker)
+    {
+        final BlockingQueue<Runnable> pipeline = new ArrayBlockingQueue<Runnable>(Math.max(2, this.workerThreads * 2));
+        ThreadFactory workerThreadFactory = getWorkerThreadFactory();
+        List<Thread> workers = new ArrayList<Thread>(this.maxWorkerThreads);
+        for (int i = 0; i < this.workerThreads; i++)
+        {
+            workers.add(startStreamWorker(workerThreadFactory, pipeline));
+        }
+        try
+        {
+            Iterator<T> iterator = new WorkProviderIterator<T>(this.workProvider);
+            int id = 0;
+            List<T> batch = new ArrayList<T>(this.currentBatchSize);
+            while (iterator.hasNext())
+            {
+                batch.add(iterator.next());
+                boolean hasNext = iterator.hasNext();
+                if (batch.size() >= this.currentBatchSize || !hasNext)
+                {
+                    TxnCallback callback = new TxnCallback(id++, worker, batch, true);
+                    batch = new ArrayList<T>(this.currentBatchSize);
+                    if (!pipeline.offer(callback))
+                    {
+                        // Every worker is busy and the next batches are already waiting
+                        if (workers.size() < this.maxWorkerThreads)
+                        {
+                            workers.add(startStreamWorker(workerThreadFactory, pipeline));
+                            if (this.logger.isDebugEnabled())
+                            {
+                                this.logger.debug(getProcessName() + ": Increased worker threads to " + workers.size());
+                            }
+                        }
+                        pipeline.put(callback);
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            // Stop reading more work; the batches already handed over still complete
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            boolean interrupted = Thread.interrupted();
+            while (true)
+            {
+                try
+                {
+                    pipeline.put(END_OF_STREAM);
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+            for (Thread workerThread : workers)
+            {
+                while (workerThread.isAlive())
+                {
+                    try
+                    {
+                        workerThread.join();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Marks the end of the batches in a streaming pipeline. Each worker puts it back for the next one to see. */
+    private static final Runnable END_OF_STREAM = new Runnable()
+    {
+        public void run()
+        {
+        }
+    };
+
+    /**
+     * Starts a worker that runs batches from the pipeline until the end of the stream.
+     */
+    private Thread startStreamWorker(ThreadFactory workerThreadFactory, final BlockingQueue<Runnable> pipeline)
+    {
+        Thread thread = workerThreadFactory.newThread(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    while (true)
+                    {
+                        Runnable callback = pipeline.take();
+                        if (callback == END_OF_STREAM)
+                        {
+                            pipeline.put(END_OF_STREAM);
+                            return;
+                        }
+                        try
+                        {
+                            callback.run();
+                        }
+                        catch (Throwable e)
+                        {
+                            // Keep draining the pipeline so that the producer is never left blocked
+                            BatchProcessor.this.logger.error(getProcessName() + ": Unexpected error in worker thread", e);
+                        }
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * @return the factory for worker threads: virtual threads if requested and supported, else the platform threads
+     *         of {@link #threadFactory}
+     */
+    private ThreadFactory getWorkerThreadFactory()
+    {
+        if (this.useVirtualThreads)
+        {
+            try
+            {
+                // Looked up reflectively so that the code still runs on JVMs without virtual threads
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, this.processName + "-", 1L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            }
+            catch (Exception e)
+            {
+                if (this.logger.isDebugEnabled())
+                {
+                    this.logger.debug(getProcessName() + ": Virtual threads are not available, using platform threads");
+                }
+            }
+        }
+        return this.threadFactory;
+    }
+
+    /**
+     * Moves the batch size towards the size that would have committed in {@link #targetCommitMillis}.
+     * 
+     * @param size
+     *            the size of the committed batch
+     * @param commitMillis
+     *            the time the commit took
+     */
+    private void recordCommitTime(int size, long commitMillis)
+    {
+        if (this.targetCommitMillis <= 0 || size <= 0)
+        {
+            return;
+        }
+        long idealSize = size * this.targetCommitMillis / Math.max(1L, commitMillis);
+        // Only go half way each time, so a single slow commit does not collapse the batch size
+        long nextSize = (this.currentBatchSize + idealSize) / 2;
+        this.currentBatchSize = (int) Math.max(this.minBatchSize, Math.min(this.maxBatchSize, nextSize));
+    }
+
+    /**
+     * Adds the results of a batch to the counters, reporting progress for each logging interval crossed.
+     */
+    private void addProgress(int successes, int errors)
+    {
+        int increment = successes + errors;
+        if (increment == 0)
+        {
+            return;
+        }
+        this.totalErrors.addAndGet(errors);
+        this.successfullyProcessedEntries.addAndGet(successes);
+        long processed = this.processedEntries.addAndGet(increment);
+        for (long interval = (processed - increment) / this.loggingInterval + 1; interval <= processed
+                / this.loggingInterval; interval++)
+        {
+            reportProgress(interval * this.loggingInterval, false);
+        }
+    }
+
     /**
      * Reports the current progress.
      * 
+     * @param processed
+     *            the number of entries processed
      * @param last
      *            Have all jobs been processed? If <code>false</code> then progress is only reported after the number of
      *            entries indicated by {@link #loggingInterval}. If <code>true</code> then progress is reported if this
      *            is not one of the entries indicated by {@link #loggingInterval}.
      */
-    private synchronized void reportProgress(boolean last)
+    private void reportProgress(long processed, boolean last)
     {
-        long processed = this.successfullyProcessedEntries + this.totalErrors;
         if (processed % this.loggingInterval == 0 ^ last)
         {
             StringBuilder message = new StringBuilder(100).append(getProcessName()).append(": Processed ").append(
@@ -549,7 +860,7 @@ public class BatchProcessor<T> implements BatchMonitor
             {
                 message.append(". Rate: ").append(processed * 1000L / duration).append(" per second");
             }
-            message.append(". " + this.totalErrors + " failures detected.");
+            message.append(". " + this.totalErrors.get() + " failures detected.");
             this.logger.info(message);
         }
     }
@@ -743,6 +1054,9 @@ public class BatchProcessor<T> implements BatchMonitor
 
         /** The last error entry id. */
         private String txnLastErrorEntryId;
+
+        /** When the transaction started committing, or <tt>0</tt> if it has not. */
+        private long commitStartNanos;
         
         public Object execute() throws Throwable
         {
@@ -887,6 +1201,7 @@ public class BatchProcessor<T> implements BatchMonitor
             this.txnLastError = null;
             this.txnLastErrorEntryId = null;
             this.txnSuccesses = this.txnErrors = 0;
+            this.commitStartNanos = 0L;
         }
 
         /**
@@ -894,49 +1209,10 @@ public class BatchProcessor<T> implements BatchMonitor
          */
         private void commitProgress()
         {
+            addProgress(this.txnSuccesses, this.txnErrors);
+
             synchronized (BatchProcessor.this)
             {
-                if (this.txnErrors > 0)
-                {
-                    long processed = BatchProcessor.this.successfullyProcessedEntries + BatchProcessor.this.totalErrors;
-                    long currentIncrement = processed % BatchProcessor.this.loggingInterval;
-                    long newErrors = BatchProcessor.this.totalErrors + this.txnErrors;
-                    // Work out the number of logging intervals we will cross and report them
-                    long intervals = (this.txnErrors + currentIncrement) / BatchProcessor.this.loggingInterval;
-                    if (intervals > 0)
-                    {
-                        BatchProcessor.this.totalErrors += BatchProcessor.this.loggingInterval - currentIncrement;
-                        reportProgress(false);
-                        while (--intervals > 0)
-                        {
-                            BatchProcessor.this.totalErrors += BatchProcessor.this.loggingInterval;
-                            reportProgress(false);
-                        }
-                    }
-                    BatchProcessor.this.totalErrors = newErrors;
-                }
-
-                if (this.txnSuccesses > 0)
-                {
-                    long processed = BatchProcessor.this.successfullyProcessedEntries + BatchProcessor.this.totalErrors;
-                    long currentIncrement = processed % BatchProcessor.this.loggingInterval;
-                    long newSuccess = BatchProcessor.this.successfullyProcessedEntries + this.txnSuccesses;
-                    // Work out the number of logging intervals we will cross and report them
-                    long intervals = (this.txnSuccesses + currentIncrement) / BatchProcessor.this.loggingInterval;
-                    if (intervals > 0)
-                    {
-                        BatchProcessor.this.successfullyProcessedEntries += BatchProcessor.this.loggingInterval
-                                - currentIncrement;
-                        reportProgress(false);
-                        while (--intervals > 0)
-                        {
-                            BatchProcessor.this.successfullyProcessedEntries += BatchProcessor.this.loggingInterval;
-                            reportProgress(false);
-                        }
-                    }
-                    BatchProcessor.this.successfullyProcessedEntries = newSuccess;
-                }
-
                 if (this.txnLastError != null)
                 {
                     BatchProcessor.this.lastError = this.txnLastError;
@@ -951,9 +1227,19 @@ public class BatchProcessor<T> implements BatchMonitor
             }
         }
 
+        @Override
+        public void beforeCommit(boolean readOnly)
+        {
+            this.commitStartNanos = System.nanoTime();
+        }
+
         @Override
         public void afterCommit()
         {
+            if (this.splitTxns && this.commitStartNanos != 0L)
+            {
+                recordCommitTime(this.batch.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.commitStartNanos));
+            }
             // Wake up any waiting batches
             synchronized (BatchProcessor.this)
             {
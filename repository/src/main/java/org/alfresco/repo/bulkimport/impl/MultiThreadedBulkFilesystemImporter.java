@@ -54,6 +54,7 @@ public abstract class MultiThreadedBulkFilesystemImporter extends AbstractBulkFi
     protected int defaultBatchSize;
     protected int defaultNumThreads;
     protected int defaultLoggingInterval = 100;
+    protected boolean streaming;
 
     protected int getLoggingInterval(BulkImportParameters bulkImportParameters)
     {
@@ -159,10 +160,19 @@ public abstract class MultiThreadedBulkFilesystemImporter extends AbstractBulkFi
                 numThreads, batchSize,
                 applicationContext,
                 logger, loggingInterval);
+		batchProcessor.setStreaming(streaming);
 		
 		return batchProcessor;
     }
 
+	/**
+	 * @param streaming <tt>true</tt> to stream batches to the import threads through a bounded pipeline
+	 */
+	public void setStreaming(boolean streaming)
+	{
+		this.streaming = streaming;
+	}
+
 	public void setDefaultNumThreads(int defaultNumThreads)
 	{
 		this.defaultNumThreads = defaultNumThreads;
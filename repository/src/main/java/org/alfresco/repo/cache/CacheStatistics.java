@@ -74,6 +74,16 @@ public interface CacheStatistics
      */
     double hitMissRatio(String cacheName);
     
+    /**
+     * The proportion of shared cache reads that were answered by the node-local
+     * near cache, where 1.0 means that the clustered cache was never consulted.
+     * Caches without a near cache report NaN.
+     * 
+     * @param cacheName  The cache name.
+     * @return ratio (double)
+     */
+    double nearCacheHitRatio(String cacheName);
+    
     /**
      * Retrieve the total number of get operations invoked on the
      * cache (i.e. sum of hits and misses).
@@ -35,6 +35,10 @@ import org.apache.commons.logging.LogFactory;
  * The caches are created with a capacity specified by the property {name}.maxItems.
  * For example, a cache named <tt>cache.ticketsCache</tt> would have a capacity specified
  * by the property <tt>cache.ticketsCache.maxItems</tt>
+ * <p>
+ * Setting the property {name}.local.type to <tt>w-tinylfu</tt> creates a {@link TinyLfuSimpleCache}
+ * instead. Such caches may be bounded by {name}.maxWeight, as measured by the {name}.weigher
+ * (<tt>entries</tt> or <tt>size-estimate</tt>), and publish their statistics when {name}.statsEnabled is true.
  * 
  * @author Matt Ward
  */
@@ -42,7 +46,20 @@ public class DefaultCacheFactory<K extends Serializable, V> extends AbstractCach
 {
     private static final Log log = LogFactory.getLog(DefaultCacheFactory.class);
     private static final String EVICT_NONE = "NONE";
+    private static final String LOCAL_TYPE_DEFAULT = "default";
+    private static final String LOCAL_TYPE_TINYLFU = "w-tinylfu";
+    private static final String WEIGHER_ENTRIES = "entries";
+    private static final String WEIGHER_SIZE_ESTIMATE = "size-estimate";
     
+    private CacheStatistics cacheStatistics;
+    
+    /**
+     * Statistics service used by caches that gather their own statistics, see {@link TinyLfuSimpleCache}.
+     */
+    public void setCacheStatistics(CacheStatistics cacheStatistics)
+    {
+        this.cacheStatistics = cacheStatistics;
+    }
     
     @Override
     public SimpleCache<K, V> createCache(String cacheName)
@@ -52,6 +69,15 @@ public class DefaultCacheFactory<K extends Serializable, V> extends AbstractCach
     
     private SimpleCache<K, V> createLocalCache(String cacheName)
     {
+        String localType = getProperty(cacheName, "local.type", LOCAL_TYPE_DEFAULT);
+        if (localType.equals(LOCAL_TYPE_TINYLFU))
+        {
+            return createTinyLfuCache(cacheName);
+        }
+        else if (!localType.equals(LOCAL_TYPE_DEFAULT))
+        {
+            throw new IllegalArgumentException("Unknown local cache type [" + localType + "] for cache " + cacheName);
+        }
         int maxItems = maxItems(cacheName);
         boolean useMaxItems = useMaxItems(cacheName);
         int ttlSecs = ttlSeconds(cacheName);
@@ -63,6 +89,39 @@ public class DefaultCacheFactory<K extends Serializable, V> extends AbstractCach
         }
         return cache;
     }
+    
+    private SimpleCache<K, V> createTinyLfuCache(String cacheName)
+    {
+        // Fall back to maxItems so that only the cache type needs to be changed
+        String maxWeightStr = getProperty(cacheName, "maxWeight", Integer.toString(maxItems(cacheName)));
+        long maxWeight = Long.parseLong(maxWeightStr);
+        boolean useMaxWeight = useMaxItems(cacheName);
+        int ttlSecs = ttlSeconds(cacheName);
+        int maxIdleSeconds = maxIdleSeconds(cacheName);
+        TinyLfuSimpleCache<K, V> cache = new TinyLfuSimpleCache<K, V>(
+                    maxWeight, useMaxWeight, ttlSecs, maxIdleSeconds, weigher(cacheName), cacheName);
+        cache.setCacheStatistics(cacheStatistics);
+        cache.setStatsEnabled(Boolean.parseBoolean(getProperty(cacheName, "statsEnabled", "false")));
+        if (log.isDebugEnabled())
+        {
+            log.debug("Creating cache: " + cache);
+        }
+        return cache;
+    }
+    
+    private TinyLfuSimpleCache.Weigher<Object, Object> weigher(String cacheName)
+    {
+        String weigher = getProperty(cacheName, "weigher", WEIGHER_ENTRIES);
+        if (weigher.equals(WEIGHER_ENTRIES))
+        {
+            return TinyLfuSimpleCache.ENTRY_COUNT_WEIGHER;
+        }
+        else if (weigher.equals(WEIGHER_SIZE_ESTIMATE))
+        {
+            return TinyLfuSimpleCache.SIZE_ESTIMATING_WEIGHER;
+        }
+        throw new IllegalArgumentException("Unknown weigher [" + weigher + "] for cache " + cacheName);
+    }
 
     private int maxItems(String cacheName)
     {
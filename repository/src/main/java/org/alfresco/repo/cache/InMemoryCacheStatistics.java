@@ -34,7 +34,6 @@ import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
 import org.alfresco.repo.cache.TransactionStats.OpType;
-import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
@@ -115,9 +114,8 @@ public class InMemoryCacheStatistics implements CacheStatistics, ApplicationCont
             
             for (OpType opType : OpType.values())
             {                
-                SummaryStatistics txOpSummary = txStats.getTimings(opType);
-                long count = txOpSummary.getN();
-                double totalTime = txOpSummary.getSum();
+                long count = txStats.getCount(opType);
+                double totalTime = txStats.getTotalTime(opType);
                     
                 OperationStats oldStats = cacheStats.get(opType);
                 OperationStats newStats;
@@ -167,6 +165,28 @@ public class InMemoryCacheStatistics implements CacheStatistics, ApplicationCont
         }
     }
     
+    @Override
+    public double nearCacheHitRatio(String cacheName)
+    {
+        ReadLock readLock = getReadLock(cacheName);
+        readLock.lock();
+        try
+        {
+            Map<OpType, OperationStats> cacheStats = cacheToStatsMap.get(cacheName);
+            if (cacheStats == null)
+            {
+                throw new NoStatsForCache(cacheName);
+            }
+            long hits = cacheStats.get(OpType.NEAR_HIT).getCount();
+            long misses = cacheStats.get(OpType.NEAR_MISS).getCount();
+            return (double)hits / (hits+misses);
+        }
+        finally
+        {
+            readLock.unlock();
+        }
+    }
+    
     @Override
     public long numGets(String cacheName)
     {
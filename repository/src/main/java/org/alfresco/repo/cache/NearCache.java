@@ -0,0 +1,147 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A node-local tier in front of a clustered shared cache.
+ * <p>
+ * Reads are answered from a memory-bounded {@link TinyLfuSimpleCache} where possible and
+ * only fall through to the shared cache on a local miss. This is only safe for caches whose
+ * values never change once written, i.e. where a new version of a value is stored under a
+ * new key. Local writes, removals and clears are applied to both tiers; a removal or clear
+ * arriving from another node cannot be seen here, so a locally held entry for a key that was
+ * removed elsewhere is only dropped when it is evicted. With versioned keys such an entry
+ * is never looked up again.
+ * <p>
+ * A generation counter stops a read that overlaps a local invalidation from putting the
+ * value it fetched back into the local tier.
+ */
+class NearCache<K extends Serializable, V> implements SimpleCache<K, V>
+{
+    private final SimpleCache<K, V> sharedCache;
+    private final TinyLfuSimpleCache<K, V> localCache;
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @param sharedCache   the cache to front
+     * @param maxBytes      the approximate size limit of the local tier
+     * @param cacheName     the name of the local tier
+     */
+    NearCache(SimpleCache<K, V> sharedCache, long maxBytes, String cacheName)
+    {
+        if (maxBytes <= 0)
+        {
+            throw new IllegalArgumentException("maxBytes must be positive, but was " + maxBytes);
+        }
+        this.sharedCache = sharedCache;
+        this.localCache = new TinyLfuSimpleCache<>(maxBytes, true, 0, 0,
+                    TinyLfuSimpleCache.SIZE_ESTIMATING_WEIGHER, cacheName);
+    }
+
+    /**
+     * @return the locally held value or <tt>null</tt> without consulting the shared cache
+     */
+    V getLocal(K key)
+    {
+        return localCache.get(key);
+    }
+
+    /**
+     * @return the approximate number of bytes held locally
+     */
+    long getLocalSize()
+    {
+        return localCache.getWeightedSize();
+    }
+
+    @Override
+    public V get(K key)
+    {
+        V value = localCache.get(key);
+        if (value != null)
+        {
+            return value;
+        }
+        long before = generation.get();
+        value = sharedCache.get(key);
+        if (value != null && generation.get() == before)
+        {
+            localCache.put(key, value);
+            if (generation.get() != before)
+            {
+                // An invalidation raced with the put
+                localCache.remove(key);
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public boolean contains(K key)
+    {
+        return localCache.contains(key) || sharedCache.contains(key);
+    }
+
+    @Override
+    public Collection<K> getKeys()
+    {
+        return sharedCache.getKeys();
+    }
+
+    @Override
+    public void put(K key, V value)
+    {
+        generation.incrementAndGet();
+        sharedCache.put(key, value);
+        localCache.put(key, value);
+    }
+
+    @Override
+    public void remove(K key)
+    {
+        generation.incrementAndGet();
+        sharedCache.remove(key);
+        localCache.remove(key);
+    }
+
+    @Override
+    public void clear()
+    {
+        generation.incrementAndGet();
+        sharedCache.clear();
+        localCache.clear();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "NearCache[local=" + localCache + ", shared=" + sharedCache + "]";
+    }
+}
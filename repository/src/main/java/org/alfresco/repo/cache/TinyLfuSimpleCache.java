@@ -0,0 +1,1038 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.alfresco.repo.cache.TransactionStats.OpType;
+import org.springframework.beans.factory.BeanNameAware;
+
+/**
+ * {@link SimpleCache} implementation using a W-TinyLFU eviction policy.
+ * <p>
+ * New entries are admitted to a small LRU window. When an entry leaves the window it only
+ * displaces an entry in the main (segmented LRU) region if it has been accessed more frequently,
+ * as estimated by a count-min sketch. A single large scan (e.g. listing a big folder) therefore
+ * passes through the window without flushing the frequently used working set.
+ * <p>
+ * The cache is split into segments by key hash. Reads are lock-free: the entry is looked up in a
+ * {@link ConcurrentHashMap} and the access is recorded in a lossy per-segment buffer which is
+ * replayed against the eviction policy by whichever thread next obtains the segment lock.
+ * Writes take the segment lock.
+ * <p>
+ * Capacity is expressed as a total weight, by default one unit per entry. A {@link Weigher}
+ * may be supplied to bound the cache by approximate memory use instead. Expiry by time-to-live
+ * and max-idle is checked lazily when an entry is read.
+ * <p>
+ * Hit, miss, put, remove and eviction counts are published to {@link CacheStatistics} under the
+ * cache name when a statistics service has been provided and statistics are enabled.
+ */
+public final class TinyLfuSimpleCache<K extends Serializable, V extends Object>
+    implements SimpleCache<K, V>, BeanNameAware
+{
+    /** Percentage of the total weight given to the admission window */
+    private static final int WINDOW_PERCENT = 1;
+    /** Percentage of the main region weight given to the protected segment */
+    private static final int PROTECTED_PERCENT = 80;
+    private static final int MAX_SEGMENTS = 16;
+    /** Minimum weight a segment should be responsible for before the cache is split further */
+    private static final long MIN_SEGMENT_WEIGHT = 256;
+    /** Upper bound on the sketch size, in counters per segment, for caches with no useful size estimate */
+    private static final int MAX_SKETCH_ENTRIES = 1 << 20;
+    private static final long DEFAULT_STATS_PUBLISH_INTERVAL_MS = 10000L;
+
+    private final Segment<K, V>[] segments;
+    private final int segmentMask;
+    private final long maxWeight;
+    private final boolean bounded;
+    private final long ttlNanos;
+    private final long maxIdleNanos;
+    private final Weigher<? super K, ? super V> weigher;
+    private String cacheName;
+
+    private CacheStatistics cacheStatistics;
+    private boolean statsEnabled;
+    private long statsPublishIntervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_STATS_PUBLISH_INTERVAL_MS);
+    private final AtomicLong lastStatsPublish = new AtomicLong(System.nanoTime());
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder putCount = new LongAdder();
+    private final LongAdder removeCount = new LongAdder();
+    private final LongAdder clearCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder hitTime = new LongAdder();
+    private final LongAdder missTime = new LongAdder();
+    private final LongAdder putTime = new LongAdder();
+    private final LongAdder removeTime = new LongAdder();
+    private final LongAdder clearTime = new LongAdder();
+
+    /**
+     * Calculates the weight of a cache entry. Weights are calculated once, when the entry is put.
+     */
+    public interface Weigher<K, V>
+    {
+        /**
+         * @return the weight of the entry, which must not be negative
+         */
+        int weigh(K key, V value);
+    }
+
+    /**
+     * Weighs every entry as 1, so that the maximum weight is simply the maximum number of entries.
+     */
+    public static final Weigher<Object, Object> ENTRY_COUNT_WEIGHER = (key, value) -> 1;
+
+    /**
+     * Weighs entries by a rough estimate of their retained size in bytes. Strings, maps,
+     * collections, arrays and {@link TransactionalCache.ValueHolder}s are inspected (one level deep for containers);
+     * anything else is given a fixed size.
+     */
+    public static final Weigher<Object, Object> SIZE_ESTIMATING_WEIGHER = new SizeEstimatingWeigher();
+
+    /**
+     * Construct a cache.
+     * 
+     * @param maxWeight    the maximum total weight of the entries. 0 = no limit
+     * @param useMaxWeight whether the maxWeight value should be applied as a cap for the cache
+     * @param ttlSecs      time-to-live in seconds, 0 = no limit
+     * @param maxIdleSecs  max-idle time in seconds, 0 = no limit
+     * @param weigher      used to weigh entries, <tt>null</tt> to weigh every entry as 1
+     * @param cacheName    an arbitrary cache name
+     */
+    @SuppressWarnings("unchecked")
+    public TinyLfuSimpleCache(long maxWeight, boolean useMaxWeight, int ttlSecs, int maxIdleSecs,
+                Weigher<? super K, ? super V> weigher, String cacheName)
+    {
+        if (maxWeight < 0)
+        {
+            throw new IllegalArgumentException("maxWeight may not be negative, but was " + maxWeight);
+        }
+        this.bounded = useMaxWeight && maxWeight > 0;
+        this.maxWeight = bounded ? maxWeight : Long.MAX_VALUE;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(Math.max(ttlSecs, 0));
+        this.maxIdleNanos = TimeUnit.SECONDS.toNanos(Math.max(maxIdleSecs, 0));
+        this.weigher = weigher == null ? ENTRY_COUNT_WEIGHER : weigher;
+        setBeanName(cacheName);
+
+        int segmentCount = MAX_SEGMENTS;
+        if (bounded)
+        {
+            long wanted = Math.max(1L, Math.min(MAX_SEGMENTS, maxWeight / MIN_SEGMENT_WEIGHT));
+            segmentCount = Integer.highestOneBit((int) wanted);
+        }
+        long segmentMaxWeight = bounded ? (maxWeight + segmentCount - 1) / segmentCount : Long.MAX_VALUE;
+        int sketchEntries = 0;
+        if (bounded)
+        {
+            // With an entry count weigher the weight is the entry count. Otherwise assume entries
+            // of a few hundred bytes: the sketch only needs to be roughly the right size.
+            long expected = this.weigher == ENTRY_COUNT_WEIGHER ? segmentMaxWeight : segmentMaxWeight / 256;
+            sketchEntries = (int) Math.max(16L, Math.min(MAX_SKETCH_ENTRIES, expected));
+        }
+
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++)
+        {
+            segments[i] = new Segment<>(this, segmentMaxWeight, sketchEntries);
+        }
+        this.segmentMask = segmentCount - 1;
+    }
+
+    /**
+     * Create a cache bounded by number of entries, with no other features enabled.
+     * 
+     * @param maxItems  the maximum number of entries
+     * @param cacheName an arbitrary cache name
+     */
+    public TinyLfuSimpleCache(int maxItems, String cacheName)
+    {
+        this(maxItems, true, 0, 0, null, cacheName);
+    }
+
+    @Override
+    public boolean contains(K key)
+    {
+        Node<K, V> node = segmentFor(key).map.get(key);
+        return node != null && !isExpired(node, System.nanoTime());
+    }
+
+    @Override
+    public Collection<K> getKeys()
+    {
+        List<K> keys = new ArrayList<>();
+        for (Segment<K, V> segment : segments)
+        {
+            keys.addAll(segment.map.keySet());
+        }
+        return keys;
+    }
+
+    @Override
+    public V get(K key)
+    {
+        long start = System.nanoTime();
+        Segment<K, V> segment = segmentFor(key);
+        Node<K, V> node = segment.map.get(key);
+        if (node != null && isExpired(node, start))
+        {
+            segment.expire(node);
+            node = null;
+        }
+        if (node == null)
+        {
+            missCount.increment();
+            if (statsEnabled)
+            {
+                missTime.add(System.nanoTime() - start);
+            }
+            return null;
+        }
+        if (maxIdleNanos > 0)
+        {
+            node.accessTime = start;
+        }
+        segment.recordRead(node);
+        hitCount.increment();
+        if (statsEnabled)
+        {
+            hitTime.add(System.nanoTime() - start);
+        }
+        return node.value;
+    }
+
+    @Override
+    public void put(K key, V value)
+    {
+        long start = System.nanoTime();
+        int weight = weigher.weigh(key, value);
+        if (weight < 0)
+        {
+            throw new IllegalArgumentException("Weigher returned a negative weight for key " + key + ": " + weight);
+        }
+        segmentFor(key).put(new Node<>(key, value, weight, start));
+        putCount.increment();
+        if (statsEnabled)
+        {
+            putTime.add(System.nanoTime() - start);
+        }
+        publishStatsIfDue(start);
+    }
+
+    @Override
+    public void remove(K key)
+    {
+        long start = System.nanoTime();
+        segmentFor(key).remove(key);
+        removeCount.increment();
+        if (statsEnabled)
+        {
+            removeTime.add(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        long start = System.nanoTime();
+        for (Segment<K, V> segment : segments)
+        {
+            segment.clear();
+        }
+        clearCount.increment();
+        if (statsEnabled)
+        {
+            clearTime.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Publish the statistics gathered since the last time they were published to the
+     * {@link CacheStatistics} service, if one has been set and statistics are enabled.
+     */
+    public void publishStats()
+    {
+        if (cacheStatistics == null || !statsEnabled)
+        {
+            return;
+        }
+        TransactionStats stats = new TransactionStats();
+        stats.record(OpType.GET_HIT, hitCount.sumThenReset(), hitTime.sumThenReset());
+        stats.record(OpType.GET_MISS, missCount.sumThenReset(), missTime.sumThenReset());
+        stats.record(OpType.PUT, putCount.sumThenReset(), putTime.sumThenReset());
+        stats.record(OpType.REMOVE, removeCount.sumThenReset(), removeTime.sumThenReset());
+        stats.record(OpType.CLEAR, clearCount.sumThenReset(), clearTime.sumThenReset());
+        stats.record(OpType.EVICT, evictionCount.sumThenReset(), 0);
+        cacheStatistics.add(cacheName, stats);
+    }
+
+    private void publishStatsIfDue(long now)
+    {
+        if (cacheStatistics == null || !statsEnabled)
+        {
+            return;
+        }
+        long last = lastStatsPublish.get();
+        if (now - last >= statsPublishIntervalNanos && lastStatsPublish.compareAndSet(last, now))
+        {
+            publishStats();
+        }
+    }
+
+    private boolean isExpired(Node<K, V> node, long now)
+    {
+        return (ttlNanos > 0 && now - node.writeTime >= ttlNanos) ||
+               (maxIdleNanos > 0 && now - node.accessTime >= maxIdleNanos);
+    }
+
+    private Segment<K, V> segmentFor(Object key)
+    {
+        return segments[spread(key.hashCode()) & segmentMask];
+    }
+
+    /**
+     * Applies a supplemental hash so that the segment and sketch indexes use well mixed bits.
+     */
+    static int spread(int h)
+    {
+        h ^= h >>> 17;
+        h *= 0xed5ad4bb;
+        h ^= h >>> 11;
+        h *= 0xac4c1b51;
+        h ^= h >>> 15;
+        return h;
+    }
+
+    /**
+     * Set the service to which hit, miss and eviction statistics are published.
+     */
+    public void setCacheStatistics(CacheStatistics cacheStatistics)
+    {
+        this.cacheStatistics = cacheStatistics;
+    }
+
+    public void setStatsEnabled(boolean statsEnabled)
+    {
+        this.statsEnabled = statsEnabled;
+    }
+
+    /**
+     * The minimum interval between two publications of statistics, in milliseconds.
+     * Statistics are published from within a cache write once the interval has elapsed.
+     */
+    public void setStatsPublishIntervalMs(long statsPublishIntervalMs)
+    {
+        this.statsPublishIntervalNanos = TimeUnit.MILLISECONDS.toNanos(statsPublishIntervalMs);
+    }
+
+    @Override
+    public void setBeanName(String cacheName)
+    {
+        this.cacheName = cacheName;
+    }
+
+    public String getCacheName()
+    {
+        return this.cacheName;
+    }
+
+    public long getMaxWeight()
+    {
+        return this.maxWeight;
+    }
+
+    public boolean isUseMaxWeight()
+    {
+        return this.bounded;
+    }
+
+    public long getTTLNanos()
+    {
+        return this.ttlNanos;
+    }
+
+    public long getMaxIdleNanos()
+    {
+        return this.maxIdleNanos;
+    }
+
+    /**
+     * @return the current total weight of the cached entries
+     */
+    public long getWeightedSize()
+    {
+        long weight = 0;
+        for (Segment<K, V> segment : segments)
+        {
+            segment.lock.lock();
+            try
+            {
+                weight += segment.totalWeight;
+            }
+            finally
+            {
+                segment.lock.unlock();
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * @return the number of entries evicted (or expired) since statistics were last published
+     */
+    public long getEvictionCount()
+    {
+        return evictionCount.sum();
+    }
+
+    /**
+     * @return the number of cache hits since statistics were last published
+     */
+    public long getHitCount()
+    {
+        return hitCount.sum();
+    }
+
+    /**
+     * @return the number of cache misses since statistics were last published
+     */
+    public long getMissCount()
+    {
+        return missCount.sum();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TinyLfuSimpleCache[cacheName=" + cacheName + ", maxWeight=" + (bounded ? maxWeight : "unbounded") +
+                    ", segments=" + segments.length + ", ttlSecs=" + TimeUnit.NANOSECONDS.toSeconds(ttlNanos) +
+                    ", maxIdleSecs=" + TimeUnit.NANOSECONDS.toSeconds(maxIdleNanos) + "]";
+    }
+
+    private static final byte DEAD = 0;
+    private static final byte WINDOW = 1;
+    private static final byte PROBATION = 2;
+    private static final byte PROTECTED = 3;
+
+    /**
+     * A cache entry. The key, value and weight never change: a put of an existing key replaces the node.
+     * The links and queue are guarded by the segment lock.
+     */
+    private static final class Node<K, V>
+    {
+        final K key;
+        final V value;
+        final int weight;
+        final long writeTime;
+        volatile long accessTime;
+
+        Node<K, V> prev;
+        Node<K, V> next;
+        byte queue = DEAD;
+
+        Node(K key, V value, int weight, long now)
+        {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.writeTime = now;
+            this.accessTime = now;
+        }
+    }
+
+    /**
+     * Doubly-linked list of nodes in access order, least recently used first.
+     */
+    private static final class AccessOrderDeque<K, V>
+    {
+        Node<K, V> head;
+        Node<K, V> tail;
+        long weight;
+
+        void addLast(Node<K, V> node, byte queue)
+        {
+            node.queue = queue;
+            node.prev = tail;
+            node.next = null;
+            if (tail == null)
+            {
+                head = node;
+            }
+            else
+            {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        void unlink(Node<K, V> node)
+        {
+            if (node.prev == null)
+            {
+                head = node.next;
+            }
+            else
+            {
+                node.prev.next = node.next;
+            }
+            if (node.next == null)
+            {
+                tail = node.prev;
+            }
+            else
+            {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            node.queue = DEAD;
+            weight -= node.weight;
+        }
+
+        void moveToTail(Node<K, V> node)
+        {
+            if (node != tail)
+            {
+                byte queue = node.queue;
+                unlink(node);
+                addLast(node, queue);
+            }
+        }
+
+        void clear()
+        {
+            for (Node<K, V> node = head; node != null; )
+            {
+                Node<K, V> next = node.next;
+                node.prev = null;
+                node.next = null;
+                node.queue = DEAD;
+                node = next;
+            }
+            head = null;
+            tail = null;
+            weight = 0;
+        }
+    }
+
+    /**
+     * An independently locked part of the cache, holding the entries whose keys hash to it.
+     */
+    private static final class Segment<K extends Serializable, V>
+    {
+        private static final int READ_BUFFER_SIZE = 64;
+        private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+        /** Drain the read buffer every this many recorded reads */
+        private static final int READ_DRAIN_THRESHOLD = 32;
+
+        final TinyLfuSimpleCache<K, V> cache;
+        final ConcurrentHashMap<K, Node<K, V>> map = new ConcurrentHashMap<>();
+        final ReentrantLock lock = new ReentrantLock();
+        final AtomicReferenceArray<Node<K, V>> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        final AtomicLong readCounter = new AtomicLong();
+
+        // Guarded by lock
+        final AccessOrderDeque<K, V> window = new AccessOrderDeque<>();
+        final AccessOrderDeque<K, V> probation = new AccessOrderDeque<>();
+        final AccessOrderDeque<K, V> protectedQueue = new AccessOrderDeque<>();
+        final FrequencySketch sketch;
+        final long maxWeight;
+        final long windowMaxWeight;
+        final long protectedMaxWeight;
+        long totalWeight;
+        long lastExpirySweep = System.nanoTime();
+
+        Segment(TinyLfuSimpleCache<K, V> cache, long maxWeight, int sketchEntries)
+        {
+            this.cache = cache;
+            this.maxWeight = maxWeight;
+            if (cache.bounded)
+            {
+                this.windowMaxWeight = Math.max(1L, maxWeight * WINDOW_PERCENT / 100);
+                this.protectedMaxWeight = (maxWeight - windowMaxWeight) * PROTECTED_PERCENT / 100;
+                this.sketch = new FrequencySketch(sketchEntries);
+            }
+            else
+            {
+                this.windowMaxWeight = Long.MAX_VALUE;
+                this.protectedMaxWeight = Long.MAX_VALUE;
+                this.sketch = null;
+            }
+        }
+
+        /**
+         * Record a read without blocking. Reads may be dropped if the buffer is contended.
+         */
+        void recordRead(Node<K, V> node)
+        {
+            if (!cache.bounded)
+            {
+                return;
+            }
+            long count = readCounter.getAndIncrement();
+            readBuffer.lazySet((int) (count & READ_BUFFER_MASK), node);
+            if ((count % READ_DRAIN_THRESHOLD) == READ_DRAIN_THRESHOLD - 1 && lock.tryLock())
+            {
+                try
+                {
+                    drainReadBuffer();
+                }
+                finally
+                {
+                    lock.unlock();
+                }
+            }
+        }
+
+        void put(Node<K, V> node)
+        {
+            lock.lock();
+            try
+            {
+                if (node.weight > maxWeight)
+                {
+                    // Too heavy to ever fit, so just make sure no stale value remains
+                    Node<K, V> old = map.remove(node.key);
+                    if (old != null)
+                    {
+                        unlink(old);
+                    }
+                    return;
+                }
+                drainReadBuffer();
+                if (sketch != null)
+                {
+                    sketch.increment(spread(node.key.hashCode()));
+                }
+                Node<K, V> old = map.put(node.key, node);
+                byte queue = WINDOW;
+                if (old != null)
+                {
+                    // Keep the replacement in the same region as the entry it replaces
+                    queue = old.queue == DEAD ? WINDOW : old.queue;
+                    unlink(old);
+                }
+                link(node, queue);
+                if (cache.bounded)
+                {
+                    evict();
+                }
+                expireStale(node.writeTime);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        void remove(K key)
+        {
+            lock.lock();
+            try
+            {
+                Node<K, V> node = map.remove(key);
+                if (node != null)
+                {
+                    unlink(node);
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        void expire(Node<K, V> node)
+        {
+            lock.lock();
+            try
+            {
+                if (map.remove(node.key, node))
+                {
+                    unlink(node);
+                    cache.evictionCount.increment();
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        void clear()
+        {
+            lock.lock();
+            try
+            {
+                map.clear();
+                window.clear();
+                probation.clear();
+                protectedQueue.clear();
+                totalWeight = 0;
+                for (int i = 0; i < READ_BUFFER_SIZE; i++)
+                {
+                    readBuffer.set(i, null);
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        private void link(Node<K, V> node, byte queue)
+        {
+            dequeFor(queue).addLast(node, queue);
+            totalWeight += node.weight;
+        }
+
+        private void unlink(Node<K, V> node)
+        {
+            if (node.queue != DEAD)
+            {
+                totalWeight -= node.weight;
+                dequeFor(node.queue).unlink(node);
+            }
+        }
+
+        private AccessOrderDeque<K, V> dequeFor(byte queue)
+        {
+            switch (queue)
+            {
+                case WINDOW:
+                    return window;
+                case PROBATION:
+                    return probation;
+                case PROTECTED:
+                    return protectedQueue;
+                default:
+                    throw new IllegalStateException("Node is not linked: " + queue);
+            }
+        }
+
+        private void drainReadBuffer()
+        {
+            if (!cache.bounded)
+            {
+                return;
+            }
+            for (int i = 0; i < READ_BUFFER_SIZE; i++)
+            {
+                Node<K, V> node = readBuffer.getAndSet(i, null);
+                if (node != null)
+                {
+                    onAccess(node);
+                }
+            }
+        }
+
+        /**
+         * Replay a read: count it in the sketch and move the entry as an LRU would, promoting
+         * re-used probation entries to the protected region.
+         */
+        private void onAccess(Node<K, V> node)
+        {
+            if (node.queue == DEAD)
+            {
+                // Removed or replaced since it was read
+                return;
+            }
+            sketch.increment(spread(node.key.hashCode()));
+            switch (node.queue)
+            {
+                case WINDOW:
+                    window.moveToTail(node);
+                    break;
+                case PROBATION:
+                    probation.unlink(node);
+                    protectedQueue.addLast(node, PROTECTED);
+                    while (protectedQueue.weight > protectedMaxWeight && protectedQueue.head != node)
+                    {
+                        Node<K, V> demoted = protectedQueue.head;
+                        protectedQueue.unlink(demoted);
+                        probation.addLast(demoted, PROBATION);
+                    }
+                    break;
+                case PROTECTED:
+                    protectedQueue.moveToTail(node);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * Move entries that overflow the window into probation, then evict until the segment is
+         * within its maximum weight. Each candidate leaving the window is compared against the
+         * least recently used probation entry; whichever is used less frequently is evicted.
+         */
+        private void evict()
+        {
+            Node<K, V> candidate = null;
+            while (window.weight > windowMaxWeight && window.head != null)
+            {
+                Node<K, V> node = window.head;
+                window.unlink(node);
+                probation.addLast(node, PROBATION);
+                if (candidate == null)
+                {
+                    candidate = node;
+                }
+            }
+
+            while (totalWeight > maxWeight)
+            {
+                if (candidate == null)
+                {
+                    // No new arrivals to judge, so evict in LRU order from the least valuable region
+                    Node<K, V> victim = probation.head != null ? probation.head :
+                                        protectedQueue.head != null ? protectedQueue.head : window.head;
+                    evictNode(victim);
+                    continue;
+                }
+                Node<K, V> victim = probation.head;
+                if (victim == candidate)
+                {
+                    // Probation contains only new candidates
+                    victim = protectedQueue.head;
+                }
+                if (victim == null || !admit(candidate, victim))
+                {
+                    Node<K, V> next = candidate.next;
+                    evictNode(candidate);
+                    candidate = next;
+                }
+                else
+                {
+                    evictNode(victim);
+                }
+            }
+        }
+
+        /**
+         * @return <tt>true</tt> if the candidate should be kept in preference to the victim
+         */
+        private boolean admit(Node<K, V> candidate, Node<K, V> victim)
+        {
+            int candidateFreq = sketch.frequency(spread(candidate.key.hashCode()));
+            int victimFreq = sketch.frequency(spread(victim.key.hashCode()));
+            if (candidateFreq > victimFreq)
+            {
+                return true;
+            }
+            // A little randomness stops an attacker (or unlucky hashing) from pinning a warm victim
+            return candidateFreq > 5 && ThreadLocalRandom.current().nextInt(128) == 0;
+        }
+
+        private void evictNode(Node<K, V> node)
+        {
+            map.remove(node.key, node);
+            unlink(node);
+            cache.evictionCount.increment();
+        }
+
+        /**
+         * Unbounded caches are never evicted, so periodically drop expired entries that nobody reads.
+         */
+        private void expireStale(long now)
+        {
+            long expiry = Math.max(cache.ttlNanos, cache.maxIdleNanos);
+            if (cache.bounded || expiry == 0 || now - lastExpirySweep < expiry)
+            {
+                return;
+            }
+            lastExpirySweep = now;
+            for (Node<K, V> node : map.values())
+            {
+                if (cache.isExpired(node, now) && map.remove(node.key, node))
+                {
+                    unlink(node);
+                    cache.evictionCount.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * A count-min sketch of 4-bit counters used to estimate how often keys have been accessed.
+     * Counters are halved once the number of increments reaches ten times the table size,
+     * so that the estimates favour recent history.
+     */
+    static final class FrequencySketch
+    {
+        private static final long[] SEEDS = {
+                    0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final long ONE_MASK = 0x1111111111111111L;
+
+        private final long[] table;
+        private final int tableMask;
+        private final int sampleSize;
+        private int size;
+
+        FrequencySketch(int expectedEntries)
+        {
+            int tableSize = Integer.highestOneBit(Math.max(expectedEntries - 1, 1)) << 1;
+            this.table = new long[tableSize];
+            this.tableMask = tableSize - 1;
+            this.sampleSize = 10 * tableSize;
+        }
+
+        int frequency(int hash)
+        {
+            int start = (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++)
+            {
+                int index = indexOf(hash, i);
+                int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        void increment(int hash)
+        {
+            int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++)
+            {
+                added |= incrementAt(indexOf(hash, i), start + i);
+            }
+            if (added && ++size >= sampleSize)
+            {
+                reset();
+            }
+        }
+
+        private boolean incrementAt(int index, int counter)
+        {
+            int offset = counter << 2;
+            long mask = 0xfL << offset;
+            if ((table[index] & mask) != mask)
+            {
+                table[index] += 1L << offset;
+                return true;
+            }
+            return false;
+        }
+
+        private int indexOf(int hash, int depth)
+        {
+            long h = (hash + SEEDS[depth]) * SEEDS[depth];
+            h += h >>> 32;
+            return ((int) h) & tableMask;
+        }
+
+        private void reset()
+        {
+            int odd = 0;
+            for (int i = 0; i < table.length; i++)
+            {
+                odd += Long.bitCount(table[i] & ONE_MASK);
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            size = (size >>> 1) - (odd >>> 2);
+        }
+    }
+
+    /**
+     * Estimates the retained size of cache entries in bytes.
+     */
+    private static final class SizeEstimatingWeigher implements Weigher<Object, Object>
+    {
+        private static final int OBJECT_SIZE = 64;
+        private static final int ENTRY_OVERHEAD = 48;
+
+        @Override
+        public int weigh(Object key, Object value)
+        {
+            long size = ENTRY_OVERHEAD + estimate(key, true) + estimate(value, true);
+            return (int) Math.min(Integer.MAX_VALUE, size);
+        }
+
+        private long estimate(Object obj, boolean descend)
+        {
+            if (obj == null)
+            {
+                return 0;
+            }
+            if (obj instanceof String)
+            {
+                return 40 + ((String) obj).length();
+            }
+            if (obj instanceof Number || obj instanceof Boolean || obj instanceof Character || obj instanceof Enum)
+            {
+                return 16;
+            }
+            if (obj instanceof TransactionalCache.ValueHolder)
+            {
+                return 16 + estimate(((TransactionalCache.ValueHolder<?>) obj).getValue(), descend);
+            }
+            if (!descend)
+            {
+                return OBJECT_SIZE;
+            }
+            if (obj instanceof Map)
+            {
+                long size = 64;
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) obj).entrySet())
+                {
+                    size += 32 + estimate(entry.getKey(), false) + estimate(entry.getValue(), false);
+                }
+                return size;
+            }
+            if (obj instanceof Collection)
+            {
+                long size = 48;
+                for (Object element : (Collection<?>) obj)
+                {
+                    size += 8 + estimate(element, false);
+                }
+                return size;
+            }
+            if (obj.getClass().isArray())
+            {
+                int length = Array.getLength(obj);
+                Class<?> componentType = obj.getClass().getComponentType();
+                return 16 + (long) length * (componentType.isPrimitive() ? 8 : 8 + OBJECT_SIZE);
+            }
+            return OBJECT_SIZE;
+        }
+    }
+}
@@ -32,6 +32,9 @@ import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 
 /**
  * Only to be used within a single transaction/thread.
+ * <p>
+ * Operations are normally recorded one at a time with their timings. Caches that gather
+ * their own counters may instead {@link #record(OpType, long, double) record totals}.
  * 
  * @since 5.0
  * @author Matt Ward
@@ -39,6 +42,7 @@ import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 public class TransactionStats
 {
     private Map<OpType, SummaryStatistics> timings = new HashMap<>();
+    private Map<OpType, OperationStats> totals = new HashMap<>();
     
     /**
      * Cache operation type.
@@ -49,13 +53,40 @@ public class TransactionStats
         GET_MISS,
         PUT,
         REMOVE,
-        CLEAR
+        CLEAR,
+        EVICT,
+        /** A shared cache read answered by the node-local near cache */
+        NEAR_HIT,
+        /** A shared cache read that the node-local near cache could not answer */
+        NEAR_MISS
+    }
+    
+    /**
+     * The proportion of near cache lookups that were answered locally, or <tt>NaN</tt>
+     * if no near cache lookups have been recorded.
+     */
+    public double getNearCacheHitRatio()
+    {
+        long hits = getCount(OpType.NEAR_HIT);
+        long misses = getCount(OpType.NEAR_MISS);
+        return (double) hits / (hits + misses);
     }
     
     public long getCount(OpType op)
     {
         SummaryStatistics stats = getTimings(op);
-        return stats.getN();
+        OperationStats opTotals = totals.get(op);
+        return opTotals == null ? stats.getN() : stats.getN() + opTotals.getCount();
+    }
+    
+    /**
+     * The total time in nanoseconds spent in operations of the given type.
+     */
+    public double getTotalTime(OpType op)
+    {
+        SummaryStatistics stats = getTimings(op);
+        OperationStats opTotals = totals.get(op);
+        return opTotals == null ? stats.getSum() : stats.getSum() + opTotals.getTotalTime();
     }
     
     public SummaryStatistics getTimings(OpType op)
@@ -78,6 +109,23 @@ public class TransactionStats
         double timeTaken = end - start;
         addTiming(op, timeTaken);
     }
+    
+    /**
+     * Record a number of operations at once, without individual timings.
+     * 
+     * @param op        the operation type
+     * @param count     how many operations took place
+     * @param totalTime the total time taken by the operations, in nanoseconds
+     */
+    public void record(OpType op, long count, double totalTime)
+    {
+        if (count < 0)
+        {
+            throw new IllegalArgumentException("Count [" + count + "] may not be negative.");
+        }
+        OperationStats opTotals = totals.get(op);
+        totals.put(op, opTotals == null ? new OperationStats(totalTime, count) : new OperationStats(opTotals, totalTime, count));
+    }
 
     private void addTiming(OpType op, double time)
     {
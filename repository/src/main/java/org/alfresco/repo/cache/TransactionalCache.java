@@ -93,6 +93,10 @@ public class TransactionalCache<K extends Serializable, V extends Object>
     private boolean disableSharedCache;
     /** the shared cache that will get updated after commits */
     private SimpleCache<Serializable, ValueHolder<V>> sharedCache;
+    /** the approximate size limit of the node-local near cache, 0 if there is none */
+    private long nearCacheMaxBytes;
+    /** the node-local tier in front of the shared cache, if enabled */
+    private NearCache<Serializable, ValueHolder<V>> nearCache;
     /** can the cached values be modified */
     private boolean isMutable;
     /** can values be compared using full equality checking */
@@ -181,6 +185,21 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         this.isMutable = isMutable;
     }
 
+    /**
+     * Keep a node-local copy of shared cache values in front of a clustered shared cache,
+     * so that repeated reads do not have to go over the network.  This is only honoured
+     * for {@link #setMutable(boolean) immutable} caches, where a changed value is always
+     * stored against a new (versioned) key: removals made on other cluster members are
+     * not seen by the near cache.
+     * 
+     * @param nearCacheMaxBytes     the approximate memory limit of the near cache
+     *                              or <tt>0</tt> (default) to disable it
+     */
+    public void setNearCacheMaxBytes(long nearCacheMaxBytes)
+    {
+        this.nearCacheMaxBytes = nearCacheMaxBytes;
+    }
+
     /**
      * Allow equality checking of values before they are written to the shared cache on
      * commit.  This allows some caches to bypass unnecessary cache updates when the
@@ -253,6 +272,18 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         {
             sharedCache = NullCache.getInstance();
         }
+        else if (nearCacheMaxBytes > 0)
+        {
+            if (isMutable)
+            {
+                logger.warn("Ignoring the near cache setting for mutable cache: " + name);
+            }
+            else
+            {
+                nearCache = new NearCache<>(sharedCache, nearCacheMaxBytes, name + ".nearCache");
+                sharedCache = nearCache;
+            }
+        }
     }
 
     /**
@@ -486,6 +517,28 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         }
     }
     
+    /**
+     * Fetches a value from the shared cache, recording whether the near cache,
+     * if there is one, was able to answer the request.
+     */
+    private V getSharedValue(Serializable key, TransactionStats stats)
+    {
+        if (nearCache != null)
+        {
+            final long startNanos = System.nanoTime();
+            ValueHolder<V> wrapper = nearCache.getLocal(key);
+            final long endNanos = System.nanoTime();
+            if (wrapper != null)
+            {
+                stats.record(startNanos, endNanos, OpType.NEAR_HIT);
+                stats.record(startNanos, endNanos, OpType.GET_HIT);
+                return wrapper.getValue();
+            }
+            stats.record(startNanos, endNanos, OpType.NEAR_MISS);
+        }
+        return TransactionalCache.getSharedCacheValue(sharedCache, key, stats);
+    }
+    
     /**
      * Values written to the backing cache need proper wrapping and unwrapping
      * 
@@ -644,7 +697,7 @@ public class TransactionalCache<K extends Serializable, V extends Object>
                     V value = null;
                     if (cacheStatsEnabled)
                     {
-                        value = TransactionalCache.getSharedCacheValue(sharedCache, key, txnData.stats);
+                        value = getSharedValue(key, txnData.stats);
                     }
                     else
                     {
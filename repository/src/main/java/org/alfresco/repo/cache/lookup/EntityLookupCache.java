@@ -27,6 +27,12 @@ package org.alfresco.repo.cache.lookup;
 
 import java.io.Serializable;
 import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.domain.control.ControlDAO;
@@ -159,6 +165,48 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
          * @throws UnsupportedOperationException if entity deletion is not supported
          */
         int deleteByValue(V1 value);
+        
+        /**
+         * Find the entities for a batch of keys.  Implementations backed by a database should override
+         * this to fetch all the entities using a single query (e.g. with an <b>IN</b> clause); the default
+         * implementation simply calls {@link #findByKey(Serializable) findByKey} for each key.
+         * 
+         * @param keys          the keys (IDs) used to identify the entities (never <tt>null</tt> or containing <tt>null</tt>)
+         * @return              Returns the entities that exist, in any order.  Keys that do not reference
+         *                      an entity are simply absent from the results.
+         */
+        default List<Pair<K1, V1>> findByKeys(List<K1> keys)
+        {
+            List<Pair<K1, V1>> results = new ArrayList<Pair<K1, V1>>(keys.size());
+            for (K1 key : keys)
+            {
+                Pair<K1, V1> entityPair = findByKey(key);
+                if (entityPair != null)
+                {
+                    results.add(entityPair);
+                }
+            }
+            return results;
+        }
+        
+        /**
+         * Find the entities for a batch of values.  Implementations backed by a database should override
+         * this to fetch all the entities using a single query; the default implementation simply calls
+         * {@link #findByValue(Object) findByValue} for each value.
+         * 
+         * @param values        the values (business objects) used to identify the entities (never <tt>null</tt>)
+         * @return              Returns a list of the same size as the given values, holding the entity
+         *                      for the value at the same position or <tt>null</tt> if no entity matches it
+         */
+        default List<Pair<K1, V1>> findByValues(List<V1> values)
+        {
+            List<Pair<K1, V1>> results = new ArrayList<Pair<K1, V1>>(values.size());
+            for (V1 value : values)
+            {
+                results.add(findByValue(value));
+            }
+            return results;
+        }
     }
     
     /**
@@ -234,10 +282,15 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
      * The cache region that will be used (see {@link CacheRegionKey}) in all the cache keys
      */
     private static final String CACHE_REGION_DEFAULT = "DEFAULT";
+    /**
+     * The default maximum number of keys or values passed to a single bulk lookup
+     */
+    private static final int BATCH_SIZE_DEFAULT = 256;
     
     private final SimpleCache<Serializable, Object> cache;
     private final EntityLookupCallbackDAO<K, V, VK> entityLookup;
     private final String cacheRegion;
+    private int batchSize = BATCH_SIZE_DEFAULT;
 
     /**
      * Construct the lookup cache <b>without any cache</b>.  All calls are passed directly to the
@@ -283,6 +336,22 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
         this.entityLookup = entityLookup;
     }
     
+    /**
+     * Set the maximum number of cache misses that will be resolved by a single call to the
+     * {@link EntityLookupCallbackDAO#findByKeys(List) bulk} lookups.  Database implementations
+     * will generally issue one query per batch.
+     * 
+     * @param batchSize             the batch size (default 256)
+     */
+    public void setBatchSize(int batchSize)
+    {
+        if (batchSize < 1)
+        {
+            throw new IllegalArgumentException("The batch size must be at least 1: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+    
     /**
      * Find the entity associated with the given key.
      * The {@link EntityLookupCallbackDAO#findByKey(Serializable) entity callback} will be used if necessary.
@@ -328,6 +397,91 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
         }
         // Resolve it
         Pair<K, V> entityPair = entityLookup.findByKey(key);
+        cacheFoundByKey(key, entityPair);
+        // Done
+        return entityPair;
+    }
+    
+    /**
+     * Find the entities associated with the given keys.
+     * Keys that are not in the cache are resolved using the
+     * {@link EntityLookupCallbackDAO#findByKeys(List) bulk entity callback}, making one call
+     * per {@link #setBatchSize(int) batch} of cache misses rather than one call per key.
+     * 
+     * @param keys                  The entity keys, which may be valid or invalid (<tt>null</tt> keys not allowed)
+     * @return                      Returns the key-value pairs for the keys that reference an entity, in the
+     *                              order of the given keys (keys that don't reference an entity are left out)
+     */
+    @SuppressWarnings("unchecked")
+    public List<Pair<K, V>> getByKeys(Collection<K> keys)
+    {
+        // Use a linked map to keep the order and to remove duplicates
+        Map<K, Pair<K, V>> entityPairs = new LinkedHashMap<K, Pair<K, V>>(keys.size() * 2);
+        List<K> missingKeys = new ArrayList<K>(keys.size());
+        for (K key : keys)
+        {
+            if (key == null)
+            {
+                throw new IllegalArgumentException("An entity lookup key may not be null");
+            }
+            if (entityPairs.containsKey(key))
+            {
+                continue;
+            }
+            V value = (cache == null) ? null : (V) cache.get(new CacheRegionKey(cacheRegion, key));
+            if (value == null)
+            {
+                missingKeys.add(key);
+                entityPairs.put(key, null);
+            }
+            else if (value.equals(VALUE_NOT_FOUND))
+            {
+                // We checked before
+                entityPairs.put(key, null);
+            }
+            else
+            {
+                entityPairs.put(key, new Pair<K, V>(key, value.equals(VALUE_NULL) ? null : value));
+            }
+        }
+        // Resolve the misses in batches
+        for (int i = 0; i < missingKeys.size(); i += batchSize)
+        {
+            List<K> batch = missingKeys.subList(i, Math.min(i + batchSize, missingKeys.size()));
+            List<Pair<K, V>> foundPairs = entityLookup.findByKeys(batch);
+            for (Pair<K, V> entityPair : foundPairs)
+            {
+                entityPairs.put(entityPair.getFirst(), entityPair);
+            }
+            if (cache != null)
+            {
+                for (K key : batch)
+                {
+                    cacheFoundByKey(key, entityPairs.get(key));
+                }
+            }
+        }
+        // Done
+        List<Pair<K, V>> results = new ArrayList<Pair<K, V>>(entityPairs.size());
+        for (Pair<K, V> entityPair : entityPairs.values())
+        {
+            if (entityPair != null)
+            {
+                results.add(entityPair);
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * Cache the result of a lookup by key, including the absence of an entity
+     * 
+     * @param entityPair            the entity found or <tt>null</tt> if there is none
+     */
+    @SuppressWarnings("unchecked")
+    private void cacheFoundByKey(K key, Pair<K, V> entityPair)
+    {
+        CacheRegionKey keyCacheKey = new CacheRegionKey(cacheRegion, key);
         if (entityPair == null)
         {
             // Cache "not found"
@@ -335,7 +489,7 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
         }
         else
         {
-            value = entityPair.getSecond();
+            V value = entityPair.getSecond();
             // Get the value key
             VK valueKey = (value == null) ? (VK)VALUE_NULL : entityLookup.getValueKey(value);
             // Check if the value has a good key
@@ -349,8 +503,6 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
                     keyCacheKey,
                     (value == null ? VALUE_NULL : value));
         }
-        // Done
-        return entityPair;
     }
     
     /**
@@ -529,6 +681,127 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
         return entityPair;
     }
     
+    /**
+     * Find the entities associated with the given values, creating those that don't exist.
+     * Values already mapped in the cache are resolved with {@link #getByKeys(Collection)}; the rest are
+     * resolved using the {@link EntityLookupCallbackDAO#findByValues(List) bulk entity callback}, one call
+     * per {@link #setBatchSize(int) batch}.  Entities that still don't exist are then created one at a time
+     * using {@link EntityLookupCallbackDAO#createValue(Object)}.
+     * <p/>
+     * Values that have no {@link EntityLookupCallbackDAO#getValueKey(Object) value key}, as well as
+     * <tt>null</tt> values, are handled individually by {@link #getOrCreateByValue(Object)}.
+     * 
+     * @param values                The entity values (<tt>null</tt> elements are allowed)
+     * @return                      Returns the key-value pairs (new or existing and never <tt>null</tt>)
+     *                              in the order of the given values
+     */
+    @SuppressWarnings("unchecked")
+    public List<Pair<K, V>> getOrCreateByValues(List<V> values)
+    {
+        int size = values.size();
+        List<Pair<K, V>> results = new ArrayList<Pair<K, V>>(Collections.<Pair<K, V>>nCopies(size, null));
+        // Positions of the values, grouped by value key, for those that need resolving
+        Map<VK, List<Integer>> positionsByValueKey = new LinkedHashMap<VK, List<Integer>>(size * 2);
+        Map<VK, V> valuesByValueKey = new LinkedHashMap<VK, V>(size * 2);
+        // Values that are already mapped to a key in the cache
+        Map<K, List<Integer>> positionsByKey = new LinkedHashMap<K, List<Integer>>(size * 2);
+        Map<K, VK> valueKeysByKey = new LinkedHashMap<K, VK>(size * 2);
+        for (int i = 0; i < size; i++)
+        {
+            V value = values.get(i);
+            VK valueKey = (value == null) ? null : entityLookup.getValueKey(value);
+            if (valueKey == null)
+            {
+                results.set(i, getOrCreateByValue(value));
+                continue;
+            }
+            if (!valuesByValueKey.containsKey(valueKey))
+            {
+                K key = (cache == null) ? null : (K) cache.get(new CacheRegionValueKey(cacheRegion, valueKey));
+                if (key != null && !key.equals(VALUE_NOT_FOUND))
+                {
+                    addPosition(positionsByKey, key, i);
+                    valueKeysByKey.put(key, valueKey);
+                    continue;
+                }
+                valuesByValueKey.put(valueKey, value);
+            }
+            addPosition(positionsByValueKey, valueKey, i);
+        }
+        // Pick up the entities already mapped by value
+        if (!positionsByKey.isEmpty())
+        {
+            for (Pair<K, V> entityPair : getByKeys(positionsByKey.keySet()))
+            {
+                for (Integer position : positionsByKey.remove(entityPair.getFirst()))
+                {
+                    results.set(position, entityPair);
+                }
+            }
+            // Any left have been removed since they were cached, so look them up again
+            for (Map.Entry<K, List<Integer>> entry : positionsByKey.entrySet())
+            {
+                VK valueKey = valueKeysByKey.get(entry.getKey());
+                for (Integer position : entry.getValue())
+                {
+                    if (!valuesByValueKey.containsKey(valueKey))
+                    {
+                        valuesByValueKey.put(valueKey, values.get(position));
+                    }
+                    addPosition(positionsByValueKey, valueKey, position);
+                }
+            }
+        }
+        // Resolve the rest in batches
+        List<VK> missingValueKeys = new ArrayList<VK>(valuesByValueKey.keySet());
+        for (int i = 0; i < missingValueKeys.size(); i += batchSize)
+        {
+            List<VK> batchValueKeys = missingValueKeys.subList(i, Math.min(i + batchSize, missingValueKeys.size()));
+            List<V> batch = new ArrayList<V>(batchValueKeys.size());
+            for (VK valueKey : batchValueKeys)
+            {
+                batch.add(valuesByValueKey.get(valueKey));
+            }
+            List<Pair<K, V>> foundPairs = entityLookup.findByValues(batch);
+            for (int j = 0; j < batch.size(); j++)
+            {
+                VK valueKey = batchValueKeys.get(j);
+                Pair<K, V> entityPair = foundPairs.get(j);
+                if (entityPair == null)
+                {
+                    // Create it
+                    entityPair = entityLookup.createValue(batch.get(j));
+                }
+                if (cache != null)
+                {
+                    K key = entityPair.getFirst();
+                    V value = entityPair.getSecond();
+                    cache.put(new CacheRegionValueKey(cacheRegion, valueKey), key);
+                    cache.put(
+                            new CacheRegionKey(cacheRegion, key),
+                            (value == null ? VALUE_NULL : value));
+                }
+                for (Integer position : positionsByValueKey.get(valueKey))
+                {
+                    results.set(position, entityPair);
+                }
+            }
+        }
+        // Done
+        return results;
+    }
+    
+    private static <T> void addPosition(Map<T, List<Integer>> positions, T key, int position)
+    {
+        List<Integer> list = positions.get(key);
+        if (list == null)
+        {
+            list = new ArrayList<Integer>(1);
+            positions.put(key, list);
+        }
+        list.add(position);
+    }
+    
     /**
      * Update the entity associated with the given key.
      * The {@link EntityLookupCallbackDAO#updateValue(Serializable, Object)} callback
@@ -26,7 +26,9 @@
 package org.alfresco.repo.content;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -420,6 +422,42 @@ public abstract class AbstractRoutingContentStore implements ContentStore
         return deleted;
     }
 
+    /**
+     * The batch is passed to each writable store in turn so that the underlying stores can
+     * make use of their own bulk delete.  A URL is only reported as deleted if it was deleted
+     * from all the stores.
+     */
+    @Override
+    public Map<String, Throwable> delete(Collection<String> contentUrls)
+    {
+        Map<String, Throwable> failures = new HashMap<>();
+        List<ContentStore> stores = getAllStores();
+        for (ContentStore store : stores)
+        {
+            if (store.isWriteSupported())
+            {
+                Map<String, Throwable> storeFailures = store.delete(contentUrls);
+                for (Map.Entry<String, Throwable> entry : storeFailures.entrySet())
+                {
+                    // Keep the first exception reported against the URL
+                    if (failures.get(entry.getKey()) == null)
+                    {
+                        failures.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        }
+        // Done
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Deleted content URLs from stores: \n" +
+                    "   Stores:  " + stores.size() + "\n" +
+                    "   URLs:    " + contentUrls.size() + "\n" +
+                    "   Failed:  " + failures.size());
+        }
+        return failures;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,309 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * In-memory index of the files held by the {@link ContentCacheImpl}, kept in least recently used order.
+ * <p>
+ * The index is maintained as files are added to, read from and removed from the cache so that the
+ * current usage is known and the least recently used files can be found without visiting the cache
+ * directory tree.  Evicting files therefore costs time in proportion to the number of files evicted
+ * rather than the size of the cache.
+ * <p>
+ * The index can be saved to and loaded from a compact binary journal so that it survives a restart.
+ * 
+ * @see ContentCacheImpl#evict(long)
+ */
+public class CacheIndex
+{
+    private static final int JOURNAL_MAGIC = 0x43494458;    // "CIDX"
+    private static final int JOURNAL_VERSION = 1;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(1024, 0.75f, true);
+    private long usageBytes;
+
+    /**
+     * Record a cache file, replacing any existing entry for the same path.  The file becomes
+     * the most recently used.
+     * 
+     * @param path          absolute path of the cache file
+     * @param contentUrl    the URL of the content that the file caches
+     * @param size          the size of the file in bytes
+     */
+    public synchronized void put(String path, String contentUrl, long size)
+    {
+        put(new Entry(path, contentUrl, size, System.currentTimeMillis()));
+    }
+
+    private void put(Entry entry)
+    {
+        Entry previous = entries.put(entry.getPath(), entry);
+        if (previous != null)
+        {
+            usageBytes -= previous.getSize();
+        }
+        usageBytes += entry.getSize();
+    }
+
+    /**
+     * Mark a cache file as the most recently used.
+     * 
+     * @param path          absolute path of the cache file
+     */
+    public synchronized void touch(String path)
+    {
+        Entry entry = entries.get(path);
+        if (entry != null)
+        {
+            entry.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @param path          absolute path of the cache file
+     * @return              the entry removed or <tt>null</tt> if the file was not indexed
+     */
+    public synchronized Entry remove(String path)
+    {
+        Entry entry = entries.remove(path);
+        if (entry != null)
+        {
+            usageBytes -= entry.getSize();
+        }
+        return entry;
+    }
+
+    /**
+     * Remove the least recently used entries until their combined size reaches the given target
+     * or the index is empty.
+     * 
+     * @param targetBytes   the number of bytes to account for
+     * @return              the entries removed, least recently used first
+     */
+    public synchronized List<Entry> removeLeastRecentlyUsed(long targetBytes)
+    {
+        List<Entry> removed = new ArrayList<Entry>();
+        long removedBytes = 0L;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (removedBytes < targetBytes && iterator.hasNext())
+        {
+            Entry entry = iterator.next();
+            iterator.remove();
+            usageBytes -= entry.getSize();
+            removedBytes += entry.getSize();
+            removed.add(entry);
+        }
+        return removed;
+    }
+
+    /**
+     * Remove the least recently used entries until no more than the given number remain.
+     * 
+     * @param maxEntries    the number of entries to keep
+     * @return              the entries removed, least recently used first
+     */
+    public synchronized List<Entry> trimToSize(int maxEntries)
+    {
+        List<Entry> removed = new ArrayList<Entry>();
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext())
+        {
+            Entry entry = iterator.next();
+            iterator.remove();
+            usageBytes -= entry.getSize();
+            removed.add(entry);
+        }
+        return removed;
+    }
+
+    /**
+     * @return              the combined size of all indexed files in bytes
+     */
+    public synchronized long getUsageBytes()
+    {
+        return usageBytes;
+    }
+
+    /**
+     * @return              the number of indexed files
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public synchronized void clear()
+    {
+        entries.clear();
+        usageBytes = 0L;
+    }
+
+    /**
+     * Write the index to a journal, least recently used entry first.  Paths are written relative
+     * to the cache root to keep the journal compact.
+     * 
+     * @param journal       the file to write, which is replaced atomically
+     * @param cacheRoot     the directory that the indexed paths fall below
+     * @return              the number of entries written
+     */
+    public synchronized int save(File journal, File cacheRoot) throws IOException
+    {
+        String rootPath = cacheRoot.getAbsolutePath() + File.separator;
+        File tempJournal = new File(journal.getPath() + ".tmp");
+        int count = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempJournal))))
+        {
+            out.writeInt(JOURNAL_MAGIC);
+            out.writeInt(JOURNAL_VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries.values())
+            {
+                String path = entry.getPath();
+                out.writeUTF(path.startsWith(rootPath) ? path.substring(rootPath.length()) : path);
+                out.writeUTF(entry.getContentUrl());
+                out.writeLong(entry.getSize());
+                out.writeLong(entry.getLastAccess());
+                count++;
+            }
+        }
+        if (!tempJournal.renameTo(journal))
+        {
+            journal.delete();
+            if (!tempJournal.renameTo(journal))
+            {
+                throw new IOException("Failed to rename cache index journal: " + tempJournal);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Add the entries of a journal written by {@link #save(File, File)} to the index.  Entries
+     * from the journal are treated as less recently used than any entry already indexed.
+     * 
+     * @param journal       the file to read
+     * @param cacheRoot     the directory that the indexed paths fall below
+     * @return              the entries read, least recently used first
+     */
+    public synchronized List<Entry> load(File journal, File cacheRoot) throws IOException
+    {
+        List<Entry> loaded = new ArrayList<Entry>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal))))
+        {
+            if (in.readInt() != JOURNAL_MAGIC || in.readInt() != JOURNAL_VERSION)
+            {
+                throw new IOException("Not a cache index journal: " + journal);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                String path = in.readUTF();
+                File file = new File(path);
+                if (!file.isAbsolute())
+                {
+                    file = new File(cacheRoot, path);
+                }
+                String contentUrl = in.readUTF();
+                long size = in.readLong();
+                long lastAccess = in.readLong();
+                loaded.add(new Entry(file.getAbsolutePath(), contentUrl, size, lastAccess));
+            }
+        }
+        // Keep anything indexed since startup as the most recently used
+        List<Entry> current = new ArrayList<Entry>(entries.values());
+        clear();
+        for (Entry entry : loaded)
+        {
+            put(entry);
+        }
+        for (Entry entry : current)
+        {
+            put(entry);
+        }
+        return loaded;
+    }
+
+    /**
+     * A cache file as recorded by the index.
+     */
+    public static class Entry
+    {
+        private final String path;
+        private final String contentUrl;
+        private final long size;
+        private volatile long lastAccess;
+
+        private Entry(String path, String contentUrl, long size, long lastAccess)
+        {
+            this.path = path;
+            this.contentUrl = contentUrl;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+
+        /**
+         * @return absolute path of the cache file
+         */
+        public String getPath()
+        {
+            return path;
+        }
+
+        public String getContentUrl()
+        {
+            return contentUrl;
+        }
+
+        public long getSize()
+        {
+            return size;
+        }
+
+        public long getLastAccess()
+        {
+            return lastAccess;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "CacheIndex.Entry[path=" + path + ", url=" + contentUrl + ", size=" + size + "]";
+        }
+    }
+}
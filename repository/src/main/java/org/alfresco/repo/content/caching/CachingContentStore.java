@@ -26,7 +26,12 @@
 package org.alfresco.repo.content.caching;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
@@ -59,6 +64,10 @@ import org.springframework.context.ApplicationEventPublisherAware;
  * <p>
  * This store handles the {@link FileContentStore#SPOOF_PROTOCOL} and can be used to wrap stores
  * that do not handle the protocol out of the box e.g. the S3 connector's store.
+ * <p>
+ * With {@link #setAsyncCacheFill(boolean) asyncCacheFill} set, a cache miss is answered straight from the backing
+ * store while the content is copied into the cache in the background, so the first reader does not wait for the copy.
+ * Only one copy is made per content URL at a time. Content can also be {@link #prefetch(Collection) prefetched}.
  * 
  * @author Matt Ward
  */
@@ -75,6 +84,10 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
     private int maxCacheTries = 2;
     private ApplicationEventPublisher eventPublisher;
     private String beanName;
+    private boolean asyncCacheFill;
+    private Executor cacheFillExecutor;
+    private final Map<String, Boolean> pendingFills = new ConcurrentHashMap<>();
+    private final CachingContentStoreMetrics metrics = new CachingContentStoreMetrics();
     
     static
     {
@@ -188,8 +201,90 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
             readLock.unlock();
         }
         
+        if (asyncCacheFill && cacheFillExecutor != null)
+        {
+            // Stream from the backing store while the cache is filled in the background
+            ContentReader backingStoreReader = backingStore.getReader(contentUrl);
+            scheduleCacheFill(contentUrl);
+            return backingStoreReader;
+        }
         return cacheAndRead(contentUrl);
     }    
+
+    /**
+     * Copies the content items into the cache in the background, unless they are already cached or being cached.
+     * Does nothing if no {@link #setCacheFillExecutor(Executor) cacheFillExecutor} is set.
+     * 
+     * @param contentUrls the URLs of the content to cache
+     */
+    public void prefetch(Collection<String> contentUrls)
+    {
+        if (cacheFillExecutor == null)
+        {
+            return;
+        }
+        for (String contentUrl : contentUrls)
+        {
+            if (contentUrl.startsWith(FileContentStore.SPOOF_PROTOCOL) || pendingFills.containsKey(contentUrl)
+                    || cache.contains(contentUrl))
+            {
+                continue;
+            }
+            if (scheduleCacheFill(contentUrl))
+            {
+                metrics.recordPrefetch();
+            }
+        }
+    }
+
+    /**
+     * Schedules a background copy of the content into the cache, unless one is already pending for the URL.
+     * 
+     * @return <tt>true</tt> if a copy was scheduled
+     */
+    private boolean scheduleCacheFill(final String url)
+    {
+        if (pendingFills.putIfAbsent(url, Boolean.TRUE) != null)
+        {
+            metrics.recordCoalescedRead();
+            return false;
+        }
+        try
+        {
+            cacheFillExecutor.execute(() -> {
+                try
+                {
+                    if (!cache.contains(url))
+                    {
+                        cacheAndRead(url);
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    metrics.recordFailedFill();
+                    if (log.isDebugEnabled())
+                    {
+                        log.debug("Failed to cache content in the background: " + url, e);
+                    }
+                }
+                finally
+                {
+                    pendingFills.remove(url);
+                }
+            });
+            metrics.recordBackgroundFill();
+            return true;
+        }
+        catch (RejectedExecutionException e)
+        {
+            pendingFills.remove(url);
+            if (log.isDebugEnabled())
+            {
+                log.debug("Cache fill queue is full, not caching: " + url);
+            }
+            return false;
+        }
+    }
     
     
     private ContentReader cacheAndRead(String url)
@@ -263,13 +358,17 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
         {
             if (!cache.contains(url))
             {
+                long start = System.nanoTime();
                 if (cache.put(url, backingStoreReader))
                 {
+                    metrics.recordFill(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
                     reader = cache.getReader(url);
                 }
             }
             else
             {
+                // Another reader cached the content while we were waiting for the lock
+                metrics.recordCoalescedRead();
                 reader = cache.getReader(url);
             }
         }
@@ -485,6 +584,37 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
         return this.quota;
     }
 
+    /**
+     * Answer cache misses from the backing store and fill the cache in the background, rather than making the reader
+     * wait for the content to be copied into the cache. Requires a {@link #setCacheFillExecutor(Executor)}.
+     * 
+     * @param asyncCacheFill boolean
+     */
+    public void setAsyncCacheFill(boolean asyncCacheFill)
+    {
+        this.asyncCacheFill = asyncCacheFill;
+    }
+
+    public boolean isAsyncCacheFill()
+    {
+        return this.asyncCacheFill;
+    }
+
+    /**
+     * Sets the executor used for background cache fills and prefetching.
+     * 
+     * @param cacheFillExecutor Executor
+     */
+    public void setCacheFillExecutor(Executor cacheFillExecutor)
+    {
+        this.cacheFillExecutor = cacheFillExecutor;
+    }
+
+    public CachingContentStoreMetrics getMetrics()
+    {
+        return this.metrics;
+    }
+
     @Override
     public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher)
     {
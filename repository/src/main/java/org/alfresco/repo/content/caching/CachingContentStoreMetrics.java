@@ -0,0 +1,140 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache fill figures of a {@link CachingContentStore}: how long copying content from the backing store into the
+ * cache takes and how many reads were served without starting a copy of their own because one was already under
+ * way for the same content URL.
+ * <p>
+ * The figures are for this server only and are kept from startup.
+ */
+public class CachingContentStoreMetrics
+{
+    private final LongAdder fills = new LongAdder();
+    private final LongAdder failedFills = new LongAdder();
+    private final LongAdder totalFillMillis = new LongAdder();
+    private final AtomicLong maxFillMillis = new AtomicLong();
+    private final LongAdder coalescedReads = new LongAdder();
+    private final LongAdder backgroundFills = new LongAdder();
+    private final LongAdder prefetches = new LongAdder();
+
+    void recordFill(long millis)
+    {
+        fills.increment();
+        totalFillMillis.add(millis);
+        maxFillMillis.accumulateAndGet(millis, Math::max);
+    }
+
+    void recordFailedFill()
+    {
+        failedFills.increment();
+    }
+
+    void recordCoalescedRead()
+    {
+        coalescedReads.increment();
+    }
+
+    void recordBackgroundFill()
+    {
+        backgroundFills.increment();
+    }
+
+    void recordPrefetch()
+    {
+        prefetches.increment();
+    }
+
+    /**
+     * @return the number of content items copied into the cache
+     */
+    public long getFills()
+    {
+        return fills.sum();
+    }
+
+    /**
+     * @return the number of background copies into the cache that failed
+     */
+    public long getFailedFills()
+    {
+        return failedFills.sum();
+    }
+
+    /**
+     * @return the average time taken to copy a content item into the cache, in milliseconds
+     */
+    public long getAverageFillMillis()
+    {
+        long count = fills.sum();
+        return count == 0 ? 0 : totalFillMillis.sum() / count;
+    }
+
+    /**
+     * @return the longest time taken to copy a content item into the cache, in milliseconds
+     */
+    public long getMaxFillMillis()
+    {
+        return maxFillMillis.get();
+    }
+
+    /**
+     * @return the number of reads that relied on a copy already started for the same content URL
+     */
+    public long getCoalescedReads()
+    {
+        return coalescedReads.sum();
+    }
+
+    /**
+     * @return the number of copies scheduled in the background
+     */
+    public long getBackgroundFills()
+    {
+        return backgroundFills.sum();
+    }
+
+    /**
+     * @return the number of content items scheduled for prefetching
+     */
+    public long getPrefetches()
+    {
+        return prefetches.sum();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CachingContentStoreMetrics[fills=" + getFills() + ", failedFills=" + getFailedFills()
+                + ", averageFillMillis=" + getAverageFillMillis() + ", maxFillMillis=" + getMaxFillMillis()
+                + ", coalescedReads=" + getCoalescedReads() + ", backgroundFills=" + getBackgroundFills()
+                + ", prefetches=" + getPrefetches() + "]";
+    }
+}
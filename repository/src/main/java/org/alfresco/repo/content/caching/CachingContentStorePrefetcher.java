@@ -0,0 +1,223 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.model.RenditionModel;
+import org.alfresco.repo.content.ContentServicePolicies.OnContentReadPolicy;
+import org.alfresco.repo.policy.JavaBehaviour;
+import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.version.Version;
+import org.alfresco.service.cmr.version.VersionHistory;
+import org.alfresco.service.cmr.version.VersionService;
+import org.alfresco.service.namespace.RegexQNamePattern;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.PropertyCheck;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Warms a {@link CachingContentStore} when a node's content is read: the content of the node's renditions and of its
+ * most recent versions is copied into the cache in the background, as these are likely to be asked for next.
+ */
+public class CachingContentStorePrefetcher implements OnContentReadPolicy, InitializingBean
+{
+    private static final Log log = LogFactory.getLog(CachingContentStorePrefetcher.class);
+
+    private PolicyComponent policyComponent;
+    private NodeService nodeService;
+    private VersionService versionService;
+    private TransactionService transactionService;
+    private CachingContentStore cachingContentStore;
+    private Executor executor;
+    private boolean enabled;
+    private boolean prefetchRenditions = true;
+    private int maxVersions = 3;
+    private final Map<NodeRef, Boolean> pendingNodes = new ConcurrentHashMap<>();
+
+    public void setPolicyComponent(PolicyComponent policyComponent)
+    {
+        this.policyComponent = policyComponent;
+    }
+
+    public void setNodeService(NodeService nodeService)
+    {
+        this.nodeService = nodeService;
+    }
+
+    public void setVersionService(VersionService versionService)
+    {
+        this.versionService = versionService;
+    }
+
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    public void setCachingContentStore(CachingContentStore cachingContentStore)
+    {
+        this.cachingContentStore = cachingContentStore;
+    }
+
+    /**
+     * @param executor the executor that looks up the content to prefetch
+     */
+    public void setExecutor(Executor executor)
+    {
+        this.executor = executor;
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public void setPrefetchRenditions(boolean prefetchRenditions)
+    {
+        this.prefetchRenditions = prefetchRenditions;
+    }
+
+    /**
+     * @param maxVersions the number of most recent versions to prefetch, <tt>0</tt> for none
+     */
+    public void setMaxVersions(int maxVersions)
+    {
+        this.maxVersions = maxVersions;
+    }
+
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "policyComponent", policyComponent);
+        PropertyCheck.mandatory(this, "nodeService", nodeService);
+        PropertyCheck.mandatory(this, "versionService", versionService);
+        PropertyCheck.mandatory(this, "transactionService", transactionService);
+        PropertyCheck.mandatory(this, "cachingContentStore", cachingContentStore);
+        PropertyCheck.mandatory(this, "executor", executor);
+
+        if (enabled)
+        {
+            policyComponent.bindClassBehaviour(OnContentReadPolicy.QNAME, ContentModel.TYPE_CONTENT,
+                    new JavaBehaviour(this, "onContentRead", JavaBehaviour.NotificationFrequency.EVERY_EVENT));
+        }
+    }
+
+    @Override
+    public void onContentRead(final NodeRef nodeRef)
+    {
+        if (pendingNodes.putIfAbsent(nodeRef, Boolean.TRUE) != null)
+        {
+            return;
+        }
+        try
+        {
+            executor.execute(() -> {
+                try
+                {
+                    List<String> contentUrls = AuthenticationUtil.runAsSystem(() ->
+                            transactionService.getRetryingTransactionHelper().doInTransaction(
+                                    () -> getRelatedContentUrls(nodeRef), true, true));
+                    cachingContentStore.prefetch(contentUrls);
+                }
+                catch (RuntimeException e)
+                {
+                    if (log.isDebugEnabled())
+                    {
+                        log.debug("Failed to prefetch content related to " + nodeRef, e);
+                    }
+                }
+                finally
+                {
+                    pendingNodes.remove(nodeRef);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            pendingNodes.remove(nodeRef);
+        }
+    }
+
+    /**
+     * Gets the content URLs of the renditions and the most recent versions of a node.
+     * 
+     * @param nodeRef the node that was read
+     * @return the content URLs to prefetch
+     */
+    List<String> getRelatedContentUrls(NodeRef nodeRef)
+    {
+        List<String> contentUrls = new ArrayList<>();
+        if (!nodeService.exists(nodeRef))
+        {
+            return contentUrls;
+        }
+        if (prefetchRenditions)
+        {
+            for (ChildAssociationRef rendition : nodeService.getChildAssocs(nodeRef, RenditionModel.ASSOC_RENDITION, RegexQNamePattern.MATCH_ALL))
+            {
+                addContentUrl(contentUrls, rendition.getChildRef());
+            }
+        }
+        if (maxVersions > 0)
+        {
+            VersionHistory versionHistory = versionService.getVersionHistory(nodeRef);
+            if (versionHistory != null)
+            {
+                // Versions are most recent first
+                Iterator<Version> versions = versionHistory.getAllVersions().iterator();
+                for (int i = 0; i < maxVersions && versions.hasNext(); i++)
+                {
+                    addContentUrl(contentUrls, versions.next().getFrozenStateNodeRef());
+                }
+            }
+        }
+        return contentUrls;
+    }
+
+    private void addContentUrl(List<String> contentUrls, NodeRef nodeRef)
+    {
+        Object content = nodeService.getProperty(nodeRef, ContentModel.PROP_CONTENT);
+        if (content instanceof ContentData && ((ContentData) content).getContentUrl() != null)
+        {
+            contentUrls.add(((ContentData) content).getContentUrl());
+        }
+    }
+}
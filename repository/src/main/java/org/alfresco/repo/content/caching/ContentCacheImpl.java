@@ -26,6 +26,7 @@
 package org.alfresco.repo.content.caching;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
@@ -40,6 +41,7 @@ import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentStreamListener;
 import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.Deleter;
 import org.alfresco.util.GUID;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -49,6 +51,10 @@ import org.apache.commons.logging.LogFactory;
  * is stored on disk in the location specified by {@link #cacheRoot}.
  * <p>
  * The in-memory lookup table is provided by a SimpleCache implementation.
+ * <p>
+ * The cache files are also tracked by a {@link CacheIndex} in least recently used order, so that
+ * space can be recovered by {@link #evict(long) evicting} files without walking the cache directory.
+ * The index is saved to a journal in the cache root on {@link #shutdown()} and reloaded on {@link #init()}.
  * 
  * @author Matt Ward
  */
@@ -57,8 +63,78 @@ public class ContentCacheImpl implements ContentCache
     private static final Log log = LogFactory.getLog(ContentCacheImpl.class);
     private static final String CACHE_FILE_EXT = ".bin";
     private static final String CACHE_FILE_TEMP_EXT = ".tmp";
+    private static final String CACHE_INDEX_FILENAME = "cache-index.bin";
     private File cacheRoot;
     private SimpleCache<Key, String> memoryStore;
+    private final CacheIndex index = new CacheIndex();
+    private int maxIndexEntries = 0;
+    
+    
+    /**
+     * Lifecycle method. Reloads the cache index saved by {@link #shutdown()}, making the
+     * files recorded there available to readers again.
+     */
+    public void init()
+    {
+        File journal = new File(cacheRoot, CACHE_INDEX_FILENAME);
+        if (!journal.exists())
+        {
+            if (log.isInfoEnabled())
+            {
+                log.info("No cache index found (" + journal + "); files cached before the restart will be swept by the cleaner.");
+            }
+            return;
+        }
+        try
+        {
+            List<CacheIndex.Entry> entries = index.load(journal, cacheRoot);
+            for (CacheIndex.Entry entry : entries)
+            {
+                Key urlKey = Key.forUrl(entry.getContentUrl());
+                if (!memoryStore.contains(urlKey))
+                {
+                    memoryStore.put(urlKey, entry.getPath());
+                    memoryStore.put(Key.forCacheFile(entry.getPath()), entry.getContentUrl());
+                }
+            }
+            enforceMaxIndexEntries();
+            if (log.isInfoEnabled())
+            {
+                log.info("Loaded cache index: " + entries.size() + " files, " + index.getUsageBytes() + " bytes.");
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            index.clear();
+            log.warn("Failed to load cache index " + journal + "; files cached before the restart will be swept by the cleaner.", e);
+        }
+        finally
+        {
+            // The index is only valid up to the point it was saved
+            journal.delete();
+        }
+    }
+    
+    
+    /**
+     * Lifecycle method. Saves the cache index so that it can be reloaded by {@link #init()}.
+     */
+    public void shutdown()
+    {
+        File journal = new File(cacheRoot, CACHE_INDEX_FILENAME);
+        try
+        {
+            int count = index.save(journal, cacheRoot);
+            if (log.isInfoEnabled())
+            {
+                log.info("Saved cache index: " + count + " files to " + journal);
+            }
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to save cache index " + journal, e);
+        }
+    }
     
     
     @Override
@@ -128,6 +204,7 @@ public class ContentCacheImpl implements ContentCache
             File cacheFile = new File(path);
             if (cacheFile.exists())
             {
+                index.touch(path);
                 return new FileContentReader(cacheFile, contentUrl);
             }
         }
@@ -157,6 +234,93 @@ public class ContentCacheImpl implements ContentCache
     {
         memoryStore.put(Key.forUrl(contentUrl), cacheFile.getAbsolutePath());
         memoryStore.put(Key.forCacheFile(cacheFile), contentUrl);
+        index.put(cacheFile.getAbsolutePath(), contentUrl, cacheFile.length());
+        enforceMaxIndexEntries();
+    }
+    
+    private void enforceMaxIndexEntries()
+    {
+        if (maxIndexEntries > 0 && index.size() > maxIndexEntries)
+        {
+            for (CacheIndex.Entry entry : index.trimToSize(maxIndexEntries))
+            {
+                deleteEvicted(entry);
+            }
+        }
+    }
+    
+    /**
+     * Remove the least recently used files from the cache until at least <code>targetBytes</code>
+     * have been recovered or no indexed files remain.  The time taken depends upon the number of
+     * files evicted, not the size of the cache.
+     * 
+     * @param targetBytes the amount of space to recover
+     * @return the index entries of the files that were deleted
+     */
+    public List<CacheIndex.Entry> evict(long targetBytes)
+    {
+        List<CacheIndex.Entry> evicted = new ArrayList<CacheIndex.Entry>();
+        for (CacheIndex.Entry entry : index.removeLeastRecentlyUsed(targetBytes))
+        {
+            if (deleteEvicted(entry))
+            {
+                evicted.add(entry);
+            }
+        }
+        return evicted;
+    }
+    
+    private boolean deleteEvicted(CacheIndex.Entry entry)
+    {
+        File cacheFile = new File(entry.getPath());
+        Key urlKey = Key.forUrl(entry.getContentUrl());
+        // The URL may have been cached again in a different file
+        if (entry.getPath().equals(memoryStore.get(urlKey)))
+        {
+            memoryStore.remove(urlKey);
+        }
+        memoryStore.remove(Key.forCacheFile(cacheFile));
+        new CacheFileProps(cacheFile).delete();
+        if (cacheFile.delete())
+        {
+            Deleter.deleteEmptyParents(cacheFile, cacheRoot);
+            if (log.isTraceEnabled())
+            {
+                log.trace("Evicted cache file: " + entry);
+            }
+            return true;
+        }
+        else if (cacheFile.exists())
+        {
+            log.warn("Failed to delete evicted cache file: " + cacheFile);
+        }
+        return false;
+    }
+    
+    /**
+     * Stop tracking a cache file that has been deleted by other means, e.g. by the cleaner.
+     * 
+     * @param cacheFile File
+     */
+    public void removeFromIndex(File cacheFile)
+    {
+        index.remove(cacheFile.getAbsolutePath());
+    }
+    
+    /**
+     * @return the combined size of the files tracked by the cache index
+     */
+    public long getIndexedUsageBytes()
+    {
+        return index.getUsageBytes();
+    }
+    
+    /**
+     * @return the number of files tracked by the cache index
+     */
+    public int getIndexedFileCount()
+    {
+        return index.size();
     }
     
     /**
@@ -193,6 +357,7 @@ public class ContentCacheImpl implements ContentCache
     public void deleteFile(String url)
     {
         File cacheFile = new File(getCacheFilePath(url));
+        index.remove(cacheFile.getAbsolutePath());
         cacheFile.delete();
     }
 
@@ -307,6 +472,17 @@ public class ContentCacheImpl implements ContentCache
         this.memoryStore = memoryStore;
     }
     
+    /**
+     * Limit the number of files tracked by the cache index, and so the memory it uses. When the limit
+     * is exceeded the least recently used files are evicted from the cache.
+     * 
+     * @param maxIndexEntries the maximum number of cache files, 0 for no limit
+     */
+    public void setMaxIndexEntries(int maxIndexEntries)
+    {
+        this.maxIndexEntries = maxIndexEntries;
+    }
+    
     /**
      * Specify the directory where cache files will be written.
      * 
@@ -29,6 +29,7 @@ import java.io.File;
 import java.util.Date;
 
 import org.alfresco.repo.content.caching.CacheFileProps;
+import org.alfresco.repo.content.caching.CacheIndex;
 import org.alfresco.repo.content.caching.ContentCacheImpl;
 import org.alfresco.repo.content.caching.FileHandler;
 import org.alfresco.repo.content.caching.quota.UsageTracker;
@@ -42,6 +43,10 @@ import org.springframework.context.ApplicationEventPublisherAware;
 /**
  * Cleans up redundant cache files from the cached content file store. Once references to cache files are
  * no longer in the in-memory cache, the binary content files can be removed.
+ * <p>
+ * When asked to recover a specific amount of space, the least recently used files known to the
+ * {@link ContentCacheImpl#evict(long) cache index} are removed first; the cache directory is only
+ * walked if that does not recover enough.
  * 
  * @author Matt Ward
  */
@@ -122,12 +127,28 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
         }
         resetStats();
         timeStarted = new Date();
-        cache.processFiles(this);
+        boolean swept = true;
+        if (targetReductionBytes > 0)
+        {
+            evictIndexedFiles();
+            swept = sizeFilesDeleted < targetReductionBytes;
+        }
+        if (swept)
+        {
+            cache.processFiles(this);
+        }
         timeFinished = new Date(); 
         
         if (usageTracker != null)
         {
-            usageTracker.setCurrentUsageBytes(newDiskUsage);
+            if (swept)
+            {
+                usageTracker.setCurrentUsageBytes(newDiskUsage);
+            }
+            else
+            {
+                usageTracker.addUsageBytes(-sizeFilesDeleted);
+            }
         }
         
         if (log.isInfoEnabled())
@@ -157,6 +178,25 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
     }
     
     
+    /**
+     * Remove the least recently used files known to the cache index, counting them towards the
+     * target reduction.
+     */
+    private void evictIndexedFiles()
+    {
+        for (CacheIndex.Entry entry : cache.evict(targetReductionBytes))
+        {
+            numFilesDeleted++;
+            sizeFilesDeleted += entry.getSize();
+        }
+        if (log.isDebugEnabled())
+        {
+            log.debug("Evicted " + numFilesDeleted + " indexed cache files (" + sizeFilesDeleted +
+                        " bytes), target: " + targetReductionBytes + " bytes");
+        }
+    }
+    
+    
     private void resetStats()
     {
         newDiskUsage = 0;
@@ -330,6 +370,7 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
             }
             numFilesDeleted++;
             sizeFilesDeleted += fileSize;
+            cache.removeFromIndex(cacheFile);
             Deleter.deleteEmptyParents(cacheFile, cache.getCacheRoot());
         }
         else
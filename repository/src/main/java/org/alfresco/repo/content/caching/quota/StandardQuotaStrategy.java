@@ -52,6 +52,10 @@ import org.apache.commons.logging.LogFactory;
  * Upon startup, if the cache-usage.ser file exists then the current usage is seeded with that value and the cleaner
  * is invoked in a new thread so that the value can be updated more accurately (perhaps some files were deleted
  * manually after shutdown for example).
+ * <p>
+ * When the cache's index of files holds enough content to bring usage back down to targetUsagePct, reaching a
+ * threshold runs the cleaner in aggressive mode so that the least recently used files are evicted straight away
+ * rather than waiting for a walk of the whole cache.
  * 
  * @author Matt Ward
  */
@@ -231,6 +235,11 @@ public class StandardQuotaStrategy implements QuotaManagerStrategy, UsageTracker
             long targetReductionBytes = (long) (((double) targetUsagePct / 100) * maxUsageBytes);
             cleaner.executeAggressive(reason, targetReductionBytes);                    
         }
+        else if (canEvictToTarget())
+        {
+            // Evicting indexed files is cheap, so recover the space now rather than after a full sweep
+            cleaner.executeAggressive(reason, getUsageAboveTargetBytes());
+        }
         else
         {
             long timePassedFromLastClean = System.currentTimeMillis() - lastCleanupStart.get();
@@ -249,6 +258,20 @@ public class StandardQuotaStrategy implements QuotaManagerStrategy, UsageTracker
         }
     }
     
+    /**
+     * @return true if the cache index tracks enough content to bring usage down to targetUsagePct.
+     */
+    private boolean canEvictToTarget()
+    {
+        long usageAboveTarget = getUsageAboveTargetBytes();
+        return cache != null && usageAboveTarget > 0 && cache.getIndexedUsageBytes() >= usageAboveTarget;
+    }
+    
+    private long getUsageAboveTargetBytes()
+    {
+        return getCurrentUsageBytes() - (long) (((double) targetUsagePct / 100) * maxUsageBytes);
+    }
+    
     /**
      * Run a non-aggressive clean up job in a new thread.
      * 
@@ -28,15 +28,23 @@ package org.alfresco.repo.content.cleanup;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.domain.contentdata.ContentDataDAO;
 import org.alfresco.repo.domain.contentdata.ContentDataDAO.ContentUrlHandler;
 import org.alfresco.repo.lock.JobLockService;
 import org.alfresco.repo.lock.JobLockService.JobLockRefreshCallback;
 import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
 import org.alfresco.service.cmr.repository.ContentService;
@@ -44,6 +52,7 @@ import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
 import org.alfresco.util.VmShutdownListener;
 import org.alfresco.util.VmShutdownListener.VmShutdownException;
 import org.apache.commons.logging.Log;
@@ -126,11 +135,13 @@ public class ContentStoreCleaner
     private TransactionService transactionService;
     private int protectDays;
     private int batchSize;
+    private int workerThreads;
     private DeleteFailureAction deletionFailureAction;
     
     public ContentStoreCleaner()
     {
         this.batchSize = 1000;
+        this.workerThreads = 1;
         this.protectDays = 7;
         this.deletionFailureAction = DeleteFailureAction.IGNORE;
     }
@@ -204,6 +215,19 @@ public class ContentStoreCleaner
         this.batchSize = batchSize;
     }
 
+    /**
+     * Set the number of threads that delete orphaned content concurrently.  Each thread
+     * processes its own contiguous range of orphan IDs, one {@link #setBatchSize(int) batch}
+     * per transaction.  The default is 1 i.e. batches are processed sequentially by the
+     * thread running the job.
+     * 
+     * @param workerThreads     the number of threads deleting orphaned content
+     */
+    public void setWorkerThreads(int workerThreads)
+    {
+        this.workerThreads = workerThreads;
+    }
+
     /**
      * Set the action to take in the event that an orphaned binary failed to get deleted.
      * The default is {@link DeleteFailureAction#IGNORE}.
@@ -240,6 +264,14 @@ public class ContentStoreCleaner
         {
             throw new AlfrescoRuntimeException("Property 'protectDays' must be 0 or greater (0 is not recommended)");
         }
+        if (batchSize < 1)
+        {
+            throw new AlfrescoRuntimeException("Property 'batchSize' must be 1 or greater");
+        }
+        if (workerThreads < 1)
+        {
+            throw new AlfrescoRuntimeException("Property 'workerThreads' must be 1 or greater");
+        }
         else if (protectDays == 0)
         {
             logger.warn(
@@ -304,7 +336,7 @@ public class ContentStoreCleaner
         {
             logger.debug("Content store cleanup started.");
             lockToken = acquireLock(lockCallback);
-            executeInternal();
+            executeInternal(lockCallback);
             // Done
             if (logger.isDebugEnabled())
             {
@@ -333,33 +365,70 @@ public class ContentStoreCleaner
         }
     }
     
-    private void executeInternal()
+    private void executeInternal(LockCallback lockCallback)
     {
         final long maxOrphanTime = System.currentTimeMillis() - (protectDays * 24 * 3600 * 1000L);
         // execute in READ-WRITE txn
-        RetryingTransactionCallback<Long> getAndDeleteWork = new RetryingTransactionCallback<Long>()
+        RetryingTransactionCallback<Integer> getAndDeleteWork = new RetryingTransactionCallback<Integer>()
         {
-            public Long execute() throws Exception
+            public Integer execute() throws Exception
             {
                 return cleanBatch(maxOrphanTime, batchSize);
             };
         };
-        while (true)
+        ExecutorService workers = null;
+        if (workerThreads > 1)
         {
-            Long lastProcessedOrphanId = transactionService.getRetryingTransactionHelper().doInTransaction(getAndDeleteWork);
-            if (vmShutdownListener.isVmShuttingDown())
+            TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+            threadFactory.setThreadDaemon(true);
+            threadFactory.setNamePrefix("ContentStoreCleaner");
+            workers = Executors.newFixedThreadPool(workerThreads, threadFactory);
+        }
+        long startTime = System.currentTimeMillis();
+        long removedCount = 0L;
+        try
+        {
+            while (true)
             {
-                throw new VmShutdownException();
+                if (!lockCallback.isActive())
+                {
+                    // Another process may now be cleaning up, so leave the rest to it
+                    logger.warn("Content store cleanup lost its lock and will stop: " + LOCK_QNAME);
+                    break;
+                }
+                int processedCount = (workers == null)
+                        ? transactionService.getRetryingTransactionHelper().doInTransaction(getAndDeleteWork)
+                        : cleanBatches(maxOrphanTime, workers, lockCallback);
+                removedCount += processedCount;
+                if (vmShutdownListener.isVmShuttingDown())
+                {
+                    throw new VmShutdownException();
+                }
+                if (processedCount == 0)
+                {
+                    // There is no more to process
+                    break;
+                }
+                // There is still more to delete, so continue
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("   Removed " + processedCount + " orphaned content URLs (" + removedCount + " in total)");
+                }
             }
-            if (lastProcessedOrphanId == null)
+        }
+        finally
+        {
+            if (workers != null)
             {
-                // There is no more to process
-                break;
+                workers.shutdownNow();
             }
-            // There is still more to delete, so continue
-            if (logger.isDebugEnabled())
+            // Report the throughput, even if the run was cut short
+            long duration = System.currentTimeMillis() - startTime;
+            if (removedCount > 0 && logger.isInfoEnabled())
             {
-                logger.debug("   Removed orphaned content URLs up orphan time " + new Date(lastProcessedOrphanId));
+                logger.info(String.format(
+                        "Content store cleanup removed %d orphaned content URLs in %d ms (%.1f deletions/s, %d worker threads)",
+                        removedCount, duration, removedCount * 1000.0 / Math.max(duration, 1L), workerThreads));
             }
         }
         // Done
@@ -390,57 +459,162 @@ public class ContentStoreCleaner
      * 
      * @param maxTimeExclusive      the max orphan time (exclusive)
      * @param batchSize             the maximum number of orphans to process
-     * @return                      Returns the last processed orphan ID or <tt>null</tt> if nothing was processed
+     * @return                      Returns the number of orphans processed (0 if there was nothing to process)
      */
-    private Long cleanBatch(final long maxTimeExclusive, final int batchSize)
+    private int cleanBatch(final long maxTimeExclusive, final int batchSize)
     {
         // Get a bunch of cleanable URLs
-        final TreeMap<Long, String> urlsById = new TreeMap<Long, String>();
-        ContentUrlHandler contentUrlHandler = new ContentUrlHandler()
+        TreeMap<Long, String> urlsById = getOrphanedContentUrls(maxTimeExclusive, batchSize);
+        
+        // Shortcut, if necessary
+        if (urlsById.size() == 0)
         {
-            @Override
-            public void handle(Long id, String contentUrl, Long orphanTime)
+            return 0;
+        }
+        
+        return deleteOrphans(urlsById);
+    }
+    
+    /**
+     * Fetches enough orphans for all the worker threads in a single read and splits them into
+     * contiguous ID ranges of {@link #setBatchSize(int) batch size}.  Each range is then deleted
+     * by a worker in its own transaction.  The orphan query has no ordering or lower bound, so
+     * the ranges are taken from the window of IDs fetched rather than queried directly.
+     * 
+     * @param maxTimeExclusive      the max orphan time (exclusive)
+     * @param workers               the threads to delete the ranges on
+     * @param lockCallback          used to stop the workers if the job lock is lost
+     * @return                      Returns the number of orphans processed (0 if there was nothing to process)
+     */
+    private int cleanBatches(final long maxTimeExclusive, ExecutorService workers, final LockCallback lockCallback)
+    {
+        final RetryingTransactionHelper txnHelper = transactionService.getRetryingTransactionHelper();
+        RetryingTransactionCallback<TreeMap<Long, String>> getWork = new RetryingTransactionCallback<TreeMap<Long, String>>()
+        {
+            public TreeMap<Long, String> execute() throws Exception
             {
-                urlsById.put(id, contentUrl);
-            }
+                return getOrphanedContentUrls(maxTimeExclusive, batchSize * workerThreads);
+            };
         };
-        // Get a bunch of cleanable URLs
-        contentDataDAO.getContentUrlsOrphaned(contentUrlHandler, maxTimeExclusive, batchSize);
+        TreeMap<Long, String> urlsById = txnHelper.doInTransaction(getWork, true);
         
         // Shortcut, if necessary
         if (urlsById.size() == 0)
         {
-            return null;
+            return 0;
         }
         
-        // Compile list of IDs and do a mass delete, recording the IDs to find the largest
-        Long lastId = urlsById.lastKey();
+        // The workers inherit the job's user (if any) so that they see the same stores
+        final String runAsUser = AuthenticationUtil.getRunAsUser();
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        Long[] ids = urlsById.keySet().toArray(new Long[urlsById.size()]);
+        for (int i = 0; i < ids.length; i += batchSize)
+        {
+            final SortedMap<Long, String> range = (i + batchSize < ids.length)
+                    ? urlsById.subMap(ids[i], ids[i + batchSize])
+                    : urlsById.tailMap(ids[i]);
+            final RetryingTransactionCallback<Integer> deleteWork = new RetryingTransactionCallback<Integer>()
+            {
+                public Integer execute() throws Exception
+                {
+                    return deleteOrphans(range);
+                };
+            };
+            results.add(workers.submit(() ->
+            {
+                if (!lockCallback.isActive() || vmShutdownListener.isVmShuttingDown())
+                {
+                    return 0;
+                }
+                if (runAsUser == null)
+                {
+                    return txnHelper.doInTransaction(deleteWork, false, true);
+                }
+                return AuthenticationUtil.runAs(() -> txnHelper.doInTransaction(deleteWork, false, true), runAsUser);
+            }));
+        }
+        
+        // Wait for all the ranges, even if one fails, so that no worker is left running against the DB
+        int processedCount = 0;
+        Throwable failure = null;
+        for (Future<Integer> result : results)
+        {
+            try
+            {
+                processedCount += result.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new AlfrescoRuntimeException("Interrupted while waiting for content store cleanup workers", e);
+            }
+            catch (ExecutionException e)
+            {
+                if (failure == null)
+                {
+                    failure = e.getCause();
+                }
+            }
+        }
+        if (failure != null)
+        {
+            throw AlfrescoRuntimeException.create(failure, "Content store cleanup worker failed");
+        }
+        return processedCount;
+    }
+    
+    /**
+     * @param maxTimeExclusive      the max orphan time (exclusive)
+     * @param maxResults            the maximum number of orphans to fetch
+     * @return                      Returns the orphaned content URLs, sorted by ID
+     */
+    private TreeMap<Long, String> getOrphanedContentUrls(final long maxTimeExclusive, final int maxResults)
+    {
+        final TreeMap<Long, String> urlsById = new TreeMap<Long, String>();
+        ContentUrlHandler contentUrlHandler = new ContentUrlHandler()
+        {
+            @Override
+            public void handle(Long id, String contentUrl, Long orphanTime)
+            {
+                urlsById.put(id, contentUrl);
+            }
+        };
+        contentDataDAO.getContentUrlsOrphaned(contentUrlHandler, maxTimeExclusive, maxResults);
+        return urlsById;
+    }
+    
+    /**
+     * Deletes the orphaned content URL records and then the binaries.  Must be called
+     * within a read-write transaction.
+     * 
+     * @param urlsById              the orphaned content URLs to delete
+     * @return                      Returns the number of orphans processed
+     */
+    private int deleteOrphans(SortedMap<Long, String> urlsById)
+    {
+        // Compile list of IDs and do a mass delete
         List<Long> ids = new ArrayList<Long>(urlsById.keySet());
         contentDataDAO.deleteContentUrls(ids);
         // No problems, so far (ALF-1998: contentStoreCleanerJob leads to foreign key exception)
 
         // Now attempt to physically delete the URLs
-        for (Long id : ids)
+        Set<String> failedUrls = eagerContentStoreCleaner.deleteFromStores(urlsById.values());
+        for (String contentUrl : failedUrls)
         {
-            String contentUrl = urlsById.get(id);
             // Handle failures
-            boolean deleted = eagerContentStoreCleaner.deleteFromStores(contentUrl);
-            if (!deleted)
+            switch (deletionFailureAction)
             {
-                switch (deletionFailureAction)
-                {
-                    case KEEP_URL:
-                        // Keep the URL, but with an orphan time of 0 so that it is recorded
-                        contentDataDAO.createContentUrlOrphaned(contentUrl, new Date(0L));
-                    case IGNORE:
-                        break;
-                    default:
-                        throw new IllegalStateException("Unknown deletion failure action: " + deletionFailureAction);
-                }
+                case KEEP_URL:
+                    // Keep the URL, but with an orphan time of 0 so that it is recorded
+                    contentDataDAO.createContentUrlOrphaned(contentUrl, new Date(0L));
+                case IGNORE:
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown deletion failure action: " + deletionFailureAction);
             }
         }
         
         // Done
-        return lastId;
+        return ids.size();
     }
 }
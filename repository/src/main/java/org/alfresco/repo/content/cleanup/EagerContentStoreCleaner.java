@@ -26,7 +26,12 @@
 package org.alfresco.repo.content.cleanup;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.alfresco.repo.content.ContentStore;
@@ -286,23 +291,7 @@ public class EagerContentStoreCleaner extends TransactionListenerAdapter
             }
             if (callListeners)
             {
-                // Call listeners
-                for (ContentStoreCleanerListener listener : listeners)
-                {
-                    try
-                    {
-                        // Since we are in post-commit, we do best-effort
-                        listener.beforeDelete(store, contentUrl);
-                    }
-                    catch (Throwable e)
-                    {
-                        logger.error(
-                                "Content deletion listener failed: \n" +
-                                "   URL:    " + contentUrl + "\n" +
-                                "   Source: " + store,
-                                e);
-                    }
-                }
+                callListeners(store, contentUrl);
             }
             // Delete
             if (deleteFromStore(contentUrl, store))
@@ -314,8 +303,92 @@ public class EagerContentStoreCleaner extends TransactionListenerAdapter
         return deleted == stores.size();
     }
     
+    /**
+     * Delete a batch of content URLs from all stores, making use of each store's
+     * {@link ContentStore#delete(Collection) bulk delete}.
+     * <p/>
+     * Note that listeners <b>are</b> called for this process.
+     * 
+     * @param contentUrls               the URLs to delete
+     * @return                          Returns the URLs that were not deleted from all stores
+     *                                  (an empty set if all deletes were successful)
+     */
+    public Set<String> deleteFromStores(Collection<String> contentUrls)
+    {
+        Map<String, Integer> deletedCounts = new HashMap<String, Integer>(contentUrls.size() * 2);
+        for (String contentUrl : contentUrls)
+        {
+            deletedCounts.put(contentUrl, 0);
+        }
+        for (ContentStore store : stores)
+        {
+            // Bypass if the store is read-only
+            if (!store.isWriteSupported())
+            {
+                continue;
+            }
+            List<String> storeUrls = new ArrayList<String>(contentUrls.size());
+            for (String contentUrl : contentUrls)
+            {
+                // MNT-12150 fix, bypass if the store doesn't support the URL but mark as deleted
+                if (!store.isContentUrlSupported(contentUrl))
+                {
+                    deletedCounts.merge(contentUrl, 1, Integer::sum);
+                    continue;
+                }
+                callListeners(store, contentUrl);
+                storeUrls.add(contentUrl);
+            }
+            // Delete
+            Set<String> failedUrls = deleteFromStore(storeUrls, store);
+            for (String contentUrl : storeUrls)
+            {
+                if (!failedUrls.contains(contentUrl))
+                {
+                    deletedCounts.merge(contentUrl, 1, Integer::sum);
+                }
+            }
+        }
+        // Collect the URLs that were not deleted from all stores (non-existence is a delete, too)
+        Set<String> notDeleted = new LinkedHashSet<String>();
+        for (String contentUrl : contentUrls)
+        {
+            if (deletedCounts.get(contentUrl) != stores.size())
+            {
+                notDeleted.add(contentUrl);
+            }
+        }
+        return notDeleted;
+    }
+    
+    /**
+     * Calls the listeners prior to deletion, catching and reporting errors.
+     */
+    private void callListeners(ContentStore store, String contentUrl)
+    {
+        for (ContentStoreCleanerListener listener : listeners)
+        {
+            try
+            {
+                // Since we are in post-commit, we do best-effort
+                listener.beforeDelete(store, contentUrl);
+            }
+            catch (Throwable e)
+            {
+                logger.error(
+                        "Content deletion listener failed: \n" +
+                        "   URL:    " + contentUrl + "\n" +
+                        "   Source: " + store,
+                        e);
+            }
+        }
+    }
+    
     /**
      * Attempts to delete the URL from the store, catching and reporing errors.
+     * <p/>
+     * URLs deleted together go through {@link #deleteFromStore(Collection, ContentStore)} instead, so a subclass
+     * that overrides this must override that as well, e.g. with {@link #deleteEachFromStore(Collection, ContentStore)}.
      */
     protected boolean deleteFromStore(String contentUrl, ContentStore store)
     {
@@ -345,4 +418,72 @@ public class EagerContentStoreCleaner extends TransactionListenerAdapter
             return false;
         }
     }
+    
+    /**
+     * Attempts to delete the URLs from the store with the store's bulk delete, catching and reporting errors.
+     * 
+     * @return                          Returns the URLs that could not be deleted
+     * @see #deleteEachFromStore(Collection, ContentStore)
+     */
+    protected Set<String> deleteFromStore(Collection<String> contentUrls, ContentStore store)
+    {
+        if (contentUrls.isEmpty())
+        {
+            return Collections.emptySet();
+        }
+        Map<String, Throwable> failures;
+        try
+        {
+            // Since we are in post-commit, we do best-effort
+            failures = store.delete(contentUrls);
+        }
+        catch (Throwable e)
+        {
+            logger.error(
+                    "Content deletion failed: \n" +
+                    "   URLs:   " + contentUrls.size() + "\n" +
+                    "   Source: " + store,
+                    e);
+            return new LinkedHashSet<String>(contentUrls);
+        }
+        for (Map.Entry<String, Throwable> failure : failures.entrySet())
+        {
+            if (failure.getValue() == null)
+            {
+                logger.error(
+                        "Content deletion failed (no exception): \n" +
+                        "   URL:    " + failure.getKey() + "\n" +
+                        "   Source: " + store);
+            }
+            else
+            {
+                logger.error(
+                        "Content deletion failed: \n" +
+                        "   URL:    " + failure.getKey() + "\n" +
+                        "   Source: " + store,
+                        failure.getValue());
+            }
+        }
+        return failures.keySet();
+    }
+    
+    /**
+     * Deletes the URLs from the store one at a time through {@link #deleteFromStore(String, ContentStore)}.
+     * Subclasses that handle each URL before it is deleted can override
+     * {@link #deleteFromStore(Collection, ContentStore)} with this.
+     * 
+     * @return                          Returns the URLs that could not be deleted
+     */
+    protected Set<String> deleteEachFromStore(Collection<String> contentUrls, ContentStore store)
+    {
+        Set<String> failedUrls = new LinkedHashSet<String>();
+        for (String contentUrl : contentUrls)
+        {
+            if (!deleteFromStore(contentUrl, store))
+            {
+                failedUrls.add(contentUrl);
+            }
+        }
+        return failedUrls;
+    }
 }
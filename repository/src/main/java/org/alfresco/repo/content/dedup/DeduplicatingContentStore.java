@@ -0,0 +1,648 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.dedup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.content.AbstractContentStore;
+import org.alfresco.repo.content.EmptyContentReader;
+import org.alfresco.repo.content.UnsupportedContentUrlException;
+import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.repo.content.filestore.FileContentStore;
+import org.alfresco.repo.content.filestore.FileContentUrlProvider;
+import org.alfresco.repo.content.filestore.SpoofedTextContentReader;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.Deleter;
+import org.alfresco.util.GUID;
+import org.alfresco.util.Pair;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A content-addressed store that keeps each distinct binary only once on the file system.
+ * <p>
+ * Content URLs are issued exactly as for the {@link FileContentStore} (<b>store://...</b>) but,
+ * instead of holding the binary, each URL maps to a blob named after the digest of its content.
+ * The digest is calculated while the content is streamed to a staging file, so no second pass
+ * over the content is needed.  When the stream is closed the staging file either becomes the
+ * blob or, if a blob with the same digest is already present, is discarded.
+ * <p>
+ * Each blob carries a count of the URLs that reference it.  {@link #delete(String) Deleting} a
+ * URL removes the URL mapping and drops the reference; the blob itself is only removed when the
+ * last reference goes.  The orphaned content cleanup therefore works unchanged against this store:
+ * the {@link org.alfresco.repo.content.cleanup.ContentStoreCleaner cleaner} deletes orphaned URLs
+ * and the shared binaries disappear with their last URL.
+ * <p>
+ * The directory layout below the root is:
+ * <ul>
+ *   <li><b>urls/</b>: one small file per content URL, holding the digest of the content</li>
+ *   <li><b>blobs/</b>: the binaries as <tt>xx/yy/digest.bin</tt> and their reference counts as <tt>xx/yy/digest.refs</tt></li>
+ *   <li><b>staging/</b>: content that is still being written</li>
+ * </ul>
+ * Reference counts are incremented before a URL mapping is written and decremented after it is
+ * removed, so a failure part way through can only leave a blob with too many references, never
+ * a URL pointing at a removed blob.  Updates to a count are serialized by a file lock so that
+ * several servers may share the same root.  The same goes for a URL mapping: a URL that is deleted
+ * while its content is still being written stays deleted, and the content is discarded when
+ * the writer is closed.
+ *
+ * @see FileContentStore
+ */
+public class DeduplicatingContentStore extends AbstractContentStore
+{
+    public static final String DEFAULT_DIGEST_ALGORITHM = "SHA-256";
+
+    private static final String URLS_DIR = "urls";
+    private static final String BLOBS_DIR = "blobs";
+    private static final String STAGING_DIR = "staging";
+    private static final String BLOB_EXTENSION = ".bin";
+    private static final String REFS_EXTENSION = ".refs";
+    private static final int LOCK_STRIPES = 64;
+
+    private static final Log logger = LogFactory.getLog(DeduplicatingContentStore.class);
+
+    private final File rootDirectory;
+    private final File urlsDirectory;
+    private final File blobsDirectory;
+    private final File stagingDirectory;
+    private final ReentrantLock[] digestLocks;
+    private final ReentrantLock[] urlLocks;
+    private String digestAlgorithm = DEFAULT_DIGEST_ALGORITHM;
+    private boolean readOnly;
+    private FileContentUrlProvider fileContentUrlProvider = FileContentStore::createNewFileStoreUrl;
+
+    /**
+     * @param rootDirectoryStr
+     *            the root under which content will be stored. The directory will be created if it does not exist.
+     */
+    public DeduplicatingContentStore(String rootDirectoryStr)
+    {
+        this(new File(rootDirectoryStr));
+    }
+
+    /**
+     * @param rootDirectory
+     *            the root under which content will be stored. The directory will be created if it does not exist.
+     */
+    public DeduplicatingContentStore(File rootDirectory)
+    {
+        this.rootDirectory = rootDirectory.getAbsoluteFile();
+        this.urlsDirectory = new File(this.rootDirectory, URLS_DIR);
+        this.blobsDirectory = new File(this.rootDirectory, BLOBS_DIR);
+        this.stagingDirectory = new File(this.rootDirectory, STAGING_DIR);
+        try
+        {
+            Files.createDirectories(urlsDirectory.toPath());
+            Files.createDirectories(blobsDirectory.toPath());
+            Files.createDirectories(stagingDirectory.toPath());
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to create store root: " + rootDirectory, e);
+        }
+        digestLocks = new ReentrantLock[LOCK_STRIPES];
+        urlLocks = new ReentrantLock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++)
+        {
+            digestLocks[i] = new ReentrantLock();
+            urlLocks[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(36);
+        sb.append("DeduplicatingContentStore")
+          .append("[ root=").append(rootDirectory)
+          .append(", digest=").append(digestAlgorithm)
+          .append(", readOnly=").append(readOnly)
+          .append("]");
+        return sb.toString();
+    }
+
+    /**
+     * @param digestAlgorithm           the {@link MessageDigest} algorithm used to identify binaries
+     *                                  (default: {@value #DEFAULT_DIGEST_ALGORITHM}).  This must not be
+     *                                  changed for a store that already holds content.
+     */
+    public void setDigestAlgorithm(String digestAlgorithm)
+    {
+        try
+        {
+            MessageDigest.getInstance(digestAlgorithm);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new AlfrescoRuntimeException("Unsupported digest algorithm: " + digestAlgorithm, e);
+        }
+        this.digestAlgorithm = digestAlgorithm;
+    }
+
+    /**
+     * File stores may optionally be declared read-only.  This is useful when configuring
+     * a store, possibly temporarily, to act as a source of data but to preserve it against
+     * any writes.
+     * 
+     * @param readOnly      <tt>true</tt> to force the store to only allow reads.
+     */
+    public void setReadOnly(boolean readOnly)
+    {
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * @param fileContentUrlProvider    the provider of new content URLs
+     */
+    public void setFileContentUrlProvider(FileContentUrlProvider fileContentUrlProvider)
+    {
+        this.fileContentUrlProvider = fileContentUrlProvider;
+    }
+
+    @Override
+    public boolean isWriteSupported()
+    {
+        return !readOnly;
+    }
+
+    /**
+     * For {@link FileContentStore#SPOOF_PROTOCOL spoofed} URLs, the URL always exists.
+     */
+    @Override
+    public boolean exists(String contentUrl)
+    {
+        if (contentUrl.startsWith(FileContentStore.SPOOF_PROTOCOL))
+        {
+            return true;
+        }
+        return makeMappingFile(contentUrl).exists();
+    }
+
+    @Override
+    public long getSpaceFree()
+    {
+        return rootDirectory.getFreeSpace();
+    }
+
+    @Override
+    public long getSpaceTotal()
+    {
+        return rootDirectory.getTotalSpace();
+    }
+
+    /**
+     * @return          Returns the canonical path to the root directory
+     */
+    @Override
+    public String getRootLocation()
+    {
+        try
+        {
+            return rootDirectory.getCanonicalPath();
+        }
+        catch (Throwable e)
+        {
+            logger.warn("Unabled to return root location", e);
+            return super.getRootLocation();
+        }
+    }
+
+    /**
+     * This implementation requires that the URL start with
+     * {@link FileContentStore#STORE_PROTOCOL } or {@link FileContentStore#SPOOF_PROTOCOL }
+     */
+    @Override
+    public ContentReader getReader(String contentUrl)
+    {
+        if (contentUrl.startsWith(FileContentStore.SPOOF_PROTOCOL))
+        {
+            return new SpoofedTextContentReader(contentUrl);
+        }
+        try
+        {
+            File mappingFile = makeMappingFile(contentUrl);
+            String digest = readMapping(mappingFile);
+            ContentReader reader = null;
+            if (digest != null)
+            {
+                reader = new FileContentReader(makeBlobFile(digest), contentUrl);
+            }
+            else
+            {
+                reader = new EmptyContentReader(contentUrl);
+            }
+
+            // done
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Created content reader: \n" +
+                        "   url: " + contentUrl + "\n" +
+                        "   digest: " + digest + "\n" +
+                        "   reader: " + reader);
+            }
+            return reader;
+        }
+        catch (UnsupportedContentUrlException e)
+        {
+            // This can go out directly
+            throw e;
+        }
+        catch (Throwable e)
+        {
+            throw new ContentIOException("Failed to get reader for URL: " + contentUrl, e);
+        }
+    }
+
+    /**
+     * Reserves the URL and returns a writer that streams to a staging file.  The content is
+     * only attached to the URL once the writer's stream has been closed.
+     */
+    @Override
+    public ContentWriter getWriterInternal(ContentReader existingContentReader, String newContentUrl)
+    {
+        String contentUrl = (newContentUrl == null) ? fileContentUrlProvider.createNewFileStoreUrl() : newContentUrl;
+        File mappingFile = makeMappingFile(contentUrl);
+        try
+        {
+            Files.createDirectories(mappingFile.getParentFile().toPath());
+            // The empty mapping claims the URL
+            Files.createFile(mappingFile.toPath());
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to reserve content URL: " + contentUrl, e);
+        }
+        File stagingFile = new File(stagingDirectory, GUID.generate() + ".tmp");
+        DeduplicatingContentWriter writer = new DeduplicatingContentWriter(this, stagingFile, contentUrl, existingContentReader);
+        if (contentLimitProvider != null)
+        {
+            writer.setContentLimitProvider(contentLimitProvider);
+        }
+
+        // done
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Created content writer: \n" +
+                    "   writer: " + writer);
+        }
+        return writer;
+    }
+
+    /**
+     * Removes the URL and drops its reference on the shared binary.  The binary is
+     * deleted once no other URL references it.
+     * 
+     * @throws UnsupportedOperationException        if the store is read-only
+     */
+    @Override
+    public boolean delete(String contentUrl)
+    {
+        if (readOnly)
+        {
+            throw new UnsupportedOperationException("This store is currently read-only: " + this);
+        }
+        if (contentUrl.startsWith(FileContentStore.SPOOF_PROTOCOL))
+        {
+            // This is not a failure but the content can never actually be deleted
+            return false;
+        }
+        File mappingFile = makeMappingFile(contentUrl);
+        try
+        {
+            String digest;
+            ReentrantLock lock = getUrlLock(contentUrl);
+            lock.lock();
+            try (FileChannel mappingChannel = FileChannel.open(mappingFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                 FileLock fileLock = mappingChannel.lock())
+            {
+                // The lock keeps a writer from publishing to the URL until it is gone
+                digest = readMapping(mappingFile);
+                if (!Files.deleteIfExists(mappingFile.toPath()))
+                {
+                    // Nothing to do
+                    return true;
+                }
+            }
+            catch (NoSuchFileException e)
+            {
+                // Nothing to do
+                return true;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            Deleter.deleteEmptyParents(mappingFile, urlsDirectory.getAbsolutePath());
+            if (digest != null)
+            {
+                removeReference(digest);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to delete content URL: " + contentUrl, e);
+        }
+
+        // done
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Delete content directly: \n" +
+                    "   store: " + this + "\n" +
+                    "   url: " + contentUrl);
+        }
+        return true;
+    }
+
+    /**
+     * @return          Returns a new digest to hash content written to this store
+     */
+    /*package*/ MessageDigest newMessageDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance(digestAlgorithm);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new AlfrescoRuntimeException("Unsupported digest algorithm: " + digestAlgorithm, e);
+        }
+    }
+
+    /**
+     * Attach fully-written content to its URL.  The staging file is moved into place as the
+     * blob for the digest, or discarded if that blob already exists.
+     * 
+     * @param contentUrl        the URL reserved by the writer
+     * @param digest            the hex digest of the staged content
+     * @param stagingFile       the staged content, which is always consumed
+     * @throws ContentIOException   if the URL was deleted while the content was being written
+     */
+    /*package*/ void publish(String contentUrl, String digest, File stagingFile) throws IOException
+    {
+        boolean duplicate = addReference(digest, stagingFile.toPath());
+        // Only point the URL at the blob once it is referenced
+        if (!writeMapping(contentUrl, digest))
+        {
+            removeReference(digest);
+            throw new ContentIOException("Content URL was deleted while its content was being written: " + contentUrl);
+        }
+
+        // done
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Published content: \n" +
+                    "   url: " + contentUrl + "\n" +
+                    "   digest: " + digest + "\n" +
+                    "   duplicate: " + duplicate);
+        }
+    }
+
+    /**
+     * Replaces the claim on a URL with the mapping to its content.
+     * 
+     * @return          Returns <tt>false</tt> if the claim has been deleted
+     */
+    private boolean writeMapping(String contentUrl, String digest) throws IOException
+    {
+        Path mapping = makeMappingFile(contentUrl).toPath();
+        ReentrantLock lock = getUrlLock(contentUrl);
+        lock.lock();
+        try (FileChannel claimChannel = FileChannel.open(mapping, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock fileLock = claimChannel.lock())
+        {
+            if (!Files.exists(mapping))
+            {
+                // The URL was deleted while we waited for the lock
+                return false;
+            }
+            Path tempMapping = mapping.resolveSibling(mapping.getFileName() + "." + GUID.generate() + ".tmp");
+            Files.write(tempMapping, digest.getBytes(StandardCharsets.US_ASCII));
+            Files.move(tempMapping, mapping, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        }
+        catch (NoSuchFileException e)
+        {
+            return false;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return          Returns <tt>true</tt> if the content was already present
+     */
+    private boolean addReference(String digest, Path stagingPath) throws IOException
+    {
+        Path blob = makeBlobFile(digest).toPath();
+        Files.createDirectories(blob.getParent());
+        ReentrantLock lock = getDigestLock(digest);
+        lock.lock();
+        try
+        {
+            while (true)
+            {
+                Path refs = blob.resolveSibling(digest + REFS_EXTENSION);
+                try (FileChannel refsChannel = FileChannel.open(refs, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                     FileLock fileLock = refsChannel.lock())
+                {
+                    if (!Files.exists(refs))
+                    {
+                        // The last reference was dropped elsewhere while we waited for the lock
+                        continue;
+                    }
+                    long count;
+                    boolean duplicate = Files.exists(blob);
+                    if (duplicate)
+                    {
+                        Files.delete(stagingPath);
+                        // The blob's modification time stands in for the time the content was written
+                        blob.toFile().setLastModified(System.currentTimeMillis());
+                        count = readCount(refsChannel) + 1;
+                    }
+                    else
+                    {
+                        Files.move(stagingPath, blob, StandardCopyOption.ATOMIC_MOVE);
+                        count = 1;
+                    }
+                    writeCount(refsChannel, count);
+                    return duplicate;
+                }
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private void removeReference(String digest) throws IOException
+    {
+        Path blob = makeBlobFile(digest).toPath();
+        Path refs = blob.resolveSibling(digest + REFS_EXTENSION);
+        ReentrantLock lock = getDigestLock(digest);
+        lock.lock();
+        try
+        {
+            FileChannel refsChannel;
+            try
+            {
+                refsChannel = FileChannel.open(refs, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            catch (NoSuchFileException e)
+            {
+                logger.warn("Reference count is missing; leaving content in place: " + blob);
+                return;
+            }
+            try (FileChannel channel = refsChannel; FileLock fileLock = channel.lock())
+            {
+                long count = readCount(channel) - 1;
+                if (count > 0)
+                {
+                    writeCount(channel, count);
+                    return;
+                }
+                Files.deleteIfExists(blob);
+                Files.deleteIfExists(refs);
+            }
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Deleted unreferenced content: " + blob);
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock getDigestLock(String digest)
+    {
+        return digestLocks[(digest.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
+
+    private ReentrantLock getUrlLock(String contentUrl)
+    {
+        return urlLocks[(contentUrl.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
+
+    private static long readCount(FileChannel channel) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        channel.read(buffer, 0L);
+        String count = new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII).trim();
+        return count.isEmpty() ? 0L : Long.parseLong(count);
+    }
+
+    private static void writeCount(FileChannel channel, long count) throws IOException
+    {
+        channel.truncate(0L);
+        channel.write(ByteBuffer.wrap(Long.toString(count).getBytes(StandardCharsets.US_ASCII)), 0L);
+    }
+
+    /**
+     * @return          Returns the digest held by the mapping or <tt>null</tt> if the
+     *                  URL is unknown or its content has not been written yet
+     */
+    private static String readMapping(File mappingFile) throws IOException
+    {
+        try
+        {
+            String digest = new String(Files.readAllBytes(mappingFile.toPath()), StandardCharsets.US_ASCII).trim();
+            return digest.isEmpty() ? null : digest;
+        }
+        catch (NoSuchFileException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Creates the mapping file for the given URL.
+     * 
+     * @param contentUrl    the content URL including the protocol prefix
+     * @return              Returns the mapping file - the file may or may not exist
+     * @throws UnsupportedContentUrlException
+     *                      if the URL is invalid and doesn't support the
+     *                      {@link FileContentStore#STORE_PROTOCOL correct protocol}
+     */
+    private File makeMappingFile(String contentUrl)
+    {
+        Pair<String, String> urlParts = super.getContentUrlParts(contentUrl);
+        String protocol = urlParts.getFirst();
+        String relativePath = urlParts.getSecond();
+        if (!protocol.equals(FileContentStore.STORE_PROTOCOL))
+        {
+            throw new UnsupportedContentUrlException(this, protocol + PROTOCOL_DELIMITER + relativePath);
+        }
+        File file = new File(urlsDirectory, relativePath);
+        ensureFileInDirectory(file, urlsDirectory);
+        return file;
+    }
+
+    private File makeBlobFile(String digest)
+    {
+        if (digest.length() < 4)
+        {
+            throw new ContentIOException("Invalid content digest: " + digest);
+        }
+        File file = new File(blobsDirectory,
+                digest.substring(0, 2) + File.separatorChar + digest.substring(2, 4) + File.separatorChar + digest + BLOB_EXTENSION);
+        ensureFileInDirectory(file, blobsDirectory);
+        return file;
+    }
+
+    /*
+     * As for the FileContentStore, content may only be accessed inside the store root
+     */
+    private void ensureFileInDirectory(File file, File directory)
+    {
+        String fileNormalizedAbsolutePath = FilenameUtils.normalize(file.getAbsolutePath());
+        String directoryNormalizedAbsolutePath = FilenameUtils.normalize(directory.getAbsolutePath()) + File.separatorChar;
+        if (fileNormalizedAbsolutePath == null || !fileNormalizedAbsolutePath.startsWith(directoryNormalizedAbsolutePath))
+        {
+            throw new ContentIOException("Access to files outside of content store root is not allowed: " + file);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.dedup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+
+import org.alfresco.repo.content.AbstractContentWriter;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Writes content to a staging file of the {@link DeduplicatingContentStore}, calculating the
+ * content digest on the way through.  Closing the channel hands the staged content to the
+ * store, which either keeps it as a new blob or references the identical blob it already holds.
+ * <p>
+ * The underlying channel is sequential; random access writes are
+ * {@link AbstractContentWriter#getFileChannel(boolean) provided via a temporary file}.
+ */
+public class DeduplicatingContentWriter extends AbstractContentWriter
+{
+    private static final Log logger = LogFactory.getLog(DeduplicatingContentWriter.class);
+
+    private final DeduplicatingContentStore store;
+    private final File stagingFile;
+    private volatile long size;
+
+    /**
+     * @param store                 the store that will hold the content
+     * @param stagingFile           the file to write to before the content is published
+     * @param url                   the content URL reserved for the writer
+     * @param existingContentReader a reader of a previous version of this content
+     */
+    /*package*/ DeduplicatingContentWriter(
+            DeduplicatingContentStore store,
+            File stagingFile,
+            String url,
+            ContentReader existingContentReader)
+    {
+        super(url, existingContentReader);
+        this.store = store;
+        this.stagingFile = stagingFile;
+    }
+
+    /**
+     * @return Returns the number of bytes written so far
+     */
+    @Override
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * The content is only visible through the store once the channel has been closed,
+     * which is guaranteed by the caller.
+     */
+    @Override
+    protected ContentReader createReader() throws ContentIOException
+    {
+        return store.getReader(getContentUrl());
+    }
+
+    @Override
+    protected WritableByteChannel getDirectWritableChannel() throws ContentIOException
+    {
+        try
+        {
+            FileChannel channel = new FileOutputStream(stagingFile).getChannel();
+            // done
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Opened write channel to staging file: \n" +
+                        "   file: " + stagingFile + "\n" +
+                        "   url: " + getContentUrl());
+            }
+            return new DigestingChannel(channel, store.newMessageDigest());
+        }
+        catch (Throwable e)
+        {
+            throw new ContentIOException("Failed to open staging file channel: " + this, e);
+        }
+    }
+
+    /**
+     * @return Returns true always
+     */
+    public boolean canWrite()
+    {
+        return true;    // this is a writer
+    }
+
+    /**
+     * Passes writes to the staging file and feeds the same bytes to the digest.
+     * The content is published when the channel is closed.
+     */
+    private class DigestingChannel implements WritableByteChannel
+    {
+        private final FileChannel channel;
+        private final MessageDigest digest;
+        private boolean open = true;
+
+        private DigestingChannel(FileChannel channel, MessageDigest digest)
+        {
+            this.channel = channel;
+            this.digest = digest;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException
+        {
+            ByteBuffer written = src.duplicate();
+            int count = channel.write(src);
+            written.limit(written.position() + count);
+            digest.update(written);
+            size += count;
+            return count;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (!open)
+            {
+                return;
+            }
+            open = false;
+            try
+            {
+                channel.close();
+                store.publish(getContentUrl(), Hex.encodeHexString(digest.digest()), stagingFile);
+            }
+            finally
+            {
+                // Only left behind when publishing failed
+                stagingFile.delete();
+            }
+        }
+    }
+}
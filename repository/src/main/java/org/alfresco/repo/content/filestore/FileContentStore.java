@@ -28,8 +28,12 @@ package org.alfresco.repo.content.filestore;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import org.alfresco.api.AlfrescoPublicApi;
 import org.alfresco.error.AlfrescoRuntimeException;
@@ -89,6 +93,7 @@ public class FileContentStore
     private ApplicationContext applicationContext;
     private boolean deleteEmptyDirs = true;
     private FileContentUrlProvider fileContentUrlProvider = new TimeBasedFileContentUrlProvider();
+    private Executor deleteExecutor;
 
     /**
      * Private: for Spring-constructed instances only.
@@ -211,6 +216,19 @@ public class FileContentStore
         this.fileContentUrlProvider = fileContentUrlProvider;
     }
 
+    /**
+     * Set the executor used to delete {@link #delete(Collection) batches} of files concurrently.
+     * Deleting a file is dominated by file system metadata operations, so a handful of threads
+     * keeps the disk far busier than a single caller can.  If not set, batches are deleted
+     * sequentially by the calling thread.
+     * 
+     * @param deleteExecutor    the executor to run file deletes on, or <tt>null</tt>
+     */
+    public void setDeleteExecutor(Executor deleteExecutor)
+    {
+        this.deleteExecutor = deleteExecutor;
+    }
+
     /**
      * Generates a new URL and file appropriate to it.
      * 
@@ -582,6 +600,55 @@ public class FileContentStore
         return deleted;
     }
 
+    /**
+     * Deletes the files concurrently if a {@link #setDeleteExecutor(Executor) delete executor}
+     * has been provided.  Each file is deleted as per {@link #delete(String)}.
+     * 
+     * @throws UnsupportedOperationException        if the store is read-only
+     */
+    @Override
+    public Map<String, Throwable> delete(Collection<String> contentUrls)
+    {
+        if (deleteExecutor == null || contentUrls.size() < 2)
+        {
+            return super.delete(contentUrls);
+        }
+        if (readOnly)
+        {
+            throw new UnsupportedOperationException("This store is currently read-only: " + this);
+        }
+        final Map<String, Throwable> failures = Collections.synchronizedMap(new HashMap<String, Throwable>());
+        CompletableFuture<?>[] deletes = new CompletableFuture<?>[contentUrls.size()];
+        int i = 0;
+        for (String contentUrl : contentUrls)
+        {
+            deletes[i++] = CompletableFuture.runAsync(() -> {
+                try
+                {
+                    if (!delete(contentUrl))
+                    {
+                        failures.put(contentUrl, null);
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    failures.put(contentUrl, e);
+                }
+            }, deleteExecutor);
+        }
+        CompletableFuture.allOf(deletes).join();
+        
+        // done
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Deleted content batch directly: \n" +
+                    "   store: " + this + "\n" +
+                    "   urls: " + contentUrls.size() + "\n" +
+                    "   failed: " + failures.size());
+        }
+        return new HashMap<String, Throwable>(failures);
+    }
+
     /**
      * Creates a new content URL.  This must be supported by all
      * stores that are compatible with Alfresco.
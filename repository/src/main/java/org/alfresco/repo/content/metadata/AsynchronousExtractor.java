@@ -31,6 +31,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.action.executer.ContentMetadataExtracter;
 import org.alfresco.repo.content.transform.TransformerDebug;
+import org.alfresco.repo.node.NodeBulkLoader;
 import org.alfresco.repo.rendition2.RenditionDefinition2;
 import org.alfresco.repo.rendition2.RenditionDefinitionRegistry2Impl;
 import org.alfresco.repo.rendition2.RenditionService2;
@@ -38,7 +39,10 @@ import org.alfresco.repo.rendition2.TransformDefinition;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.tenant.TenantUtil;
 import org.alfresco.repo.tenant.TenantUtil.TenantRunAsWork;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.ContentWriter;
@@ -65,12 +69,21 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.StringJoiner;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import static org.alfresco.repo.rendition2.RenditionDefinition2.TIMEOUT;
 import static org.alfresco.repo.rendition2.TransformDefinition.getTransformName;
@@ -85,6 +98,14 @@ import static org.alfresco.repo.rendition2.TransformDefinition.getTransformName;
  * As with other sub-classes of {@link AbstractMappingMetadataExtracter} it also supports embedding of metadata in
  * a source node. In this case the remote async transform states that it supports a transform from a source mimetype
  * to  {@code "alfresco-metadata-embed"}. The resulting transform is a replacement for the content of the node.
+ * <p>
+ * Requests are queued by priority before they are handed to the executor. Once a transaction has made more than
+ * {@link #setBulkRequestThreshold(int) bulkRequestThreshold} requests, its further requests are treated as part of
+ * a bulk load and wait behind requests from interactive uploads.
+ * <p>
+ * When {@link #setMetadataBatchSize(int) metadataBatchSize} is greater than one, extracted metadata is not applied
+ * straight away but queued, so that the results that complete close together are applied in one transaction after
+ * the nodes have been preloaded with the {@link NodeBulkLoader}.
  *
  * @author adavis
  */
@@ -97,6 +118,20 @@ public class AsynchronousExtractor extends AbstractMappingMetadataExtracter
     private static final String EXTRACT_MAPPING = "extractMapping";
     private static final String METADATA = "metadata";
     private static final Map<String, Serializable> EMPTY_METADATA = Collections.emptyMap();
+    private static final String KEY_REQUEST_COUNT = AsynchronousExtractor.class.getName() + ".requestCount";
+    private static final int MAX_TRACKED_EXTRACTS = 10000;
+    private static final long TRACKED_EXTRACT_EXPIRY_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    /**
+     * The order in which queued requests are started.
+     */
+    public enum RequestPriority
+    {
+        /** A request from a transaction that has made only a few requests, such as a user's upload */
+        INTERACTIVE,
+        /** A request from a transaction that has made many requests, such as a bulk import */
+        BULK
+    }
 
     private final ObjectMapper jsonObjectMapper = new ObjectMapper();
 
@@ -110,6 +145,19 @@ public class AsynchronousExtractor extends AbstractMappingMetadataExtracter
     private TransformServiceRegistry transformServiceRegistry;
     private TaggingService taggingService;
     private List<MetadataExtractorPropertyMappingOverride> metadataExtractorPropertyMappingOverrides = Collections.emptyList();
+    private NodeBulkLoader nodeBulkLoader;
+    private int bulkRequestThreshold = 10;
+    private int metadataBatchSize = 1;
+    private long metadataBatchDelayMs = 100;
+
+    private final BlockingQueue<BackgroundRequest> requestQueue = new PriorityBlockingQueue<>();
+    private final AtomicLong requestSequence = new AtomicLong();
+    private final BlockingQueue<PendingMetadata> pendingMetadata = new LinkedBlockingQueue<>();
+    private final AtomicBoolean metadataWriterScheduled = new AtomicBoolean();
+    private final Map<NodeRef, Long> extractRequestNanos = new ConcurrentHashMap<>();
+    private final LongAdder completedExtracts = new LongAdder();
+    private final LongAdder totalExtractLatencyMillis = new LongAdder();
+    private final AtomicLong maxExtractLatencyMillis = new AtomicLong();
 
     public void setNodeService(NodeService nodeService)
     {
@@ -161,6 +209,81 @@ public class AsynchronousExtractor extends AbstractMappingMetadataExtracter
         this.metadataExtractorPropertyMappingOverrides = metadataExtractorPropertyMappingOverrides;
     }
 
+    /**
+     * @param nodeBulkLoader preloads the nodes of a batch of extracted metadata before it is applied
+     */
+    public void setNodeBulkLoader(NodeBulkLoader nodeBulkLoader)
+    {
+        this.nodeBulkLoader = nodeBulkLoader;
+    }
+
+    /**
+     * @param bulkRequestThreshold the number of requests a transaction may make before the rest are given
+     *                             {@link RequestPriority#BULK} priority
+     */
+    public void setBulkRequestThreshold(int bulkRequestThreshold)
+    {
+        this.bulkRequestThreshold = bulkRequestThreshold;
+    }
+
+    /**
+     * @param metadataBatchSize the maximum number of extracted results applied in one transaction. 1 applies each
+     *                          result as soon as it arrives, in its own transaction.
+     */
+    public void setMetadataBatchSize(int metadataBatchSize)
+    {
+        this.metadataBatchSize = metadataBatchSize;
+    }
+
+    /**
+     * @param metadataBatchDelayMs how long to wait for a batch of extracted results to fill before applying it
+     */
+    public void setMetadataBatchDelayMs(long metadataBatchDelayMs)
+    {
+        this.metadataBatchDelayMs = metadataBatchDelayMs;
+    }
+
+    /**
+     * @return the number of extract or embed requests waiting for a thread
+     */
+    public int getQueuedRequestCount()
+    {
+        return requestQueue.size();
+    }
+
+    /**
+     * @return the number of extracted results waiting to be applied to their nodes
+     */
+    public int getPendingMetadataCount()
+    {
+        return pendingMetadata.size();
+    }
+
+    /**
+     * @return the number of extracts whose results have been applied to their nodes
+     */
+    public long getCompletedExtractCount()
+    {
+        return completedExtracts.sum();
+    }
+
+    /**
+     * @return the average time between an extract being requested and its result being applied, in milliseconds
+     */
+    public long getAverageExtractLatencyMillis()
+    {
+        long count = completedExtracts.sum();
+        return count == 0 ? 0 : totalExtractLatencyMillis.sum() / count;
+    }
+
+    /**
+     * @return the longest time between an extract being requested and its result being applied, in milliseconds
+     */
+    public long getMaxExtractLatencyMillis()
+    {
+        return maxExtractLatencyMillis.get();
+    }
+
     @Override
     protected Map<String, Set<QName>> getDefaultMapping()
     {
@@ -381,8 +504,11 @@ public class AsynchronousExtractor extends AbstractMappingMetadataExtracter
         final String domain = TenantUtil.getCurrentDomain();
         final String runAsUser = AuthenticationUtil.getRunAsUser();
 
-        ExecutorService executorService = getExecutorService();
-        executorService.execute(() -> {
+        if (EXTRACT.equals(embedOrExtract))
+        {
+            trackExtractRequest(nodeRef);
+        }
+        requestQueue.add(new BackgroundRequest(getRequestPriority(), requestSequence.incrementAndGet(), () -> {
 
             TenantUtil.runAsUserTenant((TenantRunAsWork<Void>) () -> {
                 transactionService.getRetryingTransactionHelper()
@@ -400,9 +526,55 @@ public class AsynchronousExtractor extends AbstractMappingMetadataExtracter
 
                 return null;
             }, runAsUser, domain);
+        }));
+
+        // Each task runs whichever request has the highest priority when it starts
+        ExecutorService executorService = getExecutorService();
+        executorService.execute(() -> {
+            BackgroundRequest request = requestQueue.poll();
+            if (request != null)
+            {
+                request.work.run();
+            }
         });
     }
 
+    private RequestPriority getRequestPriority()
+    {
+        if (AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_NONE)
+        {
+            return RequestPriority.INTERACTIVE;
+        }
+        int count = TransactionalResourceHelper.incrementCount(KEY_REQUEST_COUNT);
+        return count > bulkRequestThreshold ? RequestPriority.BULK : RequestPriority.INTERACTIVE;
+    }
+
+    private void trackExtractRequest(NodeRef nodeRef)
+    {
+        long now = System.nanoTime();
+        if (extractRequestNanos.size() >= MAX_TRACKED_EXTRACTS)
+        {
+            // Forget requests whose results never arrived
+            extractRequestNanos.values().removeIf(requested -> now - requested > TRACKED_EXTRACT_EXPIRY_NANOS);
+        }
+        if (extractRequestNanos.size() < MAX_TRACKED_EXTRACTS)
+        {
+            extractRequestNanos.put(nodeRef, now);
+        }
+    }
+
+    private void extractCompleted(NodeRef nodeRef)
+    {
+        Long requested = extractRequestNanos.remove(nodeRef);
+        if (requested != null)
+        {
+            long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - requested);
+            completedExtracts.increment();
+            totalExtractLatencyMillis.add(latency);
+            maxExtractLatencyMillis.accumulateAndGet(latency, Math::max);
+        }
+    }
+
     private void transform(NodeRef nodeRef, ContentReader reader, String targetMimetype,
                            String embedOrExtract, Map<String, String> options)
     {
@@ -477,56 +649,193 @@ public class AsynchronousExtractor extends AbstractMappingMetadataExtracter
             return; // Error state.
         }
 
+        PendingMetadata result = new PendingMetadata(nodeRef, metadata, overwritePolicy, enableStringTagging,
+                carryAspectProperties, stringTaggingSeparators, TenantUtil.getCurrentDomain());
+        if (metadataBatchSize > 1)
+        {
+            pendingMetadata.add(result);
+            scheduleMetadataWriter();
+            return;
+        }
+
         AuthenticationUtil.runAsSystem((AuthenticationUtil.RunAsWork<Void>) () ->
                 transactionService.getRetryingTransactionHelper().doInTransaction(() ->
                 {
-                    // Based on: AbstractMappingMetadataExtracter.extract
-                    Map<QName, Serializable> nodeProperties = nodeService.getProperties(nodeRef);
-                    // Convert to system properties (standalone)
-                    Map<QName, Serializable> systemProperties = convertKeysToQNames(metadata);
-                    // Convert the properties according to the dictionary types
-                    systemProperties = convertSystemPropertyValues(systemProperties);
-                    // There is no last filter in the AsynchronousExtractor.
-                    // Now use the proper overwrite policy
-                    Map<QName, Serializable> changedProperties = overwritePolicy.applyProperties(systemProperties, nodeProperties);
-
-                    // Based on: ContentMetadataExtracter.executeImpl
-                    // If none of the properties where changed, then there is nothing more to do
-                    if (changedProperties.size() == 0)
+                    applyMetadata(result);
+                    return null;
+                }, false, true));
+        extractCompleted(nodeRef);
+    }
+
+    private void applyMetadata(PendingMetadata result)
+    {
+        NodeRef nodeRef = result.nodeRef;
+
+        // Based on: AbstractMappingMetadataExtracter.extract
+        Map<QName, Serializable> nodeProperties = nodeService.getProperties(nodeRef);
+        // Convert to system properties (standalone)
+        Map<QName, Serializable> systemProperties = convertKeysToQNames(result.metadata);
+        // Convert the properties according to the dictionary types
+        systemProperties = convertSystemPropertyValues(systemProperties);
+        // There is no last filter in the AsynchronousExtractor.
+        // Now use the proper overwrite policy
+        Map<QName, Serializable> changedProperties = result.overwritePolicy.applyProperties(systemProperties, nodeProperties);
+
+        // Based on: ContentMetadataExtracter.executeImpl
+        // If none of the properties where changed, then there is nothing more to do
+        if (changedProperties.size() == 0)
+        {
+            return;
+        }
+        boolean transformerDebugEnabled = transformerDebug.isEnabled();
+        boolean debugEnabled = logger.isDebugEnabled();
+        if (transformerDebugEnabled || debugEnabled)
+        {
+            for (Map.Entry<QName, Serializable> entry : changedProperties.entrySet())
+            {
+                QName qname = entry.getKey();
+                Serializable value = entry.getValue();
+                String prefixString = qname.toPrefixString(namespacePrefixResolver);
+                String debugMessage = prefixString + "=" + (value == null ? "" : value);
+                if (transformerDebugEnabled)
+                {
+                    transformerDebug.debugUsingPreviousReference("  "+debugMessage);
+                }
+                if (debugEnabled)
+                {
+                    logger.debug(debugMessage);
+                }
+            }
+        }
+        ContentMetadataExtracter.addExtractedMetadataToNode(nodeRef, nodeProperties, changedProperties,
+                nodeService, dictionaryService, taggingService,
+                result.enableStringTagging, result.carryAspectProperties, result.stringTaggingSeparators);
+
+        if (logger.isTraceEnabled())
+        {
+            logger.trace("Extraction of Metadata from " + nodeRef + " complete " + changedProperties);
+        }
+    }
+
+    private void scheduleMetadataWriter()
+    {
+        if (metadataWriterScheduled.compareAndSet(false, true))
+        {
+            getExecutorService().execute(this::writeMetadataBatches);
+        }
+    }
+
+    /**
+     * Applies queued results until none are left, waiting up to metadataBatchDelayMs for each batch to fill.
+     */
+    private void writeMetadataBatches()
+    {
+        try
+        {
+            List<PendingMetadata> batch = new ArrayList<>(metadataBatchSize);
+            PendingMetadata next;
+            while ((next = pendingMetadata.poll()) != null)
+            {
+                batch.add(next);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(metadataBatchDelayMs);
+                while (batch.size() < metadataBatchSize)
+                {
+                    next = pendingMetadata.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null)
                     {
-                        return null;
+                        break;
                     }
-                    boolean transformerDebugEnabled = transformerDebug.isEnabled();
-                    boolean debugEnabled = logger.isDebugEnabled();
-                    if (transformerDebugEnabled || debugEnabled)
-                    {
-                        for (Map.Entry<QName, Serializable> entry : changedProperties.entrySet())
+                    batch.add(next);
+                }
+                applyMetadataBatch(batch);
+                batch.clear();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            metadataWriterScheduled.set(false);
+            // Pick up results queued after the last poll
+            if (!pendingMetadata.isEmpty())
+            {
+                scheduleMetadataWriter();
+            }
+        }
+    }
+
+    private void applyMetadataBatch(List<PendingMetadata> batch)
+    {
+        Map<String, List<PendingMetadata>> batchByDomain = new LinkedHashMap<>();
+        for (PendingMetadata result : batch)
+        {
+            batchByDomain.computeIfAbsent(result.domain, domain -> new ArrayList<>()).add(result);
+        }
+        for (Map.Entry<String, List<PendingMetadata>> entry : batchByDomain.entrySet())
+        {
+            List<PendingMetadata> results = entry.getValue();
+            try
+            {
+                TenantUtil.runAsSystemTenant((TenantRunAsWork<Void>) () ->
+                        transactionService.getRetryingTransactionHelper().doInTransaction(() ->
                         {
-                            QName qname = entry.getKey();
-                            Serializable value = entry.getValue();
-                            String prefixString = qname.toPrefixString(namespacePrefixResolver);
-                            String debugMessage = prefixString + "=" + (value == null ? "" : value);
-                            if (transformerDebugEnabled)
-                            {
-                                transformerDebug.debugUsingPreviousReference("  "+debugMessage);
-                            }
-                            if (debugEnabled)
-                            {
-                                logger.debug(debugMessage);
-                            }
-                        }
-                    }
-                    ContentMetadataExtracter.addExtractedMetadataToNode(nodeRef, nodeProperties, changedProperties,
-                            nodeService, dictionaryService, taggingService,
-                            enableStringTagging, carryAspectProperties, stringTaggingSeparators);
+                            applyMetadataInTransaction(results);
+                            return null;
+                        }, false, true), entry.getKey());
+                results.forEach(result -> extractCompleted(result.nodeRef));
+            }
+            catch (RuntimeException e)
+            {
+                logger.warn("Failed to set the extracted metadata on a batch of " + results.size() +
+                        " nodes. Setting it one node at a time.", e);
+                for (PendingMetadata result : results)
+                {
+                    applyMetadataInOwnTransaction(result);
+                }
+            }
+        }
+    }
 
-                    if (logger.isTraceEnabled())
-                    {
-                        logger.trace("Extraction of Metadata from " + nodeRef + " complete " + changedProperties);
-                    }
+    private void applyMetadataInTransaction(List<PendingMetadata> results)
+    {
+        List<NodeRef> nodeRefs = new ArrayList<>(results.size());
+        results.forEach(result -> nodeRefs.add(result.nodeRef));
+        if (nodeBulkLoader != null)
+        {
+            nodeBulkLoader.cacheNodes(nodeRefs);
+        }
+        for (PendingMetadata result : results)
+        {
+            if (!nodeService.exists(result.nodeRef))
+            {
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Ignore the extracted metadata for " + result.nodeRef + " as it no longer exists");
+                }
+                continue;
+            }
+            applyMetadata(result);
+        }
+    }
 
-                    return null;
-                }, false, true));
+    private void applyMetadataInOwnTransaction(PendingMetadata result)
+    {
+        try
+        {
+            TenantUtil.runAsSystemTenant((TenantRunAsWork<Void>) () ->
+                    transactionService.getRetryingTransactionHelper().doInTransaction(() ->
+                    {
+                        applyMetadataInTransaction(Collections.singletonList(result));
+                        return null;
+                    }, false, true), result.domain);
+            extractCompleted(result.nodeRef);
+        }
+        catch (RuntimeException e)
+        {
+            logger.error("Failed to set the extracted metadata on " + result.nodeRef, e);
+        }
     }
 
     private Map<String, Serializable> readMetadata(InputStream transformInputStream)
@@ -682,4 +991,49 @@ public class AsynchronousExtractor extends AbstractMappingMetadataExtracter
                     return null;
                 }, false, true));
     }
+
+    private static class BackgroundRequest implements Comparable<BackgroundRequest>
+    {
+        private final RequestPriority priority;
+        private final long sequence;
+        private final Runnable work;
+
+        private BackgroundRequest(RequestPriority priority, long sequence, Runnable work)
+        {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.work = work;
+        }
+
+        @Override
+        public int compareTo(BackgroundRequest other)
+        {
+            int result = priority.compareTo(other.priority);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static class PendingMetadata
+    {
+        private final NodeRef nodeRef;
+        private final Map<String, Serializable> metadata;
+        private final OverwritePolicy overwritePolicy;
+        private final boolean enableStringTagging;
+        private final boolean carryAspectProperties;
+        private final List<String> stringTaggingSeparators;
+        private final String domain;
+
+        private PendingMetadata(NodeRef nodeRef, Map<String, Serializable> metadata, OverwritePolicy overwritePolicy,
+                boolean enableStringTagging, boolean carryAspectProperties, List<String> stringTaggingSeparators,
+                String domain)
+        {
+            this.nodeRef = nodeRef;
+            this.metadata = metadata;
+            this.overwritePolicy = overwritePolicy;
+            this.enableStringTagging = enableStringTagging;
+            this.carryAspectProperties = carryAspectProperties;
+            this.stringTaggingSeparators = stringTaggingSeparators;
+            this.domain = domain;
+        }
+    }
 }
@@ -0,0 +1,230 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.transform;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.alfresco.repo.content.AbstractContentReader;
+import org.alfresco.repo.content.AbstractContentWriter;
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+
+/**
+ * A writer for the intermediate content passed between the steps of a pipeline or failover transform. Content is
+ * held in memory until it grows beyond a given size, at which point it is moved to a temporary file and the rest is
+ * written there. Small intermediate results therefore never touch the disk.
+ */
+class IntermediateContentWriter extends AbstractContentWriter
+{
+    private static final String PROTOCOL = "intermediate";
+
+    private final String tempFilePrefix;
+    private final String tempFileSuffix;
+    private final int maxInMemoryBytes;
+
+    private byte[] buffer = new byte[0];
+    private int bufferSize;
+    private File file;
+    private long lastModified;
+
+    /**
+     * @param tempFilePrefix   prefix of the temporary file, should the content need to be moved to disk
+     * @param tempFileSuffix   suffix of the temporary file
+     * @param maxInMemoryBytes the size above which the content is moved to a temporary file
+     */
+    IntermediateContentWriter(String tempFilePrefix, String tempFileSuffix, long maxInMemoryBytes)
+    {
+        super(PROTOCOL + ContentStore.PROTOCOL_DELIMITER + GUID.generate(), null);
+        this.tempFilePrefix = tempFilePrefix;
+        this.tempFileSuffix = tempFileSuffix;
+        // Leave room for the array header as the maximum array size is slightly less than Integer.MAX_VALUE.
+        this.maxInMemoryBytes = (int) Math.min(maxInMemoryBytes, Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * @return <tt>true</tt> if the content has been moved to a temporary file.
+     */
+    boolean isOnDisk()
+    {
+        return file != null;
+    }
+
+    @Override
+    public long getSize()
+    {
+        return file == null ? bufferSize : file.length();
+    }
+
+    @Override
+    protected ContentReader createReader() throws ContentIOException
+    {
+        if (file != null)
+        {
+            return new FileContentReader(file, getContentUrl());
+        }
+        return new InMemoryReader(getContentUrl(), buffer, bufferSize, lastModified);
+    }
+
+    @Override
+    protected WritableByteChannel getDirectWritableChannel() throws ContentIOException
+    {
+        return new SpillingChannel();
+    }
+
+    /**
+     * Buffers in memory and moves to a temporary file once the buffer would exceed the limit.
+     */
+    private class SpillingChannel implements WritableByteChannel
+    {
+        private FileChannel fileChannel;
+        private boolean open = true;
+
+        @Override
+        public int write(ByteBuffer src) throws IOException
+        {
+            if (!open)
+            {
+                throw new IOException("Channel is closed");
+            }
+            int length = src.remaining();
+            if (fileChannel == null && (long) bufferSize + length > maxInMemoryBytes)
+            {
+                spill();
+            }
+            if (fileChannel != null)
+            {
+                int written = 0;
+                while (src.hasRemaining())
+                {
+                    written += fileChannel.write(src);
+                }
+                return written;
+            }
+            if (bufferSize + length > buffer.length)
+            {
+                int capacity = (int) Math.min(maxInMemoryBytes, Math.max(bufferSize + length, Math.max(8192L, buffer.length * 2L)));
+                buffer = Arrays.copyOf(buffer, capacity);
+            }
+            src.get(buffer, bufferSize, length);
+            bufferSize += length;
+            return length;
+        }
+
+        private void spill() throws IOException
+        {
+            file = TempFileProvider.createTempFile(tempFilePrefix, tempFileSuffix);
+            fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer buffered = ByteBuffer.wrap(buffer, 0, bufferSize);
+            while (buffered.hasRemaining())
+            {
+                fileChannel.write(buffered);
+            }
+            buffer = new byte[0];
+            bufferSize = 0;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (open)
+            {
+                open = false;
+                lastModified = System.currentTimeMillis();
+                if (fileChannel != null)
+                {
+                    fileChannel.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads content held in memory. Every reader shares the same, no longer modified, buffer.
+     */
+    private static class InMemoryReader extends AbstractContentReader
+    {
+        private final byte[] content;
+        private final int size;
+        private final long lastModified;
+
+        private InMemoryReader(String contentUrl, byte[] content, int size, long lastModified)
+        {
+            super(contentUrl);
+            this.content = content;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        protected ContentReader createReader() throws ContentIOException
+        {
+            return new InMemoryReader(getContentUrl(), content, size, lastModified);
+        }
+
+        @Override
+        protected ReadableByteChannel getDirectReadableChannel() throws ContentIOException
+        {
+            return Channels.newChannel(new ByteArrayInputStream(content, 0, size));
+        }
+
+        @Override
+        public boolean exists()
+        {
+            return true;
+        }
+
+        @Override
+        public long getSize()
+        {
+            return size;
+        }
+
+        @Override
+        public long getLastModified()
+        {
+            return lastModified;
+        }
+    }
+}
@@ -51,6 +51,8 @@ public class LocalFailoverTransform extends AbstractLocalTransform
 {
     private final List<LocalTransform> transformers = new ArrayList<>();
 
+    private long maxInMemoryIntermediateBytes;
+
     public LocalFailoverTransform(String name, TransformerDebug transformerDebug,
                                   MimetypeService mimetypeService, boolean strictMimeTypeCheck,
                                   Map<String, Set<String>> strictMimetypeExceptions,
@@ -68,6 +70,15 @@ public class LocalFailoverTransform extends AbstractLocalTransform
         return true;
     }
 
+    /**
+     * Results up to this size are held in memory rather than a temporary file, until a step succeeds.
+     * @param maxInMemoryIntermediateBytes the size limit in bytes, 0 to always use a temporary file.
+     */
+    public void setMaxInMemoryIntermediateBytes(long maxInMemoryIntermediateBytes)
+    {
+        this.maxInMemoryIntermediateBytes = maxInMemoryIntermediateBytes;
+    }
+
     public void addStepTransformer(LocalTransform stepTransformer)
     {
         transformers.add(stepTransformer);
@@ -91,7 +102,7 @@ public class LocalFailoverTransform extends AbstractLocalTransform
         {
             LocalTransform stepTransformer = transformers.get(i);
             ContentWriter currentWriter = null;
-            File tempFile = null;
+            long start = System.currentTimeMillis();
             try
             {
                 if (log.isDebugEnabled())
@@ -101,11 +112,17 @@ public class LocalFailoverTransform extends AbstractLocalTransform
 
                 // We can't know in advance which transformer in the sequence will work - if any.
                 // Therefore we can't write into the ContentWriter stream.
-                // So make a temporary file writer with the current transformer name.
-                tempFile = TempFileProvider.createTempFile(
-                        "LocalFailoverTransformer_intermediate_" + stepTransformer.getClass().getSimpleName() + "_",
-                        "." + targetExt);
-                currentWriter = new FileContentWriter(tempFile);
+                // So make a temporary file (or in memory) writer with the current transformer name.
+                String prefix = "LocalFailoverTransformer_intermediate_" + stepTransformer.getClass().getSimpleName() + "_";
+                if (maxInMemoryIntermediateBytes > 0)
+                {
+                    currentWriter = new IntermediateContentWriter(prefix, "." + targetExt, maxInMemoryIntermediateBytes);
+                }
+                else
+                {
+                    File tempFile = TempFileProvider.createTempFile(prefix, "." + targetExt);
+                    currentWriter = new FileContentWriter(tempFile);
+                }
                 currentWriter.setMimetype(targetMimetype);
                 currentWriter.setEncoding(writer.getEncoding());
 
@@ -138,13 +155,17 @@ public class LocalFailoverTransform extends AbstractLocalTransform
                         "information purposes only as a later transformer succeeded.", transformationException);
             }
 
-            // No need to close input or output streams
-            // Now we must copy the content from the temporary file into the ContentWriter stream.
-            if (tempFile != null)
+            if (transformerDebug.isEnabled())
             {
-                writer.putContent(tempFile);
+                transformerDebug.debug("          Step " + (i + 1) + " of " + transformers.size() + " took " +
+                        (System.currentTimeMillis() - start) + " ms" +
+                        LocalPipelineTransform.getIntermediateDetails(currentWriter));
             }
 
+            // No need to close input or output streams
+            // Now we must copy the content from the temporary file into the ContentWriter stream.
+            writer.putContent(currentWriter.getReader());
+
             log.info("Transformation was successful");
             return;
         }
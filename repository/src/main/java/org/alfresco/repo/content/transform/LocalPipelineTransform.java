@@ -52,6 +52,8 @@ public class LocalPipelineTransform extends AbstractLocalTransform
 {
     private final List<IntermediateTransformer> transformers = new ArrayList<>();
 
+    private long maxInMemoryIntermediateBytes;
+
     private class IntermediateTransformer
     {
         LocalTransform intermediateTransformer;
@@ -75,6 +77,15 @@ public class LocalPipelineTransform extends AbstractLocalTransform
         return true;
     }
 
+    /**
+     * Intermediate results up to this size are passed to the next step in memory rather than via a temporary file.
+     * @param maxInMemoryIntermediateBytes the size limit in bytes, 0 to always use a temporary file.
+     */
+    public void setMaxInMemoryIntermediateBytes(long maxInMemoryIntermediateBytes)
+    {
+        this.maxInMemoryIntermediateBytes = maxInMemoryIntermediateBytes;
+    }
+
     public void addIntermediateTransformer(LocalTransform intermediateTransformer, String targetMimetype)
     {
         IntermediateTransformer transformer = new IntermediateTransformer();
@@ -108,17 +119,29 @@ public class LocalPipelineTransform extends AbstractLocalTransform
             }
             else
             {
-                // make a temp file writer with the correct extension
+                // make a temp file (or in memory) writer with the correct extension
                 String sourceExt = mimetypeService.getExtension(currentReader.getMimetype());
                 String targetExt = mimetypeService.getExtension(transformer.targetMimetype);
-                File tempFile = TempFileProvider.createTempFile(
-                        "LocalPipelineTransformer_intermediate_" + sourceExt + "_",
-                        "." + targetExt);
-                currentWriter = new FileContentWriter(tempFile);
+                String prefix = "LocalPipelineTransformer_intermediate_" + sourceExt + "_";
+                if (maxInMemoryIntermediateBytes > 0)
+                {
+                    currentWriter = new IntermediateContentWriter(prefix, "." + targetExt, maxInMemoryIntermediateBytes);
+                }
+                else
+                {
+                    File tempFile = TempFileProvider.createTempFile(prefix, "." + targetExt);
+                    currentWriter = new FileContentWriter(tempFile);
+                }
                 currentWriter.setMimetype(transformer.targetMimetype);
             }
 
+            long start = System.currentTimeMillis();
             transformer.intermediateTransformer.transform(currentReader, currentWriter, transformOptions, renditionName, sourceNodeRef);
+            if (transformerDebug.isEnabled())
+            {
+                transformerDebug.debug("          Step " + (i + 1) + " of " + (lastI + 1) + " took " +
+                        (System.currentTimeMillis() - start) + " ms" + (i == lastI ? "" : getIntermediateDetails(currentWriter)));
+            }
 
             removeDirectAccessUrlAfterFirstTransform(transformOptions);
 
@@ -137,6 +160,13 @@ public class LocalPipelineTransform extends AbstractLocalTransform
         }
     }
 
+    static String getIntermediateDetails(ContentWriter intermediateWriter)
+    {
+        boolean inMemory = intermediateWriter instanceof IntermediateContentWriter &&
+                !((IntermediateContentWriter) intermediateWriter).isOnDisk();
+        return ", " + intermediateWriter.getSize() + " bytes " + (inMemory ? "in memory" : "in a temporary file");
+    }
+
     private void removeDirectAccessUrlAfterFirstTransform(Map<String, String> transformOptions)
     {
         transformOptions.remove(DIRECT_ACCESS_URL);
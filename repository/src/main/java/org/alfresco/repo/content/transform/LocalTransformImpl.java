@@ -62,11 +62,12 @@ public class LocalTransformImpl extends AbstractLocalTransform
                               Set<TransformOption> transformsTransformOptions,
                               LocalTransformServiceRegistry localTransformServiceRegistry, String baseUrl,
                               HttpClientConfig httpClientConfig,
+                              RemoteTransformerConnectionPools connectionPools,
                               int startupRetryPeriodSeconds)
     {
         super(name, transformerDebug, mimetypeService, strictMimeTypeCheck, strictMimetypeExceptions,
                 retryTransformOnDifferentMimeType, transformsTransformOptions, localTransformServiceRegistry);
-        remoteTransformerClient = new RemoteTransformerClient(name, baseUrl, httpClientConfig);
+        remoteTransformerClient = new RemoteTransformerClient(name, baseUrl, httpClientConfig, connectionPools);
         remoteTransformerClient.setStartupRetryPeriodSeconds(startupRetryPeriodSeconds);
 
         checkAvailability();
@@ -194,5 +195,9 @@ public class LocalTransformImpl extends AbstractLocalTransform
         targetExtension = AsynchronousExtractor.getExtension(targetMimetype, sourceExtension, targetExtension);
         remoteTransformerClient.request(reader, writer, sourceMimetype, sourceExtension, targetExtension,
                 timeoutMs, log, args);
+        if (transformerDebug.isEnabled())
+        {
+            transformerDebug.debug("          " + remoteTransformerClient.getConnectionPool());
+        }
     }
 }
@@ -80,6 +80,8 @@ public class LocalTransformServiceRegistry extends TransformServiceRegistryImpl
     private Map<String, Set<String>> strictMimetypeExceptions;
     private boolean retryTransformOnDifferentMimeType;
     private HttpClientConfig httpClientConfig;
+    private RemoteTransformerConnectionPools connectionPools;
+    private long maxInMemoryIntermediateBytes;
 
     public HttpClientConfig getHttpClientConfig()
     {
@@ -91,6 +93,14 @@ public class LocalTransformServiceRegistry extends TransformServiceRegistryImpl
         this.httpClientConfig = httpClientConfig;
     }
 
+    /**
+     * The pools of connections to the T-Engines, shared by the transformers as they are recreated.
+     */
+    public void setConnectionPools(RemoteTransformerConnectionPools connectionPools)
+    {
+        this.connectionPools = connectionPools;
+    }
+
     public void setPipelineConfigDir(String pipelineConfigDir)
     {
         this.pipelineConfigDir = pipelineConfigDir;
@@ -101,6 +111,14 @@ public class LocalTransformServiceRegistry extends TransformServiceRegistryImpl
         return pipelineConfigDir;
     }
 
+    /**
+     * Intermediate results of pipeline and failover transforms up to this size are held in memory.
+     */
+    public void setMaxInMemoryIntermediateBytes(long maxInMemoryIntermediateBytes)
+    {
+        this.maxInMemoryIntermediateBytes = maxInMemoryIntermediateBytes;
+    }
+
     /**
      * The Alfresco global properties.
      */
@@ -140,6 +158,7 @@ public class LocalTransformServiceRegistry extends TransformServiceRegistryImpl
         PropertyCheck.mandatory(this, "mimetypeService", mimetypeService);
         PropertyCheck.mandatory(this, "properties", properties);
         PropertyCheck.mandatory(this, "transformerDebug", transformerDebug);
+        PropertyCheck.mandatory(this, "connectionPools", connectionPools);
         strictMimetypeExceptions = getStrictMimetypeExceptions();
         super.afterPropertiesSet();
     }
@@ -201,7 +220,7 @@ public class LocalTransformServiceRegistry extends TransformServiceRegistryImpl
                 int startupRetryPeriodSeconds = getStartupRetryPeriodSeconds(name);
                 localTransform = new LocalTransformImpl(name, transformerDebug, mimetypeService,
                          strictMimeTypeCheck, strictMimetypeExceptions, retryTransformOnDifferentMimeType,
-                        transformsTransformOptions, this, baseUrl, httpClientConfig,
+                        transformsTransformOptions, this, baseUrl, httpClientConfig, connectionPools,
                         startupRetryPeriodSeconds);
             }
             else if (isPipeline)
@@ -217,6 +236,7 @@ public class LocalTransformServiceRegistry extends TransformServiceRegistryImpl
                 localTransform = new LocalPipelineTransform(name, transformerDebug, mimetypeService,
                         strictMimeTypeCheck, strictMimetypeExceptions, retryTransformOnDifferentMimeType,
                         transformsTransformOptions, this);
+                ((LocalPipelineTransform) localTransform).setMaxInMemoryIntermediateBytes(maxInMemoryIntermediateBytes);
                 for (int i=0; i < transformerCount; i++)
                 {
                     TransformStep intermediateTransformerStep = pipeline.get(i);
@@ -266,6 +286,7 @@ public class LocalTransformServiceRegistry extends TransformServiceRegistryImpl
                 localTransform = new LocalFailoverTransform(name, transformerDebug, mimetypeService,
                         strictMimeTypeCheck, strictMimetypeExceptions, retryTransformOnDifferentMimeType,
                         transformsTransformOptions, this);
+                ((LocalFailoverTransform) localTransform).setMaxInMemoryIntermediateBytes(maxInMemoryIntermediateBytes);
 
                 for (String transformerStepName : failover)
                 {
@@ -30,7 +30,6 @@ import java.io.InputStream;
 import java.util.StringJoiner;
 
 import org.alfresco.error.AlfrescoRuntimeException;
-import org.alfresco.httpclient.HttpClient4Factory;
 import org.alfresco.httpclient.HttpClientConfig;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentWriter;
@@ -60,6 +59,8 @@ import org.apache.http.util.EntityUtils;
 public class RemoteTransformerClient
 {
     private final HttpClientConfig httpClientConfig;
+    private final RemoteTransformerConnectionPools connectionPools;
+    private final boolean ownsConnectionPools;
 
     private final String name;
     private final String baseUrl;
@@ -74,11 +75,25 @@ public class RemoteTransformerClient
     // Only changed once on success. This is stored so it can always be returned.
     private Pair<Boolean, String> checkResult = new Pair<>(null, null);
 
+    /**
+     * Creates a client with its own pool of connections, which is closed by {@link #close()}.
+     */
     public RemoteTransformerClient(String name, String baseUrl, HttpClientConfig httpClientConfig)
+    {
+        this(name, baseUrl, httpClientConfig, null);
+    }
+
+    /**
+     * @param connectionPools the pools shared with other clients, or {@code null} for the client to have its own
+     */
+    public RemoteTransformerClient(String name, String baseUrl, HttpClientConfig httpClientConfig,
+            RemoteTransformerConnectionPools connectionPools)
     {
         this.name = name;
         this.baseUrl = baseUrl == null || baseUrl.trim().isEmpty() ? null : baseUrl.trim();
         this.httpClientConfig = httpClientConfig;
+        this.ownsConnectionPools = connectionPools == null;
+        this.connectionPools = ownsConnectionPools ? new RemoteTransformerConnectionPools() : connectionPools;
     }
 
     public void setStartupRetryPeriodSeconds(int startupRetryPeriodSeconds)
@@ -91,6 +106,26 @@ public class RemoteTransformerClient
         return baseUrl;
     }
 
+    /**
+     * @return the pool of connections to the T-Engine, which is shared with other clients using the same base URL
+     *         and pools.
+     */
+    public RemoteTransformerConnectionPool getConnectionPool()
+    {
+        return connectionPools.getPool(baseUrl, httpClientConfig);
+    }
+
+    /**
+     * Closes the client's own pool of connections. Shared pools are left to be closed by their owner.
+     */
+    public void close()
+    {
+        if (ownsConnectionPools)
+        {
+            connectionPools.close();
+        }
+    }
+
     public void request(ContentReader reader, ContentWriter writer, String sourceMimetype, String sourceExtension,
             String targetExtension, long timeoutMs, Log logger, String... args)
     {
@@ -134,78 +169,79 @@ public class RemoteTransformerClient
 
         try
         {
-            try (CloseableHttpClient httpclient = HttpClient4Factory.createHttpClient(httpClientConfig))
+            RemoteTransformerConnectionPool pool = getConnectionPool();
+            long start = System.currentTimeMillis();
+            boolean succeeded = false;
+            try (CloseableHttpResponse response = execute(pool.getHttpClient(), httppost))
             {
-                try (CloseableHttpResponse response = execute(httpclient, httppost))
+                StatusLine statusLine = response.getStatusLine();
+                if (statusLine == null)
                 {
-                    StatusLine statusLine = response.getStatusLine();
-                    if (statusLine == null)
-                    {
-                        throw new AlfrescoRuntimeException(name+" returned no status " + url + ' ' + args);
-                    }
-                    HttpEntity resEntity = response.getEntity();
-                    if (resEntity != null)
+                    throw new AlfrescoRuntimeException(name+" returned no status " + url + ' ' + args);
+                }
+                HttpEntity resEntity = response.getEntity();
+                if (resEntity != null)
+                {
+                    int statusCode = statusLine.getStatusCode();
+                    if (statusCode == 200)
                     {
-                        int statusCode = statusLine.getStatusCode();
-                        if (statusCode == 200)
+                        try
                         {
-                            try
+                            if (logger.isDebugEnabled())
                             {
-                                if (logger.isDebugEnabled())
-                                {
-                                    long responseContentLength = resEntity.getContentLength();
-                                    Header responseContentEncoding = resEntity.getContentEncoding();
-                                    Header responseContentType = resEntity.getContentType();
-                                    logger.debug(name + ' ' + sourceExtension + ' ' + targetExtension +
-                                            " returned. length=" + responseContentLength +
-                                            " type=" + responseContentType +
-                                            " encoding=" + responseContentEncoding);
-                                }
-
-                                writer.putContent(resEntity.getContent());
-                                EntityUtils.consume(resEntity);
-                            }
-                            catch (IOException e)
-                            {
-                                throw new AlfrescoRuntimeException(name + " failed to read the returned content", e);
+                                long responseContentLength = resEntity.getContentLength();
+                                Header responseContentEncoding = resEntity.getContentEncoding();
+                                Header responseContentType = resEntity.getContentType();
+                                logger.debug(name + ' ' + sourceExtension + ' ' + targetExtension +
+                                        " returned. length=" + responseContentLength +
+                                        " type=" + responseContentType +
+                                        " encoding=" + responseContentEncoding);
                             }
+
+                            writer.putContent(resEntity.getContent());
+                            EntityUtils.consume(resEntity);
+                            succeeded = true;
                         }
-                        else
+                        catch (IOException e)
                         {
-                            String message = getErrorMessage(resEntity);
-                            String msg = (name + " returned a " + statusCode + " status " + message +
-                                    ' ' + url + ' ' + args).trim();
-                            if (statusCode == 401)
-                            {
-                                throw new UnsupportedTransformationException(msg);
-                            }
-                            else if (statusCode == 402)
-                            {
-                                throw new UnimportantTransformException(msg);
-                            }
-                            else
-                            {
-                                throw new AlfrescoRuntimeException(msg);
-                            }
+                            throw new AlfrescoRuntimeException(name + " failed to read the returned content", e);
                         }
                     }
                     else
                     {
-                        throw new AlfrescoRuntimeException(name + " did not return an entity " + url);
+                        String message = getErrorMessage(resEntity);
+                        String msg = (name + " returned a " + statusCode + " status " + message +
+                                ' ' + url + ' ' + args).trim();
+                        if (statusCode == 401)
+                        {
+                            throw new UnsupportedTransformationException(msg);
+                        }
+                        else if (statusCode == 402)
+                        {
+                            throw new UnimportantTransformException(msg);
+                        }
+                        else
+                        {
+                            throw new AlfrescoRuntimeException(msg);
+                        }
                     }
                 }
-                catch (IOException e)
+                else
                 {
-                    // In the case of transform requests, unlike version checks, it is only the failure to connect that
-                    // forces a wait before trying again.
-                    connectionFailed();
-                    logHttpClientTimeoutException(e, logger);
-                    throw new AlfrescoRuntimeException(name + " failed to connect or to read the response", e);
+                    throw new AlfrescoRuntimeException(name + " did not return an entity " + url);
                 }
             }
             catch (IOException e)
             {
-                throw new AlfrescoRuntimeException(name + " failed to create an HttpClient", e);
+                // In the case of transform requests, unlike version checks, it is only the failure to connect that
+                // forces a wait before trying again.
+                connectionFailed();
+                logHttpClientTimeoutException(e, logger);
+                throw new AlfrescoRuntimeException(name + " failed to connect or to read the response", e);
+            }
+            finally
+            {
+                pool.recordRequest(System.currentTimeMillis() - start, succeeded);
             }
         }
         catch (AlfrescoRuntimeException e)
@@ -246,67 +282,60 @@ public class RemoteTransformerClient
 
         try
         {
-            try (CloseableHttpClient httpclient = HttpClient4Factory.createHttpClient(httpClientConfig))
+            try (CloseableHttpResponse response = execute(getConnectionPool().getHttpClient(), httpGet))
             {
-                try (CloseableHttpResponse response = execute(httpclient, httpGet))
+                StatusLine statusLine = response.getStatusLine();
+                if (statusLine == null)
                 {
-                    StatusLine statusLine = response.getStatusLine();
-                    if (statusLine == null)
-                    {
-                        throw new AlfrescoRuntimeException(name+" check returned no status " + url);
-                    }
-                    HttpEntity resEntity = response.getEntity();
-                    if (resEntity != null)
+                    throw new AlfrescoRuntimeException(name+" check returned no status " + url);
+                }
+                HttpEntity resEntity = response.getEntity();
+                if (resEntity != null)
+                {
+                    int statusCode = statusLine.getStatusCode();
+                    if (statusCode == 200)
                     {
-                        int statusCode = statusLine.getStatusCode();
-                        if (statusCode == 200)
+                        try
                         {
-                            try
-                            {
-                                String version = getContent(resEntity);
-
-                                if (logger.isTraceEnabled())
-                                {
-                                    long responseContentLength = resEntity.getContentLength();
-                                    Header responseContentType = resEntity.getContentType();
-                                    Header responseContentEncoding = resEntity.getContentEncoding();
-                                    logger.trace(name +
-                                            " check returned. length=" + responseContentLength +
-                                            " type=" + responseContentType +
-                                            " encoding=" + responseContentEncoding+
-                                            " content="+version);
-                                }
-
-                                EntityUtils.consume(resEntity);
-                                connectionSuccess();
-                                Pair<Boolean, String> success = new Pair<>(true, version);
-                                setCheckResult(success);
-                                return success;
-                            }
-                            catch (IOException e)
+                            String version = getContent(resEntity);
+
+                            if (logger.isTraceEnabled())
                             {
-                                throw new AlfrescoRuntimeException(name + " check failed to read the returned content", e);
+                                long responseContentLength = resEntity.getContentLength();
+                                Header responseContentType = resEntity.getContentType();
+                                Header responseContentEncoding = resEntity.getContentEncoding();
+                                logger.trace(name +
+                                        " check returned. length=" + responseContentLength +
+                                        " type=" + responseContentType +
+                                        " encoding=" + responseContentEncoding+
+                                        " content="+version);
                             }
+
+                            EntityUtils.consume(resEntity);
+                            connectionSuccess();
+                            Pair<Boolean, String> success = new Pair<>(true, version);
+                            setCheckResult(success);
+                            return success;
                         }
-                        else
+                        catch (IOException e)
                         {
-                            String message = getErrorMessage(resEntity);
-                            throw new AlfrescoRuntimeException(name + " check returned a " + statusCode + " status " + message + ' ' + url);
+                            throw new AlfrescoRuntimeException(name + " check failed to read the returned content", e);
                         }
                     }
                     else
                     {
-                        throw new AlfrescoRuntimeException(name + " check did not return an entity " + url);
+                        String message = getErrorMessage(resEntity);
+                        throw new AlfrescoRuntimeException(name + " check returned a " + statusCode + " status " + message + ' ' + url);
                     }
                 }
-                catch (IOException e)
+                else
                 {
-                    throw new AlfrescoRuntimeException(name + " check failed to connect or to read the response", e);
+                    throw new AlfrescoRuntimeException(name + " check did not return an entity " + url);
                 }
             }
             catch (IOException e)
             {
-                throw new AlfrescoRuntimeException(name + " check failed to create an HttpClient", e);
+                throw new AlfrescoRuntimeException(name + " check failed to connect or to read the response", e);
             }
         }
         catch (AlfrescoRuntimeException e)
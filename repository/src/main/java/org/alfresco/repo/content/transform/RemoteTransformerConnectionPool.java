@@ -0,0 +1,221 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.transform;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.alfresco.httpclient.HttpClient4Factory;
+import org.alfresco.httpclient.HttpClientConfig;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * A bounded pool of keep-alive HTTP connections to a single T-Engine, shared by every
+ * {@link RemoteTransformerClient} using the same base URL. Reusing connections avoids a new TCP
+ * connection (and TLS handshake) per transform. Connections that have been idle for longer than
+ * the {@code idleConnectionTimeout} of the {@link HttpClientConfig} are closed in the background.
+ * <p>
+ * Pools are obtained from {@link RemoteTransformerConnectionPools}, which closes them. Pool utilization
+ * and a histogram of transform request times are available for monitoring.
+ */
+public class RemoteTransformerConnectionPool
+{
+    private static final Log logger = LogFactory.getLog(RemoteTransformerConnectionPool.class);
+
+    private static final long DEFAULT_IDLE_CONNECTION_TIMEOUT_MS = 30000;
+
+    /** Upper bounds (inclusive) of the request time histogram buckets. A final bucket holds anything longer. */
+    private static final long[] LATENCY_BUCKET_LIMITS_MS = {10, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+
+    private final String baseUrl;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final IdleConnectionEvictor idleConnectionEvictor;
+
+    private final AtomicLongArray latencyCounts = new AtomicLongArray(LATENCY_BUCKET_LIMITS_MS.length + 1);
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+    private final LongAdder totalRequestMillis = new LongAdder();
+
+    RemoteTransformerConnectionPool(String baseUrl, HttpClientConfig httpClientConfig)
+    {
+        this.baseUrl = baseUrl;
+        if (httpClientConfig.isMTLSEnabled())
+        {
+            connectionManager = HttpClient4Factory.createPoolingConnectionManager(httpClientConfig);
+        }
+        else
+        {
+            // Unlike the factory's pool, allow both http and https T-Engine URLs as a non-pooled client does.
+            connectionManager = new PoolingHttpClientConnectionManager();
+            httpClientConfig.getMaxTotalConnections().ifPresent(connectionManager::setMaxTotal);
+            httpClientConfig.getMaxHostConnections().ifPresent(connectionManager::setDefaultMaxPerRoute);
+        }
+        httpClient = HttpClient4Factory.createHttpClient(httpClientConfig, connectionManager);
+
+        long idleTimeoutMs = httpClientConfig.getIdleConnectionTimeout()
+                .map(Integer::longValue)
+                .orElse(DEFAULT_IDLE_CONNECTION_TIMEOUT_MS);
+        if (idleTimeoutMs > 0)
+        {
+            idleConnectionEvictor = new IdleConnectionEvictor(connectionManager, idleTimeoutMs, TimeUnit.MILLISECONDS);
+            idleConnectionEvictor.start();
+        }
+        else
+        {
+            idleConnectionEvictor = null;
+        }
+    }
+
+    public String getBaseUrl()
+    {
+        return baseUrl;
+    }
+
+    /**
+     * @return the shared client. It must not be closed by callers.
+     */
+    CloseableHttpClient getHttpClient()
+    {
+        return httpClient;
+    }
+
+    /**
+     * Stops the eviction of idle connections and closes the client together with its connections.
+     */
+    void close()
+    {
+        if (idleConnectionEvictor != null)
+        {
+            idleConnectionEvictor.shutdown();
+        }
+        try
+        {
+            httpClient.close();
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed to close the connections to " + baseUrl, e);
+        }
+        finally
+        {
+            connectionManager.shutdown();
+        }
+    }
+
+    /**
+     * Records the time taken by a transform request.
+     */
+    void recordRequest(long elapsedMillis, boolean succeeded)
+    {
+        requests.increment();
+        if (!succeeded)
+        {
+            failedRequests.increment();
+        }
+        totalRequestMillis.add(elapsedMillis);
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKET_LIMITS_MS.length && elapsedMillis > LATENCY_BUCKET_LIMITS_MS[bucket])
+        {
+            bucket++;
+        }
+        latencyCounts.incrementAndGet(bucket);
+    }
+
+    public int getLeasedConnections()
+    {
+        return connectionManager.getTotalStats().getLeased();
+    }
+
+    public int getAvailableConnections()
+    {
+        return connectionManager.getTotalStats().getAvailable();
+    }
+
+    /**
+     * @return the number of requests waiting for a connection to become free.
+     */
+    public int getPendingRequests()
+    {
+        return connectionManager.getTotalStats().getPending();
+    }
+
+    public int getMaxConnections()
+    {
+        return connectionManager.getTotalStats().getMax();
+    }
+
+    public long getRequestCount()
+    {
+        return requests.sum();
+    }
+
+    public long getFailedRequestCount()
+    {
+        return failedRequests.sum();
+    }
+
+    public double getAverageRequestMillis()
+    {
+        long count = requests.sum();
+        return count == 0 ? 0 : (double) totalRequestMillis.sum() / count;
+    }
+
+    /**
+     * @return the number of transform requests by how long they took, keyed by the upper bound of each bucket
+     *         such as {@code "<=100ms"}.
+     */
+    public Map<String, Long> getRequestTimeHistogram()
+    {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < LATENCY_BUCKET_LIMITS_MS.length; i++)
+        {
+            histogram.put("<=" + LATENCY_BUCKET_LIMITS_MS[i] + "ms", latencyCounts.get(i));
+        }
+        histogram.put(">" + LATENCY_BUCKET_LIMITS_MS[LATENCY_BUCKET_LIMITS_MS.length - 1] + "ms",
+                latencyCounts.get(LATENCY_BUCKET_LIMITS_MS.length));
+        return histogram;
+    }
+
+    @Override
+    public String toString()
+    {
+        PoolStats stats = connectionManager.getTotalStats();
+        return "Connections to " + baseUrl + " leased=" + stats.getLeased() + " available=" + stats.getAvailable() +
+                " pending=" + stats.getPending() + " max=" + stats.getMax() + " requests=" + getRequestCount() +
+                " failed=" + getFailedRequestCount() + " avgMs=" + String.format("%.1f", getAverageRequestMillis()) +
+                " histogram=" + getRequestTimeHistogram();
+    }
+}
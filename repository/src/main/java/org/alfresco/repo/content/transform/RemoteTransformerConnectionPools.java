@@ -0,0 +1,98 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.transform;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.alfresco.httpclient.HttpClientConfig;
+
+/**
+ * The {@link RemoteTransformerConnectionPool}s used by the {@link RemoteTransformerClient}s, one per T-Engine
+ * base URL. Pools are created on first use and are kept while the transformers are recreated as the T-Engine
+ * configuration is re-read. They are all closed by {@link #close()}, which is called when the Spring context
+ * is closed.
+ *
+ * @since 23.2
+ */
+public class RemoteTransformerConnectionPools
+{
+    private final ConcurrentMap<String, RemoteTransformerConnectionPool> pools = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    /**
+     * Returns the pool for the given T-Engine, creating it if needed. The configuration of the first
+     * caller is used to create the pool.
+     *
+     * @throws IllegalStateException if the pools have been closed
+     */
+    public RemoteTransformerConnectionPool getPool(String baseUrl, HttpClientConfig httpClientConfig)
+    {
+        checkNotClosed();
+        RemoteTransformerConnectionPool pool = pools.computeIfAbsent(baseUrl,
+                url -> new RemoteTransformerConnectionPool(url, httpClientConfig));
+        if (closed && pools.remove(baseUrl, pool))
+        {
+            // Created while the pools were being closed
+            pool.close();
+        }
+        checkNotClosed();
+        return pool;
+    }
+
+    /**
+     * @return the pools created so far, one per T-Engine base URL.
+     */
+    public Collection<RemoteTransformerConnectionPool> getPools()
+    {
+        return new ArrayList<>(pools.values());
+    }
+
+    /**
+     * Closes every pool, stopping the eviction of idle connections and closing the connections.
+     */
+    public void close()
+    {
+        closed = true;
+        for (RemoteTransformerConnectionPool pool : getPools())
+        {
+            if (pools.remove(pool.getBaseUrl(), pool))
+            {
+                pool.close();
+            }
+        }
+    }
+
+    private void checkNotClosed()
+    {
+        if (closed)
+        {
+            throw new IllegalStateException("The T-Engine connection pools have been closed");
+        }
+    }
+}
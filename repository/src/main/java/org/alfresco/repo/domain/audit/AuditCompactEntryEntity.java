@@ -0,0 +1,138 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.audit;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Entity bean for <b>alf_audit_compact_entry</b> table.  The values are held in the compact form
+ * produced by {@link CompactAuditValues}.
+ */
+public class AuditCompactEntryEntity
+{
+    private Long id;
+    private Long auditApplicationId;
+    private Long auditAppNameId;
+    private long auditTime;
+    private String auditUser;
+    private byte[] auditValues;
+    private List<AuditCompactKeyEntity> keys;
+
+    public AuditCompactEntryEntity()
+    {
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("AuditCompactEntryEntity")
+          .append("[ ID=").append(id)
+          .append(", auditApplicationId=").append(auditApplicationId)
+          .append(", auditTime=").append(new Date(auditTime))
+          .append(", auditUser=").append(auditUser)
+          .append(", auditValues=").append(auditValues == null ? null : auditValues.length + " bytes")
+          .append("]");
+        return sb.toString();
+    }
+
+    public Long getId()
+    {
+        return id;
+    }
+
+    public void setId(Long id)
+    {
+        this.id = id;
+    }
+
+    public Long getAuditApplicationId()
+    {
+        return auditApplicationId;
+    }
+
+    public void setAuditApplicationId(Long auditApplicationId)
+    {
+        this.auditApplicationId = auditApplicationId;
+    }
+
+    /**
+     * @return              the ID of the application name property, only populated by queries
+     */
+    public Long getAuditAppNameId()
+    {
+        return auditAppNameId;
+    }
+
+    public void setAuditAppNameId(Long auditAppNameId)
+    {
+        this.auditAppNameId = auditAppNameId;
+    }
+
+    public long getAuditTime()
+    {
+        return auditTime;
+    }
+
+    public void setAuditTime(long auditTime)
+    {
+        this.auditTime = auditTime;
+    }
+
+    public String getAuditUser()
+    {
+        return auditUser;
+    }
+
+    public void setAuditUser(String auditUser)
+    {
+        this.auditUser = auditUser;
+    }
+
+    public byte[] getAuditValues()
+    {
+        return auditValues;
+    }
+
+    public void setAuditValues(byte[] auditValues)
+    {
+        this.auditValues = auditValues;
+    }
+
+    /**
+     * @return              the path index rows to write with the entry, not populated by queries
+     */
+    public List<AuditCompactKeyEntity> getKeys()
+    {
+        return keys;
+    }
+
+    public void setKeys(List<AuditCompactKeyEntity> keys)
+    {
+        this.keys = keys;
+    }
+}
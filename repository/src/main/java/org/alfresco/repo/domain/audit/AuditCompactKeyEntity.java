@@ -0,0 +1,92 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.audit;
+
+/**
+ * Entity bean for <b>alf_audit_compact_key</b> table, which indexes selected paths of a compact
+ * audit entry by the hashes of the path and of the value.
+ */
+public class AuditCompactKeyEntity
+{
+    private Long entryId;
+    private long pathHash;
+    private Long valueHash;
+
+    public AuditCompactKeyEntity()
+    {
+    }
+
+    public AuditCompactKeyEntity(long pathHash, Long valueHash)
+    {
+        this.pathHash = pathHash;
+        this.valueHash = valueHash;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("AuditCompactKeyEntity")
+          .append("[ entryId=").append(entryId)
+          .append(", pathHash=").append(pathHash)
+          .append(", valueHash=").append(valueHash)
+          .append("]");
+        return sb.toString();
+    }
+
+    public Long getEntryId()
+    {
+        return entryId;
+    }
+
+    public void setEntryId(Long entryId)
+    {
+        this.entryId = entryId;
+    }
+
+    public long getPathHash()
+    {
+        return pathHash;
+    }
+
+    public void setPathHash(long pathHash)
+    {
+        this.pathHash = pathHash;
+    }
+
+    /**
+     * @return              the hash of the value or <tt>null</tt> if the value is not of an indexable type
+     */
+    public Long getValueHash()
+    {
+        return valueHash;
+    }
+
+    public void setValueHash(Long valueHash)
+    {
+        this.valueHash = valueHash;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.audit;
+
+import java.util.Date;
+
+/**
+ * Query parameters for <b>alf_audit_compact_entry</b> table.
+ */
+public class AuditCompactQueryParameters
+{
+    private boolean forward;
+    private Long auditAppId;
+    private String auditUser;
+    private Long auditFromId;
+    private Long auditToId;
+    private Long auditFromTime;
+    private Long auditToTime;
+    private Long searchPathHash;
+    private Long searchValueHash;
+
+    public AuditCompactQueryParameters()
+    {
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("AuditCompactQueryParameters")
+          .append("[ forward=").append(forward)
+          .append(", auditAppId=").append(auditAppId)
+          .append(", auditUser=").append(auditUser)
+          .append(", auditFromId=").append(auditFromId)
+          .append(", auditToId=").append(auditToId)
+          .append(", auditFromTime=").append(auditFromTime == null ? null : new Date(auditFromTime))
+          .append(", auditToTime=").append(auditToTime == null ? null : new Date(auditToTime))
+          .append(", searchPathHash=").append(searchPathHash)
+          .append(", searchValueHash=").append(searchValueHash)
+          .append("]");
+        return sb.toString();
+    }
+
+    public boolean isForward()
+    {
+        return forward;
+    }
+
+    public void setForward(boolean forward)
+    {
+        this.forward = forward;
+    }
+
+    public boolean isForwardTrue()
+    {
+        return true;
+    }
+
+    public Long getAuditAppId()
+    {
+        return auditAppId;
+    }
+
+    public void setAuditAppId(Long auditAppId)
+    {
+        this.auditAppId = auditAppId;
+    }
+
+    public String getAuditUser()
+    {
+        return auditUser;
+    }
+
+    public void setAuditUser(String auditUser)
+    {
+        this.auditUser = auditUser;
+    }
+
+    public Long getAuditFromId()
+    {
+        return auditFromId;
+    }
+
+    public void setAuditFromId(Long auditFromId)
+    {
+        this.auditFromId = auditFromId;
+    }
+
+    public Long getAuditToId()
+    {
+        return auditToId;
+    }
+
+    public void setAuditToId(Long auditToId)
+    {
+        this.auditToId = auditToId;
+    }
+
+    public Long getAuditFromTime()
+    {
+        return auditFromTime;
+    }
+
+    public void setAuditFromTime(Long auditFromTime)
+    {
+        this.auditFromTime = auditFromTime;
+    }
+
+    public Long getAuditToTime()
+    {
+        return auditToTime;
+    }
+
+    public void setAuditToTime(Long auditToTime)
+    {
+        this.auditToTime = auditToTime;
+    }
+
+    public Long getSearchPathHash()
+    {
+        return searchPathHash;
+    }
+
+    public void setSearchPathHash(Long searchPathHash)
+    {
+        this.searchPathHash = searchPathHash;
+    }
+
+    public Long getSearchValueHash()
+    {
+        return searchValueHash;
+    }
+
+    public void setSearchValueHash(Long searchValueHash)
+    {
+        this.searchValueHash = searchValueHash;
+    }
+
+    /**
+     * @return              Returns <tt>true</tt> if this object includes a path- or value-based search
+     */
+    public boolean isKeyOrValueSearch()
+    {
+        return searchPathHash != null || searchValueHash != null;
+    }
+}
@@ -0,0 +1,470 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.audit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+
+/**
+ * Compact binary form of the audited values map stored in <b>alf_audit_compact_entry.audit_values</b>,
+ * together with the hashes used by the <b>alf_audit_compact_key</b> path index.
+ * <p>
+ * The encoded form is a version byte, a flags byte and a payload.  The payload holds the path prefix
+ * shared by all keys, followed by each key suffix and a type-tagged value.  Strings, numbers, booleans,
+ * dates, node references and qualified names are written natively; anything else falls back to Java
+ * serialization.  Payloads above {@link #COMPRESSION_THRESHOLD} bytes are deflated when that makes them
+ * smaller.
+ * <p>
+ * Search values are compared in a canonical form so that, for example, an <tt>Integer</tt> and a
+ * <tt>Long</tt> with the same value match, as they do in the <b>alf_prop_XXX</b> tables.
+ */
+public final class CompactAuditValues
+{
+    /** Payloads larger than this many bytes are candidates for compression */
+    public static final int COMPRESSION_THRESHOLD = 256;
+
+    private static final byte VERSION = 1;
+    private static final byte FLAG_DEFLATED = 0x01;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_INTEGER = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_DATE = 5;
+    private static final byte TYPE_DOUBLE = 6;
+    private static final byte TYPE_FLOAT = 7;
+    private static final byte TYPE_NODEREF = 8;
+    private static final byte TYPE_QNAME = 9;
+    private static final byte TYPE_SERIALIZED = 10;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private CompactAuditValues()
+    {
+    }
+
+    /**
+     * @param values            the audited values (may be <tt>null</tt> or empty)
+     * @return                  the encoded values or <tt>null</tt> if there are no values
+     */
+    public static byte[] encode(Map<String, Serializable> values)
+    {
+        if (values == null || values.isEmpty())
+        {
+            return null;
+        }
+        try
+        {
+            String prefix = commonPathPrefix(values.keySet());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + values.size() * 32);
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeString(out, prefix);
+            writeVarInt(out, values.size());
+            for (Map.Entry<String, Serializable> entry : values.entrySet())
+            {
+                writeString(out, entry.getKey().substring(prefix.length()));
+                writeValue(out, entry.getValue());
+            }
+            out.flush();
+            byte[] payload = bytes.toByteArray();
+
+            byte flags = 0;
+            if (payload.length > COMPRESSION_THRESHOLD)
+            {
+                byte[] deflated = deflate(payload);
+                if (deflated.length < payload.length)
+                {
+                    payload = deflated;
+                    flags |= FLAG_DEFLATED;
+                }
+            }
+            byte[] encoded = new byte[payload.length + 2];
+            encoded[0] = VERSION;
+            encoded[1] = flags;
+            System.arraycopy(payload, 0, encoded, 2, payload.length);
+            return encoded;
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to encode audit values: " + values.keySet(), e);
+        }
+    }
+
+    /**
+     * @param encoded           the encoded values (may be <tt>null</tt>)
+     * @return                  the decoded values, empty if there were none
+     */
+    public static Map<String, Serializable> decode(byte[] encoded)
+    {
+        if (encoded == null || encoded.length == 0)
+        {
+            return new HashMap<>(1);
+        }
+        if (encoded[0] != VERSION)
+        {
+            throw new AlfrescoRuntimeException("Unsupported audit values encoding version: " + encoded[0]);
+        }
+        try
+        {
+            byte[] payload = new byte[encoded.length - 2];
+            System.arraycopy(encoded, 2, payload, 0, payload.length);
+            if ((encoded[1] & FLAG_DEFLATED) != 0)
+            {
+                payload = inflate(payload);
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            String prefix = readString(in);
+            int count = readVarInt(in);
+            Map<String, Serializable> values = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++)
+            {
+                String key = prefix + readString(in);
+                values.put(key, readValue(in));
+            }
+            return values;
+        }
+        catch (IOException | DataFormatException | ClassNotFoundException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to decode audit values", e);
+        }
+    }
+
+    /**
+     * @return                  the 64-bit hash of an audit path, as stored in <b>alf_audit_compact_key.path_hash</b>
+     */
+    public static long pathHash(String path)
+    {
+        return hash(path);
+    }
+
+    /**
+     * @return                  the 64-bit hash of the value's canonical form or <tt>null</tt> if the value
+     *                          is not of an indexable type
+     */
+    public static Long valueHash(Serializable value)
+    {
+        String canonical = canonicalValue(value);
+        return canonical == null ? null : hash(canonical);
+    }
+
+    /**
+     * Compare two audited values the way an indexed search would.
+     * 
+     * @return                  <tt>true</tt> if the values are equal, allowing for differing numeric types
+     */
+    public static boolean valuesMatch(Serializable searchValue, Serializable value)
+    {
+        String searchCanonical = canonicalValue(searchValue);
+        if (searchCanonical == null)
+        {
+            return searchValue == null ? value == null : searchValue.equals(value);
+        }
+        return searchCanonical.equals(canonicalValue(value));
+    }
+
+    /**
+     * @return                  a type-qualified string form of simple values or <tt>null</tt>
+     */
+    private static String canonicalValue(Serializable value)
+    {
+        if (value instanceof String)
+        {
+            return "S" + value;
+        }
+        else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+        {
+            return "L" + ((Number) value).longValue();
+        }
+        else if (value instanceof Double || value instanceof Float)
+        {
+            return "D" + ((Number) value).doubleValue();
+        }
+        else if (value instanceof Boolean)
+        {
+            return "B" + value;
+        }
+        else if (value instanceof Date)
+        {
+            return "T" + ((Date) value).getTime();
+        }
+        else if (value instanceof NodeRef || value instanceof QName)
+        {
+            return "O" + value;
+        }
+        return null;
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes of the string
+     */
+    private static long hash(String str)
+    {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : str.getBytes(StandardCharsets.UTF_8))
+        {
+            hash ^= (b & 0xff);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * @return                  the longest prefix, ending in a <b>/</b>, shared by all the paths
+     */
+    private static String commonPathPrefix(Iterable<String> paths)
+    {
+        String prefix = null;
+        for (String path : paths)
+        {
+            if (prefix == null)
+            {
+                prefix = path;
+                continue;
+            }
+            int max = Math.min(prefix.length(), path.length());
+            int i = 0;
+            while (i < max && prefix.charAt(i) == path.charAt(i))
+            {
+                i++;
+            }
+            prefix = prefix.substring(0, i);
+            if (prefix.isEmpty())
+            {
+                break;
+            }
+        }
+        if (prefix == null)
+        {
+            return "";
+        }
+        return prefix.substring(0, prefix.lastIndexOf('/') + 1);
+    }
+
+    private static void writeValue(DataOutputStream out, Serializable value) throws IOException
+    {
+        if (value == null)
+        {
+            out.writeByte(TYPE_NULL);
+        }
+        else if (value instanceof String)
+        {
+            out.writeByte(TYPE_STRING);
+            writeString(out, (String) value);
+        }
+        else if (value instanceof Long)
+        {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        }
+        else if (value instanceof Integer)
+        {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) value);
+        }
+        else if (value instanceof Boolean)
+        {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        }
+        else if (value.getClass() == Date.class)
+        {
+            out.writeByte(TYPE_DATE);
+            out.writeLong(((Date) value).getTime());
+        }
+        else if (value instanceof Double)
+        {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        }
+        else if (value instanceof Float)
+        {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float) value);
+        }
+        else if (value instanceof NodeRef)
+        {
+            out.writeByte(TYPE_NODEREF);
+            writeString(out, value.toString());
+        }
+        else if (value instanceof QName)
+        {
+            out.writeByte(TYPE_QNAME);
+            writeString(out, value.toString());
+        }
+        else
+        {
+            out.writeByte(TYPE_SERIALIZED);
+            ByteArrayOutputStream serialized = new ByteArrayOutputStream(256);
+            try (ObjectOutputStream oos = new ObjectOutputStream(serialized))
+            {
+                oos.writeObject(value);
+            }
+            writeVarInt(out, serialized.size());
+            serialized.writeTo(out);
+        }
+    }
+
+    private static Serializable readValue(DataInputStream in) throws IOException, ClassNotFoundException
+    {
+        byte type = in.readByte();
+        switch (type)
+        {
+        case TYPE_NULL:
+            return null;
+        case TYPE_STRING:
+            return readString(in);
+        case TYPE_LONG:
+            return in.readLong();
+        case TYPE_INTEGER:
+            return in.readInt();
+        case TYPE_BOOLEAN:
+            return in.readBoolean();
+        case TYPE_DATE:
+            return new Date(in.readLong());
+        case TYPE_DOUBLE:
+            return in.readDouble();
+        case TYPE_FLOAT:
+            return in.readFloat();
+        case TYPE_NODEREF:
+            return new NodeRef(readString(in));
+        case TYPE_QNAME:
+            return QName.createQName(readString(in));
+        case TYPE_SERIALIZED:
+            byte[] serialized = new byte[readVarInt(in)];
+            in.readFully(serialized);
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serialized)))
+            {
+                return (Serializable) ois.readObject();
+            }
+        default:
+            throw new IOException("Unknown audit value type: " + type);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException
+    {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException
+    {
+        while ((value & ~0x7f) != 0)
+        {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("Malformed length in audit values");
+    }
+
+    private static byte[] deflate(byte[] data)
+    {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try
+        {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished())
+            {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) throws DataFormatException
+    {
+        Inflater inflater = new Inflater();
+        try
+        {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished())
+            {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                {
+                    throw new DataFormatException("Truncated audit values");
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+}
@@ -73,7 +73,7 @@ public class AuditDAOImpl extends AbstractAuditDAOImpl
     private static final String SELECT_ENTRIES_WITH_VALUES = "alfresco.audit.select_AuditEntriesWithValues";
     private static final String SELECT_ENTRIES_WITHOUT_VALUES = "alfresco.audit.select_AuditEntriesWithoutValues";
     
-    private SqlSessionTemplate template;
+    protected SqlSessionTemplate template;
     
     public final void setSqlSessionTemplate(SqlSessionTemplate sqlSessionTemplate) 
     {
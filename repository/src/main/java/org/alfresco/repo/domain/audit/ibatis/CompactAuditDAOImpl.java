@@ -0,0 +1,728 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.audit.ibatis;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+
+import org.alfresco.repo.domain.audit.AuditApplicationEntity;
+import org.alfresco.repo.domain.audit.AuditCompactEntryEntity;
+import org.alfresco.repo.domain.audit.AuditCompactKeyEntity;
+import org.alfresco.repo.domain.audit.AuditCompactQueryParameters;
+import org.alfresco.repo.domain.audit.AuditDeleteParameters;
+import org.alfresco.repo.domain.audit.CompactAuditValues;
+import org.alfresco.service.cmr.audit.AuditQueryParameters;
+import org.alfresco.service.cmr.audit.AuditService.AuditQueryCallback;
+import org.alfresco.util.Pair;
+import org.apache.ibatis.session.RowBounds;
+
+/**
+ * Audit DAO that stores entries in the compact <b>alf_audit_compact_XXX</b> tables instead of as
+ * property graphs in the <b>alf_prop_XXX</b> tables.
+ * <p>
+ * Each entry is a single row holding the application, time, user and the audited values in the form
+ * produced by {@link CompactAuditValues}.  Entries are indexed by application and time, and by user and
+ * time.  Selected paths are indexed by the hash of the path and of the value in
+ * <b>alf_audit_compact_key</b>, so a search on a path and value is an index lookup rather than a join
+ * across the property tables.  Searches on paths that are not indexed, or for values that cannot be
+ * hashed, fall back to a filtered scan of the entries matching the other criteria.
+ * <p>
+ * Applications and models are still held in <b>alf_audit_app</b> and <b>alf_audit_model</b>.  When
+ * compact storage is disabled, all calls go to the property-based implementation.  When it is enabled,
+ * entries that have not yet been moved over by the {@link CompactAuditMigrationWorker} are still found,
+ * counted and deleted, and migrated entries keep their IDs.
+ */
+public class CompactAuditDAOImpl extends AuditDAOImpl
+{
+    private static final String INSERT_COMPACT_ENTRY = "alfresco.audit.insert.insert_AuditCompactEntry";
+    private static final String INSERT_COMPACT_ENTRY_ABOVE_ID = "alfresco.audit.insert.insert_AuditCompactEntryAboveId";
+    private static final String INSERT_COMPACT_ENTRY_WITH_ID = "alfresco.audit.insert_AuditCompactEntryWithId";
+    private static final String INSERT_COMPACT_KEYS = "alfresco.audit.insert_AuditCompactKeys";
+    private static final String DELETE_COMPACT_ENTRIES = "alfresco.audit.delete_AuditCompactEntries";
+    private static final String DELETE_COMPACT_ENTRIES_BY_ID = "alfresco.audit.delete_AuditCompactEntriesById";
+    private static final String SELECT_COMPACT_ENTRIES = "alfresco.audit.select_AuditCompactEntries";
+    private static final String SELECT_COUNT_COMPACT_ENTRIES = "alfresco.audit.select_CountAuditCompactEntries";
+    private static final String SELECT_MINMAX_COMPACT_ENTRY_FOR_APP = "alfresco.audit.select_MinMaxAuditCompactEntryId";
+    private static final String SELECT_MAX_ENTRY_ID = "alfresco.audit.select_MaxAuditEntryId";
+    private static final String SELECT_MAX_COMPACT_ENTRY_ID = "alfresco.audit.select_MaxAuditCompactEntryId";
+
+    private boolean enabled;
+    private Set<String> indexedPaths = Collections.emptySet();
+    private int scanPageSize = 1000;
+    private int maxCheckedCount = 1000;
+
+    /** Whether <b>alf_audit_entry</b> still holds entries; <tt>null</tt> until checked */
+    private volatile Boolean legacyEntriesPresent;
+    /** Whether new entries are known to get IDs above those in <b>alf_audit_entry</b> */
+    private volatile boolean idFloorChecked;
+
+    /**
+     * @param enabled           <tt>true</tt> to write and read entries using the compact tables
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * @param indexedPaths      comma-separated list of the full audit paths to index, e.g.
+     *                          <b>/alfresco-access/transaction/path</b>.  If empty, every path is indexed.
+     */
+    public void setIndexedPaths(String indexedPaths)
+    {
+        Set<String> paths = new HashSet<>();
+        if (indexedPaths != null)
+        {
+            for (String path : indexedPaths.split(","))
+            {
+                if (path.trim().length() > 0)
+                {
+                    paths.add(path.trim());
+                }
+            }
+        }
+        this.indexedPaths = paths;
+    }
+
+    /**
+     * @param scanPageSize      the number of entries read at a time when a search has to filter the values
+     */
+    public void setScanPageSize(int scanPageSize)
+    {
+        this.scanPageSize = scanPageSize;
+    }
+
+    /**
+     * @param maxCheckedCount   indexed searches match on hashes of the values.  When the index finds no more than
+     *                          this many entries, their values are checked so that hash collisions are not counted.
+     *                          Larger counts are taken from the index.
+     */
+    public void setMaxCheckedCount(int maxCheckedCount)
+    {
+        this.maxCheckedCount = maxCheckedCount;
+    }
+
+    /*
+     * alf_audit_compact_entry
+     */
+
+    @Override
+    public Long createAuditEntry(Long applicationId, long time, String username, Map<String, Serializable> values)
+    {
+        if (!enabled)
+        {
+            return super.createAuditEntry(applicationId, time, username, values);
+        }
+        AuditCompactEntryEntity entity = newCompactEntry(applicationId, time, username, values);
+        insertCompactEntry(entity);
+        insertCompactKeys(entity);
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug(
+                    "Created new compact audit entry: \n" +
+                    "   Application: " + applicationId + "\n" +
+                    "   Time:        " + (new Date(time)) + "\n" +
+                    "   User:        " + username + "\n" +
+                    "   Result:      " + entity);
+        }
+        return entity.getId();
+    }
+
+    /**
+     * The first entry written is given an ID above any in <b>alf_audit_entry</b> so that entries migrated
+     * later keep their IDs and the ID order.  Where IDs come from a sequence shared with
+     * <b>alf_audit_entry</b> this is already the case.
+     */
+    private void insertCompactEntry(AuditCompactEntryEntity entity)
+    {
+        if (!idFloorChecked)
+        {
+            Long maxLegacyId = template.selectOne(SELECT_MAX_ENTRY_ID);
+            Long maxCompactId = template.selectOne(SELECT_MAX_COMPACT_ENTRY_ID);
+            idFloorChecked = true;
+            if (maxLegacyId != null && (maxCompactId == null || maxCompactId <= maxLegacyId))
+            {
+                entity.setId(maxLegacyId + 1);
+                template.insert(INSERT_COMPACT_ENTRY_ABOVE_ID, entity);
+                return;
+            }
+        }
+        template.insert(INSERT_COMPACT_ENTRY, entity);
+    }
+
+    private void insertCompactKeys(AuditCompactEntryEntity entity)
+    {
+        if (!entity.getKeys().isEmpty())
+        {
+            template.insert(INSERT_COMPACT_KEYS, entity);
+        }
+    }
+
+    private AuditCompactEntryEntity newCompactEntry(Long applicationId, long time, String username, Map<String, Serializable> values)
+    {
+        AuditCompactEntryEntity entity = new AuditCompactEntryEntity();
+        entity.setAuditApplicationId(applicationId);
+        entity.setAuditTime(time);
+        entity.setAuditUser(username);
+        entity.setAuditValues(CompactAuditValues.encode(values));
+        List<AuditCompactKeyEntity> keys = new ArrayList<>();
+        if (values != null)
+        {
+            for (Map.Entry<String, Serializable> entry : values.entrySet())
+            {
+                if (isIndexedPath(entry.getKey()))
+                {
+                    keys.add(new AuditCompactKeyEntity(
+                            CompactAuditValues.pathHash(entry.getKey()),
+                            CompactAuditValues.valueHash(entry.getValue())));
+                }
+            }
+        }
+        entity.setKeys(keys);
+        return entity;
+    }
+
+    private boolean isIndexedPath(String path)
+    {
+        return indexedPaths.isEmpty() || indexedPaths.contains(path);
+    }
+
+    @Override
+    public int deleteAuditEntries(Long applicationId, Long from, Long to)
+    {
+        int deleted = super.deleteAuditEntries(applicationId, from, to);
+        if (enabled)
+        {
+            AuditDeleteParameters params = new AuditDeleteParameters();
+            params.setAuditApplicationId(applicationId);
+            params.setAuditFromTime(from);
+            params.setAuditToTime(to);
+            deleted += template.delete(DELETE_COMPACT_ENTRIES, params);
+        }
+        return deleted;
+    }
+
+    @Override
+    public int deleteAuditEntriesByIdRange(Long applicationId, Long fromId, Long toId)
+    {
+        int deleted = super.deleteAuditEntriesByIdRange(applicationId, fromId, toId);
+        if (enabled)
+        {
+            AuditDeleteParameters params = new AuditDeleteParameters();
+            params.setAuditApplicationId(applicationId);
+            params.setAuditFromId(fromId);
+            params.setAuditToId(toId);
+            deleted += template.delete(DELETE_COMPACT_ENTRIES, params);
+        }
+        return deleted;
+    }
+
+    @Override
+    protected int deleteAuditEntriesImpl(List<Long> auditEntryIds)
+    {
+        int deleted = super.deleteAuditEntriesImpl(auditEntryIds);
+        if (enabled)
+        {
+            AuditDeleteParameters params = new AuditDeleteParameters();
+            params.setAuditEntryIds(auditEntryIds);
+            deleted += template.delete(DELETE_COMPACT_ENTRIES_BY_ID, params);
+        }
+        return deleted;
+    }
+
+    /*
+     * Searches
+     */
+
+    @Override
+    public HashMap<String, Long> getAuditMinMaxByApp(long appId, List<String> extremes)
+    {
+        if (!enabled)
+        {
+            return super.getAuditMinMaxByApp(appId, extremes);
+        }
+        Map<String, Object> params = new HashMap<>();
+        for (String extreme : extremes)
+        {
+            params.put(extreme, Boolean.TRUE);
+        }
+        params.put("auditAppId", appId);
+        HashMap<String, Long> result = template.selectOne(SELECT_MINMAX_COMPACT_ENTRY_FOR_APP, params);
+        if (result == null)
+        {
+            result = new HashMap<>();
+        }
+        if (isLegacyEntriesPresent())
+        {
+            HashMap<String, Long> legacy = super.getAuditMinMaxByApp(appId, extremes);
+            if (legacy != null)
+            {
+                mergeExtreme(result, legacy, "min", Math::min);
+                mergeExtreme(result, legacy, "max", Math::max);
+            }
+        }
+        return result;
+    }
+
+    private static void mergeExtreme(Map<String, Long> result, Map<String, Long> other, String key, BinaryOperator<Long> choose)
+    {
+        Long value = other.get(key);
+        if (value != null)
+        {
+            result.merge(key, value, choose);
+        }
+    }
+
+    @Override
+    public int getAuditEntriesCountByApp(long applicationId)
+    {
+        if (!enabled)
+        {
+            return super.getAuditEntriesCountByApp(applicationId);
+        }
+        AuditCompactQueryParameters params = new AuditCompactQueryParameters();
+        params.setAuditAppId(applicationId);
+        int count = template.selectOne(SELECT_COUNT_COMPACT_ENTRIES, params);
+        if (isLegacyEntriesPresent())
+        {
+            count += super.getAuditEntriesCountByApp(applicationId);
+        }
+        return count;
+    }
+
+    @Override
+    public int getAuditEntriesCountByAppAndProperties(String applicationName, AuditQueryParameters parameters)
+    {
+        if (!enabled)
+        {
+            return super.getAuditEntriesCountByAppAndProperties(applicationName, parameters);
+        }
+        int count = 0;
+        CompactQuery query = toCompactQuery(parameters);
+        if (query != null)
+        {
+            if (query.scan)
+            {
+                count = countCompactEntries(query);
+            }
+            else
+            {
+                count = template.selectOne(SELECT_COUNT_COMPACT_ENTRIES, query.params);
+                if (query.isSearch() && count > 0 && count <= maxCheckedCount)
+                {
+                    // Few enough to check the values of, ruling out hash collisions
+                    count = countCompactEntries(query);
+                }
+            }
+        }
+        if (isLegacyEntriesPresent())
+        {
+            count += super.getAuditEntriesCountByAppAndProperties(applicationName, parameters);
+        }
+        return count;
+    }
+
+    @Override
+    public void findAuditEntries(
+            final AuditQueryCallback callback,
+            AuditQueryParameters parameters,
+            int maxResults)
+    {
+        if (!enabled)
+        {
+            super.findAuditEntries(callback, parameters, maxResults);
+            return;
+        }
+        if (maxResults <= 0)
+        {
+            throw new IllegalArgumentException("maxResults must be greater than 0");
+        }
+
+        final boolean valuesRequired = callback.valuesRequired();
+        final List<QueryResult> results = new ArrayList<>(Math.min(maxResults, 1024));
+        CompactQuery query = toCompactQuery(parameters);
+        if (query != null)
+        {
+            CompactRowHandler collector = (row, values) ->
+            {
+                if (valuesRequired && values == null)
+                {
+                    try
+                    {
+                        values = CompactAuditValues.decode(row.getAuditValues());
+                    }
+                    catch (Throwable e)
+                    {
+                        results.add(new QueryResult(row.getId(),
+                                "Audit entry unable to extract audited values: " + row, e));
+                        return true;
+                    }
+                }
+                String appName = (String) propertyValueDAO.getPropertyValueById(row.getAuditAppNameId()).getSecond();
+                results.add(new QueryResult(row.getId(), appName, row.getAuditUser(), row.getAuditTime(),
+                        valuesRequired ? values : null));
+                return true;
+            };
+            if (query.scan || query.isSearch())
+            {
+                // Indexed searches match on hashes, which may collide, so the values are checked as well
+                scanCompactEntries(query, maxResults, collector);
+            }
+            else
+            {
+                List<AuditCompactEntryEntity> rows = template.selectList(SELECT_COMPACT_ENTRIES, query.params, new RowBounds(0, maxResults));
+                for (AuditCompactEntryEntity row : rows)
+                {
+                    collector.handle(row, null);
+                }
+            }
+        }
+
+        if (isLegacyEntriesPresent())
+        {
+            // Entries not yet migrated are merged in, in ID order
+            super.findAuditEntries(new AuditQueryCallback()
+            {
+                @Override
+                public boolean valuesRequired()
+                {
+                    return valuesRequired;
+                }
+
+                @Override
+                public boolean handleAuditEntry(Long entryId, String applicationName, String user, long time, Map<String, Serializable> values)
+                {
+                    results.add(new QueryResult(entryId, applicationName, user, time, values));
+                    return true;
+                }
+
+                @Override
+                public boolean handleAuditEntryError(Long entryId, String errorMsg, Throwable error)
+                {
+                    results.add(new QueryResult(entryId, errorMsg, error));
+                    return true;
+                }
+            }, parameters, maxResults);
+            Comparator<QueryResult> byId = Comparator.comparing(result -> result.id);
+            results.sort(parameters.isForward() ? byId : byId.reversed());
+        }
+
+        int count = 0;
+        for (QueryResult result : results)
+        {
+            if (count++ >= maxResults)
+            {
+                break;
+            }
+            boolean more = result.errorMsg == null
+                    ? callback.handleAuditEntry(result.id, result.applicationName, result.user, result.time, result.values)
+                    : callback.handleAuditEntryError(result.id, result.errorMsg, result.error);
+            if (!more)
+            {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return              the compact query or <tt>null</tt> if there can be no results
+     */
+    private CompactQuery toCompactQuery(AuditQueryParameters restParameters)
+    {
+        AuditCompactQueryParameters params = new AuditCompactQueryParameters();
+        String appName = restParameters.getApplicationName();
+        if (appName != null)
+        {
+            AuditApplicationEntity application = getAuditApplicationByName(appName);
+            if (application == null)
+            {
+                return null;
+            }
+            params.setAuditAppId(application.getId());
+        }
+        params.setAuditUser(restParameters.getUser());
+        params.setAuditFromId(restParameters.getFromId());
+        params.setAuditToId(restParameters.getToId());
+        params.setAuditFromTime(restParameters.getFromTime());
+        params.setAuditToTime(restParameters.getToTime());
+        params.setForward(restParameters.isForward());
+
+        CompactQuery query = new CompactQuery(params);
+        if (restParameters.getSearchKeyValues().size() > 0)
+        {
+            // Only handle one pair, as for the property-based storage
+            Pair<String, Serializable> searchKeyValue = restParameters.getSearchKeyValues().get(0);
+            query.searchKey = searchKeyValue.getFirst();
+            query.searchValue = searchKeyValue.getSecond();
+        }
+        Long valueHash = CompactAuditValues.valueHash(query.searchValue);
+        if (query.searchValue != null && valueHash == null)
+        {
+            query.scan = true;
+        }
+        else if (query.searchKey != null)
+        {
+            query.scan = !isIndexedPath(query.searchKey);
+        }
+        else if (query.searchValue != null)
+        {
+            // A value on its own can only be looked up if every path is indexed
+            query.scan = !indexedPaths.isEmpty();
+        }
+        if (!query.scan)
+        {
+            params.setSearchPathHash(query.searchKey == null ? null : CompactAuditValues.pathHash(query.searchKey));
+            params.setSearchValueHash(valueHash);
+        }
+        return query;
+    }
+
+    /**
+     * Page through the entries matching the criteria in the database, passing on those whose values match
+     */
+    private void scanCompactEntries(CompactQuery query, int maxResults, CompactRowHandler handler)
+    {
+        AuditCompactQueryParameters params = query.params;
+        int matched = 0;
+        while (true)
+        {
+            List<AuditCompactEntryEntity> rows = template.selectList(SELECT_COMPACT_ENTRIES, params, new RowBounds(0, scanPageSize));
+            for (AuditCompactEntryEntity row : rows)
+            {
+                Map<String, Serializable> values;
+                try
+                {
+                    values = CompactAuditValues.decode(row.getAuditValues());
+                }
+                catch (Throwable e)
+                {
+                    logger.warn("Skipping unreadable compact audit entry " + row.getId() + " in search", e);
+                    continue;
+                }
+                if (!query.matches(values))
+                {
+                    continue;
+                }
+                if (!handler.handle(row, values) || ++matched >= maxResults)
+                {
+                    return;
+                }
+            }
+            if (rows.size() < scanPageSize)
+            {
+                return;
+            }
+            Long lastId = rows.get(rows.size() - 1).getId();
+            if (params.isForward())
+            {
+                params.setAuditFromId(lastId + 1);
+            }
+            else
+            {
+                params.setAuditToId(lastId);
+            }
+        }
+    }
+
+    /**
+     * Count the entries passed on by {@link #scanCompactEntries(CompactQuery, int, CompactRowHandler)}
+     */
+    private int countCompactEntries(CompactQuery query)
+    {
+        final int[] matches = new int[1];
+        scanCompactEntries(query, Integer.MAX_VALUE, (row, values) -> { matches[0]++; return true; });
+        return matches[0];
+    }
+
+    /*
+     * Migration
+     */
+
+    /**
+     * @return              <tt>true</tt> if <b>alf_audit_entry</b> may still hold entries
+     */
+    public boolean isLegacyEntriesPresent()
+    {
+        Boolean present = legacyEntriesPresent;
+        if (present == null)
+        {
+            present = template.selectOne(SELECT_MAX_ENTRY_ID) != null;
+            legacyEntriesPresent = present;
+        }
+        return present;
+    }
+
+    /**
+     * Forget whether <b>alf_audit_entry</b> holds entries, so that it is checked again
+     */
+    public void resetLegacyEntriesPresent()
+    {
+        legacyEntriesPresent = null;
+    }
+
+    /**
+     * Read entries from <b>alf_audit_entry</b> in ID order, converted to compact entries that keep the same IDs.
+     * Entries whose values cannot be read are logged and left where they are.
+     * 
+     * @param fromId        the lowest ID to read (inclusive)
+     * @param maxResults    the maximum number of entries to read
+     */
+    public List<AuditCompactEntryEntity> getLegacyEntries(long fromId, int maxResults)
+    {
+        AuditQueryParameters params = new AuditQueryParameters();
+        params.setFromId(fromId);
+        params.setForward(true);
+        final Map<String, Long> applicationIds = new HashMap<>();
+        final List<AuditCompactEntryEntity> entries = new ArrayList<>(maxResults);
+        super.findAuditEntries(new AuditQueryCallback()
+        {
+            @Override
+            public boolean valuesRequired()
+            {
+                return true;
+            }
+
+            @Override
+            public boolean handleAuditEntry(Long entryId, String applicationName, String user, long time, Map<String, Serializable> values)
+            {
+                Long applicationId = applicationIds.computeIfAbsent(applicationName, name -> getAuditApplicationByName(name).getId());
+                AuditCompactEntryEntity entity = newCompactEntry(applicationId, time, user, values);
+                entity.setId(entryId);
+                entries.add(entity);
+                return true;
+            }
+
+            @Override
+            public boolean handleAuditEntryError(Long entryId, String errorMsg, Throwable error)
+            {
+                logger.warn("Audit entry " + entryId + " will not be migrated: " + errorMsg, error);
+                return true;
+            }
+        }, params, maxResults);
+        return entries;
+    }
+
+    /**
+     * Move an entry read by {@link #getLegacyEntries(long, int)} into the compact tables
+     */
+    public void migrateLegacyEntry(AuditCompactEntryEntity entity)
+    {
+        template.insert(INSERT_COMPACT_ENTRY_WITH_ID, entity);
+        insertCompactKeys(entity);
+        super.deleteAuditEntriesImpl(Collections.singletonList(entity.getId()));
+    }
+
+    /**
+     * Receives compact rows, along with the values if they have already been decoded
+     */
+    private interface CompactRowHandler
+    {
+        boolean handle(AuditCompactEntryEntity row, Map<String, Serializable> values);
+    }
+
+    private static class CompactQuery
+    {
+        private final AuditCompactQueryParameters params;
+        private String searchKey;
+        private Serializable searchValue;
+        private boolean scan;
+
+        private CompactQuery(AuditCompactQueryParameters params)
+        {
+            this.params = params;
+        }
+
+        private boolean isSearch()
+        {
+            return searchKey != null || searchValue != null;
+        }
+
+        private boolean matches(Map<String, Serializable> values)
+        {
+            if (searchKey != null)
+            {
+                return values.containsKey(searchKey) &&
+                        (searchValue == null || CompactAuditValues.valuesMatch(searchValue, values.get(searchKey)));
+            }
+            for (Serializable value : values.values())
+            {
+                if (CompactAuditValues.valuesMatch(searchValue, value))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class QueryResult
+    {
+        private final Long id;
+        private final String applicationName;
+        private final String user;
+        private final long time;
+        private final Map<String, Serializable> values;
+        private final String errorMsg;
+        private final Throwable error;
+
+        private QueryResult(Long id, String applicationName, String user, long time, Map<String, Serializable> values)
+        {
+            this.id = id;
+            this.applicationName = applicationName;
+            this.user = user;
+            this.time = time;
+            this.values = values;
+            this.errorMsg = null;
+            this.error = null;
+        }
+
+        private QueryResult(Long id, String errorMsg, Throwable error)
+        {
+            this.id = id;
+            this.applicationName = null;
+            this.user = null;
+            this.time = 0L;
+            this.values = null;
+            this.errorMsg = errorMsg;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.audit.ibatis;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.batch.BatchProcessWorkProvider;
+import org.alfresco.repo.batch.BatchProcessor;
+import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorker;
+import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorkerAdaptor;
+import org.alfresco.repo.domain.audit.AuditCompactEntryEntity;
+import org.alfresco.repo.lock.JobLockService;
+import org.alfresco.repo.lock.JobLockService.JobLockRefreshCallback;
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.quartz.Job;
+import org.quartz.JobDataMap;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+
+/**
+ * <h1>Compact Audit Migration Worker</h1>
+ * 
+ * <h2>What it is</h2>
+ * A worker for a scheduled job that moves audit entries from <b>alf_audit_entry</b> and the property
+ * tables into the compact audit tables, keeping their IDs.  Each entry is copied and removed from
+ * <b>alf_audit_entry</b> in the same transaction, so the job can be stopped and rerun at any time.
+ * The property values left behind are removed by the property tables cleanup job.
+ * <p>
+ * The job does nothing unless compact audit storage is enabled.  Until it has finished, queries
+ * read both tables.
+ * <p>
+ * <h2>Settings that control the behaviour</h2>
+ * <ul>
+ *  <li><b>${audit.compact.migration.cronExpression}</b> - when to run the migration.</li>
+ *  <li><b>${audit.compact.migration.queryRange}</b> - the number of entries read at a time.</li>
+ *  <li><b>${audit.compact.migration.threadCount}</b> - the number of threads writing the compact entries.</li>
+ *  <li><b>${audit.compact.migration.batchSize}</b> - the number of entries moved in each transaction.</li>
+ * </ul>
+ */
+public class CompactAuditMigrationWorker implements ApplicationContextAware
+{
+    private static final QName LOCK = QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, "CompactAuditMigrationWorker");
+    private static final long LOCK_TTL = 60000L;
+
+    private static Log logger = LogFactory.getLog(CompactAuditMigrationWorker.class);
+
+    private final CompactAuditDAOImpl auditDAO;
+    private final JobLockService jobLockService;
+    private final TransactionService transactionService;
+    private ApplicationContext ctx;
+
+    private final int queryRange;
+    private final int threadCount;
+    private final int batchSize;
+
+    public CompactAuditMigrationWorker(
+            CompactAuditDAOImpl auditDAO, JobLockService jobLockService, TransactionService transactionService,
+            int queryRange, int threadCount, int batchSize)
+    {
+        this.auditDAO = auditDAO;
+        this.jobLockService = jobLockService;
+        this.transactionService = transactionService;
+
+        this.queryRange = queryRange;
+        this.threadCount = threadCount;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Set the application context for event publishing during batch processing
+     */
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException
+    {
+        this.ctx = applicationContext;
+    }
+
+    /**
+     * Performs the work, including logging details of progress.
+     */
+    public CompactAuditMigrationResult execute()
+    {
+        final CompactAuditMigrationResult progress = new CompactAuditMigrationResult();
+        if (!auditDAO.isEnabled())
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Skipping compact audit migration: compact audit storage is not enabled.");
+            }
+            return progress;
+        }
+
+        // Build refresh callback
+        JobLockRefreshCallback lockCallback = new JobLockRefreshCallback()
+        {
+            @Override
+            public void lockReleased()
+            {
+                progress.inProgress.set(false);
+            }
+
+            @Override
+            public boolean isActive()
+            {
+                return progress.inProgress.get();
+            }
+        };
+
+        String lockToken = null;
+        try
+        {
+            progress.inProgress.set(true);
+            // Get the lock
+            lockToken = jobLockService.getLock(LOCK, LOCK_TTL);
+            // Start the refresh timer
+            jobLockService.refreshLock(lockToken, LOCK, LOCK_TTL, lockCallback);
+
+            if (logger.isInfoEnabled())
+            {
+                logger.info("CompactAuditMigrationWorker: Starting");
+            }
+
+            doWork(progress);
+            if (progress.errors.get() == 0)
+            {
+                // Queries can stop looking at alf_audit_entry once it is empty
+                auditDAO.resetLegacyEntriesPresent();
+            }
+
+            if (logger.isInfoEnabled())
+            {
+                logger.info("CompactAuditMigrationWorker: " + progress);
+            }
+        }
+        catch (LockAcquisitionException e)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Skipping compact audit migration job: " + e.getMessage());
+            }
+        }
+        catch (Exception e)
+        {
+            progress.inProgress.set(false);
+            logger.error("Compact audit migration job " + progress);
+            logger.error("Stopping compact audit migration job with exception.", e);
+        }
+        finally
+        {
+            if (lockToken != null)
+            {
+                jobLockService.releaseLock(lockToken, LOCK);
+            }
+            progress.inProgress.set(false);
+        }
+        return progress;
+    }
+
+    /**
+     * @param progress          the thread-safe progress
+     */
+    private synchronized void doWork(CompactAuditMigrationResult progress) throws Exception
+    {
+        BatchProcessWorkProvider<AuditCompactEntryEntity> workProvider = new CompactAuditMigrationWorkProvider(progress);
+        BatchProcessWorker<AuditCompactEntryEntity> worker = new CompactAuditMigrationBatch(progress);
+        RetryingTransactionHelper retryingTransactionHelper = transactionService.getRetryingTransactionHelper();
+        retryingTransactionHelper.setForceWritable(true);
+
+        BatchProcessor<AuditCompactEntryEntity> batchProcessor = new BatchProcessor<AuditCompactEntryEntity>(
+                "CompactAuditMigrationWorker",
+                retryingTransactionHelper,
+                workProvider,
+                threadCount,
+                batchSize,
+                ctx,
+                logger,
+                10000);
+        batchProcessor.process(worker, true);
+    }
+
+    /**
+     * Work provider reading <b>alf_audit_entry</b> in ID order
+     */
+    private class CompactAuditMigrationWorkProvider implements BatchProcessWorkProvider<AuditCompactEntryEntity>
+    {
+        private final CompactAuditMigrationResult progress;
+
+        private CompactAuditMigrationWorkProvider(CompactAuditMigrationResult progress)
+        {
+            this.progress = progress;
+        }
+
+        @Override
+        public int getTotalEstimatedWorkSize()
+        {
+            return -1;
+        }
+
+        @Override
+        public long getTotalEstimatedWorkSizeLong()
+        {
+            return -1;
+        }
+
+        @Override
+        public Collection<AuditCompactEntryEntity> getNextWork()
+        {
+            // Check that there are not too many errors
+            if (progress.errors.get() > 1000)
+            {
+                logger.warn("Compact audit migration terminating; too many errors.");
+                return Collections.emptyList();
+            }
+
+            final long fromId = progress.currentMinId.get();
+            List<AuditCompactEntryEntity> ret = transactionService.getRetryingTransactionHelper().doInTransaction(
+                    () -> auditDAO.getLegacyEntries(fromId, queryRange), true, true);
+            if (!ret.isEmpty())
+            {
+                progress.currentMinId.set(ret.get(ret.size() - 1).getId() + 1);
+            }
+
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Compact audit migration work provider found " + ret.size() + " entries from ID " + fromId + ".");
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Moves each entry into the compact tables
+     */
+    private class CompactAuditMigrationBatch extends BatchProcessWorkerAdaptor<AuditCompactEntryEntity>
+    {
+        private final CompactAuditMigrationResult progress;
+
+        private CompactAuditMigrationBatch(CompactAuditMigrationResult progress)
+        {
+            this.progress = progress;
+        }
+
+        @Override
+        public void process(AuditCompactEntryEntity entry) throws Throwable
+        {
+            try
+            {
+                auditDAO.migrateLegacyEntry(entry);
+                progress.entriesMigrated.incrementAndGet();
+            }
+            catch (Exception e)
+            {
+                // Record the failure
+                progress.errors.incrementAndGet();
+                // Rethrow so that the processing framework can handle things
+                throw e;
+            }
+        }
+
+        @Override
+        public String getIdentifier(AuditCompactEntryEntity entry)
+        {
+            return "Audit entry " + entry.getId();
+        }
+    }
+
+    /**
+     * Thread-safe helper class to carry the job progress information
+     */
+    public static class CompactAuditMigrationResult
+    {
+        private final AtomicBoolean inProgress = new AtomicBoolean(false);
+        private final AtomicLong entriesMigrated = new AtomicLong(0L);
+        private final AtomicLong errors = new AtomicLong(0L);
+        private final AtomicLong currentMinId = new AtomicLong(0L);
+
+        @Override
+        public String toString()
+        {
+            return String.format("Migrated %d audit entries [%d Errors]", entriesMigrated.get(), errors.get());
+        }
+
+        public long getEntriesMigrated()
+        {
+            return entriesMigrated.get();
+        }
+
+        public long getErrors()
+        {
+            return errors.get();
+        }
+    }
+
+    /**
+     * A scheduled job that moves audit entries into the compact audit tables.
+     * <p>
+     * Job data: 
+     * <ul>
+     *  <li><b>compactAuditMigrationWorker</b> - The worker that performs the actual processing.</li>
+     * </ul>
+     * 
+     * @see CompactAuditMigrationWorker
+     */
+    public static class CompactAuditMigrationJob implements Job
+    {
+        public static final String JOB_DATA_WORKER = "compactAuditMigrationWorker";
+
+        public void execute(JobExecutionContext context) throws JobExecutionException
+        {
+            JobDataMap jobData = context.getJobDetail().getJobDataMap();
+            Object workerObj = jobData.get(JOB_DATA_WORKER);
+            if (workerObj == null || !(workerObj instanceof CompactAuditMigrationWorker))
+            {
+                throw new AlfrescoRuntimeException(
+                        "CompactAuditMigrationJob data '" + JOB_DATA_WORKER + "' must reference a " + CompactAuditMigrationWorker.class.getSimpleName());
+            }
+            CompactAuditMigrationWorker worker = (CompactAuditMigrationWorker) workerObj;
+            worker.execute();
+        }
+    }
+}
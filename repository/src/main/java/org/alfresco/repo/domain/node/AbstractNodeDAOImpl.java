@@ -871,6 +871,23 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             }
         }
 
+        /**
+         * Loads all the nodes using a single query
+         */
+        @Override
+        public List<Pair<Long, Node>> findByKeys(List<Long> nodeIds)
+        {
+            List<Node> nodes = selectNodesByIds(new TreeSet<Long>(nodeIds));
+            List<Pair<Long, Node>> results = new ArrayList<Pair<Long, Node>>(nodes.size());
+            for (Node node : nodes)
+            {
+                // Lock it to prevent 'accidental' modification
+                node.lock();
+                results.add(new Pair<Long, Node>(node.getId(), node));
+            }
+            return results;
+        }
+
         /**
          * @return                  Returns the Node's NodeRef
          */
@@ -2525,15 +2542,15 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     }
     
     /**
-     * Update the node properties cache.  The incoming properties will be wrapped to be
-     * unmodifiable.
+     * Update the node properties cache.  The incoming properties will be copied into an
+     * unmodifiable {@link CompactPropertyMap}.
      * <p>
      * <b>NOTE:</b> Incoming properties must exclude the <b>cm:auditable</b> properties
      */
     private void setNodePropertiesCached(Long nodeId, Map<QName, Serializable> properties)
     {
         NodeVersionKey nodeVersionKey = getNodeNotNull(nodeId, false).getNodeVersionKey();
-        propertiesCache.setValue(nodeVersionKey, Collections.unmodifiableMap(properties));
+        propertiesCache.setValue(nodeVersionKey, CompactPropertyMap.valueOf(properties, qnameDAO));
     }
     
     /**
@@ -2586,7 +2603,50 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             // Convert to public properties
             Map<QName, Serializable> props = nodePropertyHelper.convertToPublicProperties(propsRaw);
             // Done
-            return new Pair<NodeVersionKey, Map<QName, Serializable>>(nodeVersionKey, Collections.unmodifiableMap(props));
+            return new Pair<NodeVersionKey, Map<QName, Serializable>>(nodeVersionKey, CompactPropertyMap.valueOf(props, qnameDAO));
+        }
+
+        /**
+         * Loads the properties of all the nodes using a single query.  Keys for which the node has
+         * moved on to another version are left out of the results and the node caches are invalidated.
+         */
+        @Override
+        public List<Pair<NodeVersionKey, Map<QName, Serializable>>> findByKeys(List<NodeVersionKey> nodeVersionKeys)
+        {
+            SortedSet<Long> nodeIds = new TreeSet<Long>();
+            for (NodeVersionKey nodeVersionKey : nodeVersionKeys)
+            {
+                nodeIds.add(nodeVersionKey.getNodeId());
+            }
+            // First ensure all content data are pre-cached, so we don't have to load them individually when converting properties
+            contentDataDAO.cacheContentDataForNodes(nodeIds);
+            
+            Map<NodeVersionKey, Map<NodePropertyKey, NodePropertyValue>> propsRawByNodeVersionKey = selectNodeProperties(nodeIds);
+            Set<Long> nodeIdsWithProps = new HashSet<Long>(propsRawByNodeVersionKey.size() * 2);
+            for (NodeVersionKey nodeVersionKey : propsRawByNodeVersionKey.keySet())
+            {
+                nodeIdsWithProps.add(nodeVersionKey.getNodeId());
+            }
+            List<Pair<NodeVersionKey, Map<QName, Serializable>>> results =
+                    new ArrayList<Pair<NodeVersionKey, Map<QName, Serializable>>>(nodeVersionKeys.size());
+            for (NodeVersionKey nodeVersionKey : nodeVersionKeys)
+            {
+                Map<NodePropertyKey, NodePropertyValue> propsRaw = propsRawByNodeVersionKey.get(nodeVersionKey);
+                if (propsRaw == null)
+                {
+                    if (nodeIdsWithProps.contains(nodeVersionKey.getNodeId()))
+                    {
+                        // We found properties associated with a different version
+                        invalidateNodeCaches(nodeVersionKey.getNodeId());
+                        continue;
+                    }
+                    // This is OK.  The node has no properties
+                    propsRaw = Collections.emptyMap();
+                }
+                Map<QName, Serializable> props = nodePropertyHelper.convertToPublicProperties(propsRaw);
+                results.add(new Pair<NodeVersionKey, Map<QName, Serializable>>(nodeVersionKey, CompactPropertyMap.valueOf(props, qnameDAO)));
+            }
+            return results;
         }
     }
     
@@ -2860,6 +2920,44 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             // Done
             return new Pair<NodeVersionKey, Set<QName>>(nodeVersionKey, Collections.unmodifiableSet(nodeAspectQNames));
         }
+
+        /**
+         * Loads the aspects of all the nodes using a single query.  Keys for which the node has
+         * moved on to another version are left out of the results and the node caches are invalidated.
+         */
+        @Override
+        public List<Pair<NodeVersionKey, Set<QName>>> findByKeys(List<NodeVersionKey> nodeVersionKeys)
+        {
+            SortedSet<Long> nodeIds = new TreeSet<Long>();
+            for (NodeVersionKey nodeVersionKey : nodeVersionKeys)
+            {
+                nodeIds.add(nodeVersionKey.getNodeId());
+            }
+            Map<NodeVersionKey, Set<QName>> nodeAspectQNameIdsByVersionKey = selectNodeAspects(nodeIds);
+            Set<Long> nodeIdsWithAspects = new HashSet<Long>(nodeAspectQNameIdsByVersionKey.size() * 2);
+            for (NodeVersionKey nodeVersionKey : nodeAspectQNameIdsByVersionKey.keySet())
+            {
+                nodeIdsWithAspects.add(nodeVersionKey.getNodeId());
+            }
+            List<Pair<NodeVersionKey, Set<QName>>> results = new ArrayList<Pair<NodeVersionKey, Set<QName>>>(nodeVersionKeys.size());
+            for (NodeVersionKey nodeVersionKey : nodeVersionKeys)
+            {
+                Set<QName> nodeAspectQNames = nodeAspectQNameIdsByVersionKey.get(nodeVersionKey);
+                if (nodeAspectQNames == null)
+                {
+                    if (nodeIdsWithAspects.contains(nodeVersionKey.getNodeId()))
+                    {
+                        // We found aspects associated with a different version
+                        invalidateNodeCaches(nodeVersionKey.getNodeId());
+                        continue;
+                    }
+                    // This is OK.  The node has no aspects
+                    nodeAspectQNames = Collections.emptySet();
+                }
+                results.add(new Pair<NodeVersionKey, Set<QName>>(nodeVersionKey, Collections.unmodifiableSet(nodeAspectQNames)));
+            }
+            return results;
+        }
     }
     
     /*
@@ -4704,25 +4802,14 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     
     private void cacheNodesBatch(List<Long> nodeIds)
     {
-        int batchSize = 256;
-        SortedSet<Long> batch = new TreeSet<Long>();
-        for (Long nodeId : nodeIds)
-        {
-            batch.add(nodeId);
-            if (batch.size() >= batchSize)
-            {
-                // Preload
-                List<Node> nodes = selectNodesByIds(batch);
-                cacheNodesNoBatch(nodes);
-                batch.clear();
-            }
-        }
-        // Load any remaining nodes
-        if (batch.size() > 0)
+        // The nodes cache loads the missing nodes in batches
+        List<Pair<Long, Node>> nodePairs = nodesCache.getByKeys(nodeIds);
+        List<NodeVersionKey> nodeVersionKeys = new ArrayList<NodeVersionKey>(nodePairs.size());
+        for (Pair<Long, Node> nodePair : nodePairs)
         {
-            List<Node> nodes = selectNodesByIds(batch);
-            cacheNodesNoBatch(nodes);
+            nodeVersionKeys.add(nodePair.getSecond().getNodeVersionKey());
         }
+        cacheNodeAspectsAndProperties(nodeVersionKeys);
     }
     
     /**
@@ -4730,59 +4817,30 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
      */
     private void cacheNodesNoBatch(List<Node> nodes)
     {
-        // Get the nodes
-        SortedSet<Long> aspectNodeIds = new TreeSet<Long>();
-        SortedSet<Long> propertiesNodeIds = new TreeSet<Long>();
-        Map<Long, NodeVersionKey> nodeVersionKeysFromCache = new HashMap<Long, NodeVersionKey>(nodes.size()*2);    // Keep for quick lookup
+        List<NodeVersionKey> nodeVersionKeys = new ArrayList<NodeVersionKey>(nodes.size());
         for (Node node : nodes)
         {
-            Long nodeId = node.getId();
-            NodeVersionKey nodeVersionKey = node.getNodeVersionKey();
             node.lock();                            // Prevent unexpected edits of values going into the cache
-            nodesCache.setValue(nodeId, node);
-            if (propertiesCache.getValue(nodeVersionKey) == null)
-            {
-                propertiesNodeIds.add(nodeId);
-            }
-            if (aspectsCache.getValue(nodeVersionKey) == null)
-            {
-                aspectNodeIds.add(nodeId);
-            }
-            nodeVersionKeysFromCache.put(nodeId, nodeVersionKey);
+            nodesCache.setValue(node.getId(), node);
+            nodeVersionKeys.add(node.getNodeVersionKey());
         }
+        cacheNodeAspectsAndProperties(nodeVersionKeys);
+    }
+    
+    /**
+     * Ensure the aspects and properties of the given node versions are cached.  Whatever is missing from
+     * the caches is loaded in bulk (see {@link AspectsCallbackDAO#findByKeys(List)} and
+     * {@link PropertiesCallbackDAO#findByKeys(List)}), including the absence of aspects or properties.
+     */
+    private void cacheNodeAspectsAndProperties(List<NodeVersionKey> nodeVersionKeys)
+    {
+        List<Pair<NodeVersionKey, Set<QName>>> aspects = aspectsCache.getByKeys(nodeVersionKeys);
+        List<Pair<NodeVersionKey, Map<QName, Serializable>>> properties = propertiesCache.getByKeys(nodeVersionKeys);
         
         if(logger.isDebugEnabled())
         {
-            logger.debug("Pre-loaded " + propertiesNodeIds.size() + " properties");
-            logger.debug("Pre-loaded " + propertiesNodeIds.size() + " aspects");
-        }
-        
-        Map<NodeVersionKey, Set<QName>> nodeAspects = selectNodeAspects(aspectNodeIds);
-        for (Map.Entry<NodeVersionKey, Set<QName>> entry : nodeAspects.entrySet())
-        {
-            NodeVersionKey nodeVersionKeyFromDb = entry.getKey();
-            Long nodeId = nodeVersionKeyFromDb.getNodeId();
-            Set<QName> qnames = entry.getValue();
-            setNodeAspectsCached(nodeId, qnames);
-            aspectNodeIds.remove(nodeId);
-        }
-        // Cache the absence of aspects too!
-        for (Long nodeId: aspectNodeIds)
-        {
-            setNodeAspectsCached(nodeId, Collections.<QName>emptySet());
-        }
-
-        // First ensure all content data are pre-cached, so we don't have to load them individually when converting properties
-        contentDataDAO.cacheContentDataForNodes(propertiesNodeIds);
-        
-        // Now bulk load the properties
-        Map<NodeVersionKey, Map<NodePropertyKey, NodePropertyValue>> propsByNodeId = selectNodeProperties(propertiesNodeIds);
-        for (Map.Entry<NodeVersionKey, Map<NodePropertyKey, NodePropertyValue>> entry : propsByNodeId.entrySet())
-        {
-            Long nodeId = entry.getKey().getNodeId();
-            Map<NodePropertyKey, NodePropertyValue> propertyValues = entry.getValue();
-            Map<QName, Serializable> props = nodePropertyHelper.convertToPublicProperties(propertyValues);
-            setNodePropertiesCached(nodeId, props);
+            logger.debug("Pre-loaded " + properties.size() + " properties");
+            logger.debug("Pre-loaded " + aspects.size() + " aspects");
         }
     }
 
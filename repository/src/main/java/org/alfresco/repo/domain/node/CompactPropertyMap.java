@@ -0,0 +1,354 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * Immutable, array-backed map of node properties used as the value of the node properties cache.
+ * <p>
+ * A <code>HashMap</code> costs a table plus one entry object per property, and every node loaded
+ * from the database brings its own copies of values that are the same on most nodes (mimetypes,
+ * encodings, locales, usernames and so on). This map instead keeps:
+ * <ul>
+ *   <li>a {@link KeyLayout} - the property QNames ordered by their QName ID - which is interned so that
+ *       all nodes with the same set of properties share one instance,</li>
+ *   <li>a plain array of values, with frequently seen immutable values deduplicated,</li>
+ *   <li><code>Date</code> values as their time in milliseconds, decoded to a new <code>Date</code> on access.</li>
+ * </ul>
+ * Nothing is decoded until a property is read: map entries are created lazily during iteration.
+ */
+public final class CompactPropertyMap extends AbstractMap<QName, Serializable> implements Serializable
+{
+    private static final long serialVersionUID = 4183452309822915843L;
+
+    private static final Interner<KeyLayout> LAYOUTS = Interners.newWeakInterner();
+
+    /** Slots in the lossy table used to deduplicate values, must be a power of 2 */
+    private static final int DEDUP_TABLE_SIZE = 8192;
+    /** Longer strings are rarely repeated, so they are not worth looking for */
+    private static final int DEDUP_MAX_STRING_LENGTH = 64;
+    /**
+     * A direct-mapped table of recently seen values.  A value replaces whatever was in its slot, so values
+     * that are seen often tend to stay while one-off values cost nothing beyond the slot they overwrite.
+     * Races between threads only lose deduplication opportunities: the values are all immutable.
+     */
+    private static final Object[] DEDUP_TABLE = new Object[DEDUP_TABLE_SIZE];
+
+    private final KeyLayout layout;
+    private final Serializable[] values;
+
+    private CompactPropertyMap(KeyLayout layout, Serializable[] values)
+    {
+        this.layout = layout;
+        this.values = values;
+    }
+
+    /**
+     * Create an immutable copy of the given properties in compact form.
+     * 
+     * @param properties    the node properties (not the cm:auditable, sys:referenceable or sys:localized properties)
+     * @param qnameDAO      used to find the IDs of the property QNames; no QNames are created
+     * @return              the compact map or, if a property QName has not been persisted, an unmodifiable view of the
+     *                      given map
+     */
+    public static Map<QName, Serializable> valueOf(Map<QName, Serializable> properties, QNameDAO qnameDAO)
+    {
+        if (properties instanceof CompactPropertyMap)
+        {
+            return properties;
+        }
+        int size = properties.size();
+        if (size == 0)
+        {
+            return Collections.emptyMap();
+        }
+        // Sort the properties by QName ID so that maps with the same properties have the same layout
+        long[][] idsAndIndexes = new long[size][];
+        QName[] unsortedQNames = new QName[size];
+        Serializable[] unsortedValues = new Serializable[size];
+        int i = 0;
+        for (Map.Entry<QName, Serializable> entry : properties.entrySet())
+        {
+            Pair<Long, QName> qnamePair = qnameDAO.getQName(entry.getKey());
+            if (qnamePair == null)
+            {
+                return Collections.unmodifiableMap(properties);
+            }
+            idsAndIndexes[i] = new long[] {qnamePair.getFirst(), i};
+            unsortedQNames[i] = qnamePair.getSecond();
+            unsortedValues[i] = entry.getValue();
+            i++;
+        }
+        Arrays.sort(idsAndIndexes, (a, b) -> Long.compare(a[0], b[0]));
+
+        long[] qnameIds = new long[size];
+        QName[] qnames = new QName[size];
+        boolean[] dateSlots = new boolean[size];
+        Serializable[] values = new Serializable[size];
+        for (i = 0; i < size; i++)
+        {
+            int index = (int) idsAndIndexes[i][1];
+            qnameIds[i] = idsAndIndexes[i][0];
+            qnames[i] = unsortedQNames[index];
+            Serializable value = unsortedValues[index];
+            if (value != null && value.getClass() == Date.class)
+            {
+                dateSlots[i] = true;
+                values[i] = ((Date) value).getTime();
+            }
+            else
+            {
+                values[i] = compactValue(value);
+            }
+        }
+        KeyLayout layout = LAYOUTS.intern(new KeyLayout(qnameIds, qnames, dateSlots));
+        return new CompactPropertyMap(layout, values);
+    }
+
+    /**
+     * Deduplicate immutable values, including the strings inside {@link ContentData}
+     */
+    private static Serializable compactValue(Serializable value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+        Class<?> clazz = value.getClass();
+        if (clazz == String.class)
+        {
+            return ((String) value).length() <= DEDUP_MAX_STRING_LENGTH ? dedup(value) : value;
+        }
+        else if (clazz == Locale.class || clazz == Long.class || clazz == Integer.class || clazz == QName.class || clazz == NodeRef.class)
+        {
+            return dedup(value);
+        }
+        else if (clazz == Boolean.class)
+        {
+            return Boolean.valueOf((Boolean) value);
+        }
+        else if (clazz == ContentData.class)
+        {
+            ContentData contentData = (ContentData) value;
+            String mimetype = dedup(contentData.getMimetype());
+            String encoding = dedup(contentData.getEncoding());
+            Locale locale = dedup(contentData.getLocale());
+            if (mimetype == contentData.getMimetype() && encoding == contentData.getEncoding() && locale == contentData.getLocale())
+            {
+                return contentData;
+            }
+            return new ContentData(contentData.getContentUrl(), mimetype, contentData.getSize(), encoding, locale);
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T dedup(T value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+        int slot = (value.hashCode() * 0x9E3779B9) >>> 19 & (DEDUP_TABLE_SIZE - 1);
+        Object existing = DEDUP_TABLE[slot];
+        if (existing != null && existing.getClass() == value.getClass() && existing.equals(value))
+        {
+            return (T) existing;
+        }
+        DEDUP_TABLE[slot] = value;
+        return value;
+    }
+
+    private Serializable valueAt(int index)
+    {
+        Serializable value = values[index];
+        if (layout.dateSlots[index])
+        {
+            return new Date((Long) value);
+        }
+        return value;
+    }
+
+    @Override
+    public int size()
+    {
+        return values.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return layout.indexOf(key) >= 0;
+    }
+
+    @Override
+    public Serializable get(Object key)
+    {
+        int index = layout.indexOf(key);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    @Override
+    public Set<Map.Entry<QName, Serializable>> entrySet()
+    {
+        return new AbstractSet<Map.Entry<QName, Serializable>>()
+        {
+            @Override
+            public Iterator<Map.Entry<QName, Serializable>> iterator()
+            {
+                return new Iterator<Map.Entry<QName, Serializable>>()
+                {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return next < values.length;
+                    }
+
+                    @Override
+                    public Map.Entry<QName, Serializable> next()
+                    {
+                        if (next >= values.length)
+                        {
+                            throw new NoSuchElementException();
+                        }
+                        int index = next++;
+                        return new AbstractMap.SimpleImmutableEntry<QName, Serializable>(layout.qnames[index], valueAt(index));
+                    }
+                };
+            }
+
+            @Override
+            public int size()
+            {
+                return values.length;
+            }
+        };
+    }
+
+    /**
+     * The property QNames of a map, sorted by QName ID.  Instances are interned and shared by all maps
+     * with the same properties.
+     */
+    static final class KeyLayout implements Serializable
+    {
+        private static final long serialVersionUID = -2651016394573871128L;
+        /** Larger layouts get a hash index; smaller ones are scanned */
+        private static final int INDEX_THRESHOLD = 8;
+
+        private final long[] qnameIds;
+        private final QName[] qnames;
+        private final boolean[] dateSlots;
+        private final int hashCode;
+        private transient volatile Map<QName, Integer> index;
+
+        KeyLayout(long[] qnameIds, QName[] qnames, boolean[] dateSlots)
+        {
+            this.qnameIds = qnameIds;
+            this.qnames = qnames;
+            this.dateSlots = dateSlots;
+            this.hashCode = 31 * Arrays.hashCode(qnameIds) + Arrays.hashCode(dateSlots);
+        }
+
+        int indexOf(Object key)
+        {
+            if (qnames.length <= INDEX_THRESHOLD)
+            {
+                for (int i = 0; i < qnames.length; i++)
+                {
+                    if (qnames[i] == key || qnames[i].equals(key))
+                    {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+            Map<QName, Integer> index = this.index;
+            if (index == null)
+            {
+                index = new HashMap<QName, Integer>(qnames.length * 2);
+                for (int i = 0; i < qnames.length; i++)
+                {
+                    index.put(qnames[i], i);
+                }
+                this.index = index;
+            }
+            Integer i = index.get(key);
+            return i == null ? -1 : i;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof KeyLayout))
+            {
+                return false;
+            }
+            KeyLayout that = (KeyLayout) obj;
+            return hashCode == that.hashCode &&
+                   Arrays.equals(qnameIds, that.qnameIds) &&
+                   Arrays.equals(dateSlots, that.dateSlots);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        private Object readResolve() throws ObjectStreamException
+        {
+            return LAYOUTS.intern(this);
+        }
+    }
+}
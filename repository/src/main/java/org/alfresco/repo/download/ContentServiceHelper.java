@@ -30,7 +30,9 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 
 import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.util.TempFileProvider;
 
 /**
  * ContentServiceHelper interface.
@@ -52,4 +54,50 @@ public interface ContentServiceHelper
      * @throws IOException
      */
     public void updateContent(NodeRef downloadNode, File archiveFile) throws ContentIOException, FileNotFoundException, IOException;
+
+    /**
+     * Implementations may return a writer that the archive can be streamed into, rather than a temporary file.
+     * Must be called in a transaction.
+     * 
+     * @return ContentWriter not yet attached to any node, or null if only {@link #updateContent(NodeRef, File)} is supported
+     */
+    public default ContentWriter getArchiveWriter()
+    {
+        return null;
+    }
+
+    /**
+     * Implementations should make the content written by a writer from {@link #getArchiveWriter()} the content of
+     * downloadNode. By default the content is copied to a temporary file and passed to
+     * {@link #updateContent(NodeRef, File)}.
+     * 
+     * @param downloadNode NodeRef
+     * @param archiveWriter ContentWriter, which has been closed
+     * @throws ContentIOException
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public default void updateContent(NodeRef downloadNode, ContentWriter archiveWriter) throws ContentIOException, FileNotFoundException, IOException
+    {
+        File archiveFile = TempFileProvider.createTempFile("download", ".zip");
+        try
+        {
+            archiveWriter.getReader().getContent(archiveFile);
+            updateContent(downloadNode, archiveFile);
+        }
+        finally
+        {
+            archiveFile.delete();
+        }
+    }
+
+    /**
+     * Implementations should delete the content written by a writer from {@link #getArchiveWriter()} when the archive
+     * is not used. Must be called in a transaction.
+     * 
+     * @param archiveWriter ContentWriter
+     */
+    public default void discardArchive(ContentWriter archiveWriter)
+    {
+    }
 }
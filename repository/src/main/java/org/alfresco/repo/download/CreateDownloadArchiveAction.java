@@ -29,7 +29,10 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.model.ForumModel;
@@ -50,6 +53,8 @@ import org.alfresco.service.cmr.download.DownloadStatus;
 import org.alfresco.service.cmr.download.DownloadStatus.Status;
 import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.view.ExporterCrawlerParameters;
@@ -59,6 +64,7 @@ import org.alfresco.service.namespace.QName;
 import org.alfresco.util.TempFileProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
 
 /**
  * {@link ActionExecuter} for creating an archive (ie. zip) file containing
@@ -66,6 +72,10 @@ import org.slf4j.LoggerFactory;
  * 
  * The maximum total size of the content which can be downloaded is controlled
  * by the maximumContentSie property. -1 indicates no limit.
+ * 
+ * With parallelCompression enabled, content is read and compressed on the
+ * compressionExecutor, and the archive is streamed into the content store
+ * rather than a temporary file, if the {@link ContentServiceHelper} allows it.
  *
  * @author Alex Miller
  */
@@ -87,8 +97,14 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
     private RetryingTransactionHelper transactionHelper;
     private DownloadStatusUpdateService updateService;
     private DictionaryService dictionaryService;
+    private ContentService contentService;
+    private Executor compressionExecutor;
 
     private long maximumContentSize = -1l;
+    private boolean parallelCompression = false;
+    private int maxPendingEntries = 16;
+    private long maxInMemoryEntrySize = 4L * 1024 * 1024;
+    private Set<String> storedMimetypes = Collections.emptySet();
     
     private static class SizeEstimator extends BaseExporter 
     {
@@ -175,6 +191,52 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         this.dictionaryService = dictionaryService;
     }
 
+    public void setContentService(ContentService contentService)
+    {
+        this.contentService = contentService;
+    }
+
+    public void setCompressionExecutor(Executor compressionExecutor)
+    {
+        this.compressionExecutor = compressionExecutor;
+    }
+
+    /**
+     * Read and compress content on the compressionExecutor. Default false.
+     */
+    public void setParallelCompression(boolean parallelCompression)
+    {
+        this.parallelCompression = parallelCompression;
+    }
+
+    /**
+     * Set the number of files which may be read and compressed ahead of the
+     * one being added to the archive, when using parallel compression.
+     */
+    public void setMaxPendingEntries(int maxPendingEntries)
+    {
+        this.maxPendingEntries = maxPendingEntries;
+    }
+
+    /**
+     * Set the size above which a file being compressed ahead is held in a
+     * temporary file rather than in memory, when using parallel compression.
+     */
+    public void setMaxInMemoryEntrySize(long maxInMemoryEntrySize)
+    {
+        this.maxInMemoryEntrySize = maxInMemoryEntrySize;
+    }
+
+    /**
+     * Set the comma separated mimetypes of content which is already compressed,
+     * and is stored in the archive as is when using parallel compression.
+     * e.g. <code>image/jpeg,video/*</code>
+     */
+    public void setStoredMimetypes(String storedMimetypes)
+    {
+        this.storedMimetypes = StringUtils.commaDelimitedListToSet(StringUtils.trimAllWhitespace(storedMimetypes));
+    }
+
     /**
      * Create an archive file containing content from the repository.
      * 
@@ -252,13 +314,24 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
 
     private void createDownload(final NodeRef actionedUponNodeRef, ExporterCrawlerParameters crawlerParameters, SizeEstimator estimator)
     {
+        if (parallelCompression)
+        {
+            ContentWriter archiveWriter = transactionHelper.doInTransaction(() -> contentServiceHelper.getArchiveWriter(), false, true);
+            if (archiveWriter != null)
+            {
+                createDownload(actionedUponNodeRef, crawlerParameters, estimator, archiveWriter);
+                return;
+            }
+        }
+
         // perform the actual export
         final File tempFile = TempFileProvider.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
         final ZipDownloadExporter handler = new ZipDownloadExporter(tempFile, checkOutCheckInService, nodeService, transactionHelper, updateService, downloadStorage, dictionaryService, actionedUponNodeRef, estimator.getSize(), estimator.getFileCount());
+        configureParallelCompression(handler);
         
         try {
             exporterService.exportView(handler, crawlerParameters, null);
-            archiveCreationComplete(actionedUponNodeRef, tempFile, handler);
+            archiveCreationComplete(actionedUponNodeRef, tempFile, null, handler);
         }
         catch (DownloadCancelledException ex) 
         {
@@ -266,13 +339,57 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         }
         finally
         {
+            handler.abort();
             tempFile.delete();
         }
     }
 
+    /**
+     * Streams the archive into the given writer, which becomes the content of the download node once complete.
+     */
+    private void createDownload(final NodeRef actionedUponNodeRef, ExporterCrawlerParameters crawlerParameters, SizeEstimator estimator, final ContentWriter archiveWriter)
+    {
+        final ZipDownloadExporter handler = new ZipDownloadExporter(archiveWriter.getContentOutputStream(), checkOutCheckInService, nodeService, transactionHelper, updateService, downloadStorage, dictionaryService, actionedUponNodeRef, estimator.getSize(), estimator.getFileCount());
+        configureParallelCompression(handler);
+
+        boolean complete = false;
+        try {
+            exporterService.exportView(handler, crawlerParameters, null);
+            archiveCreationComplete(actionedUponNodeRef, null, archiveWriter, handler);
+            complete = true;
+        }
+        catch (DownloadCancelledException ex) 
+        {
+            downloadCancelled(actionedUponNodeRef, handler);
+        }
+        finally
+        {
+            handler.abort();
+            if (!complete)
+            {
+                transactionHelper.doInTransaction(() ->
+                {
+                    contentServiceHelper.discardArchive(archiveWriter);
+                    return null;
+                }, false, true);
+            }
+        }
+    }
+
+    private void configureParallelCompression(ZipDownloadExporter handler)
+    {
+        if (parallelCompression)
+        {
+            handler.setParallelCompression(contentService, compressionExecutor);
+            handler.setMaxPendingEntries(maxPendingEntries);
+            handler.setMaxInMemoryEntrySize(maxInMemoryEntrySize);
+            handler.setStoredMimetypes(storedMimetypes);
+        }
+    }
+
 
     private void archiveCreationComplete(final NodeRef actionedUponNodeRef, final File tempFile,
-                final ZipDownloadExporter handler)
+                final ContentWriter archiveWriter, final ZipDownloadExporter handler)
     {
         //Update the content and set the status to done. 
         transactionHelper.doInTransaction(new RetryingTransactionCallback<Object>()
@@ -283,7 +400,14 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
             {
                 try
                 {
-                    contentServiceHelper.updateContent(actionedUponNodeRef, tempFile);
+                    if (archiveWriter != null)
+                    {
+                        contentServiceHelper.updateContent(actionedUponNodeRef, archiveWriter);
+                    }
+                    else
+                    {
+                        contentServiceHelper.updateContent(actionedUponNodeRef, tempFile);
+                    }
                     DownloadStatus status = new DownloadStatus(Status.DONE, handler.getDone(), handler.getTotal(), handler.getFilesAdded(), handler.getTotalFiles());
                     updateService.update(actionedUponNodeRef, status, handler.getNextSequenceNumber());
                     
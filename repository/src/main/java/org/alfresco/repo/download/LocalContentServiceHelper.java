@@ -31,12 +31,14 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.content.cleanup.EagerContentStoreCleaner;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
 import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
 import org.springframework.util.FileCopyUtils;
 
 /**
@@ -48,12 +50,24 @@ public class LocalContentServiceHelper implements ContentServiceHelper
 {
 
     private ContentService contentService;
+    private NodeService nodeService;
+    private EagerContentStoreCleaner eagerContentStoreCleaner;
     
     public void setContentService(ContentService contentService)
     {
         this.contentService = contentService;
     }
 
+    public void setNodeService(NodeService nodeService)
+    {
+        this.nodeService = nodeService;
+    }
+
+    public void setEagerContentStoreCleaner(EagerContentStoreCleaner eagerContentStoreCleaner)
+    {
+        this.eagerContentStoreCleaner = eagerContentStoreCleaner;
+    }
+
     @Override
     public void updateContent(final NodeRef downloadNode, final File archiveFile) throws ContentIOException, FileNotFoundException, IOException
     {
@@ -69,4 +83,27 @@ public class LocalContentServiceHelper implements ContentServiceHelper
             }
         });
     }
+
+    @Override
+    public ContentWriter getArchiveWriter()
+    {
+        return AuthenticationUtil.runAsSystem(() -> contentService.getWriter(null, null, false));
+    }
+
+    @Override
+    public void updateContent(final NodeRef downloadNode, final ContentWriter archiveWriter)
+    {
+        // The same as the stream listener of a node's ContentWriter does once the stream is closed
+        AuthenticationUtil.runAsSystem(() ->
+        {
+            nodeService.setProperty(downloadNode, ContentModel.PROP_CONTENT, archiveWriter.getContentData());
+            return null;
+        });
+    }
+
+    @Override
+    public void discardArchive(ContentWriter archiveWriter)
+    {
+        eagerContentStoreCleaner.registerOrphanedContentUrl(archiveWriter.getContentUrl(), true);
+    }
 }
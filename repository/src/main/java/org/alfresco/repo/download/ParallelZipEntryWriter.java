@@ -0,0 +1,282 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.download;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.compress.archivers.zip.ScatterZipOutputStream;
+import org.apache.commons.compress.archivers.zip.StreamCompressor;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntryRequest;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.parallel.FileBasedScatterGatherBackingStore;
+import org.apache.commons.compress.parallel.InputStreamSupplier;
+import org.apache.commons.compress.parallel.ScatterGatherBackingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads and compresses the entries of a ZIP archive on an {@link Executor}, while writing them to the archive in the
+ * order they were added.
+ * <p>
+ * Each entry is compressed into its own {@link ScatterZipOutputStream}, held in memory up to
+ * <code>maxInMemoryEntrySize</code> bytes and in a temporary file above that, and is then copied to the archive as
+ * is. At most <code>maxPendingEntries</code> entries are read ahead of the one being written, which bounds both the
+ * memory and the temporary disk space used. Entries are written by the thread adding them, so the archive stream
+ * itself is never shared.
+ */
+class ParallelZipEntryWriter implements Closeable
+{
+    private static final Logger log = LoggerFactory.getLogger(ParallelZipEntryWriter.class);
+
+    private static final String TEMP_FILE_PREFIX = "download";
+    private static final String TEMP_FILE_SUFFIX = ".zipentry";
+
+    private final ZipArchiveOutputStream zipStream;
+    private final Executor executor;
+    private final int maxPendingEntries;
+    private final long maxInMemoryEntrySize;
+    private final Consumer<ZipArchiveEntry> entryWritten;
+
+    private final Deque<PendingEntry> pending = new ArrayDeque<>();
+
+    /**
+     * @param zipStream            the archive
+     * @param executor             reads and compresses the entries
+     * @param maxPendingEntries    the number of entries that may be read ahead of the one being written
+     * @param maxInMemoryEntrySize entries larger than this are compressed into a temporary file
+     * @param entryWritten         called, on the thread adding entries, after each entry is written to the archive
+     */
+    ParallelZipEntryWriter(ZipArchiveOutputStream zipStream, Executor executor, int maxPendingEntries,
+            long maxInMemoryEntrySize, Consumer<ZipArchiveEntry> entryWritten)
+    {
+        this.zipStream = zipStream;
+        this.executor = executor;
+        this.maxPendingEntries = Math.max(1, maxPendingEntries);
+        this.maxInMemoryEntrySize = maxInMemoryEntrySize;
+        this.entryWritten = entryWritten;
+    }
+
+    /**
+     * Queues a directory entry, which is written once all the entries added before it have been.
+     */
+    void addDirectory(ZipArchiveEntry entry) throws IOException
+    {
+        pending.add(new PendingEntry(entry, CompletableFuture.completedFuture(null)));
+        writeCompleted();
+    }
+
+    /**
+     * Queues a file entry to be read and compressed on the executor. Waits for the oldest pending entry to be written
+     * if <code>maxPendingEntries</code> are already pending.
+     *
+     * @param entry   the entry, with its method set to {@link ZipEntry#DEFLATED} or {@link ZipEntry#STORED}
+     * @param size    the expected size of the content
+     * @param content opens the content, on the executor
+     */
+    void addEntry(ZipArchiveEntry entry, long size, InputStreamSupplier content) throws IOException
+    {
+        while (pending.size() >= maxPendingEntries)
+        {
+            writeNext();
+        }
+        boolean inMemory = size <= maxInMemoryEntrySize;
+        CompletableFuture<ScatterZipOutputStream> compressed = CompletableFuture.supplyAsync(() -> compress(entry, content, inMemory), executor);
+        pending.add(new PendingEntry(entry, compressed));
+        writeCompleted();
+    }
+
+    /**
+     * Waits for and writes all the pending entries.
+     */
+    void finish() throws IOException
+    {
+        while (!pending.isEmpty())
+        {
+            writeNext();
+        }
+    }
+
+    /**
+     * Discards any entries that have not been written, releasing their buffers and temporary files.
+     */
+    @Override
+    public void close()
+    {
+        while (!pending.isEmpty())
+        {
+            PendingEntry entry = pending.poll();
+            entry.compressed.whenComplete((scatter, error) -> closeQuietly(scatter));
+        }
+    }
+
+    /**
+     * Writes the entries at the head of the queue that are already compressed, without waiting.
+     */
+    private void writeCompleted() throws IOException
+    {
+        while (!pending.isEmpty() && pending.peek().compressed.isDone())
+        {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException
+    {
+        PendingEntry next = pending.poll();
+        ScatterZipOutputStream scatter = next.await();
+        try
+        {
+            if (scatter == null)
+            {
+                zipStream.putArchiveEntry(next.entry);
+                zipStream.closeArchiveEntry();
+            }
+            else
+            {
+                scatter.writeTo(zipStream);
+            }
+        }
+        finally
+        {
+            closeQuietly(scatter);
+        }
+        entryWritten.accept(next.entry);
+    }
+
+    private ScatterZipOutputStream compress(ZipArchiveEntry entry, InputStreamSupplier content, boolean inMemory)
+    {
+        ScatterZipOutputStream scatter = null;
+        try
+        {
+            ScatterGatherBackingStore store = inMemory ? new InMemoryBackingStore() :
+                    new FileBasedScatterGatherBackingStore(TempFileProvider.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX));
+            scatter = new ScatterZipOutputStream(store, StreamCompressor.create(store));
+            scatter.addArchiveEntry(ZipArchiveEntryRequest.createZipArchiveEntryRequest(entry, content));
+            return scatter;
+        }
+        catch (IOException e)
+        {
+            closeQuietly(scatter);
+            throw new UncheckedIOException("Failed to compress " + entry.getName(), e);
+        }
+        catch (RuntimeException e)
+        {
+            closeQuietly(scatter);
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable)
+    {
+        if (closeable != null)
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch (IOException e)
+            {
+                log.debug("Failed to release compressed ZIP entry", e);
+            }
+        }
+    }
+
+    private static class PendingEntry
+    {
+        private final ZipArchiveEntry entry;
+        private final CompletableFuture<ScatterZipOutputStream> compressed;
+
+        PendingEntry(ZipArchiveEntry entry, CompletableFuture<ScatterZipOutputStream> compressed)
+        {
+            this.entry = entry;
+            this.compressed = compressed;
+        }
+
+        ScatterZipOutputStream await() throws IOException
+        {
+            try
+            {
+                return compressed.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while compressing " + entry.getName(), e);
+            }
+            catch (ExecutionException e)
+            {
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException)
+                {
+                    throw ((UncheckedIOException) cause).getCause();
+                }
+                if (cause instanceof RuntimeException)
+                {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException("Failed to compress " + entry.getName(), cause);
+            }
+        }
+    }
+
+    /**
+     * Holds a compressed entry in memory.
+     */
+    private static class InMemoryBackingStore extends ByteArrayOutputStream implements ScatterGatherBackingStore
+    {
+        @Override
+        public InputStream getInputStream()
+        {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+
+        @Override
+        public void writeOut(byte[] data, int offset, int length)
+        {
+            write(data, offset, length);
+        }
+
+        @Override
+        public void closeForWriting()
+        {
+        }
+    }
+}
@@ -32,12 +32,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.attribute.FileTime;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.zip.ZipEntry;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.coci.CheckOutCheckInService;
@@ -45,6 +50,7 @@ import org.alfresco.service.cmr.dictionary.DictionaryService;
 import org.alfresco.service.cmr.download.DownloadStatus;
 import org.alfresco.service.cmr.download.DownloadStatus.Status;
 import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.view.ExporterContext;
@@ -60,6 +66,10 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Handler for exporting node content to a ZIP file
+ * <p>
+ * When a compression executor is set, the content of each node is read and compressed on that executor, a number of
+ * entries ahead of the one being written, see {@link ParallelZipEntryWriter}. Content with one of the
+ * <code>storedMimetypes</code> is then stored rather than compressed again.
  * 
  * @author Alex Miller
  */
@@ -90,6 +100,14 @@ public class ZipDownloadExporter extends BaseExporter
     private Date zipTimestampCreated;
     private Date zipTimestampModified;
 
+    private ContentService contentService;
+    private Executor compressionExecutor;
+    private int maxPendingEntries = 16;
+    private long maxInMemoryEntrySize = 4L * 1024 * 1024;
+    private Set<String> storedMimetypes = Collections.emptySet();
+    private ParallelZipEntryWriter parallelWriter;
+    private boolean closed;
+
     /**
      * Construct
      *
@@ -105,19 +123,43 @@ public class ZipDownloadExporter extends BaseExporter
      * @param totalFileCount long
      */
     public ZipDownloadExporter(File zipFile, CheckOutCheckInService checkOutCheckInService, NodeService nodeService, RetryingTransactionHelper transactionHelper, DownloadStatusUpdateService updateService, DownloadStorage downloadStorage, DictionaryService dictionaryService, NodeRef downloadNodeRef, long total, long totalFileCount)
+    {
+        this(openZipFile(zipFile), checkOutCheckInService, nodeService, transactionHelper, updateService, downloadStorage, dictionaryService, downloadNodeRef, total, totalFileCount);
+    }
+
+    /**
+     * Construct, writing the archive to a stream, such as that of a ContentWriter
+     *
+     * @param outputStream OutputStream, closed at the end of the export
+     * @param checkOutCheckInService CheckOutCheckInService
+     * @param nodeService NodeService
+     * @param transactionHelper RetryingTransactionHelper
+     * @param updateService DownloadStatusUpdateService
+     * @param downloadStorage DownloadStorage
+     * @param dictionaryService DictionaryService
+     * @param downloadNodeRef NodeRef
+     * @param total long
+     * @param totalFileCount long
+     */
+    public ZipDownloadExporter(OutputStream outputStream, CheckOutCheckInService checkOutCheckInService, NodeService nodeService, RetryingTransactionHelper transactionHelper, DownloadStatusUpdateService updateService, DownloadStorage downloadStorage, DictionaryService dictionaryService, NodeRef downloadNodeRef, long total, long totalFileCount)
     {
         super(checkOutCheckInService, nodeService);
+        this.outputStream = outputStream;
+        this.updateService = updateService;
+        this.transactionHelper = transactionHelper;
+        this.downloadStorage = downloadStorage;
+        this.dictionaryService = dictionaryService;
+
+        this.downloadNodeRef = downloadNodeRef;
+        this.total = total;
+        this.totalFileCount = totalFileCount;
+    }
+
+    private static OutputStream openZipFile(File zipFile)
+    {
         try
         {
-            this.outputStream = new FileOutputStream(zipFile);
-            this.updateService = updateService;
-            this.transactionHelper = transactionHelper;
-            this.downloadStorage = downloadStorage;
-            this.dictionaryService = dictionaryService;
-            
-            this.downloadNodeRef = downloadNodeRef;
-            this.total = total;
-            this.totalFileCount = totalFileCount;
+            return new FileOutputStream(zipFile);
         }
         catch (FileNotFoundException e)
         {
@@ -125,6 +167,44 @@ public class ZipDownloadExporter extends BaseExporter
         }
     }
 
+    /**
+     * Read and compress content on the given executor. The content is read again from the content URL, using the
+     * given ContentService, rather than from the stream passed to the exporter.
+     *
+     * @param contentService ContentService
+     * @param compressionExecutor Executor
+     */
+    public void setParallelCompression(ContentService contentService, Executor compressionExecutor)
+    {
+        this.contentService = contentService;
+        this.compressionExecutor = compressionExecutor;
+    }
+
+    /**
+     * @param maxPendingEntries the number of entries that may be read and compressed ahead of the one being written
+     */
+    public void setMaxPendingEntries(int maxPendingEntries)
+    {
+        this.maxPendingEntries = maxPendingEntries;
+    }
+
+    /**
+     * @param maxInMemoryEntrySize the size above which an entry is compressed into a temporary file rather than memory
+     */
+    public void setMaxInMemoryEntrySize(long maxInMemoryEntrySize)
+    {
+        this.maxInMemoryEntrySize = maxInMemoryEntrySize;
+    }
+
+    /**
+     * @param storedMimetypes mimetypes of content that is already compressed. A trailing <code>*</code> matches any
+     *            mimetype starting with what precedes it, e.g. <code>video/*</code>
+     */
+    public void setStoredMimetypes(Set<String> storedMimetypes)
+    {
+        this.storedMimetypes = storedMimetypes;
+    }
+
     @Override
     public void start(final ExporterContext context)
     {
@@ -135,6 +215,10 @@ public class ZipDownloadExporter extends BaseExporter
         zipStream.setCreateUnicodeExtraFields(UnicodeExtraFieldPolicy.ALWAYS);
         zipStream.setUseLanguageEncodingFlag(true);
         zipStream.setFallbackToUTF8(true);
+        if (compressionExecutor != null)
+        {
+            parallelWriter = new ParallelZipEntryWriter(zipStream, compressionExecutor, maxPendingEntries, maxInMemoryEntrySize, this::entryWritten);
+        }
     }
 
     @Override
@@ -153,8 +237,15 @@ public class ZipDownloadExporter extends BaseExporter
                 archiveEntry.setTime(zipTimestampCreated.getTime());
                 archiveEntry.setCreationTime(FileTime.fromMillis(zipTimestampCreated.getTime()));
                 archiveEntry.setLastModifiedTime(FileTime.fromMillis(zipTimestampModified.getTime()));
-                zipStream.putArchiveEntry(archiveEntry);
-                zipStream.closeArchiveEntry();
+                if (parallelWriter != null)
+                {
+                    parallelWriter.addDirectory(archiveEntry);
+                }
+                else
+                {
+                    zipStream.putArchiveEntry(archiveEntry);
+                    zipStream.closeArchiveEntry();
+                }
             }
             catch (IOException e)
             {
@@ -179,6 +270,15 @@ public class ZipDownloadExporter extends BaseExporter
             zipEntry.setTime(zipTimestampCreated.getTime());
             zipEntry.setCreationTime(FileTime.fromMillis(zipTimestampCreated.getTime()));
             zipEntry.setLastModifiedTime(FileTime.fromMillis(zipTimestampModified.getTime()));
+            if (parallelWriter != null)
+            {
+                zipEntry.setMethod(isStored(contentData.getMimetype()) ? ZipEntry.STORED : ZipEntry.DEFLATED);
+                String contentUrl = contentData.getContentUrl();
+                String runAsUser = AuthenticationUtil.getRunAsUser();
+                parallelWriter.addEntry(zipEntry, contentData.getSize(), () -> AuthenticationUtil.runAs(
+                        () -> contentService.getRawReader(contentUrl).getContentInputStream(), runAsUser));
+                return;
+            }
             zipStream.putArchiveEntry(zipEntry);
             
             // copy export stream to zip
@@ -204,6 +304,11 @@ public class ZipDownloadExporter extends BaseExporter
     {
         try
         {
+            if (parallelWriter != null)
+            {
+                parallelWriter.finish();
+            }
+            closed = true;
             zipStream.close();
         }
         catch (IOException error)
@@ -212,6 +317,60 @@ public class ZipDownloadExporter extends BaseExporter
         }
     }
 
+    /**
+     * Releases the entries still being compressed and closes the output stream, if the export did not complete.
+     */
+    void abort()
+    {
+        if (closed)
+        {
+            return;
+        }
+        closed = true;
+        if (parallelWriter != null)
+        {
+            parallelWriter.close();
+        }
+        try
+        {
+            outputStream.close();
+        }
+        catch (IOException error)
+        {
+            log.debug("Failed to close the output stream of an incomplete zip", error);
+        }
+    }
+
+    /**
+     * Called when the parallel writer has added an entry to the archive.
+     */
+    private void entryWritten(ZipArchiveEntry entry)
+    {
+        if (!entry.isDirectory())
+        {
+            done = done + entry.getSize();
+            filesAddedCount = filesAddedCount + 1;
+            updateStatus();
+            checkCancelled();
+        }
+    }
+
+    private boolean isStored(String mimetype)
+    {
+        if (mimetype == null)
+        {
+            return false;
+        }
+        for (String storedMimetype : storedMimetypes)
+        {
+            if (storedMimetype.endsWith("*") ? mimetype.startsWith(storedMimetype.substring(0, storedMimetype.length() - 1)) : mimetype.equals(storedMimetype))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private String getPath()
     {
         if (path.size() < 1) 
@@ -25,13 +25,18 @@
  */
 package org.alfresco.repo.event2;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.alfresco.repo.event.v1.model.RepoEvent;
 import org.alfresco.util.PropertyCheck;
@@ -41,15 +46,43 @@ import org.apache.commons.logging.LogFactory;
 /**
  * Enqueuing event sender allows to create asynchronously the RepoEvent offloading the work to a ThreadPool but
  * at the same time it preserves the order of the events.
+ * <p>
+ * Events are held in bounded queues, one per sender thread. Events sharing a partition key (the node ID) always go
+ * to the same queue, so their order is preserved while unrelated events are sent in parallel. When a queue is full the
+ * {@link OverflowPolicy} decides whether the caller waits for a while or the event is dropped straight away. The caller
+ * is usually committing a transaction, so it never waits longer than the block timeout. Every dropped event is logged
+ * and counted, so that consumers can be told about the gap.
  */
 public class EnqueuingEventSender extends DirectEventSender
 {
     protected static final Log LOGGER = LogFactory.getLog(EnqueuingEventSender.class);
 
+    /**
+     * What to do with a new event when its queue is full.
+     */
+    public enum OverflowPolicy
+    {
+        /** Wait up to the block timeout for the queue to have room, then discard the event */
+        BLOCK,
+        /** Discard the event straight away */
+        DROP
+    }
+
     protected Executor enqueueThreadPoolExecutor;
     protected Executor dequeueThreadPoolExecutor;
-    protected BlockingQueue<EventInMaking> queue = new LinkedBlockingQueue<>();
-    protected Runnable listener = createListener();
+    private int queueCapacity = 100000;
+    private int senderThreads = 1;
+    private int maxBatchSize = 1;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private long blockTimeoutMillis = 1000;
+    private volatile Partition[] partitions;
+
+    private final LongAdder sentEvents = new LongAdder();
+    private final LongAdder failedEvents = new LongAdder();
+    private final LongAdder droppedEvents = new LongAdder();
+    private final LongAdder totalLatencyMillis = new LongAdder();
+    private final LongAdder latencySamples = new LongAdder();
+    private final AtomicLong maxLatencyMillis = new AtomicLong();
 
     @Override
     public void afterPropertiesSet()
@@ -67,7 +100,43 @@ public class EnqueuingEventSender extends DirectEventSender
     public void setDequeueThreadPoolExecutor(Executor dequeueThreadPoolExecutor)
     {
         this.dequeueThreadPoolExecutor = dequeueThreadPoolExecutor;
-        dequeueThreadPoolExecutor.execute(listener);
+    }
+
+    /**
+     * @param queueCapacity the maximum number of events waiting to be sent, shared between the sender threads
+     */
+    public void setQueueCapacity(int queueCapacity)
+    {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @param senderThreads the number of threads sending events in parallel, limited by the size of the dequeue thread pool
+     */
+    public void setSenderThreads(int senderThreads)
+    {
+        this.senderThreads = senderThreads;
+    }
+
+    /**
+     * @param maxBatchSize the maximum number of ready events handed to the message producer in one go
+     */
+    public void setMaxBatchSize(int maxBatchSize)
+    {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy)
+    {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * @param blockTimeoutMillis how long the {@link OverflowPolicy#BLOCK BLOCK} policy waits for room in a full queue
+     */
+    public void setBlockTimeoutMillis(long blockTimeoutMillis)
+    {
+        this.blockTimeoutMillis = blockTimeoutMillis;
     }
 
     /**
@@ -76,9 +145,24 @@ public class EnqueuingEventSender extends DirectEventSender
      */
     @Override
     public void accept(Callable<Optional<RepoEvent<?>>> eventProducer)
+    {
+        accept(null, eventProducer);
+    }
+
+    /**
+     * Procedure to enqueue the callback functions that creates an event, keeping its order relative to the other
+     * events with the same partition key.
+     * @param partitionKey The key of the entity the event is about, or <tt>null</tt>.
+     * @param eventProducer Callback function that creates an event.
+     */
+    @Override
+    public void accept(String partitionKey, Callable<Optional<RepoEvent<?>>> eventProducer)
     {
         EventInMaking eventInMaking = new EventInMaking(eventProducer);
-        queue.offer(eventInMaking);
+        if (!enqueue(getPartition(partitionKey), partitionKey, eventInMaking))
+        {
+            return;
+        }
         enqueueThreadPoolExecutor.execute(() -> {
             try
             {
@@ -92,33 +176,214 @@ public class EnqueuingEventSender extends DirectEventSender
     }
 
     /**
-     * Create listener task in charge of dequeuing and sending events ready to be sent.
-     * @return The task in charge of dequeuing and sending events ready to be sent.
+     * @return the number of events waiting to be sent
+     */
+    public int getQueueDepth()
+    {
+        int depth = 0;
+        Partition[] current = partitions;
+        if (current != null)
+        {
+            for (Partition partition : current)
+            {
+                depth += partition.queue.size();
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * @return the number of events handed to the message producer successfully
+     */
+    public long getSentEventsCount()
+    {
+        return sentEvents.sum();
+    }
+
+    /**
+     * @return the number of events the message producer failed to send
+     */
+    public long getFailedEventsCount()
+    {
+        return failedEvents.sum();
+    }
+
+    /**
+     * @return the number of events discarded because their queue was full
+     */
+    public long getDroppedEventsCount()
+    {
+        return droppedEvents.sum();
+    }
+
+    /**
+     * @return the average time between an event being enqueued and being sent, in milliseconds
+     */
+    public long getAverageEnqueueToSendMillis()
+    {
+        long samples = latencySamples.sum();
+        return samples == 0 ? 0 : totalLatencyMillis.sum() / samples;
+    }
+
+    /**
+     * @return the longest time between an event being enqueued and being sent, in milliseconds
+     */
+    public long getMaxEnqueueToSendMillis()
+    {
+        return maxLatencyMillis.get();
+    }
+
+    private boolean enqueue(Partition partition, String partitionKey, EventInMaking eventInMaking)
+    {
+        if (partition.queue.offer(eventInMaking))
+        {
+            return true;
+        }
+        if (overflowPolicy == OverflowPolicy.BLOCK)
+        {
+            try
+            {
+                if (partition.queue.offer(eventInMaking, blockTimeoutMillis, TimeUnit.MILLISECONDS))
+                {
+                    return true;
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        droppedEvents.increment();
+        LOGGER.error("Repository event queue is full, dropped the event for " + partitionKey + " (" + droppedEvents.sum()
+                + " dropped so far): " + eventInMaking);
+        return false;
+    }
+
+    private Partition getPartition(String partitionKey)
+    {
+        Partition[] current = partitions;
+        if (current == null)
+        {
+            current = startPartitions();
+        }
+        return partitionKey == null ? current[0] : current[Math.floorMod(partitionKey.hashCode(), current.length)];
+    }
+
+    /**
+     * Creates the queues and starts one sender per queue on the dequeue thread pool.
+     */
+    private synchronized Partition[] startPartitions()
+    {
+        if (partitions == null)
+        {
+            int count = Math.max(1, senderThreads);
+            if (dequeueThreadPoolExecutor instanceof ThreadPoolExecutor)
+            {
+                int poolSize = ((ThreadPoolExecutor) dequeueThreadPoolExecutor).getMaximumPoolSize();
+                if (poolSize < count)
+                {
+                    LOGGER.warn("The dequeue thread pool only allows " + poolSize + " thread(s), using as many event sender threads instead of " + count);
+                    count = poolSize;
+                }
+            }
+            Partition[] created = new Partition[count];
+            for (int i = 0; i < count; i++)
+            {
+                created[i] = new Partition(Math.max(1, queueCapacity / count));
+                dequeueThreadPoolExecutor.execute(created[i]);
+            }
+            partitions = created;
+        }
+        return partitions;
+    }
+
+    /**
+     * A queue of events and the task in charge of dequeuing and sending its events once they are ready.
      */
-    private Runnable createListener()
+    private class Partition implements Runnable
     {
-        return () -> {
+        private final BlockingQueue<EventInMaking> queue;
+
+        private Partition(int capacity)
+        {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        @Override
+        public void run()
+        {
             try
             {
+                List<EventInMaking> batch = new ArrayList<>(maxBatchSize);
                 while (!Thread.interrupted())
                 {
                     try
                     {
-                        queue.take().getEventWhenReady().ifPresent(event -> event2MessageProducer.send(event));
+                        batch.add(queue.take());
+                        // Only add events that are ready, so that a slow maker does not hold back the ones before it
+                        EventInMaking next;
+                        while (batch.size() < maxBatchSize && (next = queue.peek()) != null && next.isReady())
+                        {
+                            batch.add(queue.poll());
+                        }
+                        send(batch);
                     }
                     catch (Exception e)
                     {
                         LOGGER.error("Unexpected error while dequeuing and sending repository event " + e);
                     }
+                    finally
+                    {
+                        batch.clear();
+                    }
                 }
             }
             finally
             {
                 LOGGER.warn("Unexpected: rescheduling the listener thread.");
-                dequeueThreadPoolExecutor.execute(listener);
+                dequeueThreadPoolExecutor.execute(this);
             }
-        };
+        }
 
+        private void send(List<EventInMaking> batch) throws InterruptedException
+        {
+            List<RepoEvent<?>> events = new ArrayList<>(batch.size());
+            for (EventInMaking eventInMaking : batch)
+            {
+                eventInMaking.getEventWhenReady().ifPresent(events::add);
+            }
+            if (events.isEmpty())
+            {
+                return;
+            }
+            if (events.size() == 1)
+            {
+                try
+                {
+                    event2MessageProducer.send(events.get(0));
+                    sentEvents.increment();
+                }
+                catch (Exception e)
+                {
+                    failedEvents.increment();
+                    throw e;
+                }
+            }
+            else
+            {
+                int sent = event2MessageProducer.sendAll(events);
+                sentEvents.add(sent);
+                failedEvents.add(events.size() - sent);
+            }
+            long now = System.nanoTime();
+            for (EventInMaking eventInMaking : batch)
+            {
+                long latency = TimeUnit.NANOSECONDS.toMillis(now - eventInMaking.enqueuedNanos);
+                totalLatencyMillis.add(latency);
+                latencySamples.increment();
+                maxLatencyMillis.accumulateAndGet(latency, Math::max);
+            }
+        }
     }
 
     /**
@@ -129,11 +394,13 @@ public class EnqueuingEventSender extends DirectEventSender
         private final Callable<Optional<RepoEvent<?>>> maker;
         private volatile RepoEvent<?> event;
         private final CountDownLatch latch;
+        private final long enqueuedNanos;
 
         public EventInMaking(Callable<Optional<RepoEvent<?>>> maker)
         {
             this.maker = maker;
             this.latch = new CountDownLatch(1);
+            this.enqueuedNanos = System.nanoTime();
         }
 
         public void make() throws Exception
@@ -148,6 +415,11 @@ public class EnqueuingEventSender extends DirectEventSender
             }
         }
 
+        public boolean isReady()
+        {
+            return latch.getCount() == 0;
+        }
+
         public Optional<RepoEvent<?>> getEventWhenReady() throws InterruptedException
         {
             latch.await(30, TimeUnit.SECONDS);
@@ -25,13 +25,17 @@
  */
 package org.alfresco.repo.event2;
 
+import java.util.List;
 import java.util.Map;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.rawevents.AbstractEventProducer;
 import org.alfresco.util.PropertyCheck;
+import org.apache.camel.Endpoint;
 import org.apache.camel.ExchangePattern;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.InitializingBean;
 
 /**
@@ -41,6 +45,7 @@ import org.springframework.beans.factory.InitializingBean;
  */
 public class Event2MessageProducer extends AbstractEventProducer implements InitializingBean
 {
+    private static final Log LOGGER = LogFactory.getLog(Event2MessageProducer.class);
 
     @Override
     public void afterPropertiesSet() throws Exception
@@ -60,6 +65,35 @@ public class Event2MessageProducer extends AbstractEventProducer implements Init
         send(this.endpoint, null, event, null);
     }
 
+    /**
+     * Sends each of the events to the configured endpoint as its own message, in order. The endpoint is resolved once
+     * for all of them and a failure to send one event does not prevent the following ones from being sent.
+     * <p>
+     * Consumers expect one event per message, so this saves the endpoint lookups but not the per-message cost.
+     *
+     * @param events the events to send
+     * @return the number of events that were sent successfully
+     */
+    public int sendAll(List<?> events)
+    {
+        Endpoint resolvedEndpoint = this.producer.getCamelContext().getEndpoint(this.endpoint);
+        int sent = 0;
+        for (Object event : events)
+        {
+            try
+            {
+                Object body = event instanceof String ? event : this.objectMapper.writeValueAsString(event);
+                this.producer.sendBodyAndHeaders(resolvedEndpoint, ExchangePattern.InOnly, body, this.addHeaders(null));
+                sent++;
+            }
+            catch (Exception e)
+            {
+                LOGGER.error(ERROR_SENDING + ": " + event, e);
+            }
+        }
+        return sent;
+    }
+
     @Override
     public void send(String endpointUri, ExchangePattern exchangePattern, Object event, Map<String, Object> headers)
     {
@@ -624,11 +624,37 @@ public class EventGenerator extends AbstractLifecycleBean implements Initializin
         {
             final EventInfo eventInfo = getEventInfo(AuthenticationUtil.getFullyAuthenticatedUser());
             transactionService.getRetryingTransactionHelper().doInTransaction((RetryingTransactionCallback<Void>) () -> {
-                eventSender.accept(() -> createEvent(entityReference, eventConsolidator, eventInfo, entityToEventEligibilityVerifier));
+                eventSender.accept(getPartitionKey(entityReference),
+                    () -> createEvent(entityReference, eventConsolidator, eventInfo, entityToEventEligibilityVerifier));
                 return null;
             }, true, true);
         }
 
+        /**
+         * Gets the node the events of an entity are ordered by: the node itself, the child of a child association or
+         * the source of a peer association.
+         *
+         * @param entityReference - reference to an entity (e.g. node, child association, peer association)
+         * @return the ID of the node, or null if the entity is not related to a node
+         */
+        private String getPartitionKey(EntityRef entityReference)
+        {
+            NodeRef nodeRef = null;
+            if (entityReference instanceof NodeRef)
+            {
+                nodeRef = (NodeRef) entityReference;
+            }
+            else if (entityReference instanceof ChildAssociationRef)
+            {
+                nodeRef = ((ChildAssociationRef) entityReference).getChildRef();
+            }
+            else if (entityReference instanceof AssociationRef)
+            {
+                nodeRef = ((AssociationRef) entityReference).getSourceRef();
+            }
+            return nodeRef == null ? null : nodeRef.getId();
+        }
+
         /**
          * Creates events from various kinds of entities.
          *
@@ -40,4 +40,15 @@ public interface EventSender
      * @param eventProducer - callback function that creates an event
      */
     void accept(Callable<Optional<RepoEvent<?>>> eventProducer);
+
+    /**
+     * Accepts a callback function creating an event about the entity identified by the partition key. Implementations
+     * that send events concurrently must keep the order of the events sharing a partition key.
+     * @param partitionKey - the key of the entity the event is about (e.g. the node ID)
+     * @param eventProducer - callback function that creates an event
+     */
+    default void accept(String partitionKey, Callable<Optional<RepoEvent<?>>> eventProducer)
+    {
+        accept(eventProducer);
+    }
 }
@@ -0,0 +1,170 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.lock;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the statistics of a {@link JobLockServiceImpl}.
+ * 
+ * @since 23.2
+ */
+public class JobLockMetrics implements JobLockMetricsMBean
+{
+    private final JobLockOwnerCache ownerCache;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder acquisitionNanos = new LongAdder();
+    private final LongAccumulator maxAcquisitionNanos = new LongAccumulator(Math::max, 0L);
+    private final LongAdder acquisitionFailures = new LongAdder();
+    private final LongAdder contendedAttempts = new LongAdder();
+    private final LongAdder localContendedAttempts = new LongAdder();
+    private final LongAdder localReleaseWakeups = new LongAdder();
+    private final LongAdder leaseRenewals = new LongAdder();
+    private final LongAdder leaseRenewalTransactions = new LongAdder();
+    private final LongAdder leaseRenewalFailures = new LongAdder();
+
+    JobLockMetrics(JobLockOwnerCache ownerCache)
+    {
+        this.ownerCache = ownerCache;
+    }
+
+    void acquired(long nanos)
+    {
+        acquisitions.increment();
+        acquisitionNanos.add(nanos);
+        maxAcquisitionNanos.accumulate(nanos);
+    }
+
+    void acquisitionFailed()
+    {
+        acquisitionFailures.increment();
+    }
+
+    void contendedAttempt(boolean local)
+    {
+        contendedAttempts.increment();
+        if (local)
+        {
+            localContendedAttempts.increment();
+        }
+    }
+
+    void localReleaseWakeup()
+    {
+        localReleaseWakeups.increment();
+    }
+
+    void leasesRenewed(int renewed, int failed)
+    {
+        leaseRenewals.add(renewed);
+        leaseRenewalFailures.add(failed);
+        leaseRenewalTransactions.increment();
+    }
+
+    @Override
+    public long getAcquisitionCount()
+    {
+        return acquisitions.sum();
+    }
+
+    @Override
+    public long getAcquisitionFailureCount()
+    {
+        return acquisitionFailures.sum();
+    }
+
+    @Override
+    public double getAverageAcquisitionMillis()
+    {
+        long count = acquisitions.sum();
+        return count == 0 ? 0.0 : acquisitionNanos.sum() / 1000000.0 / count;
+    }
+
+    @Override
+    public long getMaxAcquisitionMillis()
+    {
+        return maxAcquisitionNanos.get() / 1000000L;
+    }
+
+    @Override
+    public long getContendedAttemptCount()
+    {
+        return contendedAttempts.sum();
+    }
+
+    @Override
+    public long getLocalContendedAttemptCount()
+    {
+        return localContendedAttempts.sum();
+    }
+
+    @Override
+    public long getLocalReleaseWakeupCount()
+    {
+        return localReleaseWakeups.sum();
+    }
+
+    @Override
+    public long getLeaseRenewalCount()
+    {
+        return leaseRenewals.sum();
+    }
+
+    @Override
+    public long getLeaseRenewalTransactionCount()
+    {
+        return leaseRenewalTransactions.sum();
+    }
+
+    @Override
+    public long getLeaseRenewalFailureCount()
+    {
+        return leaseRenewalFailures.sum();
+    }
+
+    @Override
+    public int getLocalLockCount()
+    {
+        return ownerCache.size();
+    }
+
+    @Override
+    public void reset()
+    {
+        acquisitions.reset();
+        acquisitionNanos.reset();
+        maxAcquisitionNanos.reset();
+        acquisitionFailures.reset();
+        contendedAttempts.reset();
+        localContendedAttempts.reset();
+        localReleaseWakeups.reset();
+        leaseRenewals.reset();
+        leaseRenewalTransactions.reset();
+        leaseRenewalFailures.reset();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.lock;
+
+/**
+ * Job lock acquisition and lease renewal statistics for this server, since it started or the statistics were
+ * last reset.
+ * 
+ * @since 23.2
+ */
+public interface JobLockMetricsMBean
+{
+    /**
+     * @return          Returns the number of locks acquired
+     */
+    public long getAcquisitionCount();
+
+    /**
+     * @return          Returns the number of requests that gave up without the lock
+     */
+    public long getAcquisitionFailureCount();
+
+    /**
+     * @return          Returns the mean time taken by successful requests, including the waits between attempts
+     */
+    public double getAverageAcquisitionMillis();
+
+    /**
+     * @return          Returns the longest time taken by a successful request, including the waits between attempts
+     */
+    public long getMaxAcquisitionMillis();
+
+    /**
+     * @return          Returns the number of attempts that found the lock held by another holder
+     */
+    public long getContendedAttemptCount();
+
+    /**
+     * @return          Returns the number of contended attempts that were answered by the locks held on this
+     *                  server, without a database transaction
+     */
+    public long getLocalContendedAttemptCount();
+
+    /**
+     * @return          Returns the number of waits between attempts that ended early because the lock was
+     *                  released on this server
+     */
+    public long getLocalReleaseWakeupCount();
+
+    /**
+     * @return          Returns the number of lock leases renewed
+     */
+    public long getLeaseRenewalCount();
+
+    /**
+     * @return          Returns the number of transactions used to renew lock leases
+     */
+    public long getLeaseRenewalTransactionCount();
+
+    /**
+     * @return          Returns the number of lock leases that could not be renewed
+     */
+    public long getLeaseRenewalFailureCount();
+
+    /**
+     * @return          Returns the number of locks currently held by this server
+     */
+    public int getLocalLockCount();
+
+    /**
+     * Reset the statistics
+     */
+    public void reset();
+}
@@ -0,0 +1,187 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.lock;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.alfresco.service.namespace.QName;
+
+/**
+ * Records the job locks held by this server, so that a lock held here need not be sought from the database
+ * until its holder releases it or it expires, and so that threads waiting for a lock held here are woken as
+ * soon as it is released.
+ * <p/>
+ * Only exact lock names are recorded.  Conflicts between a lock and its parent or child locks are still
+ * detected by the database.
+ * 
+ * @since 23.2
+ */
+class JobLockOwnerCache
+{
+    private static final int MONITOR_COUNT = 64;
+
+    private final ConcurrentMap<QName, Owner> owners = new ConcurrentHashMap<>();
+    private final Object[] monitors = new Object[MONITOR_COUNT];
+    /** The number of releases seen by each monitor, guarded by the monitor */
+    private final long[] releaseCounts = new long[MONITOR_COUNT];
+
+    JobLockOwnerCache()
+    {
+        for (int i = 0; i < MONITOR_COUNT; i++)
+        {
+            monitors[i] = new Object();
+        }
+    }
+
+    private static final class Owner
+    {
+        private final String lockToken;
+        private final long expiresAt;
+
+        private Owner(String lockToken, long timeToLive)
+        {
+            this.lockToken = lockToken;
+            this.expiresAt = System.currentTimeMillis() + timeToLive;
+        }
+
+        private boolean isExpired()
+        {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+
+    /**
+     * Record that a lock was acquired, or refreshed, by this server
+     */
+    void acquired(QName lockQName, String lockToken, long timeToLive)
+    {
+        owners.put(getKey(lockQName), new Owner(lockToken, timeToLive));
+    }
+
+    /**
+     * Record that a lock was released by this server and wake the threads waiting for it
+     */
+    void released(QName lockQName, String lockToken)
+    {
+        QName key = getKey(lockQName);
+        owners.computeIfPresent(key, (qname, owner) -> owner.lockToken.equals(lockToken) ? null : owner);
+        int index = getMonitorIndex(key);
+        synchronized (monitors[index])
+        {
+            releaseCounts[index]++;
+            monitors[index].notifyAll();
+        }
+    }
+
+    /**
+     * @return              Returns the token of the holder of the lock, if the lock is held here with a different
+     *                      token and has not expired, otherwise <tt>null</tt>
+     */
+    String getOtherHolder(QName lockQName, String lockToken)
+    {
+        QName key = getKey(lockQName);
+        Owner owner = owners.get(key);
+        if (owner == null || owner.lockToken.equals(lockToken))
+        {
+            return null;
+        }
+        else if (owner.isExpired())
+        {
+            owners.remove(key, owner);
+            return null;
+        }
+        return owner.lockToken;
+    }
+
+    /**
+     * @return              Returns a marker to pass to {@link #awaitRelease(QName, long, long)}, taken before an attempt
+     *                      to get the lock so that a release during the attempt is not missed
+     */
+    long getReleaseMarker(QName lockQName)
+    {
+        int index = getMonitorIndex(getKey(lockQName));
+        synchronized (monitors[index])
+        {
+            return releaseCounts[index];
+        }
+    }
+
+    /**
+     * Wait until the given time has passed or a lock sharing the lock's monitor is released here.  An interrupt
+     * ends the wait early, leaving the thread's interrupted status set.
+     * 
+     * @param marker        the value of {@link #getReleaseMarker(QName)} before the failed attempt
+     * @return              Returns <tt>true</tt> if the wait ended early because of a release
+     */
+    boolean awaitRelease(QName lockQName, long marker, long waitMs)
+    {
+        int index = getMonitorIndex(getKey(lockQName));
+        long deadline = System.currentTimeMillis() + waitMs;
+        synchronized (monitors[index])
+        {
+            long remaining = waitMs;
+            while (releaseCounts[index] == marker && remaining > 0)
+            {
+                try
+                {
+                    monitors[index].wait(remaining);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+            return releaseCounts[index] != marker;
+        }
+    }
+
+    /**
+     * @return              Returns the number of locks held by this server, including any that have expired
+     *                      without being released
+     */
+    int size()
+    {
+        return owners.size();
+    }
+
+    /**
+     * Lock names are case insensitive, as in the database
+     */
+    private static QName getKey(QName lockQName)
+    {
+        String localName = lockQName.getLocalName();
+        String lowerCaseName = localName.toLowerCase();
+        return localName.equals(lowerCaseName) ? lockQName : QName.createQName(lockQName.getNamespaceURI(), lowerCaseName);
+    }
+
+    private static int getMonitorIndex(QName key)
+    {
+        return (key.hashCode() & 0x7fffffff) % MONITOR_COUNT;
+    }
+}
@@ -25,9 +25,15 @@
  */
 package org.alfresco.repo.lock;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 import org.alfresco.repo.domain.locks.LockDAO;
@@ -59,10 +65,23 @@ public class JobLockServiceImpl implements JobLockService
     private RetryingTransactionHelper retryingTransactionHelper;
     private int defaultRetryCount;
     private long defaultRetryWait;
+    private boolean retryBackoff;
+    private long maxRetryWait;
+    private boolean localFastPath;
+    private boolean leaseRenewalBatching;
+    private long leaseRenewalWindow;
     
     private ScheduledExecutorService scheduler;
     private VmShutdownListener shutdownListener;
     
+    private final JobLockOwnerCache ownerCache;
+    private final JobLockMetrics metrics;
+    /** The locks whose leases are renewed together, when batching */
+    private final Set<LeaseRenewal> leaseRenewals = ConcurrentHashMap.newKeySet();
+    private final Object leaseRenewalRunLock = new Object();
+    private ScheduledFuture<?> leaseRenewalRun;
+    private long leaseRenewalRunAt;
+    
     /**
      * Stateless listener that does post-transaction cleanup.
      */
@@ -72,7 +91,11 @@ public class JobLockServiceImpl implements JobLockService
     {
         defaultRetryWait = 20;
         defaultRetryCount = 10;
+        maxRetryWait = 2000;
+        leaseRenewalWindow = 1000;
         txnListener = new LockTransactionListener();
+        ownerCache = new JobLockOwnerCache();
+        metrics = new JobLockMetrics(ownerCache);
         
         TraceableThreadFactory threadFactory = new TraceableThreadFactory();
         threadFactory.setThreadDaemon(false);
@@ -139,6 +162,66 @@ public class JobLockServiceImpl implements JobLockService
         this.defaultRetryWait = defaultRetryWait;
     }
 
+    /**
+     * Set whether the wait between attempts to acquire a lock doubles after each attempt, with a random
+     * variation so that servers contending for a lock do not retry in step.  The first wait is the retry wait
+     * requested.
+     * @param retryBackoff              <tt>true</tt> to back off, <tt>false</tt> (default) to wait the same time
+     *                                  between all attempts
+     */
+    public void setRetryBackoff(boolean retryBackoff)
+    {
+        this.retryBackoff = retryBackoff;
+    }
+
+    /**
+     * Set the longest wait between attempts to acquire a lock when backing off
+     * @param maxRetryWait              the wait time in milliseconds
+     */
+    public void setMaxRetryWait(long maxRetryWait)
+    {
+        this.maxRetryWait = maxRetryWait;
+    }
+
+    /**
+     * Set whether an attempt to acquire a lock that is held by another holder on this server fails without
+     * going to the database.  Threads waiting between attempts are woken when a lock is released on this server
+     * in any case.
+     * @param localFastPath             <tt>true</tt> to check the locks held on this server first
+     */
+    public void setLocalFastPath(boolean localFastPath)
+    {
+        this.localFastPath = localFastPath;
+    }
+
+    /**
+     * Set whether the leases of the locks refreshed with a {@link JobLockRefreshCallback} are renewed together,
+     * in one transaction, rather than each in its own transaction.
+     * @param leaseRenewalBatching      <tt>true</tt> to renew the leases that are due together
+     */
+    public void setLeaseRenewalBatching(boolean leaseRenewalBatching)
+    {
+        this.leaseRenewalBatching = leaseRenewalBatching;
+    }
+
+    /**
+     * Set how early a lease may be renewed, so that it is renewed with other leases that are due.  A lease is never
+     * renewed earlier than half of its renewal interval.
+     * @param leaseRenewalWindow        the time in milliseconds
+     */
+    public void setLeaseRenewalWindow(long leaseRenewalWindow)
+    {
+        this.leaseRenewalWindow = leaseRenewalWindow;
+    }
+
+    /**
+     * @return                          Returns the statistics of this service, for export as an MBean
+     */
+    public JobLockMetrics getMetrics()
+    {
+        return metrics;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -250,6 +333,8 @@ public class JobLockServiceImpl implements JobLockService
         {
             // It must succeed
             retryingTransactionHelper.doInTransaction(refreshLockCallback, false, true);
+            ownerCache.acquired(lockQName, lockToken, timeToLive);
+            metrics.leasesRenewed(1, 0);
             // Success
             if (logger.isDebugEnabled())
             {
@@ -263,6 +348,7 @@ public class JobLockServiceImpl implements JobLockService
         catch (LockAcquisitionException e)
         {
             // Failure
+            metrics.leasesRenewed(0, 1);
             if (logger.isDebugEnabled())
             {
                 logger.debug(
@@ -327,6 +413,11 @@ public class JobLockServiceImpl implements JobLockService
         {
             throw new IllegalArgumentException("Very small timeToLive: " + timeToLive);
         }
+        if (leaseRenewalBatching)
+        {
+            scheduleLeaseRenewal(new LeaseRenewal(lockToken, lockQName, timeToLive, callback, delay));
+            return;
+        }
         // Our runnable does the callbacks
         Runnable runnable = new Runnable()
         {
@@ -460,6 +551,7 @@ public class JobLockServiceImpl implements JobLockService
             }
         };
         retryingTransactionHelper.doInTransaction(releaseCallback, false, true);
+        ownerCache.released(lockQName, lockToken);
     }
 
     /**
@@ -474,7 +566,9 @@ public class JobLockServiceImpl implements JobLockService
                 return lockDAO.releaseLock(lockQName, lockToken, true);
             }
         };
-        return retryingTransactionHelper.doInTransaction(releaseCallback, false, true);
+        boolean released = retryingTransactionHelper.doInTransaction(releaseCallback, false, true);
+        ownerCache.released(lockQName, lockToken);
+        return released;
     }
 
     /**
@@ -495,9 +589,12 @@ public class JobLockServiceImpl implements JobLockService
                 return null;
             }
         };
+        long start = System.nanoTime();
         try
         {
-            int iterations = doWithRetry(getLockCallback, retryWait, retryCount);
+            int iterations = doWithRetry(getLockCallback, lockQName, lockToken, retryWait, retryCount);
+            ownerCache.acquired(lockQName, lockToken, timeToLive);
+            metrics.acquired(System.nanoTime() - start);
             // Bind in a listener, if we are in a transaction
             if (AlfrescoTransactionSupport.getTransactionReadState() != TxnReadState.TXN_NONE)
             {
@@ -517,6 +614,7 @@ public class JobLockServiceImpl implements JobLockService
         catch (LockAcquisitionException e)
         {
             // Failure
+            metrics.acquisitionFailed();
             if (logger.isDebugEnabled())
             {
                 logger.debug(
@@ -531,18 +629,29 @@ public class JobLockServiceImpl implements JobLockService
     }
     
     /**
-     * Does the high-level retrying around the callback.  At least one attempt is made to call the
-     * provided callback.
+     * Does the high-level retrying around the callback.  At least one attempt is made to get the lock.
      */
-    private int doWithRetry(RetryingTransactionCallback<? extends Object> callback, long retryWait, int retryCount)
+    private int doWithRetry(
+            RetryingTransactionCallback<? extends Object> callback,
+            QName lockQName, String lockToken,
+            long retryWait, int retryCount)
     {
         int maxAttempts = retryCount > 0 ? retryCount : 1;
         int lockAttempt = 0;
         LockAcquisitionException lastException = null;
         while (++lockAttempt <= maxAttempts)     // lockAttempt incremented before check i.e. 1 for first check
         {
+            long releaseMarker = ownerCache.getReleaseMarker(lockQName);
+            String localHolder = localFastPath ? ownerCache.getOtherHolder(lockQName, lockToken) : null;
             try
             {
+                if (localHolder != null)
+                {
+                    // The lock is held on this server, so the database would refuse it
+                    throw new LockAcquisitionException(
+                            LockAcquisitionException.ERR_EXCLUSIVE_LOCK_EXISTS,
+                            lockQName, lockToken, localHolder);
+                }
                 retryingTransactionHelper.doInTransaction(callback, false, true);
                 // Success.  Clear the exception indicator! 
                 lastException = null;
@@ -550,6 +659,7 @@ public class JobLockServiceImpl implements JobLockService
             }
             catch (LockAcquisitionException e)
             {
+                metrics.contendedAttempt(localHolder != null);
                 if (logger.isDebugEnabled())
                 {
                     logger.debug("Lock attempt " + lockAttempt + " of " + maxAttempts + " failed: " + e.getMessage());
@@ -561,10 +671,19 @@ public class JobLockServiceImpl implements JobLockService
                     break;
                 }
             }
-            // Before running again, do a wait
-            synchronized(callback)
+            // Before running again, do a wait.  It ends early if the lock is released on this server.
+            if (ownerCache.awaitRelease(lockQName, releaseMarker, getRetryWait(retryWait, lockAttempt)))
+            {
+                metrics.localReleaseWakeup();
+            }
+            if (Thread.currentThread().isInterrupted())
             {
-                try { callback.wait(retryWait); } catch (InterruptedException e) {}
+                // Give up, leaving the interrupted status for the caller
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Interrupted after lock attempt " + lockAttempt + " of " + maxAttempts);
+                }
+                break;
             }
         }
         if (lastException == null)
@@ -578,6 +697,232 @@ public class JobLockServiceImpl implements JobLockService
             throw lastException;
         }
     }
+
+    /**
+     * @return          Returns the time to wait after the given attempt
+     */
+    private long getRetryWait(long retryWait, int lockAttempt)
+    {
+        if (!retryBackoff || retryWait <= 0)
+        {
+            return retryWait;
+        }
+        int shift = Math.min(lockAttempt - 1, 30);
+        long wait = retryWait > (maxRetryWait >> shift) ? maxRetryWait : retryWait << shift;
+        wait = Math.max(wait, retryWait);
+        // Wait somewhere in the upper half, so that contending servers spread out their attempts
+        return wait / 2 + ThreadLocalRandom.current().nextLong(wait - wait / 2 + 1);
+    }
+
+    /**
+     * Add a lock to those whose leases are renewed together
+     */
+    private void scheduleLeaseRenewal(LeaseRenewal renewal)
+    {
+        leaseRenewals.add(renewal);
+        scheduleLeaseRenewalRun(renewal.renewAt);
+    }
+
+    /**
+     * Make sure that the leases are renewed no later than the given time
+     */
+    private void scheduleLeaseRenewalRun(long runAt)
+    {
+        synchronized (leaseRenewalRunLock)
+        {
+            if (leaseRenewalRun != null && leaseRenewalRunAt <= runAt)
+            {
+                return;
+            }
+            if (leaseRenewalRun != null)
+            {
+                leaseRenewalRun.cancel(false);
+            }
+            leaseRenewalRunAt = runAt;
+            leaseRenewalRun = scheduler.schedule(
+                    this::renewLeases,
+                    Math.max(0L, runAt - System.currentTimeMillis()),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Renew the leases that are due, or nearly due, in one transaction.  The callbacks of the locks are checked
+     * and informed as they are when each lock is refreshed on its own.
+     */
+    private void renewLeases()
+    {
+        synchronized (leaseRenewalRunLock)
+        {
+            leaseRenewalRun = null;
+        }
+        try
+        {
+            long now = System.currentTimeMillis();
+            List<LeaseRenewal> active = new ArrayList<LeaseRenewal>();
+            for (LeaseRenewal renewal : leaseRenewals)
+            {
+                if (renewal.renewAt > now + Math.min(leaseRenewalWindow, renewal.delay / 2))
+                {
+                    continue;
+                }
+                if (shutdownListener.isVmShuttingDown())
+                {
+                    leaseRenewals.remove(renewal);
+                    callLockReleased(renewal.callback);
+                    continue;
+                }
+                boolean isActive = false;
+                try
+                {
+                    isActive = callIsActive(renewal.callback, renewal.delay);
+                }
+                catch (Throwable e)
+                {
+                    logger.error(
+                            "Lock isActive check failed: \n" +
+                            "   Lock:     " + renewal.lockQName + "\n" +
+                            "   TTL:      " + renewal.timeToLive + "\n" +
+                            "   Txn:      " + renewal.lockToken,
+                            e);
+                    leaseRenewals.remove(renewal);
+                    callLockReleased(renewal.callback);
+                    continue;
+                }
+                if (isActive)
+                {
+                    active.add(renewal);
+                }
+                else
+                {
+                    // The callback is no longer active, so release the lock in case the initiator did not do it
+                    leaseRenewals.remove(renewal);
+                    if (releaseLockVerify(renewal.lockToken, renewal.lockQName))
+                    {
+                        callLockReleased(renewal.callback);
+                    }
+                }
+            }
+            if (!active.isEmpty())
+            {
+                for (LeaseRenewal renewal : refreshLeases(active))
+                {
+                    leaseRenewals.remove(renewal);
+                    callLockReleased(renewal.callback);
+                }
+            }
+        }
+        catch (Throwable e)
+        {
+            logger.error("Lock lease renewal failed", e);
+        }
+        finally
+        {
+            long next = Long.MAX_VALUE;
+            for (LeaseRenewal renewal : leaseRenewals)
+            {
+                next = Math.min(next, renewal.renewAt);
+            }
+            if (next < Long.MAX_VALUE && !scheduler.isShutdown())
+            {
+                scheduleLeaseRenewalRun(next);
+            }
+        }
+    }
+
+    /**
+     * Refresh the given locks in one transaction.  Should that fail, each lock is refreshed on its own.
+     * <p/>
+     * A lock that can't be refreshed may already have had some of its rows updated, so any failure rolls back
+     * the whole transaction rather than committing the partial update along with the other locks.
+     * 
+     * @return          Returns the locks that could not be refreshed
+     */
+    private List<LeaseRenewal> refreshLeases(final List<LeaseRenewal> renewals)
+    {
+        final List<LeaseRenewal> failed = new ArrayList<LeaseRenewal>();
+        RetryingTransactionCallback<Object> refreshCallback = new RetryingTransactionCallback<Object>()
+        {
+            public Object execute() throws Throwable
+            {
+                for (LeaseRenewal renewal : renewals)
+                {
+                    lockDAO.refreshLock(renewal.lockQName, renewal.lockToken, renewal.timeToLive);
+                }
+                return null;
+            }
+        };
+        try
+        {
+            retryingTransactionHelper.doInTransaction(refreshCallback, false, true);
+            metrics.leasesRenewed(renewals.size(), 0);
+            for (LeaseRenewal renewal : renewals)
+            {
+                renewed(renewal);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            if (e instanceof LockAcquisitionException)
+            {
+                // A lock has been lost.  The single renewals will find out which one.
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Failed to renew " + renewals.size() + " lock leases together: " + e.getMessage());
+                }
+            }
+            else
+            {
+                logger.warn("Failed to renew " + renewals.size() + " lock leases together.  Renewing each lease on its own.", e);
+            }
+            for (LeaseRenewal renewal : renewals)
+            {
+                try
+                {
+                    refreshLock(renewal.lockToken, renewal.lockQName, renewal.timeToLive);
+                    renewed(renewal);
+                }
+                catch (RuntimeException ee)
+                {
+                    failed.add(renewal);
+                }
+            }
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Renewed " + (renewals.size() - failed.size()) + " of " + renewals.size() + " lock leases.");
+        }
+        return failed;
+    }
+
+    private void renewed(LeaseRenewal renewal)
+    {
+        ownerCache.acquired(renewal.lockQName, renewal.lockToken, renewal.timeToLive);
+        renewal.renewAt = System.currentTimeMillis() + renewal.delay;
+    }
+
+    /**
+     * A lock whose lease is renewed with the others that are due
+     */
+    private static class LeaseRenewal
+    {
+        private final String lockToken;
+        private final QName lockQName;
+        private final long timeToLive;
+        private final JobLockRefreshCallback callback;
+        private final long delay;
+        private volatile long renewAt;
+
+        private LeaseRenewal(String lockToken, QName lockQName, long timeToLive, JobLockRefreshCallback callback, long delay)
+        {
+            this.lockToken = lockToken;
+            this.lockQName = lockQName;
+            this.timeToLive = timeToLive;
+            this.callback = callback;
+            this.delay = delay;
+            this.renewAt = System.currentTimeMillis() + delay;
+        }
+    }
     
     /**
      * Handles the transction synchronization activity, ensuring locks are rolled back as
@@ -619,6 +964,10 @@ public class JobLockServiceImpl implements JobLockService
             };
             retryingTransactionHelper.doInTransaction(releaseCallback, false, true);
             // So they were all successful
+            for (QName lockQName : heldLocks)
+            {
+                ownerCache.released(lockQName, txnId);
+            }
             heldLocks.clear();
         }
 
@@ -651,6 +1000,7 @@ public class JobLockServiceImpl implements JobLockService
                 try
                 {
                     retryingTransactionHelper.doInTransaction(releaseCallback, false, true);
+                    ownerCache.released(lockQName, txnId);
                 }
                 catch (Throwable e)
                 {
@@ -101,6 +101,12 @@ public class RenditionService2Impl implements RenditionService2, InitializingBea
         void throwIllegalStateExceptionIfAlreadyDone(int sourceContentHashCode)
         {
         }
+
+        // Interactive requests are not held behind background ones, such as renditions redone after a content update.
+        boolean isInteractive()
+        {
+            return false;
+        }
     }
 
     private TransactionService transactionService;
@@ -236,6 +242,11 @@ public class RenditionService2Impl implements RenditionService2, InitializingBea
 
     @Override
     public void render(NodeRef sourceNodeRef, String renditionName)
+    {
+        render(sourceNodeRef, renditionName, true);
+    }
+
+    private void render(NodeRef sourceNodeRef, String renditionName, boolean interactive)
     {
         requestAsyncTransformOrRendition(sourceNodeRef, new RenderOrTransformCallBack()
         {
@@ -245,6 +256,12 @@ public class RenditionService2Impl implements RenditionService2, InitializingBea
                 return "Rendition " + renditionName;
             }
 
+            @Override
+            boolean isInteractive()
+            {
+                return interactive;
+            }
+
             @Override
             public RenditionDefinition2 getRenditionDefinition()
             {
@@ -360,7 +377,18 @@ public class RenditionService2Impl implements RenditionService2, InitializingBea
                 return null;
             };
             String renditionName = renditionDefinition.getRenditionName();
-            renditionRequestSheduler.scheduleRendition(callback, sourceNodeRef + renditionName);
+            if (isReplyExpected(renditionDefinition))
+            {
+                // The client waits for a reply to this very request, so it must not be replaced by a later one
+                renditionRequestSheduler.scheduleRendition(callback, sourceNodeRef + renditionName);
+            }
+            else
+            {
+                // Requests for the same rendition from the same source mimetype are likely to use the same transformer
+                String batchKey = renditionName + (contentData == null ? "" : " " + contentData.getMimetype());
+                renditionRequestSheduler.scheduleRendition(callback, sourceNodeRef + renditionName, batchKey,
+                        renderOrTransform.isInteractive());
+            }
         }
         catch (Exception e)
         {
@@ -369,6 +397,16 @@ public class RenditionService2Impl implements RenditionService2, InitializingBea
         }
     }
 
+    private static boolean isReplyExpected(RenditionDefinition2 renditionDefinition)
+    {
+        if (renditionDefinition instanceof TransformDefinition)
+        {
+            TransformDefinition transformDefinition = (TransformDefinition) renditionDefinition;
+            return transformDefinition.getReplyQueue() != null || transformDefinition.getRequestId() != null;
+        }
+        return false;
+    }
+
     public void failure(NodeRef sourceNodeRef, RenditionDefinition2 renditionDefinition, int transformContentHashCode)
     {
         // The original transaction may have already have failed
@@ -934,7 +972,7 @@ public class RenditionService2Impl implements RenditionService2, InitializingBea
                         if (renditionDefinition != null)
                         {
                             clearRenditionContentData(sourceNodeRef, renditionName);
-                            render(sourceNodeRef, renditionName);
+                            render(sourceNodeRef, renditionName, false);
                         }
                         else
                         {
@@ -78,6 +78,10 @@ public class DBQuery extends BaseQuery implements DBQueryBuilderComponent
 
     private int offset = 0;
 
+    private Set<Long> readableAclIds;
+
+    private String readableOwner;
+
     /**
      * @param source Source
      * @param constraint Constraint
@@ -153,6 +157,37 @@ public class DBQuery extends BaseQuery implements DBQueryBuilderComponent
         this.offset = offset;
     }
 
+    /**
+     * @return the IDs of the ACLs that let the current user read nodes, or <tt>null</tt> if the query
+     *         does not filter nodes by ACL
+     */
+    public Set<Long> getReadableAclIds()
+    {
+        return readableAclIds;
+    }
+
+    /**
+     * Only select nodes with one of the given ACLs, nodes created by the given owner and nodes without
+     * a creator (whose ownership can only be checked once they are loaded).
+     * 
+     * @param readableAclIds the IDs of the ACLs that let the current user read nodes, or <tt>null</tt>
+     *            not to filter nodes by ACL
+     * @param readableOwner the name of the current user if it owns nodes it can read regardless of their ACL
+     */
+    public void setReadableAclFilter(Set<Long> readableAclIds, String readableOwner)
+    {
+        this.readableAclIds = readableAclIds;
+        this.readableOwner = readableOwner;
+    }
+
+    /**
+     * @return the name of the user whose nodes pass the ACL filter regardless of their ACL
+     */
+    public String getReadableOwner()
+    {
+        return readableOwner;
+    }
+
     public List<DBQueryBuilderJoinCommand> getJoins()
     {
         HashMap<QName, DBQueryBuilderJoinCommand> singleJoins = new HashMap<QName, DBQueryBuilderJoinCommand>();
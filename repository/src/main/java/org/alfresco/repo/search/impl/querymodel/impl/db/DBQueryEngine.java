@@ -96,6 +96,8 @@ public class DBQueryEngine implements QueryEngine
 
     private static final int DEFAULT_MAX_PAGING_BATCH_SIZE = 10000;
 
+    private static final int DEFAULT_MAX_READABLE_ACL_FILTER_SIZE = 1000;
+
     protected SqlSessionTemplate template;
 
     protected QNameDAO qnameDAO;
@@ -126,6 +128,10 @@ public class DBQueryEngine implements QueryEngine
 
     private int maxPagingBatchSize = DEFAULT_MAX_PAGING_BATCH_SIZE;
 
+    private boolean useReadableAclFilter = false;
+
+    private int maxReadableAclFilterSize = DEFAULT_MAX_READABLE_ACL_FILTER_SIZE;
+
     protected EntityLookupCache<Long, Node, NodeRef> nodesCache;
 
     private List<Pair<Long, StoreRef>> stores;
@@ -186,6 +192,36 @@ public class DBQueryEngine implements QueryEngine
         this.maxPagingBatchSize = maxPagingBatchSize;
     }
 
+    public boolean isUseReadableAclFilter()
+    {
+        return useReadableAclFilter;
+    }
+
+    /**
+     * Restrict the query to nodes with ACLs that the current user can read, rather than loading all the
+     * matching nodes and discarding the ones that can't be read.
+     * 
+     * @param useReadableAclFilter <tt>true</tt> to filter the nodes by ACL in the database
+     */
+    public void setUseReadableAclFilter(boolean useReadableAclFilter)
+    {
+        this.useReadableAclFilter = useReadableAclFilter;
+    }
+
+    public int getMaxReadableAclFilterSize()
+    {
+        return maxReadableAclFilterSize;
+    }
+
+    /**
+     * @param maxReadableAclFilterSize the maximum number of ACL IDs to put in the query; users with entries
+     *            in more ACLs get their nodes checked one by one
+     */
+    public void setMaxReadableAclFilterSize(int maxReadableAclFilterSize)
+    {
+        this.maxReadableAclFilterSize = maxReadableAclFilterSize;
+    }
+
     public void setMetadataIndexCheck2(OptionalPatchApplicationCheckBootstrapBean metadataIndexCheck2)
     {
         this.metadataIndexCheck2 = metadataIndexCheck2;
@@ -345,6 +381,11 @@ public class DBQueryEngine implements QueryEngine
                 : options.getMaxPermissionCheckTimeMillis();
         permissionAssessor.setMaxPermissionChecks(maxPermsChecks);
         permissionAssessor.setMaxPermissionCheckTimeMillis(maxPermCheckTimeMillis);
+
+        if (useReadableAclFilter)
+        {
+            applyReadableAclFilter(dbQuery, permissionAssessor, authority);
+        }
         
         FilteringResultSet resultSet = acceleratedNodeSelection(options, dbQuery, permissionAssessor);
         
@@ -353,6 +394,20 @@ public class DBQueryEngine implements QueryEngine
         return plrs;
     }
 
+    /**
+     * Push the ACLs readable by the current user into the query.  The nodes that are selected are still
+     * checked individually by the assessor, but far fewer of them need to be loaded and discarded.
+     */
+    void applyReadableAclFilter(DBQuery dbQuery, NodePermissionAssessor permissionAssessor, Authority authority)
+    {
+        Set<Long> readableAclIds = permissionAssessor.getReadableAclIds(aclCrudDAO, maxReadableAclFilterSize);
+        if (readableAclIds != null)
+        {
+            logger.debug("- filtering by " + readableAclIds.size() + " readable ACLs");
+            dbQuery.setReadableAclFilter(readableAclIds, authority == null ? null : authority.getAuthority());
+        }
+    }
+
     protected NodePermissionAssessor createAssessor(Authority authority)
     {
         return new NodePermissionAssessor(nodeService, permissionService, authority, nodesCache);
@@ -27,12 +27,15 @@ package org.alfresco.repo.search.impl.querymodel.impl.db;
 
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.cache.lookup.EntityLookupCache;
 import org.alfresco.repo.domain.node.Node;
+import org.alfresco.repo.domain.permissions.AclCrudDAO;
+import org.alfresco.repo.domain.permissions.AclMember;
 import org.alfresco.repo.domain.permissions.Authority;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -173,6 +176,49 @@ public class NodePermissionAssessor
     {
         this.maxPermissionCheckTimeMillis = maxPermissionCheckTimeMillis;
     }
+
+    /**
+     * Find the ACLs that let the current user read nodes, so that a query can be restricted to them up front.
+     * Only ACLs with an entry for one of the user's authorities can grant read, so these are the only ones
+     * that are checked; the results are kept for the checks of the individual nodes.
+     * 
+     * @param aclCrudDAO used to find the ACLs with entries for the user's authorities
+     * @param maxAclIds the maximum number of ACLs to check
+     * @return the IDs of the readable ACLs, or <tt>null</tt> if every node must be checked: when the user can
+     *         read all nodes (or none), or when the user's authorities have entries in more than <tt>maxAclIds</tt> ACLs
+     */
+    public Set<Long> getReadableAclIds(AclCrudDAO aclCrudDAO, int maxAclIds)
+    {
+        if (isNullReading || isSystemReading || isAdminReading)
+        {
+            return null;
+        }
+        Set<Long> candidateAclIds = new HashSet<>();
+        for (String authorisation : permissionService.getAuthorisations())
+        {
+            for (AclMember aclMember : aclCrudDAO.getAclMembersByAuthority(authorisation))
+            {
+                candidateAclIds.add(aclMember.getAclId());
+            }
+            if (candidateAclIds.size() > maxAclIds)
+            {
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Not filtering by ACL: more than " + maxAclIds + " ACLs to check");
+                }
+                return null;
+            }
+        }
+        Set<Long> readableAclIds = new HashSet<>();
+        for (Long aclId : candidateAclIds)
+        {
+            if (canRead(aclId))
+            {
+                readableAclIds.add(aclId);
+            }
+        }
+        return readableAclIds;
+    }
             
     protected boolean canRead(Long aclId)
     {
@@ -86,7 +86,24 @@ public abstract class AbstractSolrQueryHTTPClient
     /** List of SOLR Exceptions that should be returning HTTP 501 status code in Remote API. */
     private static final List<String> STATUS_CODE_501_EXCEPTIONS = List.of("java.lang.UnsupportedOperationException");
     
+    /**
+     * Reads the body of a successful Solr response.
+     */
+    @FunctionalInterface
+    protected interface SolrResponseReader<T>
+    {
+        T read(Reader reader) throws IOException, JSONException;
+    }
+
     protected JSONObject postQuery(HttpClient httpClient, String url, JSONObject body) throws IOException, JSONException
+    {
+        return postQuery(httpClient, url, body, reader -> new JSONObject(new JSONTokener(reader)));
+    }
+
+    /**
+     * Posts the query and hands the response body to the given reader as it arrives, without first buffering it.
+     */
+    protected <T> T postQuery(HttpClient httpClient, String url, JSONObject body, SolrResponseReader<T> responseReader) throws IOException, JSONException
     {
         PostMethod post = createNewPostMethod(url);
         if (body.toString().length() > DEFAULT_SAVEPOST_BUFFER)
@@ -108,9 +125,9 @@ public abstract class AbstractSolrQueryHTTPClient
                     httpClient.executeMethod(post);
                 }
             }
-            String responseBodyStr = post.getResponseBodyAsString();
             if (post.getStatusCode() != HttpServletResponse.SC_OK)
             {
+                String responseBodyStr = post.getResponseBodyAsString();
                 String trace = null;
                 try
                 {
@@ -138,9 +155,7 @@ public abstract class AbstractSolrQueryHTTPClient
             }
 
             Reader reader = new BufferedReader(new InputStreamReader(post.getResponseBodyAsStream(), post.getResponseCharSet()));
-            // TODO - replace with streaming-based solution e.g. SimpleJSON ContentHandler
-            JSONObject json = new JSONObject(new JSONTokener(reader));
-            return json;
+            return responseReader.read(reader);
         }
         finally
         {
@@ -0,0 +1,137 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search.impl.solr;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The DBID and score of each document returned by a Solr query, held in primitive arrays rather than one
+ * JSONObject per document.
+ */
+public class SolrJSONDocs
+{
+    private long[] dbids;
+    private float[] scores;
+    private int size;
+
+    public SolrJSONDocs()
+    {
+        this(16);
+    }
+
+    public SolrJSONDocs(int initialCapacity)
+    {
+        dbids = new long[Math.max(initialCapacity, 1)];
+        scores = new float[dbids.length];
+    }
+
+    /**
+     * Reads the DBID and score of each entry of a response.docs array. The DBID may be given as a single value or as
+     * the first value of a multi-valued field.
+     */
+    public static SolrJSONDocs fromJSON(JSONArray docs) throws JSONException
+    {
+        int numDocs = docs.length();
+        SolrJSONDocs result = new SolrJSONDocs(numDocs);
+        for (int i = 0; i < numDocs; i++)
+        {
+            JSONObject doc = docs.getJSONObject(i);
+            JSONArray dbidValues = doc.optJSONArray("DBID");
+            long dbid = dbidValues != null ? dbidValues.getLong(0) : doc.optLong("DBID");
+            result.add(dbid, (float) doc.getDouble("score"));
+        }
+        return result;
+    }
+
+    public void add(long dbid, float score)
+    {
+        if (size == dbids.length)
+        {
+            dbids = Arrays.copyOf(dbids, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        dbids[size] = dbid;
+        scores[size] = score;
+        size++;
+    }
+
+    public void clear()
+    {
+        size = 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public long getDbid(int i)
+    {
+        checkIndex(i);
+        return dbids[i];
+    }
+
+    public float getScore(int i)
+    {
+        checkIndex(i);
+        return scores[i];
+    }
+
+    /**
+     * @return a read-only view of the DBIDs
+     */
+    public List<Long> getDbids()
+    {
+        return new AbstractList<Long>()
+        {
+            @Override
+            public Long get(int index)
+            {
+                return getDbid(index);
+            }
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+    private void checkIndex(int i)
+    {
+        if (i < 0 || i >= size)
+        {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for size " + size);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search.impl.solr;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Token based parser for Solr query responses.
+ * <p>
+ * The documents in <code>response.docs</code> are by far the largest part of a query response. Rather than
+ * building a JSONObject for each of them, their DBID and score are added to a {@link SolrJSONDocs} as they are
+ * read, and any other document fields are skipped. The rest of the response (header, facets, highlighting, spell
+ * checking...) is returned as a JSONObject with the same values that {@link org.json.JSONTokener} would produce, so
+ * that it may be processed as before. The docs array of the returned JSONObject is left empty.
+ */
+public final class SolrJSONResponseParser
+{
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private SolrJSONResponseParser()
+    {
+    }
+
+    /**
+     * @param reader the response, which is read but not closed
+     * @param docs   receives the DBID and score of each document
+     * @return the rest of the response
+     */
+    public static JSONObject parse(Reader reader, SolrJSONDocs docs) throws IOException, JSONException
+    {
+        try
+        {
+            JsonParser parser = JSON_FACTORY.createParser(reader);
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+            {
+                throw new JSONException("A JSONObject text must begin with '{'");
+            }
+            JSONObject json = new JSONObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME)
+            {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                json.put(name, "response".equals(name) && token == JsonToken.START_OBJECT ?
+                        readResponse(parser, docs) : readValue(parser));
+            }
+            return json;
+        }
+        catch (JsonProcessingException e)
+        {
+            throw new JSONException(e.getOriginalMessage(), e);
+        }
+    }
+
+    private static JSONObject readResponse(JsonParser parser, SolrJSONDocs docs) throws IOException
+    {
+        JSONObject response = new JSONObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("docs".equals(name) && token == JsonToken.START_ARRAY)
+            {
+                while (parser.nextToken() == JsonToken.START_OBJECT)
+                {
+                    readDoc(parser, docs);
+                }
+                response.put(name, new JSONArray());
+            }
+            else
+            {
+                response.put(name, readValue(parser));
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Reads a document in the same way as {@link SolrJSONDocs#fromJSON(JSONArray)}.
+     */
+    private static void readDoc(JsonParser parser, SolrJSONDocs docs) throws IOException
+    {
+        long dbid = 0;
+        Double score = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("DBID".equals(name))
+            {
+                if (token == JsonToken.START_ARRAY)
+                {
+                    if (parser.nextToken() == JsonToken.END_ARRAY)
+                    {
+                        throw new JSONException("JSONArray[0] not found.");
+                    }
+                    dbid = readLong(parser);
+                    while (parser.nextToken() != JsonToken.END_ARRAY)
+                    {
+                        parser.skipChildren();
+                    }
+                }
+                else
+                {
+                    dbid = token == JsonToken.VALUE_NULL ? 0 : readLong(parser);
+                }
+            }
+            else if ("score".equals(name))
+            {
+                score = token == JsonToken.VALUE_STRING ? Double.valueOf(parser.getText()) : parser.getValueAsDouble();
+            }
+            else
+            {
+                parser.skipChildren();
+            }
+        }
+        if (score == null)
+        {
+            throw new JSONException("JSONObject[\"score\"] not found.");
+        }
+        docs.add(dbid, score.floatValue());
+    }
+
+    private static long readLong(JsonParser parser) throws IOException
+    {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT)
+        {
+            return parser.getValueAsLong();
+        }
+        try
+        {
+            return Long.parseLong(parser.getText());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new JSONException("Value [" + parser.getText() + "] is not a long.", e);
+        }
+    }
+
+    /**
+     * Reads the value at the current token, using the same types as {@link org.json.JSONTokener}.
+     */
+    private static Object readValue(JsonParser parser) throws IOException
+    {
+        switch (parser.currentToken())
+        {
+            case START_OBJECT:
+                JSONObject object = new JSONObject();
+                while (parser.nextToken() == JsonToken.FIELD_NAME)
+                {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    object.put(name, readValue(parser));
+                }
+                return object;
+            case START_ARRAY:
+                JSONArray array = new JSONArray();
+                while (parser.nextToken() != JsonToken.END_ARRAY)
+                {
+                    array.put(readValue(parser));
+                }
+                return array;
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDecimalValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return JSONObject.NULL;
+            default:
+                throw new JSONException("Unexpected token " + parser.currentToken() + " at " + parser.getCurrentLocation());
+        }
+    }
+}
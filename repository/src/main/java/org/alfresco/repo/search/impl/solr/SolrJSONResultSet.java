@@ -37,7 +37,6 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.alfresco.repo.domain.node.NodeDAO;
-import org.alfresco.repo.search.QueryParserException;
 import org.alfresco.repo.search.SearchEngineResultSet;
 import org.alfresco.repo.search.SimpleResultSetMetaData;
 import org.alfresco.repo.search.impl.solr.facet.facetsresponse.GenericBucket;
@@ -124,6 +123,21 @@ public class SolrJSONResultSet implements SearchEngineResultSet {
      * @param maxResults int
      */
     public SolrJSONResultSet(JSONObject json, SearchParameters searchParameters, NodeService nodeService, NodeDAO nodeDao, LimitBy limitBy, int maxResults)
+    {
+        this(json, null, searchParameters, nodeService, nodeDao, limitBy, maxResults);
+    }
+
+    /**
+     * Detached result set based on a response read by {@link SolrJSONResponseParser}
+     * @param json JSONObject
+     * @param docs the documents of the response, or null to read them from <code>response.docs</code> of the json
+     * @param searchParameters SearchParameters
+     * @param nodeService NodeService
+     * @param nodeDao NodeDAO
+     * @param limitBy LimitBy
+     * @param maxResults int
+     */
+    public SolrJSONResultSet(JSONObject json, SolrJSONDocs docs, SearchParameters searchParameters, NodeService nodeService, NodeDAO nodeDao, LimitBy limitBy, int maxResults)
     {
         // Note all properties are returned as multi-valued from the WildcardField "*" definition in the SOLR schema.xml
         this.nodeService = nodeService;
@@ -147,45 +161,17 @@ public class SolrJSONResultSet implements SearchEngineResultSet {
             {
                 processedDenies = json.getBoolean("processedDenies");
             }
-            JSONArray docs = response.getJSONArray("docs");
-            
-            int numDocs = docs.length();
-            
-            ArrayList<Long> rawDbids = new ArrayList<Long>(numDocs);
-            ArrayList<Float> rawScores = new ArrayList<Float>(numDocs); 
-            for(int i = 0; i < numDocs; i++)
+            if (docs == null)
             {
-                JSONObject doc = docs.getJSONObject(i);
-                JSONArray dbids = doc.optJSONArray("DBID");
-                if(dbids != null)
-                {
-                    Long dbid = dbids.getLong(0);
-                    Float score = Float.valueOf((float)doc.getDouble("score"));
-                    rawDbids.add(dbid);
-                    rawScores.add(score);
-                }
-                else
-                {
-                    Long dbid = doc.optLong("DBID");
-                    if(dbid != null)
-                    {
-                        Float score = Float.valueOf((float)doc.getDouble("score"));
-                        rawDbids.add(dbid);
-                        rawScores.add(score);
-                    }
-                    else
-                    {
-                        // No DBID found 
-                        throw new QueryParserException("No DBID found for doc ...");
-                    }
-                }
-                
+                docs = SolrJSONDocs.fromJSON(response.getJSONArray("docs"));
             }
             
+            int numDocs = docs.size();
+            
             // bulk load
             if (searchParameters.isBulkFetchEnabled())
             {
-                nodeDao.cacheNodesById(rawDbids);
+                nodeDao.cacheNodesById(docs.getDbids());
             }
 
             // filter out rubbish
@@ -196,12 +182,12 @@ public class SolrJSONResultSet implements SearchEngineResultSet {
 
             for(int i = 0; i < numDocs; i++)
             {
-                Long dbid = rawDbids.get(i);
+                Long dbid = docs.getDbid(i);
                 NodeRef nodeRef = nodeService.getNodeRef(dbid);
 
                 if(nodeRef != null)
                 {
-                    page.add(new Pair<Long, Float>(dbid, rawScores.get(i)));
+                    page.add(new Pair<Long, Float>(dbid, docs.getScore(i)));
                     refs.add(nodeRef);
                     dbIdNodeRefs.put(dbid, nodeRef);
                 }
@@ -42,6 +42,7 @@ import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
 import java.util.StringJoiner;
+import java.util.function.BiFunction;
 
 import jakarta.servlet.http.HttpServletResponse;
 
@@ -576,9 +577,9 @@ public class SolrQueryHTTPClient extends AbstractSolrQueryHTTPClient implements
 
             final int maximumResults = maxResults;  //just needed for the final parameter
             
-            return (ResultSet) postSolrQuery(httpClient, url.toString(), body, json ->
+            return postSolrResultSetQuery(httpClient, url.toString(), body, (json, docs) ->
             {
-                return new SolrJSONResultSet(json, searchParameters, nodeService, nodeDAO, limitBy, maximumResults);
+                return new SolrJSONResultSet(json, docs, searchParameters, nodeService, nodeDAO, limitBy, maximumResults);
             }, spellCheckQueryStr);
         }
         catch (UnsupportedEncodingException e)
@@ -1121,15 +1122,44 @@ public class SolrQueryHTTPClient extends AbstractSolrQueryHTTPClient implements
         }
 
             SearchEngineResultMetadata results = jsonProcessor.getResult(json);
+            logResults(url, body, results);
+            return results;
+    }
 
-            if (s_logger.isDebugEnabled())
+    /**
+     * As {@link #postSolrQuery(HttpClient, String, JSONObject, SolrJsonProcessor, String)}, but the response is
+     * streamed through a {@link SolrJSONResponseParser}, so the returned documents are never held as JSON.
+     */
+    protected <T extends SearchEngineResultMetadata> T postSolrResultSetQuery(HttpClient httpClient, String url, JSONObject body,
+                BiFunction<JSONObject, SolrJSONDocs, T> resultSetFactory, String spellCheckParams)
+                throws IOException, JSONException
+    {
+        SolrJSONDocs docs = new SolrJSONDocs();
+        JSONObject json = postQuery(httpClient, url, body, reader -> SolrJSONResponseParser.parse(reader, docs));
+        if (spellCheckParams != null)
+        {
+            SpellCheckDecisionManager manager = new SpellCheckDecisionManager(json, url, body, spellCheckParams);
+            if (manager.isCollate())
             {
-                s_logger.debug("Sent :" + url);
-                s_logger.debug("   with: " + body.toString());
-                s_logger.debug("Got: " + results.getNumberFound() + " in " + results.getQueryTime() + " ms");
+                docs.clear();
+                json = postQuery(httpClient, manager.getUrl(), body, reader -> SolrJSONResponseParser.parse(reader, docs));
             }
-            
-            return results;
+            json.put("spellcheck", manager.getSpellCheckJsonValue());
+        }
+
+        T results = resultSetFactory.apply(json, docs);
+        logResults(url, body, results);
+        return results;
+    }
+
+    private void logResults(String url, JSONObject body, SearchEngineResultMetadata results)
+    {
+        if (s_logger.isDebugEnabled())
+        {
+            s_logger.debug("Sent :" + url);
+            s_logger.debug("   with: " + body.toString());
+            s_logger.debug("Got: " + results.getNumberFound() + " in " + results.getQueryTime() + " ms");
+        }
     }
 
     
@@ -0,0 +1,117 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Usage of the permissions access cache of a {@link PermissionServiceImpl}: how often lookups are
+ * answered by the cache and how much of the cache is invalidated by changes of group membership.
+ * <p>
+ * The figures are for this server only and are kept from startup.
+ */
+public class AccessCacheMetrics
+{
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder fullClears = new LongAdder();
+    private final LongAdder targetedInvalidations = new LongAdder();
+    private final LongAdder usersInvalidated = new LongAdder();
+
+    void recordLookup(boolean hit)
+    {
+        (hit ? hits : misses).increment();
+    }
+
+    void recordFullClear()
+    {
+        fullClears.increment();
+    }
+
+    void recordTargetedInvalidation(int userCount)
+    {
+        targetedInvalidations.increment();
+        usersInvalidated.add(userCount);
+    }
+
+    /**
+     * @return the number of lookups answered by the cache
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that had to evaluate the permission
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * @return the proportion of lookups answered by the cache, or <tt>0</tt> if there were no lookups
+     */
+    public double getHitRatio()
+    {
+        long hitCount = getHits();
+        long lookupCount = hitCount + getMisses();
+        return lookupCount == 0 ? 0.0 : (double) hitCount / lookupCount;
+    }
+
+    /**
+     * @return the number of times the whole cache was cleared
+     */
+    public long getFullClears()
+    {
+        return fullClears.sum();
+    }
+
+    /**
+     * @return the number of times only the entries of the users affected by a change were invalidated
+     */
+    public long getTargetedInvalidations()
+    {
+        return targetedInvalidations.sum();
+    }
+
+    /**
+     * @return the total number of users whose entries were invalidated by targeted invalidations
+     */
+    public long getUsersInvalidated()
+    {
+        return usersInvalidated.sum();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AccessCacheMetrics [hits=" + getHits() + ", misses=" + getMisses() +
+               ", hitRatio=" + String.format("%.3f", getHitRatio()) + ", fullClears=" + getFullClears() +
+               ", targetedInvalidations=" + getTargetedInvalidations() + ", usersInvalidated=" + getUsersInvalidated() + "]";
+    }
+}
@@ -32,8 +32,10 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 import net.sf.acegisecurity.Authentication;
 import net.sf.acegisecurity.GrantedAuthority;
@@ -67,6 +69,7 @@ import org.alfresco.repo.security.permissions.impl.traitextender.PermissionServi
 import org.alfresco.repo.security.permissions.impl.traitextender.PermissionServiceTrait;
 import org.alfresco.repo.tenant.TenantService;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
 import org.alfresco.repo.version.Version2Model;
 import org.alfresco.repo.version.VersionModel;
 import org.alfresco.repo.version.common.VersionUtil;
@@ -78,6 +81,7 @@ import org.alfresco.service.cmr.repository.StoreRef;
 import org.alfresco.service.cmr.security.AccessPermission;
 import org.alfresco.service.cmr.security.AccessStatus;
 import org.alfresco.service.cmr.security.AuthorityService;
+import org.alfresco.service.cmr.security.AuthorityType;
 import org.alfresco.service.cmr.security.OwnableService;
 import org.alfresco.service.cmr.security.PermissionContext;
 import org.alfresco.service.cmr.security.PermissionService;
@@ -111,13 +115,25 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
 
     private static Log log = LogFactory.getLog(PermissionServiceImpl.class);
 
+    private static final String KEY_NODES_KEYED_IN_TXN = "PermissionServiceImpl.nodesKeyedInTxn";
+
     /** a transactionally-safe cache to be injected */
     protected SimpleCache<Serializable, AccessStatus> accessCache;
+
+    /** a transactionally-safe cache of the current generation of each user's access cache entries */
+    protected SimpleCache<Serializable, Long> accessGenerationCache;
     
     protected SimpleCache<Serializable, Set<String>> readersCache;
     
     protected SimpleCache<Serializable, Set<String>> readersDeniedCache;
 
+    /*
+     * Group memberships changing for more users than this clear the whole access cache
+     */
+    protected int accessCacheInvalidationLimit = 1000;
+
+    private final AccessCacheMetrics accessCacheMetrics = new AccessCacheMetrics();
+
     /*
      * Access to the model
      */
@@ -207,7 +223,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void setAnyDenyDenies(boolean anyDenyDenies)
     {
         this.anyDenyDenies = anyDenyDenies;
-        accessCache.clear();
+        clearAccessCache();
         readersCache.clear();
         readersDeniedCache.clear();
     }
@@ -311,6 +327,38 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         this.accessCache = accessCache;
     }
 
+    /**
+     * Set the cache of access cache generations, keyed by user name.  A user's generation is part of the keys of
+     * the user's access cache entries, so starting a new one invalidates all of them without touching the access cache.
+     * 
+     * @param accessGenerationCache
+     *            a transactionally safe cache
+     */
+    public void setAccessGenerationCache(SimpleCache<Serializable, Long> accessGenerationCache)
+    {
+        this.accessGenerationCache = accessGenerationCache;
+    }
+
+    /**
+     * Set the number of users above which a change of group membership clears the whole access cache
+     * rather than starting a new generation for each user in the group.
+     * 
+     * @param accessCacheInvalidationLimit
+     *            the maximum number of users to invalidate individually
+     */
+    public void setAccessCacheInvalidationLimit(int accessCacheInvalidationLimit)
+    {
+        this.accessCacheInvalidationLimit = accessCacheInvalidationLimit;
+    }
+
+    /**
+     * @return the hit ratio and invalidation counts of the access cache
+     */
+    public AccessCacheMetrics getAccessCacheMetrics()
+    {
+        return accessCacheMetrics;
+    }
+
     /**
      * @param readersCache the readersCache to set
      */
@@ -344,34 +392,139 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     }
 
     /**
-     * Cache clear on move node
+     * Cache invalidation on move node.  A node without children only takes its own inherited permissions
+     * with it.  The move gives it a new change transaction, which is part of the keys, so its older entries
+     * can no longer be found and only entries made earlier in this transaction could be out of date.
+     * Moving anything else, or a node with entries from this transaction, clears the cache.
      * 
      * @param oldChildAssocRef ChildAssociationRef
      * @param newChildAssocRef ChildAssociationRef
      */
     public void onMoveNode(ChildAssociationRef oldChildAssocRef, ChildAssociationRef newChildAssocRef)
     {
-        accessCache.clear();
+        NodeRef movedNodeRef = newChildAssocRef.getChildRef();
+        Set<NodeRef> nodesKeyedInTxn = AlfrescoTransactionSupport.getResource(KEY_NODES_KEYED_IN_TXN);
+        if (nodeService.countChildAssocs(movedNodeRef, true) > 0 ||
+                (nodesKeyedInTxn != null && nodesKeyedInTxn.contains(tenantService.getName(movedNodeRef))))
+        {
+            clearAccessCache();
+        }
     }
 
     /**
-     * Cache clear on create of a child association from an authority container.
+     * Cache invalidation on create of a child association from an authority container.
      * 
      * @param childAssocRef ChildAssociationRef
      */
     public void onCreateChildAssociation(ChildAssociationRef childAssocRef)
     {
-        accessCache.clear();
+        invalidateAccessCacheForMember(childAssocRef.getChildRef());
     }
 
     /**
-     * Cache clear on delete of a child association from an authority container.
+     * Cache invalidation on delete of a child association from an authority container.
      * 
      * @param childAssocRef ChildAssociationRef
      */
     public void beforeDeleteChildAssociation(ChildAssociationRef childAssocRef)
+    {
+        invalidateAccessCacheForMember(childAssocRef.getChildRef());
+    }
+
+    /**
+     * Invalidate the access cache entries of the users whose authorities change when the given authority
+     * joins or leaves a group: the user itself or all the users within the group.
+     * <p>
+     * Entries are keyed by the user's name and generation when the authorities are looked up lazily, so each
+     * user starts a new generation.  Otherwise they are keyed by the full set of authorities, which the change
+     * alters anyway - see {@link #generateKey}.
+     */
+    private void invalidateAccessCacheForMember(NodeRef memberRef)
+    {
+        String authority = null;
+        if (nodeService.exists(memberRef))
+        {
+            QName type = nodeService.getType(memberRef);
+            if (dictionaryService.isSubClass(type, ContentModel.TYPE_AUTHORITY_CONTAINER))
+            {
+                authority = (String) nodeService.getProperty(memberRef, ContentModel.PROP_AUTHORITY_NAME);
+            }
+            else if (dictionaryService.isSubClass(type, ContentModel.TYPE_PERSON))
+            {
+                authority = (String) nodeService.getProperty(memberRef, ContentModel.PROP_USERNAME);
+            }
+        }
+        if (authority == null)
+        {
+            clearAccessCache();
+            return;
+        }
+        Set<String> users;
+        if (AuthorityType.getAuthorityType(authority) == AuthorityType.USER)
+        {
+            users = Collections.singleton(authority);
+        }
+        else
+        {
+            users = authorityService.getContainedAuthorities(AuthorityType.USER, authority, false);
+            if (users.size() > accessCacheInvalidationLimit)
+            {
+                clearAccessCache();
+                return;
+            }
+        }
+        if (users.isEmpty())
+        {
+            return;
+        }
+        for (String user : users)
+        {
+            startAccessGeneration(user);
+        }
+        accessCacheMetrics.recordTargetedInvalidation(users.size());
+        if (log.isDebugEnabled())
+        {
+            log.debug("Started new access cache generations for " + users.size() + " users: " + accessCacheMetrics);
+        }
+    }
+
+    /**
+     * @return the current generation of the user's access cache entries
+     */
+    Long getAccessGeneration(String username)
+    {
+        // User names are not case sensitive by default
+        Long generation = accessGenerationCache.get(username.toLowerCase(Locale.ENGLISH));
+        if (generation == null)
+        {
+            // Never used or evicted, so any entries of an earlier generation can't be found again
+            generation = startAccessGeneration(username);
+        }
+        return generation;
+    }
+
+    /**
+     * Start a new generation of the user's access cache entries.  Generations are random rather than counted,
+     * so that one started after an eviction can't bring back the entries of an earlier one.
+     */
+    private Long startAccessGeneration(String username)
+    {
+        Long generation = ThreadLocalRandom.current().nextLong();
+        accessGenerationCache.put(username.toLowerCase(Locale.ENGLISH), generation);
+        return generation;
+    }
+
+    private void clearAccessCache()
     {
         accessCache.clear();
+        accessCacheMetrics.recordFullClear();
+    }
+
+    private AccessStatus getCachedAccess(Serializable key)
+    {
+        AccessStatus status = accessCache.get(key);
+        accessCacheMetrics.recordLookup(status != null);
+        return status;
     }
 
     @Override
@@ -384,6 +537,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         PropertyCheck.mandatory(this, "permissionsDaoComponent", permissionsDaoComponent);
         PropertyCheck.mandatory(this, "authorityService", authorityService);
         PropertyCheck.mandatory(this, "accessCache", accessCache);
+        PropertyCheck.mandatory(this, "accessGenerationCache", accessGenerationCache);
         PropertyCheck.mandatory(this, "readersCache", readersCache);
         PropertyCheck.mandatory(this, "policyComponent", policyComponent);
         PropertyCheck.mandatory(this, "aclDaoComponent", aclDaoComponent);
@@ -641,7 +795,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             public AccessStatus doWork() throws Exception
             {
 
-                AccessStatus status = accessCache.get(key);
+                AccessStatus status = getCachedAccess(key);
                 if (status != null)
                 {
                     return status;
@@ -832,7 +986,10 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         // We will just have to key our dynamic sets by username. We wrap it so as not to be confused with a static set
         if (auths instanceof AuthorityServiceImpl.UserAuthoritySet)
         {
-            key.add((Serializable)Collections.singleton(((AuthorityServiceImpl.UserAuthoritySet)auths).getUsername()));
+            String username = (String) ((AuthorityServiceImpl.UserAuthoritySet)auths).getUsername();
+            key.add((Serializable)Collections.singleton(username));
+            // The authorities behind the name change with group memberships, which start a new generation
+            key.add(getAccessGeneration(username));
         }
         else
         {
@@ -841,7 +998,13 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         key.add(nodeRef);
         // Ensure some concept of node version or transaction is included in the key so we can track without cache replication 
         NodeRef.Status nodeStatus = nodeService.getNodeStatus(nodeRef);
-        key.add(nodeStatus == null ? "null" : nodeStatus.getChangeTxnId());
+        String changeTxnId = nodeStatus == null ? null : nodeStatus.getChangeTxnId();
+        key.add(changeTxnId == null ? "null" : changeTxnId);
+        if (changeTxnId != null && changeTxnId.equals(AlfrescoTransactionSupport.getTransactionId()))
+        {
+            // A later move in this transaction would leave these entries out of date - see onMoveNode
+            TransactionalResourceHelper.<NodeRef>getSet(KEY_NODES_KEYED_IN_TXN).add(nodeRef);
+        }
         key.add(type);
         return key;
     }
@@ -960,7 +1123,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void clearPermission(StoreRef storeRef, String authority)
     {
         permissionsDaoComponent.deletePermissions(storeRef, authority);
-        accessCache.clear();
+        clearAccessCache();
     }
 
     @Override
@@ -973,7 +1136,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     protected void deletePermission(StoreRef storeRef, String authority, PermissionReference perm)
     {
         permissionsDaoComponent.deletePermission(storeRef, authority, perm);
-        accessCache.clear();
+        clearAccessCache();
     }
 
     @Override
@@ -981,7 +1144,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void deletePermissions(StoreRef storeRef)
     {
         permissionsDaoComponent.deletePermissions(storeRef);
-        accessCache.clear();
+        clearAccessCache();
     }
 
     @Override
@@ -994,7 +1157,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     protected void setPermission(StoreRef storeRef, String authority, PermissionReference permission, boolean allow)
     {
         permissionsDaoComponent.setPermission(storeRef, authority, permission, allow);
-        accessCache.clear();
+        clearAccessCache();
     }
 
     @Override
@@ -1002,7 +1165,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void deletePermissions(NodeRef nodeRef)
     {
         permissionsDaoComponent.deletePermissions(tenantService.getName(nodeRef));
-        accessCache.clear();
+        clearAccessCache();
         
         invokeUpdateLocalPermissionsPolicy(nodeRef, null, null, false);
     }
@@ -1012,7 +1175,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void deletePermissions(NodePermissionEntry nodePermissionEntry)
     {
         permissionsDaoComponent.deletePermissions(tenantService.getName(nodePermissionEntry.getNodeRef()));
-        accessCache.clear();
+        clearAccessCache();
     }
 
     /**
@@ -1031,7 +1194,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     protected void deletePermission(NodeRef nodeRef, String authority, PermissionReference perm)
     {
         permissionsDaoComponent.deletePermission(tenantService.getName(nodeRef), authority, perm);
-        accessCache.clear();
+        clearAccessCache();
         
         invokeUpdateLocalPermissionsPolicy(nodeRef, authority, (perm != null? perm.getName():null), false);
     }
@@ -1058,13 +1221,13 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void clearPermission(NodeRef nodeRef, String authority)
     {
         permissionsDaoComponent.deletePermissions(tenantService.getName(nodeRef), authority);
-        accessCache.clear();
+        clearAccessCache();
     }
 
     protected void setPermission(NodeRef nodeRef, String authority, PermissionReference perm, boolean allow)
     {
         permissionsDaoComponent.setPermission(tenantService.getName(nodeRef), authority, perm, allow);
-        accessCache.clear();
+        clearAccessCache();
         
         invokeUpdateLocalPermissionsPolicy(nodeRef, authority, perm.getName(), allow);
     }
@@ -1075,7 +1238,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     {
         // TODO - not MT-enabled nodeRef - currently only used by tests
         permissionsDaoComponent.setPermission(permissionEntry);
-        accessCache.clear();
+        clearAccessCache();
     }
 
     @Override
@@ -1084,7 +1247,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     {
         // TODO - not MT-enabled nodeRef- currently only used by tests
         permissionsDaoComponent.setPermission(nodePermissionEntry);
-        accessCache.clear();
+        clearAccessCache();
     }
 
     @Override
@@ -1093,7 +1256,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     {
         NodeRef actualRef = tenantService.getName(nodeRef);
         permissionsDaoComponent.setInheritParentPermissions(actualRef, inheritParentPermissions);
-        accessCache.clear();
+        clearAccessCache();
         
         invokeOnPermissionsInheritedPolicy(nodeRef, inheritParentPermissions, false);
     }
@@ -1125,7 +1288,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             invokeOnPermissionsInheritedPolicy(nodeRef, inheritParentPermissions, false);
         }
         
-        accessCache.clear();
+        clearAccessCache();
     }
     
     private void invokeOnPermissionsInheritedPolicy(NodeRef nodeRef, final boolean inheritParentPermissions, boolean async)
@@ -1230,7 +1393,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void deletePermissions(String recipient)
     {
         permissionsDaoComponent.deletePermissions(recipient);
-        accessCache.clear();
+        clearAccessCache();
     }
 
     /**
@@ -1699,7 +1862,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
 
             Serializable key = generateKey(authorisations, nodeRef, this.required, CacheType.SINGLE_PERMISSION_GLOBAL);
 
-            AccessStatus status = accessCache.get(key);
+            AccessStatus status = getCachedAccess(key);
             if (status != null)
             {
                 return status == AccessStatus.ALLOWED;
@@ -1741,7 +1904,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             }
             if (key != null)
             {
-                AccessStatus status = accessCache.get(key);
+                AccessStatus status = getCachedAccess(key);
                 if (status != null)
                 {
                     return status == AccessStatus.ALLOWED;
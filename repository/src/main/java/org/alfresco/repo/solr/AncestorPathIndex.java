@@ -0,0 +1,489 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.solr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.domain.node.NodeDAO.ChildAssocRefQueryCallback;
+import org.alfresco.repo.node.NodeServicePolicies.OnCreateChildAssociationPolicy;
+import org.alfresco.repo.node.NodeServicePolicies.OnDeleteChildAssociationPolicy;
+import org.alfresco.repo.node.NodeServicePolicies.OnMoveNodePolicy;
+import org.alfresco.repo.policy.Behaviour;
+import org.alfresco.repo.policy.JavaBehaviour;
+import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.CyclicChildRelationshipException;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeRef.Status;
+import org.alfresco.service.cmr.repository.Path;
+import org.alfresco.util.Pair;
+import org.alfresco.util.PropertyCheck;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Memoizes the paths of the ancestor nodes met while tracking, so that the paths of a node can be built from the
+ * paths of its parents instead of walking the parent associations up to the root for every node.
+ * <p>
+ * The paths are the same as those of {@link NodeDAO#getPaths(Pair, boolean)} for all parent associations. Only
+ * nodes that are reached as a parent are indexed, so the index holds the containers of a repository rather than
+ * its documents. Each entry records the change transaction of its node and the parent entries it was built from.
+ * An entry is used only while its node has not been changed and its parent entries are still current, so a move
+ * or rename anywhere above a node, made on any server, is picked up on the next lookup. The move and child
+ * association policies evict the moved node after commit, so that the stale part of the index is dropped promptly.
+ * <p>
+ * The index is bounded by <tt>maxEntries</tt> and evicts the least recently used entries.
+ * 
+ * @since 23.2
+ */
+public class AncestorPathIndex implements OnCreateChildAssociationPolicy, OnDeleteChildAssociationPolicy, OnMoveNodePolicy
+{
+    private static final Log logger = LogFactory.getLog(AncestorPathIndex.class);
+
+    private static final String KEY_EVICTED_NODE_IDS = AncestorPathIndex.class.getName() + ".evictedNodeIds";
+
+    private NodeDAO nodeDAO;
+    private PolicyComponent policyComponent;
+    private boolean enabled;
+    private int maxEntries = 100000;
+
+    private final Map<Long, Entry> entries = new LinkedHashMap<Long, Entry>(1024, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest)
+        {
+            return size() > maxEntries;
+        }
+    };
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public void setNodeDAO(NodeDAO nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+
+    public void setPolicyComponent(PolicyComponent policyComponent)
+    {
+        this.policyComponent = policyComponent;
+    }
+
+    /**
+     * @param enabled           <tt>true</tt> to build paths from the index, <tt>false</tt> (default) to leave them
+     *                          to {@link NodeDAO#getPaths(Pair, boolean)}
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * @param maxEntries        the number of ancestor nodes to keep (default 100000)
+     */
+    public void setMaxEntries(int maxEntries)
+    {
+        this.maxEntries = maxEntries;
+    }
+
+    public void init()
+    {
+        PropertyCheck.mandatory(this, "nodeDAO", nodeDAO);
+        if (!enabled)
+        {
+            return;
+        }
+        PropertyCheck.mandatory(this, "policyComponent", policyComponent);
+        policyComponent.bindAssociationBehaviour(OnCreateChildAssociationPolicy.QNAME,
+                ContentModel.TYPE_BASE,
+                new JavaBehaviour(this, "onCreateChildAssociation", Behaviour.NotificationFrequency.EVERY_EVENT));
+        policyComponent.bindAssociationBehaviour(OnDeleteChildAssociationPolicy.QNAME,
+                ContentModel.TYPE_BASE,
+                new JavaBehaviour(this, "onDeleteChildAssociation", Behaviour.NotificationFrequency.EVERY_EVENT));
+        policyComponent.bindClassBehaviour(OnMoveNodePolicy.QNAME,
+                ContentModel.TYPE_BASE,
+                new JavaBehaviour(this, "onMoveNode", Behaviour.NotificationFrequency.EVERY_EVENT));
+    }
+
+    /**
+     * @return              Returns a lookup that checks each indexed ancestor at most once, for use within one
+     *                      tracking request
+     */
+    public Lookup newLookup()
+    {
+        return new Lookup();
+    }
+
+    /**
+     * Get the IDs of all the ancestors of a node, if the node is indexed.  The IDs are not checked against the
+     * current state of the nodes, so they are only suitable as a hint e.g. for bulk loading.
+     * 
+     * @return              Returns the ancestor IDs or <tt>null</tt> if the node is not indexed
+     */
+    public long[] getIndexedAncestorIds(Long nodeId)
+    {
+        Entry entry = getEntry(nodeId);
+        return entry == null ? null : entry.ancestorIds;
+    }
+
+    /**
+     * Drop the entry for a node.  The entries of its descendants are dropped as they are next used.
+     */
+    public void evict(Long nodeId)
+    {
+        Entry entry;
+        synchronized (entries)
+        {
+            entry = entries.remove(nodeId);
+        }
+        if (entry != null)
+        {
+            evictions.increment();
+        }
+    }
+
+    public void clear()
+    {
+        synchronized (entries)
+        {
+            entries.clear();
+        }
+    }
+
+    public int size()
+    {
+        synchronized (entries)
+        {
+            return entries.size();
+        }
+    }
+
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    public long getEvictions()
+    {
+        return evictions.sum();
+    }
+
+    @Override
+    public void onMoveNode(ChildAssociationRef oldChildAssocRef, ChildAssociationRef newChildAssocRef)
+    {
+        evictAfterCommit(newChildAssocRef.getChildRef());
+    }
+
+    @Override
+    public void onDeleteChildAssociation(ChildAssociationRef childAssocRef)
+    {
+        evictAfterCommit(childAssocRef.getChildRef());
+    }
+
+    @Override
+    public void onCreateChildAssociation(ChildAssociationRef childAssocRef, boolean isNewNode)
+    {
+        if (!isNewNode)
+        {
+            evictAfterCommit(childAssocRef.getChildRef());
+        }
+    }
+
+    private void evictAfterCommit(NodeRef nodeRef)
+    {
+        Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(nodeRef);
+        if (nodePair == null)
+        {
+            return;
+        }
+        final Set<Long> nodeIds = TransactionalResourceHelper.getSet(KEY_EVICTED_NODE_IDS);
+        if (nodeIds.isEmpty())
+        {
+            AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+            {
+                @Override
+                public void afterCommit()
+                {
+                    for (Long nodeId : nodeIds)
+                    {
+                        evict(nodeId);
+                    }
+                }
+            });
+        }
+        nodeIds.add(nodePair.getFirst());
+    }
+
+    private Entry getEntry(Long nodeId)
+    {
+        synchronized (entries)
+        {
+            return entries.get(nodeId);
+        }
+    }
+
+    private void putEntry(Long nodeId, Entry entry)
+    {
+        synchronized (entries)
+        {
+            entries.put(nodeId, entry);
+        }
+    }
+
+    /**
+     * Builds paths using the index.  A lookup remembers the entries it has already checked, so it must not be
+     * kept beyond the transaction that it was used in.
+     */
+    public class Lookup
+    {
+        private final Set<Entry> checked = Collections.newSetFromMap(new IdentityHashMap<Entry, Boolean>());
+        private final Set<Long> inProgress = new HashSet<Long>();
+
+        private Lookup()
+        {
+        }
+
+        /**
+         * Get all the paths of a node, as {@link NodeDAO#getPaths(Pair, boolean) getPaths(nodePair, false)} would.
+         * The node itself is not indexed.
+         * 
+         * @return          Returns new paths that the caller may modify
+         */
+        public List<Path> getPaths(Pair<Long, NodeRef> nodePair)
+        {
+            List<Path> paths = buildEntry(nodePair.getFirst(), nodePair.getSecond()).paths;
+            List<Path> copies = new ArrayList<Path>(paths.size());
+            for (Path path : paths)
+            {
+                copies.add(new Path().append(path));
+            }
+            return copies;
+        }
+
+        /**
+         * @return          Returns the current entry for an ancestor, from the index if it is still valid
+         */
+        private Entry getAncestorEntry(Long nodeId, NodeRef nodeRef)
+        {
+            Entry entry = getEntry(nodeId);
+            if (entry != null && isCurrent(nodeId, entry))
+            {
+                hits.increment();
+                return entry;
+            }
+            misses.increment();
+            entry = buildEntry(nodeId, nodeRef);
+            putEntry(nodeId, entry);
+            checked.add(entry);
+            return entry;
+        }
+
+        private boolean isCurrent(Long nodeId, Entry entry)
+        {
+            if (checked.contains(entry))
+            {
+                return true;
+            }
+            Status status = nodeDAO.getNodeIdStatus(nodeId);
+            if (status == null || status.isDeleted() || !entry.changeTxnId.equals(status.getChangeTxnId()))
+            {
+                return false;
+            }
+            for (int i = 0; i < entry.parentIds.length; i++)
+            {
+                Entry parentEntry = entry.parents[i];
+                if (getEntry(entry.parentIds[i]) != parentEntry || !isCurrent(entry.parentIds[i], parentEntry))
+                {
+                    return false;
+                }
+            }
+            checked.add(entry);
+            return true;
+        }
+
+        /**
+         * Builds the paths of a node from the entries of its parents, following
+         * <tt>AbstractNodeDAOImpl.prependPaths</tt> for root nodes.
+         */
+        private Entry buildEntry(Long nodeId, NodeRef nodeRef)
+        {
+            if (!inProgress.add(nodeId))
+            {
+                throw new CyclicChildRelationshipException("Node has been pasted into its own tree.",
+                        new ChildAssociationRef(null, null, null, nodeRef));
+            }
+            try
+            {
+                Status status = nodeDAO.getNodeIdStatus(nodeId);
+                String changeTxnId = status == null ? "" : status.getChangeTxnId();
+
+                final List<ChildAssociationRef> parentAssocs = new ArrayList<ChildAssociationRef>(4);
+                final List<Long> parentIds = new ArrayList<Long>(4);
+                nodeDAO.getParentAssocs(nodeId, null, null, null, new ChildAssocRefQueryCallback()
+                {
+                    @Override
+                    public boolean preLoadNodes()
+                    {
+                        return false;
+                    }
+
+                    @Override
+                    public boolean orderResults()
+                    {
+                        return false;
+                    }
+
+                    @Override
+                    public boolean handle(Pair<Long, ChildAssociationRef> childAssocPair,
+                            Pair<Long, NodeRef> parentNodePair, Pair<Long, NodeRef> childNodePair)
+                    {
+                        parentAssocs.add(childAssocPair.getSecond());
+                        parentIds.add(parentNodePair.getFirst());
+                        return true;
+                    }
+
+                    @Override
+                    public void done()
+                    {
+                    }
+                });
+                nodeDAO.cacheNodesById(parentIds);
+
+                List<Path> paths = new ArrayList<Path>(parentAssocs.size() + 1);
+                boolean isStoreRoot = nodeDAO.getNodeType(nodeId).equals(ContentModel.TYPE_STOREROOT);
+                if (nodeDAO.hasNodeAspect(nodeId, ContentModel.ASPECT_ROOT))
+                {
+                    NodeRef storeRootRef = nodeDAO.getRootNode(nodeRef.getStoreRef()).getSecond();
+                    paths.add(new Path().append(new Path.ChildAssocElement(new ChildAssociationRef(null, null, null, storeRootRef))));
+                }
+
+                Entry[] parents = new Entry[parentAssocs.size()];
+                Set<Long> ancestorIds = new LinkedHashSet<Long>();
+                for (int i = 0; i < parents.length; i++)
+                {
+                    ChildAssociationRef assocRef = parentAssocs.get(i);
+                    Long parentId = parentIds.get(i);
+                    parents[i] = getAncestorEntry(parentId, assocRef.getParentRef());
+                    ancestorIds.add(parentId);
+                    for (long ancestorId : parents[i].ancestorIds)
+                    {
+                        ancestorIds.add(ancestorId);
+                    }
+                    ChildAssociationRef elementRef = new ChildAssociationRef(
+                            assocRef.getTypeQName(), assocRef.getParentRef(), assocRef.getQName(), assocRef.getChildRef(),
+                            assocRef.isPrimary(), -1);
+                    for (Path parentPath : parents[i].paths)
+                    {
+                        paths.add(appendElement(parentPath, elementRef, parents[i].storeRoot));
+                    }
+                }
+
+                long[] ancestorIdArray = new long[ancestorIds.size()];
+                int i = 0;
+                for (Long ancestorId : ancestorIds)
+                {
+                    ancestorIdArray[i++] = ancestorId;
+                }
+                return new Entry(changeTxnId, isStoreRoot, Collections.unmodifiableList(paths),
+                        parentIds.toArray(new Long[parentIds.size()]), parents, ancestorIdArray);
+            }
+            finally
+            {
+                inProgress.remove(nodeId);
+            }
+        }
+    }
+
+    /**
+     * Append a child association to a path of its parent.  A path made of the root element alone is that of a
+     * root node, and then the child is placed directly beneath the store root instead.
+     */
+    private static Path appendElement(Path parentPath, ChildAssociationRef elementRef, boolean parentIsStoreRoot)
+    {
+        Path path = new Path().append(parentPath);
+        if (parentPath.size() == 1)
+        {
+            NodeRef storeRootRef = ((Path.ChildAssocElement) parentPath.first()).getRef().getChildRef();
+            ChildAssociationRef rootedRef = new ChildAssociationRef(
+                    parentIsStoreRoot ? ContentModel.ASSOC_CHILDREN : elementRef.getTypeQName(),
+                    storeRootRef,
+                    elementRef.getQName(),
+                    elementRef.getChildRef());
+            return path.append(new Path.ChildAssocElement(rootedRef));
+        }
+        return path.append(new Path.ChildAssocElement(elementRef));
+    }
+
+    /**
+     * The paths of an ancestor node and what they were built from
+     */
+    private static final class Entry
+    {
+        private final String changeTxnId;
+        private final boolean storeRoot;
+        private final List<Path> paths;
+        private final Long[] parentIds;
+        private final Entry[] parents;
+        private final long[] ancestorIds;
+
+        private Entry(String changeTxnId, boolean storeRoot, List<Path> paths, Long[] parentIds, Entry[] parents, long[] ancestorIds)
+        {
+            this.changeTxnId = changeTxnId;
+            this.storeRoot = storeRoot;
+            this.paths = paths;
+            this.parentIds = parentIds;
+            this.parents = parents;
+            this.ancestorIds = ancestorIds;
+        }
+    }
+}
@@ -105,6 +105,7 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
     private AspectIndexFilter aspectIndexFilter;
     private ShardRegistry shardRegistry;
     private NamespaceService namespaceService;
+    private AncestorPathIndex ancestorPathIndex;
 
     private static Log logger = LogFactory.getLog(SOLRTrackingComponentImpl.class);
     
@@ -129,6 +130,14 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
         this.cacheAncestors = cacheAncestors;
     }
 
+    /**
+     * @param ancestorPathIndex the index used to build node paths from the paths of their ancestors, when enabled
+     */
+    public void setAncestorPathIndex(AncestorPathIndex ancestorPathIndex)
+    {
+        this.ancestorPathIndex = ancestorPathIndex;
+    }
+
     public void setSearchDAO(SearchDAO searchDAO)
     {
         this.searchDAO = searchDAO;
@@ -514,7 +523,7 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
         
     }
     
-    private CategoryPaths getCategoryPaths(NodeRef nodeRef, Set<QName> aspects, Map<QName, Serializable> properties)
+    private CategoryPaths getCategoryPaths(NodeRef nodeRef, Set<QName> aspects, Map<QName, Serializable> properties, AncestorPathIndex.Lookup pathLookup)
     {
         ArrayList<Pair<Path, QName>> categoryPaths = new ArrayList<Pair<Path, QName>>();
         ArrayList<ChildAssociationRef> categoryParents = new ArrayList<ChildAssociationRef>();
@@ -555,7 +564,7 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
                         Pair<Long, NodeRef> pair = nodeDAO.getNodePair(catRef);
                         if(pair != null)
                         {
-                            for (Path path : nodeDAO.getPaths(pair, false))
+                            for (Path path : getPaths(pair, pathLookup))
                             {
                                 aspectPaths.add(new Pair<Path, QName>(path, aspDef.getName()));   
                             }
@@ -649,7 +658,21 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
         Long lastCached = toVisit.peekLast();
         while ((nodeId = toVisit.pollFirst()) != null)
         {
-            if (visited.add(nodeId) && (nodeDAO.getNodeIdStatus(nodeId) != null) && (false == nodeDAO.getNodeIdStatus(nodeId).isDeleted()))
+            long[] indexedAncestorIds = null;
+            if (visited.contains(nodeId) == false && isAncestorPathIndexEnabled())
+            {
+                indexedAncestorIds = ancestorPathIndex.getIndexedAncestorIds(nodeId);
+            }
+            if (indexedAncestorIds != null)
+            {
+                // The ancestors are already known, so there is no need to walk up from here
+                visited.add(nodeId);
+                for (long ancestorId : indexedAncestorIds)
+                {
+                    visited.add(ancestorId);
+                }
+            }
+            else if (visited.add(nodeId) && (nodeDAO.getNodeIdStatus(nodeId) != null) && (false == nodeDAO.getNodeIdStatus(nodeId).isDeleted()))
             {
                 nodeDAO.getParentAssocs(nodeId, null, null, null, new ChildAssocRefQueryCallback()
                 {
@@ -796,6 +819,7 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
         boolean includeTxnId = (resultFilter == null ? true : resultFilter.getIncludeTxnId());
         
         List<Long> nodeIds = preCacheNodes(nodeMetaDataParameters);
+        AncestorPathIndex.Lookup pathLookup = isAncestorPathIndexEnabled() ? ancestorPathIndex.newLookup() : null;
 
         for(Long nodeId : nodeIds)
         {
@@ -909,7 +933,7 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
                 {
                     props = getProperties(nodeId);
                 }
-                categoryPaths = getCategoryPaths(status.getNodeRef(), aspects, props);
+                categoryPaths = getCategoryPaths(status.getNodeRef(), aspects, props, pathLookup);
             }
 
             if (!ignoreLargeMetadata && (typeIndexFilter.isIgnorePathsForSpecificTypes() || aspectIndexFilter.isIgnorePathsForSpecificAspects() || includeParentAssociations))
@@ -1054,7 +1078,7 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
 
             if (includePaths && !ignoreLargeMetadata)
             {
-                List<Path> directPaths = nodeDAO.getPaths(new Pair<Long, NodeRef>(nodeId, status.getNodeRef()), false);
+                List<Path> directPaths = getPaths(new Pair<Long, NodeRef>(nodeId, status.getNodeRef()), pathLookup);
                 Collection<Pair<Path, QName>> paths = new ArrayList<Pair<Path, QName>>(directPaths.size() + categoryPaths.getPaths().size());
 
                 for (Path path : directPaths)
@@ -1067,7 +1091,7 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
                 }
                 if(unversionedStatus !=  null)
                 {
-                    List<Path>  unversionedPaths = nodeDAO.getPaths(new Pair<Long, NodeRef>(unversionedStatus.getDbId(), unversionedStatus.getNodeRef()), false);
+                    List<Path>  unversionedPaths = getPaths(new Pair<Long, NodeRef>(unversionedStatus.getDbId(), unversionedStatus.getNodeRef()), pathLookup);
                     for (Path path : unversionedPaths)
                     {
                         paths.add(new Pair<Path, QName>(path.getBaseNamePath(tenantService), null));
@@ -1132,6 +1156,23 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
         }
     }
 
+    private boolean isAncestorPathIndexEnabled()
+    {
+        return ancestorPathIndex != null && ancestorPathIndex.isEnabled();
+    }
+
+    /**
+     * Get all the paths of a node, from the ancestor path index if there is a lookup for it
+     */
+    private List<Path> getPaths(Pair<Long, NodeRef> nodePair, AncestorPathIndex.Lookup pathLookup)
+    {
+        if (pathLookup == null)
+        {
+            return nodeDAO.getPaths(nodePair, false);
+        }
+        return pathLookup.getPaths(nodePair);
+    }
+
     private boolean isVersionNodeRef(NodeRef nodeRef)
     {
     	return nodeRef.getStoreRef().getProtocol().equals(VersionModel.STORE_PROTOCOL) || nodeRef.getStoreRef().getIdentifier().equals(Version2Model.STORE_ID);
@@ -29,6 +29,7 @@ import java.io.File;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import org.alfresco.repo.content.ContentLimitProvider;
 import org.alfresco.repo.content.ContentLimitProvider.NoLimitProvider;
@@ -44,6 +45,7 @@ public class TenantRoutingFileContentStore extends AbstractTenantRoutingContentS
 {
     private ContentLimitProvider contentLimitProvider = new NoLimitProvider();
     private FileContentUrlProvider fileContentUrlProvider;
+    private Executor deleteExecutor;
     
     /**
      * Sets a new {@link ContentLimitProvider} which will provide a maximum filesize for content.
@@ -59,6 +61,16 @@ public class TenantRoutingFileContentStore extends AbstractTenantRoutingContentS
     public void setFileContentUrlProvider(FileContentUrlProvider fileContentUrlProvider)
     {
         this.fileContentUrlProvider = fileContentUrlProvider;
+    }
+    
+    /**
+     * Sets the executor that the underlying file stores use to delete batches of content concurrently.
+     * 
+     * @see FileContentStore#setDeleteExecutor(Executor)
+     */
+    public void setDeleteExecutor(Executor deleteExecutor)
+    {
+        this.deleteExecutor = deleteExecutor;
     }
     
     protected ContentStore initContentStore(ApplicationContext ctx, String contentRoot)
@@ -81,6 +93,11 @@ public class TenantRoutingFileContentStore extends AbstractTenantRoutingContentS
         {
             fileContentStore.setFileContentUrlProvider(fileContentUrlProvider);
         }
+        
+        if (deleteExecutor != null)
+        {
+            fileContentStore.setDeleteExecutor(deleteExecutor);
+        }
         return fileContentStore;
     }
 }
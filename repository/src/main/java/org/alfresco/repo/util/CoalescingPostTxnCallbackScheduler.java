@@ -0,0 +1,492 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.tenant.TenantUtil;
+import org.alfresco.repo.tenant.TenantUtil.TenantRunAsWork;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
+import org.alfresco.util.transaction.TransactionListenerAdapter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A {@link PostTxnCallbackScheduler} that holds callbacks back for a short time after the commit, so that requests
+ * made by several transactions for the same id are coalesced.
+ * <p>
+ * A callback waits up to <code>quietPeriodMs</code> before it is run. A request for the same id made in that time
+ * replaces the waiting callback rather than adding another, so a document that is edited several times in quick
+ * succession is rendered once, from its latest content. Interactive callbacks are run straight away and ahead of
+ * background ones. Callbacks that are due at the same time and share a batch key are run together on one thread.
+ * On shutdown the callbacks still waiting are run straight away, as their transactions have committed.
+ * <p>
+ * When not enabled, every callback is run as soon as its transaction commits, as by the base class.
+ */
+public class CoalescingPostTxnCallbackScheduler extends PostTxnCallbackScheduler
+{
+    private static Log logger = LogFactory.getLog(CoalescingPostTxnCallbackScheduler.class);
+
+    private TransactionService transactionService;
+    private ExecutorService threadPoolExecutor;
+    private boolean enabled;
+    private long quietPeriodMs = 2000;
+    private long pollIntervalMs = 250;
+    private int maxBatchSize = 20;
+
+    private final Map<String, PendingCallback> pendingCallbacks = new ConcurrentHashMap<>();
+    private final BlockingQueue<Batch> readyBatches = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder scheduledCount = new LongAdder();
+    private final LongAdder discardedCount = new LongAdder();
+    private final LongAdder executedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private ScheduledExecutorService dispatcher;
+    private volatile boolean shutDown;
+
+    @Override
+    public void setTransactionService(TransactionService transactionService)
+    {
+        super.setTransactionService(transactionService);
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param threadPoolExecutor runs the callbacks once they are due
+     */
+    public void setThreadPoolExecutor(ExecutorService threadPoolExecutor)
+    {
+        this.threadPoolExecutor = threadPoolExecutor;
+    }
+
+    /**
+     * @param enabled {@code false} to run each callback as soon as its transaction commits
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param quietPeriodMs how long a background callback waits for newer requests with the same id
+     */
+    public void setQuietPeriodMs(long quietPeriodMs)
+    {
+        this.quietPeriodMs = quietPeriodMs;
+    }
+
+    /**
+     * @param pollIntervalMs how often waiting callbacks are checked to see if they are due
+     */
+    public void setPollIntervalMs(long pollIntervalMs)
+    {
+        this.pollIntervalMs = pollIntervalMs;
+    }
+
+    /**
+     * @param maxBatchSize the maximum number of callbacks with the same batch key run together
+     */
+    public void setMaxBatchSize(int maxBatchSize)
+    {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public void init()
+    {
+        if (enabled)
+        {
+            PropertyCheck.mandatory(this, "transactionService", transactionService);
+            PropertyCheck.mandatory(this, "threadPoolExecutor", threadPoolExecutor);
+
+            TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+            threadFactory.setThreadDaemon(true);
+            threadFactory.setNamePrefix("PostTxnCallbackDispatcher");
+            dispatcher = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            dispatcher.scheduleWithFixedDelay(this::dispatchDueCallbacks, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void shutdown()
+    {
+        ScheduledExecutorService dispatcher = this.dispatcher;
+        if (dispatcher == null)
+        {
+            return;
+        }
+        shutDown = true;
+        this.dispatcher = null;
+        // Let a dispatch that is under way hand its callbacks over
+        dispatcher.shutdown();
+        try
+        {
+            if (!dispatcher.awaitTermination(pollIntervalMs * 10, TimeUnit.MILLISECONDS))
+            {
+                logger.warn("The post commit callback dispatcher did not stop in time");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        runRemainingCallbacks();
+    }
+
+    /**
+     * Runs the callbacks that are ready or still waiting on the calling thread, oldest first.
+     */
+    private void runRemainingCallbacks()
+    {
+        List<PendingCallback> remaining = new ArrayList<>();
+        for (Batch batch = readyBatches.poll(); batch != null; batch = readyBatches.poll())
+        {
+            remaining.addAll(batch.callbacks);
+        }
+        for (PendingCallback callback : pendingCallbacks.values())
+        {
+            if (pendingCallbacks.remove(callback.id, callback))
+            {
+                remaining.add(callback);
+            }
+        }
+        if (remaining.isEmpty())
+        {
+            return;
+        }
+        logger.info("Running " + remaining.size() + " post commit callbacks before shutting down");
+        remaining.sort(Comparator.comparingLong(callback -> callback.sequence));
+        for (PendingCallback callback : remaining)
+        {
+            run(callback);
+        }
+    }
+
+    /**
+     * @return the number of callbacks waiting for their quiet period to end
+     */
+    public int getPendingCount()
+    {
+        return pendingCallbacks.size();
+    }
+
+    /**
+     * @return the number of batches of due callbacks waiting for a thread
+     */
+    public int getReadyBatchCount()
+    {
+        return readyBatches.size();
+    }
+
+    /**
+     * @return the number of callbacks handed over after their transaction committed
+     */
+    public long getScheduledCount()
+    {
+        return scheduledCount.sum();
+    }
+
+    /**
+     * @return the number of callbacks that were replaced by a newer request with the same id before they were run
+     */
+    public long getDiscardedCount()
+    {
+        return discardedCount.sum();
+    }
+
+    /**
+     * @return the number of callbacks that have been run successfully
+     */
+    public long getExecutedCount()
+    {
+        return executedCount.sum();
+    }
+
+    /**
+     * @return the number of callbacks that failed
+     */
+    public long getFailedCount()
+    {
+        return failedCount.sum();
+    }
+
+    @Override
+    public void scheduleRendition(RetryingTransactionHelper.RetryingTransactionCallback callback, String uniqueId,
+                                  String batchKey, boolean interactive)
+    {
+        if (!enabled)
+        {
+            super.scheduleRendition(callback, uniqueId, batchKey, interactive);
+            return;
+        }
+        String runAsUser = AuthenticationUtil.getRunAsUser();
+        String domain = TenantUtil.getCurrentDomain();
+        AlfrescoTransactionSupport.bindListener(new CoalescingTransactionListener(
+                uniqueId, callback, batchKey, interactive, runAsUser, domain));
+    }
+
+    private void enqueue(PendingCallback callback)
+    {
+        scheduledCount.increment();
+        if (shutDown)
+        {
+            // Nothing will dispatch it any more
+            run(callback);
+            return;
+        }
+        pendingCallbacks.merge(callback.id, callback, (waiting, latest) ->
+        {
+            discardedCount.increment();
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Replaced the waiting callback " + latest.id + " with a newer request");
+            }
+            return latest.replacing(waiting);
+        });
+        if (callback.interactive)
+        {
+            ScheduledExecutorService dispatcher = this.dispatcher;
+            if (dispatcher != null)
+            {
+                try
+                {
+                    dispatcher.execute(this::dispatchDueCallbacks);
+                }
+                catch (RejectedExecutionException e)
+                {
+                    logger.debug("The dispatcher has been shut down: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves callbacks whose quiet period has ended into batches ready to be run.
+     */
+    private void dispatchDueCallbacks()
+    {
+        try
+        {
+            long now = System.currentTimeMillis();
+            List<PendingCallback> due = new ArrayList<>();
+            for (PendingCallback callback : pendingCallbacks.values())
+            {
+                // Only take the callback if it has not just been replaced
+                if (callback.dueTime <= now && pendingCallbacks.remove(callback.id, callback))
+                {
+                    due.add(callback);
+                }
+            }
+            if (due.isEmpty())
+            {
+                return;
+            }
+            due.sort(Comparator.comparingLong(callback -> callback.sequence));
+
+            Map<String, Batch> openBatches = new HashMap<>();
+            List<Batch> batches = new ArrayList<>();
+            for (PendingCallback callback : due)
+            {
+                String key = callback.interactive + "/" + callback.batchKey;
+                Batch batch = openBatches.get(key);
+                if (batch == null || batch.callbacks.size() >= maxBatchSize)
+                {
+                    batch = new Batch(callback.interactive, callback.sequence);
+                    openBatches.put(key, batch);
+                    batches.add(batch);
+                }
+                batch.callbacks.add(callback);
+            }
+            for (Batch batch : batches)
+            {
+                readyBatches.add(batch);
+                threadPoolExecutor.execute(this::runNextBatch);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            // Keep the dispatcher running
+            logger.error("Failed to dispatch the post commit callbacks", e);
+        }
+    }
+
+    private void runNextBatch()
+    {
+        Batch batch = readyBatches.poll();
+        if (batch != null)
+        {
+            for (PendingCallback callback : batch.callbacks)
+            {
+                run(callback);
+            }
+        }
+    }
+
+    private void run(PendingCallback callback)
+    {
+        try
+        {
+            String runAsUser = callback.runAsUser == null ? AuthenticationUtil.getSystemUserName() : callback.runAsUser;
+            TenantUtil.runAsUserTenant((TenantRunAsWork<Void>) () ->
+            {
+                transactionService.getRetryingTransactionHelper().doInTransaction(callback.callback);
+                return null;
+            }, runAsUser, callback.domain);
+            executedCount.increment();
+        }
+        catch (Exception e)
+        {
+            failedCount.increment();
+            logger.debug("The after commit callback " + callback.id + " failed to execute: " + e.getMessage());
+        }
+    }
+
+    private class CoalescingTransactionListener extends TransactionListenerAdapter
+    {
+        private final String id;
+        private final RetryingTransactionHelper.RetryingTransactionCallback callback;
+        private final String batchKey;
+        private final boolean interactive;
+        private final String runAsUser;
+        private final String domain;
+
+        CoalescingTransactionListener(String id, RetryingTransactionHelper.RetryingTransactionCallback callback,
+                                      String batchKey, boolean interactive, String runAsUser, String domain)
+        {
+            this.id = id;
+            this.callback = callback;
+            this.batchKey = batchKey;
+            this.interactive = interactive;
+            this.runAsUser = runAsUser;
+            this.domain = domain;
+        }
+
+        @Override
+        public void afterCommit()
+        {
+            long now = System.currentTimeMillis();
+            enqueue(new PendingCallback(id, callback, batchKey, interactive, runAsUser, domain,
+                    interactive ? now : now + quietPeriodMs, sequence.incrementAndGet()));
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass())
+            {
+                return false;
+            }
+            CoalescingTransactionListener that = (CoalescingTransactionListener) o;
+            return Objects.equals(id, that.id);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(id);
+        }
+    }
+
+    private static class PendingCallback
+    {
+        private final String id;
+        private final RetryingTransactionHelper.RetryingTransactionCallback callback;
+        private final String batchKey;
+        private final boolean interactive;
+        private final String runAsUser;
+        private final String domain;
+        private final long dueTime;
+        private final long sequence;
+
+        private PendingCallback(String id, RetryingTransactionHelper.RetryingTransactionCallback callback,
+                                String batchKey, boolean interactive, String runAsUser, String domain,
+                                long dueTime, long sequence)
+        {
+            this.id = id;
+            this.callback = callback;
+            this.batchKey = batchKey;
+            this.interactive = interactive;
+            this.runAsUser = runAsUser;
+            this.domain = domain;
+            this.dueTime = dueTime;
+            this.sequence = sequence;
+        }
+
+        /**
+         * @return this callback, keeping the place in the queue and the priority of the one it replaces
+         */
+        private PendingCallback replacing(PendingCallback waiting)
+        {
+            return new PendingCallback(id, callback, batchKey, interactive || waiting.interactive, runAsUser, domain,
+                    Math.min(dueTime, waiting.dueTime), waiting.sequence);
+        }
+    }
+
+    private static class Batch implements Comparable<Batch>
+    {
+        private final boolean interactive;
+        private final long sequence;
+        private final List<PendingCallback> callbacks = new ArrayList<>();
+
+        private Batch(boolean interactive, long sequence)
+        {
+            this.interactive = interactive;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Batch other)
+        {
+            if (interactive != other.interactive)
+            {
+                return interactive ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -59,6 +59,20 @@ public class PostTxnCallbackScheduler
         AlfrescoTransactionSupport.bindListener(new PostTxTransactionListener(callback, uniqueId));
     }
 
+    /**
+     * @param callback    The callback to be scheduled in a post-commit phase
+     * @param uniqueId    The unique id of the callback. Consecutive requests to schedule the callback with the same id
+     *                    will overwrite the previously scheduled one.
+     * @param batchKey    Callbacks with the same key, such as those that use the same transformer, may be run together.
+     * @param interactive {@code true} if a user is waiting for the result, so the callback should not be held behind
+     *                    background work. This implementation runs every callback as soon as the transaction commits.
+     */
+    public void scheduleRendition(RetryingTransactionHelper.RetryingTransactionCallback callback, String uniqueId,
+                                  String batchKey, boolean interactive)
+    {
+        scheduleRendition(callback, uniqueId);
+    }
+
     private class PostTxTransactionListener extends TransactionListenerAdapter
     {
         private final RetryingTransactionHelper.RetryingTransactionCallback callback;
@@ -0,0 +1,44 @@
+--
+-- Title:      Compact audit storage tables
+-- Database:   MySQL InnoDB
+-- Since:      V23.2 Schema 19101
+--
+-- Please contact support@alfresco.com if you need assistance with the upgrade.
+--
+
+CREATE TABLE alf_audit_compact_entry
+(
+   id BIGINT NOT NULL AUTO_INCREMENT,
+   audit_app_id BIGINT NOT NULL,
+   audit_time BIGINT NOT NULL,
+   audit_user VARCHAR(255) NULL,
+   audit_values BLOB NULL,
+   INDEX idx_alf_aud_cent_at (audit_app_id, audit_time),
+   INDEX idx_alf_aud_cent_ut (audit_user, audit_time),
+   INDEX idx_alf_aud_cent_tm (audit_time),
+   CONSTRAINT fk_alf_aud_cent_app FOREIGN KEY (audit_app_id) REFERENCES alf_audit_app (id) ON DELETE CASCADE,
+   PRIMARY KEY (id)
+) ENGINE=InnoDB;
+
+CREATE TABLE alf_audit_compact_key
+(
+   entry_id BIGINT NOT NULL,
+   path_hash BIGINT NOT NULL,
+   value_hash BIGINT NULL,
+   INDEX idx_alf_aud_ckey_pv (path_hash, value_hash, entry_id),
+   INDEX idx_alf_aud_ckey_v (value_hash, entry_id),
+   CONSTRAINT fk_alf_aud_ckey_ent FOREIGN KEY (entry_id) REFERENCES alf_audit_compact_entry (id) ON DELETE CASCADE,
+   PRIMARY KEY (entry_id, path_hash)
+) ENGINE=InnoDB;
+
+--
+-- Record script finish
+--
+DELETE FROM alf_applied_patch WHERE id = 'patch.db-V23.2-AuditCompactTables';
+INSERT INTO alf_applied_patch
+  (id, description, fixes_from_schema, fixes_to_schema, applied_to_schema, target_schema, applied_on_date, applied_to_server, was_executed, succeeded, report)
+  VALUES
+  (
+    'patch.db-V23.2-AuditCompactTables', 'Manually executed script upgrade V23.2: Compact audit storage tables',
+    0, 19100, -1, 19101, null, 'UNKNOWN', ${TRUE}, ${TRUE}, 'Script completed'
+  );
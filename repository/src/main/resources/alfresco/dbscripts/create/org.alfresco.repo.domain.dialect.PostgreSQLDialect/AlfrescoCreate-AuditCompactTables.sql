@@ -0,0 +1,45 @@
+--
+-- Title:      Compact audit storage tables
+-- Database:   PostgreSQL
+-- Since:      V23.2 Schema 19101
+--
+-- Please contact support@alfresco.com if you need assistance with the upgrade.
+--
+
+-- Entry IDs come from alf_audit_entry_seq so that migrated entries keep their IDs
+CREATE TABLE alf_audit_compact_entry
+(
+   id INT8 NOT NULL,
+   audit_app_id INT8 NOT NULL,
+   audit_time INT8 NOT NULL,
+   audit_user VARCHAR(255) NULL,
+   audit_values BYTEA NULL,
+   CONSTRAINT fk_alf_aud_cent_app FOREIGN KEY (audit_app_id) REFERENCES alf_audit_app (id) ON DELETE CASCADE,
+   PRIMARY KEY (id)
+);
+CREATE INDEX idx_alf_aud_cent_at ON alf_audit_compact_entry(audit_app_id, audit_time);
+CREATE INDEX idx_alf_aud_cent_ut ON alf_audit_compact_entry(audit_user, audit_time);
+CREATE INDEX idx_alf_aud_cent_tm ON alf_audit_compact_entry(audit_time);
+
+CREATE TABLE alf_audit_compact_key
+(
+   entry_id INT8 NOT NULL,
+   path_hash INT8 NOT NULL,
+   value_hash INT8 NULL,
+   CONSTRAINT fk_alf_aud_ckey_ent FOREIGN KEY (entry_id) REFERENCES alf_audit_compact_entry (id) ON DELETE CASCADE,
+   PRIMARY KEY (entry_id, path_hash)
+);
+CREATE INDEX idx_alf_aud_ckey_pv ON alf_audit_compact_key(path_hash, value_hash, entry_id);
+CREATE INDEX idx_alf_aud_ckey_v ON alf_audit_compact_key(value_hash, entry_id);
+
+--
+-- Record script finish
+--
+DELETE FROM alf_applied_patch WHERE id = 'patch.db-V23.2-AuditCompactTables';
+INSERT INTO alf_applied_patch
+  (id, description, fixes_from_schema, fixes_to_schema, applied_to_schema, target_schema, applied_on_date, applied_to_server, was_executed, succeeded, report)
+  VALUES
+  (
+    'patch.db-V23.2-AuditCompactTables', 'Manually executed script upgrade V23.2: Compact audit storage tables',
+    0, 19100, -1, 19101, null, 'UNKNOWN', ${TRUE}, ${TRUE}, 'Script completed'
+  );
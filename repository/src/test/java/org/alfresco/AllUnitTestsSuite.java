@@ -53,15 +53,19 @@ import org.junit.runners.Suite;
     org.alfresco.opencmis.AlfrescoCmisExceptionInterceptorTest.class,
     org.alfresco.repo.admin.Log4JHierarchyInitTest.class,
     org.alfresco.repo.attributes.PropTablesCleanupJobTest.class,
+    org.alfresco.repo.batch.BatchProcessorTest.class,
     org.alfresco.repo.cache.AbstractCacheFactoryTest.class,
     org.alfresco.repo.cache.DefaultCacheFactoryTest.class,
     org.alfresco.repo.cache.DefaultSimpleCacheTest.class,
     org.alfresco.repo.cache.InMemoryCacheStatisticsTest.class,
+    org.alfresco.repo.cache.NearCacheTest.class,
+    org.alfresco.repo.cache.TinyLfuSimpleCacheTest.class,
     org.alfresco.repo.cache.TransactionStatsTest.class,
     org.alfresco.repo.cache.lookup.EntityLookupCacheTest.class,
     org.alfresco.repo.calendar.CalendarHelpersTest.class,
     org.alfresco.repo.copy.CopyServiceImplUnitTest.class,
     org.alfresco.repo.dictionary.RepoDictionaryDAOTest.class,
+    org.alfresco.repo.domain.node.CompactPropertyMapTest.class,
     org.alfresco.repo.forms.processor.node.FieldProcessorTest.class,
     org.alfresco.repo.forms.processor.workflow.TaskFormProcessorTest.class,
     org.alfresco.repo.forms.processor.workflow.WorkflowFormProcessorTest.class,
@@ -69,6 +73,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.invitation.site.InviteModeratedSenderTest.class,
     org.alfresco.repo.jscript.ScriptSearchTest.class,
     org.alfresco.repo.lock.LockUtilsTest.class,
+    org.alfresco.repo.lock.JobLockServiceImplTest.class,
     org.alfresco.repo.lock.mem.LockStoreImplTest.class,
     org.alfresco.repo.management.CheckRequiredClassesForLoggingConsoleUnitTest.class,
     org.alfresco.repo.management.subsystems.CryptodocSwitchableApplicationContextFactoryTest.class,
@@ -139,11 +144,13 @@ import org.junit.runners.Suite;
     org.alfresco.repo.search.impl.solr.SolrSQLHttpClientTest.class,
     org.alfresco.repo.search.impl.solr.SolrStatsResultTest.class,
     org.alfresco.repo.search.impl.solr.SolrJSONResultTest.class,
+    org.alfresco.repo.search.impl.solr.SolrJSONResponseParserTest.class,
     org.alfresco.repo.search.impl.solr.SolrSQLJSONResultMetadataSetTest.class,
     org.alfresco.repo.search.impl.solr.facet.SolrFacetComparatorTest.class,
     org.alfresco.repo.search.impl.solr.facet.FacetQNameUtilsTest.class,
     org.alfresco.util.BeanExtenderUnitTest.class,
     org.alfresco.repo.solr.SOLRTrackingComponentUnitTest.class,
+    org.alfresco.repo.solr.AncestorPathIndexTest.class,
     IdentityServiceFacadeFactoryBeanTest.class,
     LazyInstantiatingIdentityServiceFacadeUnitTest.class,
     SpringBasedIdentityServiceFacadeUnitTest.class,
@@ -196,25 +203,36 @@ import org.junit.runners.Suite;
     org.alfresco.repo.action.executer.ImporterActionExecutorUnitTest.class,
     org.alfresco.repo.audit.AuditableAnnotationTest.class,
     org.alfresco.repo.audit.PropertyAuditFilterTest.class,
+    org.alfresco.repo.audit.WriteBehindAuditJournalTest.class,
     org.alfresco.repo.audit.access.NodeChangeTest.class,
+    org.alfresco.repo.domain.audit.CompactAuditValuesTest.class,
+    org.alfresco.repo.domain.audit.ibatis.CompactAuditDAOImplTest.class,
     org.alfresco.repo.content.ContentServiceImplUnitTest.class,
     org.alfresco.repo.content.directurl.SystemWideDirectUrlConfigUnitTest.class,
     org.alfresco.repo.content.directurl.ContentStoreDirectUrlConfigUnitTest.class,
     org.alfresco.repo.content.LimitedStreamCopierTest.class,
     org.alfresco.repo.content.filestore.FileIOTest.class,
     org.alfresco.repo.content.filestore.SpoofedTextContentReaderTest.class,
+    org.alfresco.repo.content.filestore.FileContentStoreBulkDeleteTest.class,
+    org.alfresco.repo.content.cleanup.EagerContentStoreCleanerBulkDeleteTest.class,
+    org.alfresco.repo.content.filestore.FileContentReaderTransferTest.class,
     org.alfresco.repo.content.ContentDataTest.class,
     org.alfresco.repo.content.replication.AggregatingContentStoreUnitTest.class,
     org.alfresco.service.cmr.repository.TransformationOptionLimitsTest.class,
     org.alfresco.service.cmr.repository.TransformationOptionPairTest.class,
     org.alfresco.repo.content.transform.TransformerConfigTestSuite.class,
     org.alfresco.repo.content.transform.TransformerDebugTest.class,
+    org.alfresco.repo.content.transform.IntermediateContentWriterTest.class,
+    org.alfresco.repo.content.transform.RemoteTransformerConnectionPoolTest.class,
+    org.alfresco.repo.download.ParallelZipEntryWriterTest.class,
     org.alfresco.service.cmr.repository.TemporalSourceOptionsTest.class,
     org.alfresco.repo.content.metadata.MetadataExtracterLimitsTest.class,
+    org.alfresco.repo.content.metadata.AsynchronousExtractorBatchTest.class,
     org.alfresco.repo.content.caching.quota.StandardQuotaStrategyMockTest.class,
     org.alfresco.repo.content.caching.quota.UnlimitedQuotaStrategyTest.class,
     org.alfresco.repo.content.caching.CachingContentStoreTest.class,
     org.alfresco.repo.content.caching.ContentCacheImplTest.class,
+    org.alfresco.repo.content.caching.CacheIndexTest.class,
     org.alfresco.repo.domain.permissions.FixedAclUpdaterUnitTest.class,
     org.alfresco.repo.domain.propval.PropertyTypeConverterTest.class,
     org.alfresco.repo.domain.schema.script.ScriptBundleExecutorImplTest.class,
@@ -229,6 +247,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.security.permissions.PermissionCheckedCollectionTest.class,
     org.alfresco.repo.security.permissions.impl.acegi.FilteringResultSetTest.class,
     org.alfresco.repo.security.permissions.impl.acegi.ACLEntryVoterUtilsTest.class,
+    org.alfresco.repo.security.permissions.impl.AccessCacheInvalidationTest.class,
     org.alfresco.repo.security.authentication.ChainingAuthenticationServiceTest.class,
     org.alfresco.repo.security.authentication.NameBasedUserNameGeneratorTest.class,
     org.alfresco.repo.version.common.VersionImplTest.class,
@@ -255,6 +274,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.events.ClientUtilTest.class,
     org.alfresco.repo.rendition2.RenditionService2Test.class,
     org.alfresco.repo.rendition2.TransformationOptionsConverterTest.class,
+    org.alfresco.repo.util.CoalescingPostTxnCallbackSchedulerTest.class,
 
     org.alfresco.repo.event2.RepoEvent2UnitSuite.class,
 
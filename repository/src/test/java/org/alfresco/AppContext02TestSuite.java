@@ -60,6 +60,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.coci.CheckOutCheckInServiceImplTest.class,
     org.alfresco.repo.configuration.ConfigurableServiceImplTest.class,
     org.alfresco.repo.content.GuessMimetypeTest.class,
+    org.alfresco.repo.content.dedup.DeduplicatingContentStoreTest.class,
     org.alfresco.repo.content.filestore.FileContentStoreTest.class,
     org.alfresco.repo.content.filestore.NoRandomAccessFileContentStoreTest.class,
     org.alfresco.repo.content.filestore.ReadOnlyFileContentStoreTest.class,
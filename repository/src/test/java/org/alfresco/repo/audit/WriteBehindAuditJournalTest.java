@@ -0,0 +1,306 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import org.alfresco.repo.audit.WriteBehindAuditJournal.Durability;
+import org.alfresco.repo.domain.audit.AuditDAO;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.transaction.TransactionService;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Tests that the {@link WriteBehindAuditJournal} inserts the entries of committed transactions, in batches and
+ * after a restart.
+ */
+public class WriteBehindAuditJournalTest
+{
+    private AuditDAO auditDAO;
+    private TransactionService transactionService;
+    private RetryingTransactionHelper txnHelper;
+    private File journalDirectory;
+    private WriteBehindAuditJournal journal;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        auditDAO = mock(AuditDAO.class);
+        txnHelper = mock(RetryingTransactionHelper.class);
+        when(txnHelper.doInTransaction(any(), anyBoolean(), anyBoolean())).then(invocation -> {
+            RetryingTransactionCallback<?> callback = invocation.getArgument(0);
+            return callback.execute();
+        });
+        transactionService = mock(TransactionService.class);
+        when(transactionService.getRetryingTransactionHelper()).thenReturn(txnHelper);
+        journalDirectory = Files.createTempDirectory("WriteBehindAuditJournalTest").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        if (journal != null)
+        {
+            journal.shutdown();
+        }
+        FileUtils.deleteDirectory(journalDirectory);
+    }
+
+    private WriteBehindAuditJournal newJournal(Durability durability, long drainIntervalMs) throws IOException
+    {
+        WriteBehindAuditJournal journal = new WriteBehindAuditJournal();
+        journal.setAuditDAO(auditDAO);
+        journal.setTransactionService(transactionService);
+        journal.setEnabled(true);
+        journal.setDurability(durability);
+        journal.setJournalDirectory(journalDirectory);
+        journal.setBatchSize(2);
+        journal.setDrainIntervalMs(drainIntervalMs);
+        journal.init();
+        return journal;
+    }
+
+    @Test
+    public void testDisabledJournalTakesNoEntries()
+    {
+        journal = new WriteBehindAuditJournal();
+        assertFalse(journal.recordOnCommit(1L, 1000L, "user", values("a")));
+    }
+
+    @Test
+    public void testCommittedEntriesInsertedInBatches() throws Exception
+    {
+        journal = newJournal(Durability.MEMORY, 20);
+
+        inTransaction(true, () -> {
+            assertTrue(journal.recordOnCommit(1L, 1000L, "user", values("a")));
+            assertTrue(journal.recordOnCommit(1L, 1001L, "user", values("b")));
+            assertTrue(journal.recordOnCommit(1L, 1002L, "user", values("c")));
+        });
+
+        waitFor(() -> journal.getInsertedEntryCount() == 3);
+        verify(auditDAO).createAuditEntry(1L, 1000L, "user", values("a"));
+        verify(auditDAO).createAuditEntry(1L, 1001L, "user", values("b"));
+        verify(auditDAO).createAuditEntry(1L, 1002L, "user", values("c"));
+        verify(txnHelper, times(2)).doInTransaction(any(), eq(false), eq(true));
+        assertEquals(3, journal.getJournalledEntryCount());
+        assertEquals(0, journal.getQueuedEntryCount());
+        assertEquals(0, journal.getJournalLagMillis());
+    }
+
+    @Test
+    public void testRolledBackEntriesNotInserted() throws Exception
+    {
+        journal = newJournal(Durability.MEMORY, 20);
+
+        inTransaction(false, () -> journal.recordOnCommit(1L, 1000L, "user", values("a")));
+
+        Thread.sleep(100);
+        verify(auditDAO, never()).createAuditEntry(anyLong(), anyLong(), anyString(), anyMap());
+        assertEquals(0, journal.getJournalledEntryCount());
+    }
+
+    @Test
+    public void testFullJournalFallsBackToCaller() throws Exception
+    {
+        journal = newJournal(Durability.MEMORY, 60000);
+        journal.setMaxQueuedEntries(1);
+
+        inTransaction(true, () -> journal.recordOnCommit(1L, 1000L, "user", values("a")));
+        assertEquals(1, journal.getQueuedEntryCount());
+
+        inTransaction(true, () -> assertFalse(journal.recordOnCommit(1L, 1001L, "user", values("b"))));
+        assertEquals(1, journal.getBypassedEntryCount());
+    }
+
+    @Test
+    public void testJournalReplayedAfterRestart() throws Exception
+    {
+        journal = newJournal(Durability.FSYNC, 60000);
+        inTransaction(true, () -> {
+            journal.recordOnCommit(1L, 1000L, "user", values("a"));
+            journal.recordOnCommit(2L, 1001L, null, values("b"));
+            journal.recordOnCommit(1L, 1002L, "user", values("c"));
+        });
+        assertEquals(3, journal.getQueuedEntryCount());
+        journal.shutdown();
+        verify(auditDAO, never()).createAuditEntry(anyLong(), anyLong(), anyString(), anyMap());
+
+        journal = newJournal(Durability.FSYNC, 20);
+        waitFor(() -> journal.getInsertedEntryCount() == 3);
+        verify(auditDAO).createAuditEntry(1L, 1000L, "user", values("a"));
+        verify(auditDAO).createAuditEntry(2L, 1001L, null, values("b"));
+        verify(auditDAO).createAuditEntry(1L, 1002L, "user", values("c"));
+        journal.shutdown();
+
+        // Nothing is inserted twice
+        journal = newJournal(Durability.FSYNC, 20);
+        Thread.sleep(100);
+        assertEquals(0, journal.getInsertedEntryCount());
+    }
+
+    @Test
+    public void testTornLengthAtEndOfJournalIgnored() throws Exception
+    {
+        journal = newJournal(Durability.FSYNC, 60000);
+        inTransaction(true, () -> {
+            journal.recordOnCommit(1L, 1000L, "user", values("a"));
+            journal.recordOnCommit(1L, 1001L, "user", values("b"));
+        });
+        journal.shutdown();
+
+        // A garbage length, as left by a crash part way through writing an entry
+        File[] segments = journalDirectory.listFiles((dir, name) -> name.endsWith(".log"));
+        assertEquals(1, segments.length);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(segments[0], true)))
+        {
+            out.writeInt(Integer.MAX_VALUE - 8);
+            out.writeLong(0L);
+        }
+
+        journal = newJournal(Durability.FSYNC, 20);
+        waitFor(() -> journal.getInsertedEntryCount() == 2);
+        verify(auditDAO).createAuditEntry(1L, 1000L, "user", values("a"));
+        verify(auditDAO).createAuditEntry(1L, 1001L, "user", values("b"));
+    }
+
+    @Test
+    public void testFailedInsertRetriedInOrder() throws Exception
+    {
+        when(auditDAO.createAuditEntry(eq(1L), eq(1000L), anyString(), anyMap()))
+                .thenThrow(new IllegalStateException("Simulated failure"))
+                .thenThrow(new IllegalStateException("Simulated failure"))
+                .thenReturn(10L);
+        journal = newJournal(Durability.WRITE, 20);
+
+        inTransaction(true, () -> {
+            journal.recordOnCommit(1L, 1000L, "user", values("a"));
+            journal.recordOnCommit(1L, 1001L, "user", values("b"));
+        });
+
+        waitFor(() -> journal.getInsertedEntryCount() == 2);
+        InOrder inOrder = inOrder(auditDAO);
+        inOrder.verify(auditDAO, times(3)).createAuditEntry(eq(1L), eq(1000L), anyString(), anyMap());
+        inOrder.verify(auditDAO).createAuditEntry(eq(1L), eq(1001L), anyString(), anyMap());
+        assertEquals(0, journal.getFailedEntryCount());
+    }
+
+    @Test
+    public void testDiscardedEntryNotCountedAsInserted() throws Exception
+    {
+        when(auditDAO.createAuditEntry(eq(1L), eq(1000L), anyString(), anyMap()))
+                .thenThrow(new IllegalStateException("Simulated failure"));
+        journal = newJournal(Durability.WRITE, 20);
+
+        inTransaction(true, () -> {
+            journal.recordOnCommit(1L, 1000L, "user", values("a"));
+            journal.recordOnCommit(1L, 1001L, "user", values("b"));
+        });
+
+        waitFor(() -> journal.getFailedEntryCount() == 1 && journal.getInsertedEntryCount() == 1);
+        verify(auditDAO).createAuditEntry(1L, 1001L, "user", values("b"));
+        Thread.sleep(100);
+        assertEquals(1, journal.getInsertedEntryCount());
+        assertEquals(1, journal.getFailedEntryCount());
+    }
+
+    private Map<String, Serializable> values(String value)
+    {
+        return Collections.singletonMap("/test/value", value);
+    }
+
+    private void inTransaction(boolean commit, Runnable work)
+    {
+        TransactionSynchronizationManager.initSynchronization();
+        try
+        {
+            work.run();
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            if (commit)
+            {
+                for (TransactionSynchronization synchronization : synchronizations)
+                {
+                    synchronization.beforeCommit(false);
+                }
+                for (TransactionSynchronization synchronization : synchronizations)
+                {
+                    synchronization.afterCommit();
+                }
+            }
+            for (TransactionSynchronization synchronization : synchronizations)
+            {
+                synchronization.afterCompletion(commit ?
+                        TransactionSynchronization.STATUS_COMMITTED : TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+        }
+        finally
+        {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private void waitFor(BooleanSupplier condition) throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean())
+        {
+            assertTrue("Timed out waiting for the audit entries", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.batch;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorkerAdaptor;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Tests the streaming, adaptive and lock-free progress behaviour of the {@link BatchProcessor} against a
+ * transaction helper that only drives the transaction synchronizations.
+ */
+public class BatchProcessorTest
+{
+    private static final int ENTRIES = 1000;
+
+    private RetryingTransactionHelper txnHelper;
+    private volatile long commitDelayMillis;
+
+    @Before
+    public void setUp() throws Throwable
+    {
+        txnHelper = mock(RetryingTransactionHelper.class);
+        when(txnHelper.doInTransaction(any(), anyBoolean(), anyBoolean())).then(invocation -> {
+            RetryingTransactionCallback<?> callback = invocation.getArgument(0);
+            TransactionSynchronizationManager.initSynchronization();
+            try
+            {
+                Object result = callback.execute();
+                List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+                for (TransactionSynchronization synchronization : synchronizations)
+                {
+                    synchronization.beforeCommit(false);
+                }
+                if (commitDelayMillis > 0)
+                {
+                    Thread.sleep(commitDelayMillis);
+                }
+                for (TransactionSynchronization synchronization : synchronizations)
+                {
+                    synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+                }
+                return result;
+            }
+            finally
+            {
+                TransactionSynchronizationManager.clearSynchronization();
+            }
+        });
+    }
+
+    @Test
+    public void testStreamingProcessesEveryEntryOnce()
+    {
+        final Set<Integer> processed = ConcurrentHashMap.newKeySet();
+        BatchProcessor<Integer> batchProcessor = newBatchProcessor(new CountingWorkProvider(ENTRIES, 50), 4, 10);
+        batchProcessor.setStreaming(true);
+        batchProcessor.setMaxWorkerThreads(8);
+
+        batchProcessor.processLong(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            public void process(Integer entry) throws Throwable
+            {
+                assertTrue("Entry processed twice: " + entry, processed.add(entry));
+            }
+        }, true);
+
+        assertEquals(ENTRIES, processed.size());
+        assertEquals(ENTRIES, batchProcessor.getSuccessfullyProcessedEntriesLong());
+        assertEquals(0, batchProcessor.getTotalErrorsLong());
+        assertEquals("100%", batchProcessor.getPercentComplete());
+        assertNotNull(batchProcessor.getEndTime());
+    }
+
+    @Test
+    public void testStreamingAppliesBackPressure()
+    {
+        final int workers = 2;
+        final CountingWorkProvider workProvider = new CountingWorkProvider(ENTRIES, 10);
+        final AtomicInteger processedCount = new AtomicInteger();
+        final AtomicInteger maxAhead = new AtomicInteger();
+        BatchProcessor<Integer> batchProcessor = newBatchProcessor(workProvider, workers, 10);
+        batchProcessor.setStreaming(true);
+
+        batchProcessor.processLong(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            public void process(Integer entry) throws Throwable
+            {
+                Thread.sleep(1);
+                int ahead = workProvider.provided.get() - processedCount.incrementAndGet();
+                maxAhead.accumulateAndGet(ahead, Math::max);
+            }
+        }, true);
+
+        assertEquals(ENTRIES, batchProcessor.getSuccessfullyProcessedEntriesLong());
+        // Running workers, a pipeline of two batches per worker and the batch being formed, plus one provider page
+        int bound = (workers + workers * 2 + 1) * 10 + 10;
+        assertTrue("Provider ran " + maxAhead.get() + " entries ahead of the workers", maxAhead.get() <= bound);
+    }
+
+    @Test
+    public void testErrorsAreCounted()
+    {
+        BatchProcessor<Integer> batchProcessor = newBatchProcessor(new CountingWorkProvider(ENTRIES, 100), 3, 7);
+        batchProcessor.setStreaming(true);
+
+        batchProcessor.processLong(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            public void process(Integer entry) throws Throwable
+            {
+                if (entry % 10 == 0)
+                {
+                    throw new IllegalStateException("Failed " + entry);
+                }
+            }
+        }, true);
+
+        assertEquals(ENTRIES / 10, batchProcessor.getTotalErrorsLong());
+        assertEquals(ENTRIES - ENTRIES / 10, batchProcessor.getSuccessfullyProcessedEntriesLong());
+        assertNotNull(batchProcessor.getLastError());
+        assertTrue(Integer.parseInt(batchProcessor.getLastErrorEntryId()) % 10 == 0);
+    }
+
+    @Test
+    public void testAdaptiveBatchSizeShrinksOnSlowCommits()
+    {
+        commitDelayMillis = 20;
+        BatchProcessor<Integer> batchProcessor = newBatchProcessor(new CountingWorkProvider(200, 200), 1, 50);
+        batchProcessor.setAdaptiveBatchSize(5, 100, 5);
+
+        batchProcessor.processLong(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            public void process(Integer entry) throws Throwable
+            {
+            }
+        }, true);
+
+        assertEquals(200, batchProcessor.getSuccessfullyProcessedEntriesLong());
+        assertTrue("Batch size was " + batchProcessor.getCurrentBatchSize(), batchProcessor.getCurrentBatchSize() < 50);
+    }
+
+    @Test
+    public void testAdaptiveBatchSizeGrowsOnFastCommits()
+    {
+        BatchProcessor<Integer> batchProcessor = newBatchProcessor(new CountingWorkProvider(500, 500), 1, 10);
+        batchProcessor.setAdaptiveBatchSize(5, 40, 10000);
+
+        batchProcessor.processLong(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            public void process(Integer entry) throws Throwable
+            {
+            }
+        }, true);
+
+        assertEquals(500, batchProcessor.getSuccessfullyProcessedEntriesLong());
+        assertEquals(40, batchProcessor.getCurrentBatchSize());
+    }
+
+    @Test
+    public void testVirtualThreadsFallBackToPlatformThreads()
+    {
+        final Set<Integer> processed = ConcurrentHashMap.newKeySet();
+        BatchProcessor<Integer> batchProcessor = newBatchProcessor(new CountingWorkProvider(ENTRIES, 100), 4, 10);
+        batchProcessor.setStreaming(true);
+        batchProcessor.setUseVirtualThreads(true);
+
+        batchProcessor.processLong(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            public void process(Integer entry) throws Throwable
+            {
+                processed.add(entry);
+            }
+        }, true);
+
+        assertEquals(ENTRIES, processed.size());
+    }
+
+    private BatchProcessor<Integer> newBatchProcessor(BatchProcessWorkProvider<Integer> workProvider, int workerThreads, int batchSize)
+    {
+        return new BatchProcessor<Integer>("BatchProcessorTest", txnHelper, workProvider, workerThreads, batchSize,
+                null, null, 100);
+    }
+
+    /**
+     * Provides the integers up to a total, a page at a time, counting how many have been handed out.
+     */
+    private static class CountingWorkProvider implements BatchProcessWorkProvider<Integer>
+    {
+        private final int total;
+        private final int pageSize;
+        private final AtomicInteger provided = new AtomicInteger();
+
+        private CountingWorkProvider(int total, int pageSize)
+        {
+            this.total = total;
+            this.pageSize = pageSize;
+        }
+
+        public int getTotalEstimatedWorkSize()
+        {
+            return total;
+        }
+
+        public long getTotalEstimatedWorkSizeLong()
+        {
+            return total;
+        }
+
+        public Collection<Integer> getNextWork()
+        {
+            int start = provided.get();
+            if (start >= total)
+            {
+                return Collections.emptyList();
+            }
+            List<Integer> page = new ArrayList<Integer>(pageSize);
+            for (int i = start; i < Math.min(total, start + pageSize); i++)
+            {
+                page.add(i);
+            }
+            provided.addAndGet(page.size());
+            return page;
+        }
+    }
+}
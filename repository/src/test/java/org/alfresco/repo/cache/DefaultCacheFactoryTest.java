@@ -62,6 +62,19 @@ public class DefaultCacheFactoryTest
         properties.setProperty("cache.withMaxIdle.maxItems", "0");
         properties.setProperty("cache.withMaxIdle.eviction-policy", "NONE");
         properties.setProperty("cache.withMaxIdle.maxIdleSeconds", "7");
+        // cache.tinyLfu
+        properties.setProperty("cache.tinyLfu.local.type", "w-tinylfu");
+        properties.setProperty("cache.tinyLfu.maxItems", "5");
+        properties.setProperty("cache.tinyLfu.eviction-policy", "LRU");
+        properties.setProperty("cache.tinyLfu.timeToLiveSeconds", "8");
+        // cache.tinyLfuWeighted
+        properties.setProperty("cache.tinyLfuWeighted.local.type", "w-tinylfu");
+        properties.setProperty("cache.tinyLfuWeighted.maxItems", "5");
+        properties.setProperty("cache.tinyLfuWeighted.maxWeight", "1048576");
+        properties.setProperty("cache.tinyLfuWeighted.weigher", "size-estimate");
+        properties.setProperty("cache.tinyLfuWeighted.eviction-policy", "LRU");
+        // cache.unknownType
+        properties.setProperty("cache.unknownType.local.type", "mystery");
         
         cacheFactory.setProperties(properties);
     }
@@ -100,4 +113,34 @@ public class DefaultCacheFactoryTest
         assertEquals(0, cache.getTTLSecs());        
         assertEquals(7, cache.getMaxIdleSecs());        
     }
+    
+    @Test
+    public void canCreateTinyLfuCache()
+    {
+        TinyLfuSimpleCache<String, String> tinyLfu = (TinyLfuSimpleCache<String, String>) cacheFactory.createCache("cache.tinyLfu");
+        assertEquals("cache.tinyLfu", tinyLfu.getCacheName());
+        // maxWeight defaults to maxItems
+        assertEquals(5, tinyLfu.getMaxWeight());
+        assertTrue(tinyLfu.isUseMaxWeight());
+        assertEquals(8000000000L, tinyLfu.getTTLNanos());
+    }
+    
+    @Test
+    public void canCreateWeightedTinyLfuCache()
+    {
+        TinyLfuSimpleCache<String, String> tinyLfu = (TinyLfuSimpleCache<String, String>) cacheFactory.createCache("cache.tinyLfuWeighted");
+        assertEquals(1048576, tinyLfu.getMaxWeight());
+        for (int i = 0; i < 10; i++)
+        {
+            tinyLfu.put("key-" + i, "value-" + i);
+        }
+        // Weighed by size rather than count, so maxItems does not apply
+        assertEquals(10, tinyLfu.getKeys().size());
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void unknownLocalTypeIsRejected()
+    {
+        cacheFactory.createCache("cache.unknownType");
+    }
 }
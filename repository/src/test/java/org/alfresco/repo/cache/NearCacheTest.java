@@ -0,0 +1,109 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+
+/**
+ * Tests for the {@link NearCache} class.
+ */
+public class NearCacheTest extends SimpleCacheTestBase<NearCache<Integer, String>>
+{
+    private SimpleCache<Integer, String> sharedCache;
+
+    @Override
+    protected NearCache<Integer, String> createCache()
+    {
+        sharedCache = spy(new DefaultSimpleCache<Integer, String>(1000, getClass().getName() + ".shared"));
+        return new NearCache<Integer, String>(sharedCache, 64 * 1024, getClass().getName());
+    }
+
+    @Test
+    public void readsAreServedLocallyOnceLoaded()
+    {
+        sharedCache.put(1, "value-1");
+        assertNull(cache.getLocal(1));
+
+        assertEquals("value-1", cache.get(1));
+        assertEquals("value-1", cache.getLocal(1));
+        assertEquals("value-1", cache.get(1));
+        verify(sharedCache, times(1)).get(1);
+    }
+
+    @Test
+    public void writesGoToBothTiers()
+    {
+        cache.put(1, "value-1");
+        assertEquals("value-1", sharedCache.get(1));
+        assertEquals("value-1", cache.getLocal(1));
+
+        cache.remove(1);
+        assertNull(sharedCache.get(1));
+        assertNull(cache.getLocal(1));
+
+        cache.put(2, "value-2");
+        cache.clear();
+        assertFalse(sharedCache.contains(2));
+        assertNull(cache.getLocal(2));
+    }
+
+    @Test
+    public void missesAreNotCachedLocally()
+    {
+        assertNull(cache.get(1));
+        sharedCache.put(1, "value-1");
+        assertEquals("value-1", cache.get(1));
+    }
+
+    @Test
+    public void localTierIsBoundedByMemory()
+    {
+        NearCache<Integer, String> small = new NearCache<Integer, String>(sharedCache, 4096, getClass().getName());
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+        {
+            sb.append("0123456789");
+        }
+        for (int i = 0; i < 1000; i++)
+        {
+            small.put(i, sb.toString() + i);
+        }
+        assertTrue("Local size exceeded: " + small.getLocalSize(), small.getLocalSize() <= 4096);
+        // Evicted entries are still found in the shared cache
+        assertEquals(sb.toString() + 0, small.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nearCacheMustHaveASize()
+    {
+        new NearCache<Integer, String>(sharedCache, 0, getClass().getName());
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.alfresco.repo.cache.TransactionStats.OpType;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Tests for the {@link TinyLfuSimpleCache} class.
+ */
+public class TinyLfuSimpleCacheTest extends SimpleCacheTestBase<TinyLfuSimpleCache<Integer, String>>
+{
+    @Override
+    protected TinyLfuSimpleCache<Integer, String> createCache()
+    {
+        return new TinyLfuSimpleCache<Integer, String>(100, true, 0, 0, null, getClass().getName());
+    }
+
+    @Test
+    public void boundedWeightCache()
+    {
+        for (int i = 0; i < 1000; i++)
+        {
+            cache.put(i, "value-" + i);
+        }
+        assertTrue("Weight exceeded: " + cache.getWeightedSize(), cache.getWeightedSize() <= 100);
+        assertEquals(1000 - cache.getWeightedSize(), cache.getEvictionCount());
+        // The most recent entry is always in the admission window
+        assertEquals("value-999", cache.get(999));
+    }
+
+    @Test
+    public void weigherDeterminesCapacity()
+    {
+        TinyLfuSimpleCache<Integer, String> weighted = new TinyLfuSimpleCache<Integer, String>(
+                    100, true, 0, 0, (key, value) -> value.length(), getClass().getName());
+        weighted.put(1, "0123456789");
+        weighted.put(2, "0123456789");
+        assertEquals(20, weighted.getWeightedSize());
+
+        // Replacing an entry replaces its weight
+        weighted.put(1, "01234");
+        assertEquals(15, weighted.getWeightedSize());
+
+        // An entry heavier than the cache is never stored, and does not leave a stale value behind
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20; i++)
+        {
+            sb.append("0123456789");
+        }
+        weighted.put(2, sb.toString());
+        assertFalse(weighted.contains(2));
+        assertNull(weighted.get(2));
+        assertEquals(5, weighted.getWeightedSize());
+    }
+
+    @Test
+    public void sizeEstimatingWeigherGrowsWithValue()
+    {
+        TinyLfuSimpleCache.Weigher<Object, Object> weigher = TinyLfuSimpleCache.SIZE_ESTIMATING_WEIGHER;
+        List<String> small = new ArrayList<>();
+        small.add("a");
+        List<String> large = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+        {
+            large.add("value-" + i);
+        }
+        assertTrue(weigher.weigh(1, large) > weigher.weigh(1, small));
+        assertTrue(weigher.weigh(1, "a much longer string value") > weigher.weigh(1, "short"));
+        assertTrue(weigher.weigh(1, null) > 0);
+    }
+
+    @Test
+    public void unboundedCache()
+    {
+        cache = new TinyLfuSimpleCache<Integer, String>(10, false, 0, 0, null, getClass().getName());
+        assertFalse(cache.isUseMaxWeight());
+        for (int i = 0; i < 1000; i++)
+        {
+            cache.put(i, "value-" + i);
+        }
+        assertEquals(1000, cache.getKeys().size());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void cannotHaveNegativeMaxWeight()
+    {
+        new TinyLfuSimpleCache<Integer, String>(-1, true, 0, 0, null, getClass().getName());
+    }
+
+    /**
+     * A frequently read working set must survive a scan of many entries that are each used once,
+     * even when the gap between reads of a hot entry is larger than the cache (which an LRU would not survive).
+     */
+    @Test
+    public void frequentlyUsedEntriesSurviveScan()
+    {
+        cache = new TinyLfuSimpleCache<Integer, String>(200, getClass().getName());
+        final int hotCount = 100;
+        for (int i = 0; i < hotCount; i++)
+        {
+            cache.put(i, "hot-" + i);
+        }
+        for (int round = 0; round < 5; round++)
+        {
+            for (int i = 0; i < hotCount; i++)
+            {
+                cache.get(i);
+            }
+        }
+
+        int hotReads = 0;
+        int hotHits = 0;
+        for (int i = 0; i < 20000; i++)
+        {
+            // A read-through of a key that is never seen again
+            int scanKey = 1000 + i;
+            if (cache.get(scanKey) == null)
+            {
+                cache.put(scanKey, "scan-" + scanKey);
+            }
+            if (i % 2 == 0)
+            {
+                int hotKey = (i / 2) % hotCount;
+                hotReads++;
+                if (cache.get(hotKey) != null)
+                {
+                    hotHits++;
+                }
+                else
+                {
+                    cache.put(hotKey, "hot-" + hotKey);
+                }
+            }
+        }
+        assertTrue("Hot set was flushed by the scan, hits: " + hotHits + "/" + hotReads, hotHits > hotReads * 0.9);
+        assertTrue(cache.getWeightedSize() <= 200);
+    }
+
+    @Test
+    public void statsPublishedToCacheStatistics()
+    {
+        CacheStatistics cacheStatistics = mock(CacheStatistics.class);
+        cache = new TinyLfuSimpleCache<Integer, String>(2, true, 0, 0, null, "cache.tinyLfu");
+        cache.setCacheStatistics(cacheStatistics);
+        cache.setStatsEnabled(true);
+
+        cache.put(1, "1");
+        cache.put(2, "2");
+        cache.put(3, "3");
+        cache.get(3);
+        cache.get(3);
+        cache.get(4);
+        cache.remove(3);
+        cache.publishStats();
+
+        ArgumentCaptor<TransactionStats> captor = ArgumentCaptor.forClass(TransactionStats.class);
+        verify(cacheStatistics).add(eq("cache.tinyLfu"), captor.capture());
+        TransactionStats stats = captor.getValue();
+        assertEquals(2, stats.getCount(OpType.GET_HIT));
+        assertEquals(1, stats.getCount(OpType.GET_MISS));
+        assertEquals(3, stats.getCount(OpType.PUT));
+        assertEquals(1, stats.getCount(OpType.REMOVE));
+        assertEquals(1, stats.getCount(OpType.EVICT));
+
+        // Counters restart after publishing
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void concurrentAccessStaysWithinBounds() throws Exception
+    {
+        cache = new TinyLfuSimpleCache<Integer, String>(1000, getClass().getName());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++)
+            {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 50000; i++)
+                    {
+                        int key = random.nextInt(5000);
+                        String value = cache.get(key);
+                        if (value == null)
+                        {
+                            cache.put(key, Integer.toString(key));
+                        }
+                        else
+                        {
+                            assertEquals(Integer.toString(key), value);
+                        }
+                        if (i % 1000 == 0)
+                        {
+                            cache.remove(key);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        assertTrue(cache.getWeightedSize() <= 1000);
+        assertEquals(cache.getWeightedSize(), cache.getKeys().size());
+    }
+
+    @Test
+    public void sketchCountsAndAges()
+    {
+        TinyLfuSimpleCache.FrequencySketch sketch = new TinyLfuSimpleCache.FrequencySketch(64);
+        int hash = TinyLfuSimpleCache.spread("key".hashCode());
+        for (int i = 0; i < 20; i++)
+        {
+            sketch.increment(hash);
+        }
+        // 4-bit counters saturate at 15
+        assertEquals(15, sketch.frequency(hash));
+
+        // Sampling ten times the table size halves the counters
+        for (int i = 0; i < 64 * 10; i++)
+        {
+            sketch.increment(TinyLfuSimpleCache.spread(i));
+        }
+        assertTrue(sketch.frequency(hash) < 15);
+    }
+}
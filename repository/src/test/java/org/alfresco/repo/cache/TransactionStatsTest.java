@@ -99,4 +99,35 @@ public class TransactionStatsTest
         assertEquals(1000, stats.getTimings(OpType.REMOVE).getMean(), 0.01d);
         assertEquals(1750, stats.getTimings(OpType.CLEAR).getMean(), 0.01d);
     }
+    
+    @Test
+    public void canRecordTotals()
+    {
+        TransactionStats stats = new TransactionStats();
+        
+        stats.record(0, 1000, OpType.GET_HIT);
+        stats.record(OpType.GET_HIT, 9, 8000);
+        stats.record(OpType.GET_HIT, 10, 11000);
+        stats.record(OpType.EVICT, 3, 0);
+        
+        assertEquals(20, stats.getCount(OpType.GET_HIT));
+        assertEquals(20000, stats.getTotalTime(OpType.GET_HIT), 0.01d);
+        assertEquals(3, stats.getCount(OpType.EVICT));
+        assertEquals(0, stats.getCount(OpType.GET_MISS));
+        assertEquals(0, stats.getTotalTime(OpType.GET_MISS), 0.01d);
+    }
+    
+    @Test
+    public void canGetNearCacheHitRatio()
+    {
+        TransactionStats stats = new TransactionStats();
+        assertTrue(Double.isNaN(stats.getNearCacheHitRatio()));
+        
+        stats.record(0, 1000, OpType.NEAR_HIT);
+        stats.record(0, 1000, OpType.NEAR_HIT);
+        stats.record(0, 1000, OpType.NEAR_HIT);
+        stats.record(0, 2000, OpType.NEAR_MISS);
+        
+        assertEquals(0.75, stats.getNearCacheHitRatio(), 0.0001d);
+    }
 }
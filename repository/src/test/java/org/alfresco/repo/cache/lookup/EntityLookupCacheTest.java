@@ -26,6 +26,9 @@
 package org.alfresco.repo.cache.lookup;
 
 import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -58,6 +61,8 @@ public class EntityLookupCacheTest extends TestCase implements EntityLookupCallb
     private EntityLookupCache<Long, Object, String> entityLookupCacheB;
     private TreeMap<Long, String> database;
     private ControlDAO controlDAO;
+    private int findByKeysCount;
+    private int findByValuesCount;
 
     @Override
     protected void setUp() throws Exception
@@ -266,6 +271,83 @@ public class EntityLookupCacheTest extends TestCase implements EntityLookupCallb
         assertEquals(0, cache.getKeys().size());                    // ... but cache must be empty
     }
 
+    public void testGetByKeys() throws Exception
+    {
+        for (int i = 0; i < 10; i++)
+        {
+            createValue(new TestValue("V" + i));
+        }
+        entityLookupCacheA.setBatchSize(4);
+        // Prime the cache with one entry
+        entityLookupCacheA.getByKey(2L);
+        
+        List<Long> keys = Arrays.asList(9L, 2L, 100L, 1L, 5L, 6L, 7L, 8L, 9L);
+        List<Pair<Long, Object>> entityPairs = entityLookupCacheA.getByKeys(keys);
+        // The cached key is not looked up; 7 misses in batches of 4
+        assertEquals(2, findByKeysCount);
+        // Results are in order, without duplicates or missing entities
+        List<Long> foundKeys = new ArrayList<Long>();
+        for (Pair<Long, Object> entityPair : entityPairs)
+        {
+            foundKeys.add(entityPair.getFirst());
+            assertEquals(new TestValue(database.get(entityPair.getFirst())), entityPair.getSecond());
+        }
+        assertEquals(Arrays.asList(9L, 2L, 1L, 5L, 6L, 7L, 8L), foundKeys);
+        
+        // Everything, including the missing key, is now cached
+        entityPairs = entityLookupCacheA.getByKeys(keys);
+        assertEquals(2, findByKeysCount);
+        assertEquals(7, entityPairs.size());
+        assertNull(entityLookupCacheA.getByKey(100L));
+        // The values were cached too
+        assertEquals(Long.valueOf(5L), entityLookupCacheA.getKey("V4"));
+    }
+    
+    public void testGetOrCreateByValues() throws Exception
+    {
+        createValue(new TestValue("AAA"));
+        createValue(new TestValue("BBB"));
+        // Prime the cache with one entry
+        entityLookupCacheA.getByValue(new TestValue("AAA"));
+        
+        List<Object> values = Arrays.<Object>asList(
+                new TestValue("CCC"), new TestValue("AAA"), new TestValue("BBB"), null, new TestValue("CCC"));
+        List<Pair<Long, Object>> entityPairs = entityLookupCacheA.getOrCreateByValues(values);
+        assertEquals(5, entityPairs.size());
+        // Only the values not in the cache were looked up, together
+        assertEquals(1, findByValuesCount);
+        assertEquals(Long.valueOf(1L), entityPairs.get(1).getFirst());
+        assertEquals(Long.valueOf(2L), entityPairs.get(2).getFirst());
+        // The new value was created once
+        Long newKey = entityPairs.get(0).getFirst();
+        assertEquals(newKey, entityPairs.get(4).getFirst());
+        assertEquals("CCC", database.get(newKey));
+        assertNull(database.get(entityPairs.get(3).getFirst()));
+        assertEquals(4, database.size());
+        
+        // All of them are cached now
+        entityPairs = entityLookupCacheA.getOrCreateByValues(values);
+        assertEquals(1, findByValuesCount);
+        assertEquals(newKey, entityPairs.get(0).getFirst());
+    }
+    
+    public void testBulkLookupsWithoutCache() throws Exception
+    {
+        EntityLookupCache<Long, Object, String> entityLookupCacheNoCache = new EntityLookupCache<Long, Object, String>(this);
+        createValue(new TestValue("AAA"));
+        
+        List<Pair<Long, Object>> entityPairs = entityLookupCacheNoCache.getOrCreateByValues(
+                Arrays.<Object>asList(new TestValue("AAA"), new TestValue("BBB")));
+        assertEquals(Long.valueOf(1L), entityPairs.get(0).getFirst());
+        assertEquals(Long.valueOf(2L), entityPairs.get(1).getFirst());
+        
+        entityPairs = entityLookupCacheNoCache.getByKeys(Arrays.asList(2L, 3L, 1L));
+        assertEquals(2, entityPairs.size());
+        assertEquals(Long.valueOf(2L), entityPairs.get(0).getFirst());
+        assertEquals(Long.valueOf(1L), entityPairs.get(1).getFirst());
+        assertEquals(0, cache.getKeys().size());
+    }
+
     /**
      * Helper class to represent business object
      */
@@ -315,6 +397,24 @@ public class EntityLookupCacheTest extends TestCase implements EntityLookupCallb
         return new Pair<Long, Object>(key, value);
     }
 
+    /**
+     * Counts the calls but otherwise uses the default implementation
+     */
+    public List<Pair<Long, Object>> findByKeys(List<Long> keys)
+    {
+        findByKeysCount++;
+        return EntityLookupCallbackDAO.super.findByKeys(keys);
+    }
+
+    /**
+     * Counts the calls but otherwise uses the default implementation
+     */
+    public List<Pair<Long, Object>> findByValues(List<Object> values)
+    {
+        findByValuesCount++;
+        return EntityLookupCallbackDAO.super.findByValues(values);
+    }
+
     public Pair<Long, Object> findByValue(Object value)
     {
         assertTrue(value == null || value instanceof TestValue);
@@ -0,0 +1,153 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link CacheIndex} class.
+ */
+public class CacheIndexTest
+{
+    private File cacheRoot;
+    private CacheIndex index;
+
+    @Before
+    public void setUp()
+    {
+        cacheRoot = new File(TempFileProvider.getTempDir(), GUID.generate());
+        cacheRoot.mkdirs();
+        cacheRoot.deleteOnExit();
+        index = new CacheIndex();
+    }
+
+    @Test
+    public void tracksUsage()
+    {
+        index.put(path("a"), "store://a", 10);
+        index.put(path("b"), "store://b", 20);
+        assertEquals(2, index.size());
+        assertEquals(30, index.getUsageBytes());
+
+        // Replacing an entry does not count it twice
+        index.put(path("a"), "store://a", 15);
+        assertEquals(2, index.size());
+        assertEquals(35, index.getUsageBytes());
+
+        assertEquals("store://b", index.remove(path("b")).getContentUrl());
+        assertNull(index.remove(path("b")));
+        assertEquals(15, index.getUsageBytes());
+    }
+
+    @Test
+    public void removesLeastRecentlyUsedFirst()
+    {
+        index.put(path("a"), "store://a", 10);
+        index.put(path("b"), "store://b", 10);
+        index.put(path("c"), "store://c", 10);
+        index.touch(path("a"));
+
+        List<CacheIndex.Entry> removed = index.removeLeastRecentlyUsed(15);
+        assertEquals(paths("b", "c"), pathsOf(removed));
+        assertEquals(1, index.size());
+        assertEquals(10, index.getUsageBytes());
+
+        assertEquals(paths("a"), pathsOf(index.removeLeastRecentlyUsed(1000)));
+        assertEquals(0, index.getUsageBytes());
+    }
+
+    @Test
+    public void trimsToSize()
+    {
+        index.put(path("a"), "store://a", 10);
+        index.put(path("b"), "store://b", 10);
+        index.put(path("c"), "store://c", 10);
+
+        assertEquals(paths("a"), pathsOf(index.trimToSize(2)));
+        assertEquals(paths(), pathsOf(index.trimToSize(2)));
+        assertEquals(20, index.getUsageBytes());
+    }
+
+    @Test
+    public void savesAndLoadsJournal() throws Exception
+    {
+        index.put(path("2024/1/1/a.bin"), "store://a", 10);
+        index.put(path("2024/1/1/b.bin"), "store://b", 20);
+        index.put(path("2024/1/1/c.bin"), "store://c", 30);
+        index.touch(path("2024/1/1/a.bin"));
+        File journal = new File(cacheRoot, "journal.bin");
+        journal.deleteOnExit();
+        assertEquals(3, index.save(journal, cacheRoot));
+
+        CacheIndex loadedIndex = new CacheIndex();
+        loadedIndex.put(path("2024/1/2/d.bin"), "store://d", 40);
+        List<CacheIndex.Entry> loaded = loadedIndex.load(journal, cacheRoot);
+
+        assertEquals(paths("2024/1/1/b.bin", "2024/1/1/c.bin", "2024/1/1/a.bin"), pathsOf(loaded));
+        assertEquals("store://b", loaded.get(0).getContentUrl());
+        assertEquals(20, loaded.get(0).getSize());
+        assertEquals(4, loadedIndex.size());
+        assertEquals(100, loadedIndex.getUsageBytes());
+        // Entries added since startup are the most recently used
+        assertEquals(paths("2024/1/1/b.bin", "2024/1/1/c.bin", "2024/1/1/a.bin", "2024/1/2/d.bin"),
+                    pathsOf(loadedIndex.removeLeastRecentlyUsed(1000)));
+    }
+
+    private String path(String relativePath)
+    {
+        return new File(cacheRoot, relativePath).getAbsolutePath();
+    }
+
+    private List<String> paths(String... relativePaths)
+    {
+        List<String> paths = new ArrayList<String>();
+        for (String relativePath : relativePaths)
+        {
+            paths.add(path(relativePath));
+        }
+        return paths;
+    }
+
+    private List<String> pathsOf(List<CacheIndex.Entry> entries)
+    {
+        List<String> paths = new ArrayList<String>();
+        for (CacheIndex.Entry entry : entries)
+        {
+            paths.add(entry.getPath());
+        }
+        return paths;
+    }
+}
@@ -47,7 +47,10 @@ import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -135,6 +138,48 @@ public class CachingContentStoreTest
     }
     
     
+    @Test
+    // Item isn't in cache, so the backing store reader is returned and the item is cached in the background.
+    public void getReaderForItemMissingFromCacheWithAsyncCacheFill()
+    {
+        List<Runnable> fills = new ArrayList<>();
+        cachingStore.setAsyncCacheFill(true);
+        cachingStore.setCacheFillExecutor(fills::add);
+        when(backingStore.getReader("url")).thenReturn(sourceContent);
+        when(sourceContent.getSize()).thenReturn(1274L);
+        when(cache.put("url", sourceContent)).thenReturn(true);
+        when(cache.getReader("url")).thenReturn(cachedContent);
+
+        assertSame(sourceContent, cachingStore.getReader("url"));
+        // A second reader does not start another copy of the same content
+        assertSame(sourceContent, cachingStore.getReader("url"));
+        verify(cache, never()).put(anyString(), any(ContentReader.class));
+        assertEquals(1, fills.size());
+
+        fills.get(0).run();
+
+        verify(cache).put("url", sourceContent);
+        CachingContentStoreMetrics metrics = cachingStore.getMetrics();
+        assertEquals(1, metrics.getFills());
+        assertEquals(1, metrics.getBackgroundFills());
+        assertEquals(1, metrics.getCoalescedReads());
+    }
+
+
+    @Test
+    public void prefetchOnlySchedulesItemsMissingFromCache()
+    {
+        List<Runnable> fills = new ArrayList<>();
+        cachingStore.setCacheFillExecutor(fills::add);
+        when(cache.contains("cached")).thenReturn(true);
+
+        cachingStore.prefetch(Arrays.asList("cached", "missing", "missing", "spoof://abc"));
+
+        assertEquals(1, fills.size());
+        assertEquals(1, cachingStore.getMetrics().getPrefetches());
+    }
+
+
     @Test
     public void getReaderForItemMissingFromCacheWillGiveUpAfterRetrying()
     {
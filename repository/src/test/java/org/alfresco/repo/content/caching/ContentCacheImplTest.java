@@ -32,6 +32,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.content.caching.ContentCacheImpl.NumericFileNameComparator;
@@ -289,6 +290,78 @@ public class ContentCacheImplTest
         Mockito.verify(lookupTable).put(Key.forCacheFile(writer.getFile().getAbsolutePath()), url);
     }
     
+    @Test
+    public void evictRemovesLeastRecentlyUsedFiles()
+    {
+        contentCache.setCacheRoot(new File(TempFileProvider.getTempDir(), GUID.generate()));
+        File fileA = writeToCache("store://a.bin", "0123456789");
+        File fileB = writeToCache("store://b.bin", "0123456789");
+        File fileC = writeToCache("store://c.bin", "0123456789");
+        assertEquals(3, contentCache.getIndexedFileCount());
+        assertEquals(30, contentCache.getIndexedUsageBytes());
+        
+        List<CacheIndex.Entry> evicted = contentCache.evict(15);
+        
+        assertEquals(2, evicted.size());
+        assertFalse("Least recently used file should have been deleted", fileA.exists());
+        assertFalse("Least recently used file should have been deleted", fileB.exists());
+        assertTrue("Most recently used file should remain", fileC.exists());
+        assertEquals(10, contentCache.getIndexedUsageBytes());
+        Mockito.verify(lookupTable).remove(Key.forCacheFile(fileA));
+        Mockito.verify(lookupTable).remove(Key.forCacheFile(fileB));
+        Mockito.verify(lookupTable, Mockito.never()).remove(Key.forCacheFile(fileC));
+    }
+    
+    @Test
+    public void maxIndexEntriesEvictsLeastRecentlyUsedFiles()
+    {
+        contentCache.setCacheRoot(new File(TempFileProvider.getTempDir(), GUID.generate()));
+        contentCache.setMaxIndexEntries(2);
+        File fileA = writeToCache("store://a.bin", "0123456789");
+        File fileB = writeToCache("store://b.bin", "0123456789");
+        File fileC = writeToCache("store://c.bin", "0123456789");
+        
+        assertEquals(2, contentCache.getIndexedFileCount());
+        assertFalse(fileA.exists());
+        assertTrue(fileB.exists());
+        assertTrue(fileC.exists());
+    }
+    
+    @Test
+    public void indexIsReloadedAfterRestart()
+    {
+        File cacheRoot = new File(TempFileProvider.getTempDir(), GUID.generate());
+        contentCache.setCacheRoot(cacheRoot);
+        File fileA = writeToCache("store://a.bin", "0123456789");
+        writeToCache("store://b.bin", "01234");
+        contentCache.shutdown();
+        
+        @SuppressWarnings("unchecked")
+        SimpleCache<Key, String> newLookupTable = Mockito.mock(SimpleCache.class);
+        ContentCacheImpl restartedCache = new ContentCacheImpl();
+        restartedCache.setMemoryStore(newLookupTable);
+        restartedCache.setCacheRoot(cacheRoot);
+        restartedCache.init();
+        
+        assertEquals(2, restartedCache.getIndexedFileCount());
+        assertEquals(15, restartedCache.getIndexedUsageBytes());
+        Mockito.verify(newLookupTable).put(Key.forUrl("store://a.bin"), fileA.getAbsolutePath());
+        Mockito.verify(newLookupTable).put(Key.forCacheFile(fileA), "store://a.bin");
+        assertFalse("Journal is consumed on startup", new File(cacheRoot, "cache-index.bin").exists());
+        
+        // The oldest entry is evicted first
+        restartedCache.evict(1);
+        assertFalse(fileA.exists());
+    }
+    
+    private File writeToCache(String url, String content)
+    {
+        FileContentWriter writer = (FileContentWriter) contentCache.getWriter(url);
+        writer.putContent(content);
+        writer.getFile().deleteOnExit();
+        return writer.getFile();
+    }
+    
     @Test
     public void compareNumericFileNames()
     {
@@ -0,0 +1,105 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.cleanup;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.alfresco.repo.content.ContentStore;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that {@link EagerContentStoreCleaner#deleteFromStores(java.util.Collection)} uses the store's bulk delete,
+ * unless a subclass has each URL deleted on its own.
+ */
+public class EagerContentStoreCleanerBulkDeleteTest
+{
+    private static final List<String> URLS = Arrays.asList("store://a", "store://b", "store://c");
+
+    private ContentStore store;
+
+    @Before
+    public void setUp()
+    {
+        store = mock(ContentStore.class);
+        when(store.isWriteSupported()).thenReturn(true);
+        when(store.isContentUrlSupported(anyString())).thenReturn(true);
+    }
+
+    @Test
+    public void testBulkDelete()
+    {
+        when(store.delete(anyCollection())).thenReturn(Collections.singletonMap("store://b", null));
+        EagerContentStoreCleaner cleaner = new EagerContentStoreCleaner();
+        cleaner.setStores(Collections.singletonList(store));
+
+        Set<String> notDeleted = cleaner.deleteFromStores(URLS);
+
+        assertEquals(Collections.singleton("store://b"), notDeleted);
+        verify(store, never()).delete(anyString());
+    }
+
+    @Test
+    public void testEachUrlDeletedOnItsOwn()
+    {
+        final List<String> cleansed = new ArrayList<String>();
+        EagerContentStoreCleaner cleaner = new EagerContentStoreCleaner()
+        {
+            @Override
+            protected boolean deleteFromStore(String contentUrl, ContentStore store)
+            {
+                cleansed.add(contentUrl);
+                return !contentUrl.equals("store://c");
+            }
+
+            @Override
+            protected Set<String> deleteFromStore(Collection<String> contentUrls, ContentStore store)
+            {
+                return deleteEachFromStore(contentUrls, store);
+            }
+        };
+        cleaner.setStores(Collections.singletonList(store));
+
+        Set<String> notDeleted = cleaner.deleteFromStores(URLS);
+
+        assertEquals(URLS, cleansed);
+        assertEquals(Collections.singleton("store://c"), notDeleted);
+        verify(store, never()).delete(anyCollection());
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.dedup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.filestore.FileContentStore;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.alfresco.util.testing.category.PerformanceTests;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.springframework.context.support.StaticApplicationContext;
+
+/**
+ * Compares the write throughput and disk usage of the {@link DeduplicatingContentStore} with
+ * the {@link FileContentStore} for a workload where a proportion of the content is repeated.
+ */
+@Category(PerformanceTests.class)
+public class DeduplicatingContentStoreScalabilityTest
+{
+    private static final Log logger = LogFactory.getLog(DeduplicatingContentStoreScalabilityTest.class);
+
+    private static final int WRITER_THREADS = 8;
+    private static final int WRITE_COUNT = 4000;
+    private static final int DISTINCT_COUNT = 1000;
+    private static final int CONTENT_SIZE = 64 * 1024;
+
+    private File rootDir;
+    private byte[][] payloads;
+
+    @Before
+    public void setUp()
+    {
+        rootDir = new File(TempFileProvider.getTempDir(), getClass().getSimpleName() + "-" + GUID.generate());
+        Random random = new Random(42L);
+        payloads = new byte[DISTINCT_COUNT][CONTENT_SIZE];
+        for (byte[] payload : payloads)
+        {
+            random.nextBytes(payload);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        FileUtils.deleteDirectory(rootDir);
+    }
+
+    @Test
+    public void testWriteThroughputAndDiskUsage() throws Exception
+    {
+        StaticApplicationContext ctx = new StaticApplicationContext();
+        ctx.refresh();
+        File fileStoreRoot = new File(rootDir, "file");
+        File dedupStoreRoot = new File(rootDir, "dedup");
+        FileContentStore fileStore = new FileContentStore(ctx, fileStoreRoot);
+        DeduplicatingContentStore dedupStore = new DeduplicatingContentStore(dedupStoreRoot);
+
+        // Warm up both code paths before measuring
+        writeContent(new FileContentStore(ctx, new File(rootDir, "warmup-file")), WRITE_COUNT / 10);
+        writeContent(new DeduplicatingContentStore(new File(rootDir, "warmup-dedup")), WRITE_COUNT / 10);
+
+        long fileStoreMs = writeContent(fileStore, WRITE_COUNT);
+        long dedupStoreMs = writeContent(dedupStore, WRITE_COUNT);
+        long fileStoreBytes = getDiskUsage(fileStoreRoot);
+        long dedupStoreBytes = getDiskUsage(dedupStoreRoot);
+
+        logger.info(String.format(
+                "Wrote %d items of %d bytes (%d distinct) with %d threads:%n" +
+                "   FileContentStore:          %6d ms, %8.1f writes/s, %,14d bytes on disk%n" +
+                "   DeduplicatingContentStore: %6d ms, %8.1f writes/s, %,14d bytes on disk",
+                WRITE_COUNT, CONTENT_SIZE, DISTINCT_COUNT, WRITER_THREADS,
+                fileStoreMs, WRITE_COUNT * 1000.0 / Math.max(1L, fileStoreMs), fileStoreBytes,
+                dedupStoreMs, WRITE_COUNT * 1000.0 / Math.max(1L, dedupStoreMs), dedupStoreBytes));
+
+        assertEquals((long) WRITE_COUNT * CONTENT_SIZE, fileStoreBytes);
+        assertTrue("Repeated content must only be stored once", dedupStoreBytes < fileStoreBytes);
+        assertTrue("Distinct content must all be stored", dedupStoreBytes >= (long) DISTINCT_COUNT * CONTENT_SIZE);
+    }
+
+    /**
+     * @return          Returns the time taken in milliseconds
+     */
+    private long writeContent(final ContentStore store, int count) throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(WRITER_THREADS);
+        try
+        {
+            long start = System.nanoTime();
+            List<Future<?>> writes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+            {
+                final byte[] payload = payloads[i % DISTINCT_COUNT];
+                writes.add(executor.submit(() -> {
+                    ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+                    try (OutputStream os = writer.getContentOutputStream())
+                    {
+                        os.write(payload);
+                    }
+                    return writer.getContentUrl();
+                }));
+            }
+            for (Future<?> write : writes)
+            {
+                write.get();
+            }
+            return (System.nanoTime() - start) / 1000000L;
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    private static long getDiskUsage(File root) throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(root.toPath()))
+        {
+            return paths.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+}
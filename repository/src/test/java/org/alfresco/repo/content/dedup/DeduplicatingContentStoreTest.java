@@ -0,0 +1,220 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.dedup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.alfresco.repo.content.AbstractWritableContentStoreTest;
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.test_category.OwnJVMTestsCategory;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests read and write functionality for the store along with the sharing of identical content.
+ * 
+ * @see org.alfresco.repo.content.dedup.DeduplicatingContentStore
+ */
+@Category(OwnJVMTestsCategory.class)
+public class DeduplicatingContentStoreTest extends AbstractWritableContentStoreTest
+{
+    private File rootDir;
+    private DeduplicatingContentStore store;
+
+    @Before
+    public void before() throws Exception
+    {
+        rootDir = new File(TempFileProvider.getTempDir(), getClass().getSimpleName() + "-" + GUID.generate());
+        store = new DeduplicatingContentStore(rootDir);
+        // Do not need super class's transactions
+    }
+
+    @After
+    public void after() throws Exception
+    {
+        // Do not need super class's transactions
+        FileUtils.deleteDirectory(rootDir);
+    }
+
+    @Override
+    protected ContentStore getStore()
+    {
+        return store;
+    }
+
+    @Test
+    public void testIdenticalContentSharesBlob() throws Exception
+    {
+        String content = "Content for " + getName();
+        String urlA = putContent(content);
+        String urlB = putContent(content);
+        String urlC = putContent("Other content for " + getName());
+
+        assertFalse("Each write must have its own URL", urlA.equals(urlB));
+        assertEquals(content, store.getReader(urlA).getContentString());
+        assertEquals(content, store.getReader(urlB).getContentString());
+        assertEquals("Identical content must be stored once", 2, countBlobs());
+    }
+
+    @Test
+    public void testBlobRemovedWithLastReference() throws Exception
+    {
+        String content = "Content for " + getName();
+        String urlA = putContent(content);
+        String urlB = putContent(content);
+
+        assertTrue(store.delete(urlA));
+        assertFalse("Deleted URL must be gone", store.exists(urlA));
+        assertFalse(store.getReader(urlA).exists());
+        assertEquals("Content still referenced by another URL", content, store.getReader(urlB).getContentString());
+        assertEquals(1, countBlobs());
+
+        assertTrue(store.delete(urlB));
+        assertFalse(store.exists(urlB));
+        assertEquals("Content must be removed with its last reference", 0, countBlobs());
+
+        // The same content can be written again afterwards
+        String urlC = putContent(content);
+        assertEquals(content, store.getReader(urlC).getContentString());
+        assertEquals(1, countBlobs());
+    }
+
+    @Test
+    public void testDeleteUnwrittenUrl() throws Exception
+    {
+        ContentWriter writer = getWriter();
+        String contentUrl = writer.getContentUrl();
+        assertTrue("A new writer reserves its URL", store.exists(contentUrl));
+        assertFalse(store.getReader(contentUrl).exists());
+
+        assertTrue(store.delete(contentUrl));
+        assertFalse(store.exists(contentUrl));
+        assertTrue("Deleting a missing URL is not a failure", store.delete(contentUrl));
+        assertEquals(0, countBlobs());
+    }
+
+    @Test
+    public void testDeleteWhileWriting() throws Exception
+    {
+        ContentWriter writer = getWriter();
+        String contentUrl = writer.getContentUrl();
+        OutputStream os = writer.getContentOutputStream();
+        os.write(("Content for " + getName()).getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(store.delete(contentUrl));
+        try
+        {
+            os.close();
+            fail("Content must not be published to a deleted URL");
+        }
+        catch (ContentIOException | IOException e)
+        {
+            // Expected
+        }
+        assertFalse("Deleted URL must stay deleted", store.exists(contentUrl));
+        assertFalse(store.getReader(contentUrl).exists());
+        assertEquals("Content of a deleted URL must be discarded", 0, countBlobs());
+    }
+
+    @Test
+    public void testConcurrentIdenticalWrites() throws Exception
+    {
+        final String content = "Content for " + getName();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<String> contentUrls = new ArrayList<>();
+        try
+        {
+            List<Future<String>> writes = new ArrayList<>();
+            for (int i = 0; i < 64; i++)
+            {
+                writes.add(executor.submit(new Callable<String>()
+                {
+                    public String call() throws Exception
+                    {
+                        return putContent(content);
+                    }
+                }));
+            }
+            for (Future<String> write : writes)
+            {
+                contentUrls.add(write.get());
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        assertEquals(1, countBlobs());
+        for (String contentUrl : contentUrls)
+        {
+            assertEquals(content, store.getReader(contentUrl).getContentString());
+        }
+        
+        assertTrue(store.delete(contentUrls).isEmpty());
+        assertEquals(0, countBlobs());
+    }
+
+    private String putContent(String content)
+    {
+        ContentWriter writer = getWriter();
+        assertNotNull(writer);
+        writer.putContent(content);
+        return writer.getContentUrl();
+    }
+
+    private long countBlobs() throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(new File(rootDir, "blobs").toPath()))
+        {
+            return paths.filter(path -> path.toString().endsWith(".bin")).count();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import org.alfresco.util.TempFileProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link org.alfresco.service.cmr.repository.ContentReader#transferTo(long, long, WritableByteChannel)}
+ * on file content, both directly from the file channel and through a buffer.
+ */
+public class FileContentReaderTransferTest
+{
+    private File file;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        content = new byte[200 * 1024 + 17];
+        for (int i = 0; i < content.length; i++)
+        {
+            content[i] = (byte) (i % 251);
+        }
+        file = TempFileProvider.createTempFile(getClass().getSimpleName(), ".bin");
+        try (OutputStream os = new FileOutputStream(file))
+        {
+            os.write(content);
+        }
+    }
+
+    private byte[] transfer(boolean allowRandomAccess, long position, long count, long expectedCount)
+    {
+        FileContentReader reader = new FileContentReader(file);
+        reader.setAllowRandomAccess(allowRandomAccess);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WritableByteChannel target = Channels.newChannel(bytes);
+
+        long transferred = reader.transferTo(position, count, target);
+
+        assertEquals(expectedCount, transferred);
+        assertTrue("Reader channel should be closed after the transfer", reader.isClosed());
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void testTransferAll()
+    {
+        assertArrayEquals(content, transfer(true, 0L, content.length, content.length));
+        assertArrayEquals(content, transfer(false, 0L, content.length, content.length));
+    }
+
+    @Test
+    public void testTransferRange()
+    {
+        byte[] expected = Arrays.copyOfRange(content, 70000, 70000 + 100000);
+        assertArrayEquals(expected, transfer(true, 70000L, 100000L, 100000L));
+        assertArrayEquals(expected, transfer(false, 70000L, 100000L, 100000L));
+    }
+
+    @Test
+    public void testTransferPastEnd()
+    {
+        byte[] expected = Arrays.copyOfRange(content, content.length - 10, content.length);
+        assertArrayEquals(expected, transfer(true, content.length - 10, 1000L, 10L));
+        assertArrayEquals(expected, transfer(false, content.length - 10, 1000L, 10L));
+        assertEquals(0, transfer(true, content.length + 10, 1000L, 0L).length);
+        assertEquals(0, transfer(false, content.length + 10, 1000L, 0L).length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativePosition()
+    {
+        new FileContentReader(file).transferTo(-1L, 10L, Channels.newChannel(new ByteArrayOutputStream()));
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.alfresco.repo.content.ContentContext;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the bulk {@link FileContentStore#delete(java.util.Collection) delete} of a {@link FileContentStore}.
+ */
+public class FileContentStoreBulkDeleteTest
+{
+    private ExecutorService executor;
+    private FileContentStore store;
+
+    @Before
+    public void setUp()
+    {
+        executor = Executors.newFixedThreadPool(4);
+        File rootDir = new File(TempFileProvider.getTempDir(), GUID.generate());
+        store = new FileContentStore(rootDir.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    private List<String> writeContent(int count)
+    {
+        List<String> contentUrls = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            ContentWriter writer = store.getWriter(ContentContext.NULL_CONTEXT);
+            writer.putContent("Content " + i);
+            contentUrls.add(writer.getContentUrl());
+        }
+        return contentUrls;
+    }
+
+    @Test
+    public void testSequentialDelete()
+    {
+        List<String> contentUrls = writeContent(10);
+
+        Map<String, Throwable> failures = store.delete(contentUrls);
+
+        assertTrue("Unexpected failures: " + failures, failures.isEmpty());
+        for (String contentUrl : contentUrls)
+        {
+            assertFalse("Content not deleted: " + contentUrl, store.exists(contentUrl));
+        }
+    }
+
+    @Test
+    public void testParallelDelete()
+    {
+        store.setDeleteExecutor(executor);
+        List<String> contentUrls = writeContent(200);
+        // Content that is already gone counts as deleted
+        contentUrls.add(FileContentStore.STORE_PROTOCOL + "://2024/1/1/0/0/" + GUID.generate() + ".bin");
+
+        Map<String, Throwable> failures = store.delete(contentUrls);
+
+        assertTrue("Unexpected failures: " + failures, failures.isEmpty());
+        for (String contentUrl : contentUrls)
+        {
+            assertFalse("Content not deleted: " + contentUrl, store.exists(contentUrl));
+        }
+    }
+
+    @Test
+    public void testParallelDeleteReportsFailures()
+    {
+        store.setDeleteExecutor(executor);
+        List<String> contentUrls = writeContent(5);
+        // Spoofed content can never be deleted
+        String spoofedUrl = SpoofedTextContentReader.createContentUrl(Locale.ENGLISH, 12345L, 1024L);
+        contentUrls.add(spoofedUrl);
+        // Content outside of the store root is refused
+        String outsideUrl = FileContentStore.STORE_PROTOCOL + "://../../outside.bin";
+        contentUrls.add(outsideUrl);
+
+        Map<String, Throwable> failures = store.delete(contentUrls);
+
+        assertEquals("Unexpected failures: " + failures, 2, failures.size());
+        assertTrue(failures.containsKey(spoofedUrl));
+        assertNull("Spoofed content delete does not fail with an exception", failures.get(spoofedUrl));
+        assertTrue(failures.containsKey(outsideUrl));
+        assertTrue(failures.get(outsideUrl) instanceof RuntimeException);
+        for (String contentUrl : contentUrls.subList(0, 5))
+        {
+            assertFalse("Content not deleted: " + contentUrl, store.exists(contentUrl));
+        }
+    }
+
+    @Test
+    public void testReadOnlyStore()
+    {
+        store.setDeleteExecutor(executor);
+        List<String> contentUrls = writeContent(3);
+        store.setReadOnly(true);
+        try
+        {
+            store.delete(contentUrls);
+            fail("Read-only store must not allow deletes");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            // Expected
+        }
+        for (String contentUrl : contentUrls)
+        {
+            assertTrue("Content deleted from read-only store: " + contentUrl, store.exists(contentUrl));
+        }
+    }
+}
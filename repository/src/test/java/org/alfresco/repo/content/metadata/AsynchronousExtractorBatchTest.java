@@ -0,0 +1,190 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.metadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.content.transform.TransformerDebug;
+import org.alfresco.repo.node.NodeBulkLoader;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.NamespacePrefixResolver;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests how the {@link AsynchronousExtractor} applies extracted metadata, on its own or in batches.
+ */
+public class AsynchronousExtractorBatchTest
+{
+    private static final String TITLE_METADATA = "{\"" + ContentModel.PROP_TITLE + "\":\"Extracted title\"}";
+
+    private final NodeRef nodeRef1 = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "node1");
+    private final NodeRef nodeRef2 = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "node2");
+    private final NodeRef nodeRef3 = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "node3");
+
+    private AsynchronousExtractor extractor;
+    private NodeService nodeService;
+    private NodeBulkLoader nodeBulkLoader;
+    private ExecutorService executorService;
+    private final AtomicBoolean failNextTransaction = new AtomicBoolean();
+
+    @Before
+    public void setUp() throws Throwable
+    {
+        nodeService = mock(NodeService.class);
+        when(nodeService.exists(any(NodeRef.class))).thenReturn(true);
+        when(nodeService.getProperties(any(NodeRef.class))).then(invocation -> new HashMap<QName, Serializable>());
+
+        NamespacePrefixResolver namespacePrefixResolver = mock(NamespacePrefixResolver.class);
+        when(namespacePrefixResolver.getPrefixes(anyString())).thenReturn(Collections.singletonList("cm"));
+
+        RetryingTransactionHelper txnHelper = mock(RetryingTransactionHelper.class);
+        when(txnHelper.doInTransaction(any(), anyBoolean(), anyBoolean())).then(invocation -> {
+            if (failNextTransaction.getAndSet(false))
+            {
+                throw new IllegalStateException("Simulated failure");
+            }
+            RetryingTransactionCallback<?> callback = invocation.getArgument(0);
+            return callback.execute();
+        });
+        TransactionService transactionService = mock(TransactionService.class);
+        when(transactionService.getRetryingTransactionHelper()).thenReturn(txnHelper);
+
+        nodeBulkLoader = mock(NodeBulkLoader.class);
+        executorService = Executors.newSingleThreadExecutor();
+
+        extractor = new AsynchronousExtractor();
+        extractor.setNodeService(nodeService);
+        extractor.setNamespacePrefixResolver(namespacePrefixResolver);
+        extractor.setDictionaryService(mock(DictionaryService.class));
+        extractor.setTransformerDebug(mock(TransformerDebug.class));
+        extractor.setTransactionService(transactionService);
+        extractor.setNodeBulkLoader(nodeBulkLoader);
+        extractor.setExecutorService(executorService);
+    }
+
+    @After
+    public void tearDown()
+    {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testMetadataAppliedImmediatelyByDefault()
+    {
+        extractor.setMetadata(nodeRef1, metadata());
+
+        verify(nodeService).setProperties(eq(nodeRef1), eq(titleProperties()));
+        verify(nodeBulkLoader, never()).cacheNodes(any());
+        assertEquals(0, extractor.getPendingMetadataCount());
+    }
+
+    @Test
+    public void testMetadataAppliedInBatches()
+    {
+        extractor.setMetadataBatchSize(3);
+        extractor.setMetadataBatchDelayMs(5000);
+
+        extractor.setMetadata(nodeRef1, metadata());
+        extractor.setMetadata(nodeRef2, metadata());
+        extractor.setMetadata(nodeRef3, metadata());
+
+        verify(nodeBulkLoader, timeout(5000)).cacheNodes(Arrays.asList(nodeRef1, nodeRef2, nodeRef3));
+        verify(nodeService, timeout(5000)).setProperties(eq(nodeRef1), eq(titleProperties()));
+        verify(nodeService, timeout(5000)).setProperties(eq(nodeRef2), eq(titleProperties()));
+        verify(nodeService, timeout(5000)).setProperties(eq(nodeRef3), eq(titleProperties()));
+    }
+
+    @Test
+    public void testFailedBatchAppliedOneNodeAtATime()
+    {
+        extractor.setMetadataBatchSize(2);
+        extractor.setMetadataBatchDelayMs(5000);
+        failNextTransaction.set(true);
+
+        extractor.setMetadata(nodeRef1, metadata());
+        extractor.setMetadata(nodeRef2, metadata());
+
+        verify(nodeBulkLoader, timeout(5000)).cacheNodes(Collections.singletonList(nodeRef1));
+        verify(nodeBulkLoader, timeout(5000)).cacheNodes(Collections.singletonList(nodeRef2));
+        verify(nodeService, timeout(5000)).setProperties(eq(nodeRef1), eq(titleProperties()));
+        verify(nodeService, timeout(5000)).setProperties(eq(nodeRef2), eq(titleProperties()));
+    }
+
+    @Test
+    public void testDeletedNodesSkippedInBatch()
+    {
+        when(nodeService.exists(nodeRef2)).thenReturn(false);
+        extractor.setMetadataBatchSize(2);
+        extractor.setMetadataBatchDelayMs(5000);
+
+        extractor.setMetadata(nodeRef1, metadata());
+        extractor.setMetadata(nodeRef2, metadata());
+
+        verify(nodeService, timeout(5000)).setProperties(eq(nodeRef1), eq(titleProperties()));
+        verify(nodeService, never()).setProperties(eq(nodeRef2), any());
+    }
+
+    private InputStream metadata()
+    {
+        return new ByteArrayInputStream(TITLE_METADATA.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Map<QName, Serializable> titleProperties()
+    {
+        return Collections.singletonMap(ContentModel.PROP_TITLE, "Extracted title");
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ * Tests for {@link IntermediateContentWriter}.
+ */
+public class IntermediateContentWriterTest
+{
+    private static byte[] content(int size)
+    {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++)
+        {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    @Test
+    public void smallContentStaysInMemory() throws Exception
+    {
+        byte[] bytes = content(1000);
+        IntermediateContentWriter writer = new IntermediateContentWriter("test_", ".bin", 1024);
+        writer.setMimetype("application/octet-stream");
+        writer.putContent(new ByteArrayInputStream(bytes));
+
+        assertFalse(writer.isOnDisk());
+        assertEquals(1000, writer.getSize());
+        ContentReader reader = writer.getReader();
+        assertEquals(writer.getContentUrl(), reader.getContentUrl());
+        assertEquals("application/octet-stream", reader.getMimetype());
+        assertEquals(1000, reader.getSize());
+        assertTrue(reader.exists());
+        assertTrue(Arrays.equals(bytes, IOUtils.toByteArray(reader.getContentInputStream())));
+        // The content may be read more than once
+        assertTrue(Arrays.equals(bytes, IOUtils.toByteArray(reader.getReader().getContentInputStream())));
+    }
+
+    @Test
+    public void largeContentIsMovedToDisk() throws Exception
+    {
+        byte[] bytes = content(100000);
+        IntermediateContentWriter writer = new IntermediateContentWriter("test_", ".bin", 1024);
+        writer.putContent(new ByteArrayInputStream(bytes));
+
+        assertTrue(writer.isOnDisk());
+        assertEquals(100000, writer.getSize());
+        ContentReader reader = writer.getReader();
+        assertEquals(writer.getContentUrl(), reader.getContentUrl());
+        assertEquals(100000, reader.getSize());
+        assertTrue(Arrays.equals(bytes, IOUtils.toByteArray(reader.getContentInputStream())));
+    }
+
+    @Test
+    public void readerIsEmptyUntilWriterIsClosed()
+    {
+        IntermediateContentWriter writer = new IntermediateContentWriter("test_", ".bin", 1024);
+        assertFalse(writer.getReader().exists());
+    }
+}
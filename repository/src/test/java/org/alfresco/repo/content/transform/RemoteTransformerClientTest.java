@@ -37,6 +37,7 @@ import org.apache.http.StatusLine;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
@@ -114,6 +115,12 @@ public class RemoteTransformerClientTest
 
     }
 
+    @After
+    public void tearDown()
+    {
+        remoteTransformerClient.close();
+    }
+
     private void assertRequestTransformError(String expectedMessage)
     {
         try
@@ -0,0 +1,158 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.sun.net.httpserver.HttpServer;
+import org.alfresco.httpclient.HttpClientConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RemoteTransformerConnectionPool}.
+ */
+public class RemoteTransformerConnectionPoolTest
+{
+    private HttpServer server;
+    private String baseUrl;
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private HttpClientConfig httpClientConfig;
+    private RemoteTransformerConnectionPools pools;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/version", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            byte[] body = "1.0".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort() + "/";
+
+        httpClientConfig = mock(HttpClientConfig.class);
+        when(httpClientConfig.getMaxTotalConnections()).thenReturn(Optional.of(4));
+        when(httpClientConfig.getMaxHostConnections()).thenReturn(Optional.of(2));
+        pools = new RemoteTransformerConnectionPools();
+    }
+
+    @After
+    public void tearDown()
+    {
+        pools.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void poolIsSharedByBaseUrl()
+    {
+        RemoteTransformerConnectionPool pool = pools.getPool(baseUrl, httpClientConfig);
+        assertSame(pool, pools.getPool(baseUrl, httpClientConfig));
+        assertEquals(4, pool.getMaxConnections());
+    }
+
+    @Test
+    public void closedPoolsAreDiscarded() throws Exception
+    {
+        RemoteTransformerConnectionPool pool = pools.getPool(baseUrl, httpClientConfig);
+        try (CloseableHttpResponse response = pool.getHttpClient().execute(new HttpGet(baseUrl + "version")))
+        {
+            assertEquals("1.0", EntityUtils.toString(response.getEntity()));
+        }
+        assertEquals(1, pool.getAvailableConnections());
+
+        pools.close();
+        assertTrue(pools.getPools().isEmpty());
+        assertEquals("Connections must be closed", 0, pool.getAvailableConnections());
+        try
+        {
+            pools.getPool(baseUrl, httpClientConfig);
+            fail("Closed pools must not hand out connections");
+        }
+        catch (IllegalStateException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void connectionsAreReused() throws Exception
+    {
+        RemoteTransformerConnectionPool pool = pools.getPool(baseUrl, httpClientConfig);
+        for (int i = 0; i < 10; i++)
+        {
+            try (CloseableHttpResponse response = pool.getHttpClient().execute(new HttpGet(baseUrl + "version")))
+            {
+                assertEquals("1.0", EntityUtils.toString(response.getEntity()));
+            }
+        }
+        assertEquals("Expected a single keep-alive connection", 1, clientPorts.size());
+        assertEquals(0, pool.getLeasedConnections());
+        assertEquals(1, pool.getAvailableConnections());
+    }
+
+    @Test
+    public void requestTimesAreRecordedInBuckets()
+    {
+        RemoteTransformerConnectionPool pool = pools.getPool(baseUrl, httpClientConfig);
+        pool.recordRequest(5, true);
+        pool.recordRequest(10, true);
+        pool.recordRequest(400, true);
+        pool.recordRequest(120000, false);
+
+        Map<String, Long> histogram = pool.getRequestTimeHistogram();
+        assertEquals(2L, (long) histogram.get("<=10ms"));
+        assertEquals(1L, (long) histogram.get("<=500ms"));
+        assertEquals(1L, (long) histogram.get(">60000ms"));
+        assertEquals(0L, (long) histogram.get("<=50ms"));
+        assertEquals(4, pool.getRequestCount());
+        assertEquals(1, pool.getFailedRequestCount());
+        assertEquals(30103.75, pool.getAverageRequestMillis(), 0.001);
+    }
+}
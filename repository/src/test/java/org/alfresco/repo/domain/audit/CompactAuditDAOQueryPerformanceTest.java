@@ -0,0 +1,225 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.alfresco.repo.domain.audit.ibatis.CompactAuditDAOImpl;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.cmr.audit.AuditQueryParameters;
+import org.alfresco.service.cmr.audit.AuditService.AuditQueryCallback;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.test_category.OwnJVMTestsCategory;
+import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.GUID;
+import org.alfresco.util.testing.category.DBTests;
+import org.alfresco.util.testing.category.PerformanceTests;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Compares audit queries by user, by time and by path and value against the property tables and against the
+ * compact tables written by the {@link CompactAuditDAOImpl}.
+ * <p>
+ * Each application is loaded with <tt>-Daudit.perf.entries=N</tt> entries (100,000 by default). The figures that
+ * matter are only seen with a realistic volume, e.g. <tt>-Daudit.perf.entries=100000000</tt>, which takes several
+ * hours to load and needs a dedicated database. The compact timings include the (empty) lookup of legacy entries
+ * that is made while the property tables still hold entries.
+ */
+@Category({OwnJVMTestsCategory.class, DBTests.class, PerformanceTests.class})
+public class CompactAuditDAOQueryPerformanceTest
+{
+    private static final Log logger = LogFactory.getLog(CompactAuditDAOQueryPerformanceTest.class);
+
+    private static final int ENTRY_COUNT = Integer.getInteger("audit.perf.entries", 100000);
+    private static final int ENTRIES_PER_TXN = 1000;
+    private static final int USER_COUNT = 1000;
+    private static final int QUERY_COUNT = 20;
+    private static final int MAX_RESULTS = 100;
+
+    private ApplicationContext ctx = ApplicationContextHelper.getApplicationContext();
+    private RetryingTransactionHelper txnHelper;
+    private CompactAuditDAOImpl auditDAO;
+    private boolean wasEnabled;
+
+    @Before
+    public void setUp()
+    {
+        TransactionService transactionService = (TransactionService) ctx.getBean("TransactionService");
+        txnHelper = transactionService.getRetryingTransactionHelper();
+        auditDAO = (CompactAuditDAOImpl) ctx.getBean("auditDAO");
+        wasEnabled = auditDAO.isEnabled();
+    }
+
+    @After
+    public void tearDown()
+    {
+        auditDAO.setEnabled(wasEnabled);
+    }
+
+    @Test
+    public void testQueryTimes() throws Exception
+    {
+        URL url = getClass().getResource("/alfresco/audit/alfresco-audit-access.xml");
+        Long modelId = txnHelper.doInTransaction(() -> auditDAO.getOrCreateAuditModel(url).getFirst());
+
+        auditDAO.setEnabled(false);
+        String legacyApp = "perf-legacy-" + GUID.generate();
+        long legacyStart = loadEntries(legacyApp, modelId);
+        long[] legacy = runQueries(legacyApp, legacyStart);
+
+        auditDAO.setEnabled(true);
+        String compactApp = "perf-compact-" + GUID.generate();
+        long compactStart = loadEntries(compactApp, modelId);
+        long[] compact = runQueries(compactApp, compactStart);
+
+        logger.info(String.format(
+                "Audit queries over %,d entries (%d queries each, average ms):%n" +
+                "   LAYOUT     BY USER     BY TIME   BY VALUE%n" +
+                "   Legacy  %10.2f  %10.2f %10.2f%n" +
+                "   Compact %10.2f  %10.2f %10.2f",
+                ENTRY_COUNT, QUERY_COUNT,
+                legacy[0] / 1e6 / QUERY_COUNT, legacy[1] / 1e6 / QUERY_COUNT, legacy[2] / 1e6 / QUERY_COUNT,
+                compact[0] / 1e6 / QUERY_COUNT, compact[1] / 1e6 / QUERY_COUNT, compact[2] / 1e6 / QUERY_COUNT));
+    }
+
+    /**
+     * @return          Returns the audit time of the first entry
+     */
+    private long loadEntries(String appName, Long modelId)
+    {
+        Long appId = txnHelper.doInTransaction(() -> auditDAO.createAuditApplication(appName, modelId).getId(), false, true);
+        long start = System.currentTimeMillis() - ENTRY_COUNT;
+        long loadStart = System.nanoTime();
+        for (int first = 0; first < ENTRY_COUNT; first += ENTRIES_PER_TXN)
+        {
+            final int from = first;
+            final int to = Math.min(ENTRY_COUNT, first + ENTRIES_PER_TXN);
+            txnHelper.doInTransaction(() -> {
+                for (int i = from; i < to; i++)
+                {
+                    String user = "user" + (i % USER_COUNT);
+                    Map<String, Serializable> values = new HashMap<>();
+                    values.put("/" + appName + "/login/user", user);
+                    values.put("/" + appName + "/login/client", "client" + (i % 7));
+                    values.put("/" + appName + "/login/sequence", Integer.valueOf(i));
+                    auditDAO.createAuditEntry(appId, start + i, user, values);
+                }
+                return null;
+            }, false, true);
+        }
+        logger.info(String.format("Loaded %,d entries into %s in %d ms",
+                ENTRY_COUNT, appName, (System.nanoTime() - loadStart) / 1000000L));
+        return start;
+    }
+
+    /**
+     * @return          Returns the total nanoseconds spent querying by user, by time and by value
+     */
+    private long[] runQueries(String appName, long start)
+    {
+        long[] times = new long[3];
+        for (int q = 0; q < QUERY_COUNT; q++)
+        {
+            int i = (int) ((q * 7919L) % ENTRY_COUNT);
+            String user = "user" + (i % USER_COUNT);
+
+            AuditQueryParameters byUser = new AuditQueryParameters();
+            byUser.setApplicationName(appName);
+            byUser.setUser(user);
+            byUser.setForward(false);
+            times[0] += timeQuery(byUser, user, -1);
+
+            AuditQueryParameters byTime = new AuditQueryParameters();
+            byTime.setApplicationName(appName);
+            byTime.setFromTime(start + i);
+            byTime.setToTime(start + i + MAX_RESULTS);
+            times[1] += timeQuery(byTime, null, Math.min(MAX_RESULTS, ENTRY_COUNT - i));
+
+            AuditQueryParameters byValue = new AuditQueryParameters();
+            byValue.setApplicationName(appName);
+            byValue.addSearchKey("/" + appName + "/login/sequence", Integer.valueOf(i));
+            times[2] += timeQuery(byValue, null, 1);
+        }
+        return times;
+    }
+
+    private long timeQuery(AuditQueryParameters params, String expectedUser, int expectedCount)
+    {
+        int[] count = new int[1];
+        AuditQueryCallback callback = new AuditQueryCallback()
+        {
+            @Override
+            public boolean valuesRequired()
+            {
+                return false;
+            }
+
+            @Override
+            public boolean handleAuditEntry(Long entryId, String applicationName, String user, long time, Map<String, Serializable> values)
+            {
+                if (expectedUser != null)
+                {
+                    assertEquals(expectedUser, user);
+                }
+                count[0]++;
+                return true;
+            }
+
+            @Override
+            public boolean handleAuditEntryError(Long entryId, String errorMsg, Throwable error)
+            {
+                throw new AssertionError(errorMsg, error);
+            }
+        };
+        long before = System.nanoTime();
+        txnHelper.doInTransaction(() -> {
+            auditDAO.findAuditEntries(callback, params, MAX_RESULTS);
+            return null;
+        }, true, false);
+        long elapsed = System.nanoTime() - before;
+        if (expectedCount >= 0)
+        {
+            assertEquals(expectedCount, count[0]);
+        }
+        else
+        {
+            assertTrue("Expected entries for the user", count[0] > 0);
+        }
+        return elapsed;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.junit.Test;
+
+/**
+ * Tests the encoding and hashing of audit values by {@link CompactAuditValues}.
+ */
+public class CompactAuditValuesTest
+{
+    @Test
+    public void testRoundTripOfTypes()
+    {
+        Map<String, Serializable> values = new HashMap<>();
+        values.put("/test/app/string", "Some text é中");
+        values.put("/test/app/long", Long.MAX_VALUE);
+        values.put("/test/app/int", -42);
+        values.put("/test/app/boolean", Boolean.TRUE);
+        values.put("/test/app/date", new Date(1234567890123L));
+        values.put("/test/app/double", 3.25d);
+        values.put("/test/app/float", 1.5f);
+        values.put("/test/app/noderef", new NodeRef("workspace://SpacesStore/abc-123"));
+        values.put("/test/app/qname", QName.createQName("http://www.alfresco.org/model/content/1.0", "content"));
+        values.put("/test/app/null", null);
+        List<String> list = new ArrayList<>();
+        list.add("a");
+        list.add("b");
+        values.put("/test/app/list", (Serializable) list);
+        values.put("/test/app/locale", Locale.FRANCE);
+
+        Map<String, Serializable> decoded = CompactAuditValues.decode(CompactAuditValues.encode(values));
+        assertEquals(values, decoded);
+        assertTrue(decoded.containsKey("/test/app/null"));
+    }
+
+    @Test
+    public void testKeysWithoutCommonPrefix()
+    {
+        Map<String, Serializable> values = new HashMap<>();
+        values.put("/a/x", "1");
+        values.put("/b/y", "2");
+        values.put("", "3");
+        assertEquals(values, CompactAuditValues.decode(CompactAuditValues.encode(values)));
+    }
+
+    @Test
+    public void testEmptyValues()
+    {
+        assertNull(CompactAuditValues.encode(null));
+        assertNull(CompactAuditValues.encode(new HashMap<>()));
+        assertTrue(CompactAuditValues.decode(null).isEmpty());
+    }
+
+    @Test
+    public void testLargeValuesAreCompressedAndSmallerThanSerialization() throws Exception
+    {
+        Map<String, Serializable> values = new HashMap<>();
+        for (int i = 0; i < 20; i++)
+        {
+            values.put("/alfresco-access/transaction/path" + i, "/app:company_home/st:sites/cm:site-" + i + "/cm:documentLibrary");
+        }
+        byte[] encoded = CompactAuditValues.encode(values);
+        assertEquals(values, CompactAuditValues.decode(encoded));
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(serialized))
+        {
+            oos.writeObject(values);
+        }
+        assertTrue("Compact form should be much smaller than Java serialization: " + encoded.length,
+                encoded.length * 3 < serialized.size());
+    }
+
+    @Test
+    public void testValueHashesAreTypeAware()
+    {
+        assertEquals(CompactAuditValues.valueHash(5), CompactAuditValues.valueHash(5L));
+        assertNotEquals(CompactAuditValues.valueHash(5L), CompactAuditValues.valueHash("5"));
+        assertNotEquals(CompactAuditValues.valueHash("a"), CompactAuditValues.valueHash("b"));
+        assertEquals(CompactAuditValues.valueHash(new Date(10L)), CompactAuditValues.valueHash(new Date(10L)));
+        assertNull(CompactAuditValues.valueHash(null));
+        assertNull(CompactAuditValues.valueHash(new ArrayList<String>()));
+        assertNotEquals(CompactAuditValues.pathHash("/a/b"), CompactAuditValues.pathHash("/a/c"));
+    }
+
+    @Test
+    public void testValuesMatch()
+    {
+        assertTrue(CompactAuditValues.valuesMatch(7, 7L));
+        assertFalse(CompactAuditValues.valuesMatch("7", 7L));
+        assertFalse(CompactAuditValues.valuesMatch("x", null));
+        ArrayList<String> list = new ArrayList<>();
+        list.add("x");
+        assertTrue(CompactAuditValues.valuesMatch(list, new ArrayList<>(list)));
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.audit.ibatis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.repo.domain.audit.AuditApplicationEntity;
+import org.alfresco.repo.domain.audit.AuditCompactEntryEntity;
+import org.alfresco.repo.domain.audit.AuditCompactQueryParameters;
+import org.alfresco.repo.domain.audit.AuditQueryResult;
+import org.alfresco.repo.domain.audit.CompactAuditValues;
+import org.alfresco.repo.domain.propval.PropertyValueDAO;
+import org.alfresco.service.cmr.audit.AuditQueryParameters;
+import org.alfresco.service.cmr.audit.AuditService.AuditQueryCallback;
+import org.alfresco.util.Pair;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mybatis.spring.SqlSessionTemplate;
+
+/**
+ * Tests the statements issued by the {@link CompactAuditDAOImpl} and how it filters and merges results.
+ */
+public class CompactAuditDAOImplTest
+{
+    private static final String APP_NAME = "test-app";
+    private static final long APP_ID = 3L;
+    private static final long APP_NAME_ID = 30L;
+
+    private SqlSessionTemplate template;
+    private PropertyValueDAO propertyValueDAO;
+    private CompactAuditDAOImpl auditDAO;
+    private List<String> results;
+
+    @Before
+    public void setUp()
+    {
+        template = mock(SqlSessionTemplate.class);
+        propertyValueDAO = mock(PropertyValueDAO.class);
+        when(propertyValueDAO.getPropertyValue(APP_NAME)).thenReturn(new Pair<>(APP_NAME_ID, APP_NAME));
+        when(propertyValueDAO.getPropertyValueById(APP_NAME_ID)).thenReturn(new Pair<>(APP_NAME_ID, APP_NAME));
+        AuditApplicationEntity application = new AuditApplicationEntity();
+        application.setId(APP_ID);
+        application.setApplicationNameId(APP_NAME_ID);
+        when(template.selectOne(eq("alfresco.audit.select_AuditApplicationByNameId"), any())).thenReturn(application);
+
+        auditDAO = new CompactAuditDAOImpl();
+        auditDAO.setSqlSessionTemplate(template);
+        auditDAO.setPropertyValueDAO(propertyValueDAO);
+        auditDAO.setEnabled(true);
+        auditDAO.setIndexedPaths("/test-app/a, /test-app/c");
+        results = new ArrayList<>();
+    }
+
+    @Test
+    public void testDisabledUsesPropertyTables()
+    {
+        auditDAO.setEnabled(false);
+        when(propertyValueDAO.getOrCreatePropertyValue("bob")).thenReturn(new Pair<>(7L, "bob"));
+        when(propertyValueDAO.createProperty(any())).thenReturn(8L);
+
+        auditDAO.createAuditEntry(APP_ID, 100L, "bob", values("/test-app/a", "x"));
+
+        verify(template).insert(eq("alfresco.audit.insert.insert_AuditEntry"), any(Object.class));
+        verify(template, never()).insert(eq("alfresco.audit.insert.insert_AuditCompactEntry"), any(Object.class));
+    }
+
+    @Test
+    public void testCreateWritesCompactRowAndSelectedKeys()
+    {
+        Map<String, Serializable> values = values("/test-app/a", "x");
+        values.put("/test-app/b", "y");
+
+        auditDAO.createAuditEntry(APP_ID, 100L, "bob", values);
+
+        ArgumentCaptor<AuditCompactEntryEntity> captor = ArgumentCaptor.forClass(AuditCompactEntryEntity.class);
+        verify(template).insert(eq("alfresco.audit.insert.insert_AuditCompactEntry"), captor.capture());
+        AuditCompactEntryEntity entity = captor.getValue();
+        assertEquals(Long.valueOf(APP_ID), entity.getAuditApplicationId());
+        assertEquals("bob", entity.getAuditUser());
+        assertEquals(values, CompactAuditValues.decode(entity.getAuditValues()));
+        assertEquals(1, entity.getKeys().size());
+        assertEquals(CompactAuditValues.pathHash("/test-app/a"), entity.getKeys().get(0).getPathHash());
+        assertEquals(CompactAuditValues.valueHash("x"), entity.getKeys().get(0).getValueHash());
+        verify(template).insert("alfresco.audit.insert_AuditCompactKeys", entity);
+        verify(propertyValueDAO, never()).createProperty(any());
+    }
+
+    @Test
+    public void testFirstEntryIsPlacedAboveLegacyIds()
+    {
+        when(template.selectOne("alfresco.audit.select_MaxAuditEntryId")).thenReturn(500L);
+
+        auditDAO.createAuditEntry(APP_ID, 100L, "bob", values("/test-app/a", "x"));
+        auditDAO.createAuditEntry(APP_ID, 101L, "bob", values("/test-app/a", "x"));
+
+        ArgumentCaptor<AuditCompactEntryEntity> captor = ArgumentCaptor.forClass(AuditCompactEntryEntity.class);
+        verify(template).insert(eq("alfresco.audit.insert.insert_AuditCompactEntryAboveId"), captor.capture());
+        assertEquals(Long.valueOf(501L), captor.getValue().getId());
+        verify(template).insert(eq("alfresco.audit.insert.insert_AuditCompactEntry"), any(Object.class));
+    }
+
+    @Test
+    public void testIndexedSearchUsesHashes()
+    {
+        when(template.selectList(eq("alfresco.audit.select_AuditCompactEntries"), any(), any(RowBounds.class)))
+                .thenReturn(Arrays.asList(row(11L, "/test-app/a", "x")));
+
+        AuditQueryParameters params = new AuditQueryParameters();
+        params.setApplicationName(APP_NAME);
+        params.setUser("bob");
+        params.addSearchKey("/test-app/a", "x");
+        auditDAO.findAuditEntries(new RecordingCallback(true), params, 10);
+
+        ArgumentCaptor<AuditCompactQueryParameters> captor = ArgumentCaptor.forClass(AuditCompactQueryParameters.class);
+        verify(template).selectList(eq("alfresco.audit.select_AuditCompactEntries"), captor.capture(), any(RowBounds.class));
+        AuditCompactQueryParameters query = captor.getValue();
+        assertEquals(Long.valueOf(APP_ID), query.getAuditAppId());
+        assertEquals("bob", query.getAuditUser());
+        assertEquals(Long.valueOf(CompactAuditValues.pathHash("/test-app/a")), query.getSearchPathHash());
+        assertEquals(CompactAuditValues.valueHash("x"), query.getSearchValueHash());
+        assertEquals(Arrays.asList("11 test-app {/test-app/a=x}"), results);
+    }
+
+    @Test
+    public void testIndexedSearchChecksValuesOfCollidingHashes()
+    {
+        // The database matches on the hashes alone; entry 12 stands for a value whose hashes collide with the search
+        when(template.selectList(eq("alfresco.audit.select_AuditCompactEntries"), any(), any(RowBounds.class)))
+                .thenReturn(Arrays.asList(row(11L, "/test-app/a", "x"), row(12L, "/test-app/a", "colliding")));
+        when(template.selectOne(eq("alfresco.audit.select_CountAuditCompactEntries"), any())).thenReturn(2);
+
+        AuditQueryParameters params = new AuditQueryParameters();
+        params.setApplicationName(APP_NAME);
+        params.addSearchKey("/test-app/a", "x");
+        auditDAO.findAuditEntries(new RecordingCallback(false), params, 10);
+        int count = auditDAO.getAuditEntriesCountByAppAndProperties(APP_NAME, params);
+
+        assertEquals(Arrays.asList("11 test-app null"), results);
+        assertEquals(1, count);
+    }
+
+    @Test
+    public void testLargeIndexedCountIsNotChecked()
+    {
+        auditDAO.setMaxCheckedCount(100);
+        when(template.selectOne(eq("alfresco.audit.select_CountAuditCompactEntries"), any())).thenReturn(5000);
+
+        AuditQueryParameters params = new AuditQueryParameters();
+        params.setApplicationName(APP_NAME);
+        params.addSearchKey("/test-app/a", "x");
+        int count = auditDAO.getAuditEntriesCountByAppAndProperties(APP_NAME, params);
+
+        assertEquals(5000, count);
+        ArgumentCaptor<AuditCompactQueryParameters> captor = ArgumentCaptor.forClass(AuditCompactQueryParameters.class);
+        verify(template).selectOne(eq("alfresco.audit.select_CountAuditCompactEntries"), captor.capture());
+        assertEquals(CompactAuditValues.valueHash("x"), captor.getValue().getSearchValueHash());
+        verify(template, never()).selectList(eq("alfresco.audit.select_AuditCompactEntries"), any(), any(RowBounds.class));
+    }
+
+    @Test
+    public void testSearchOnUnindexedPathFiltersPages()
+    {
+        auditDAO.setScanPageSize(2);
+        when(template.selectList(eq("alfresco.audit.select_AuditCompactEntries"), any(), any(RowBounds.class))).then(invocation -> {
+            AuditCompactQueryParameters query = invocation.getArgument(1);
+            assertNull(query.getSearchPathHash());
+            assertNull(query.getSearchValueHash());
+            if (query.getAuditFromId() == null)
+            {
+                return Arrays.asList(row(1L, "/test-app/b", "y"), row(2L, "/test-app/b", "n"));
+            }
+            assertEquals(Long.valueOf(3L), query.getAuditFromId());
+            return Arrays.asList(row(3L, "/test-app/b", "y"));
+        });
+
+        AuditQueryParameters params = new AuditQueryParameters();
+        params.addSearchKey("/test-app/b", "y");
+        auditDAO.findAuditEntries(new RecordingCallback(false), params, 10);
+
+        assertEquals(Arrays.asList("1 test-app null", "3 test-app null"), results);
+    }
+
+    @Test
+    public void testLegacyEntriesAreMergedInIdOrder()
+    {
+        when(template.selectOne("alfresco.audit.select_MaxAuditEntryId")).thenReturn(2L);
+        when(template.selectList(eq("alfresco.audit.select_AuditCompactEntries"), any(), any(RowBounds.class)))
+                .thenReturn(Arrays.asList(row(5L, "/test-app/a", "x"), row(4L, "/test-app/a", "x")));
+        AuditQueryResult legacy = new AuditQueryResult();
+        legacy.setAuditEntryId(2L);
+        legacy.setAuditAppNameId(APP_NAME_ID);
+        legacy.setAuditTime(50L);
+        when(template.selectList(eq("alfresco.audit.select_AuditEntriesWithoutValues"), any(), any(RowBounds.class)))
+                .thenReturn(Arrays.asList(legacy));
+
+        AuditQueryParameters params = new AuditQueryParameters();
+        params.setApplicationName(APP_NAME);
+        params.setForward(false);
+        auditDAO.findAuditEntries(new RecordingCallback(false), params, 2);
+
+        assertEquals(Arrays.asList("5 test-app null", "4 test-app null"), results);
+    }
+
+    @Test
+    public void testDeleteRemovesFromBothTables()
+    {
+        when(template.delete(eq("alfresco.audit.delete_AuditEntriesById"), any())).thenReturn(1);
+        when(template.delete(eq("alfresco.audit.delete_AuditCompactEntriesById"), any())).thenReturn(2);
+
+        assertEquals(3, auditDAO.deleteAuditEntries(Arrays.asList(1L, 2L, 3L)));
+    }
+
+    private static Map<String, Serializable> values(String path, Serializable value)
+    {
+        Map<String, Serializable> values = new HashMap<>();
+        values.put(path, value);
+        return values;
+    }
+
+    private static AuditCompactEntryEntity row(long id, String path, Serializable value)
+    {
+        AuditCompactEntryEntity row = new AuditCompactEntryEntity();
+        row.setId(id);
+        row.setAuditAppNameId(APP_NAME_ID);
+        row.setAuditTime(id * 10);
+        row.setAuditUser("bob");
+        row.setAuditValues(CompactAuditValues.encode(values(path, value)));
+        return row;
+    }
+
+    private class RecordingCallback implements AuditQueryCallback
+    {
+        private final boolean valuesRequired;
+
+        private RecordingCallback(boolean valuesRequired)
+        {
+            this.valuesRequired = valuesRequired;
+        }
+
+        @Override
+        public boolean valuesRequired()
+        {
+            return valuesRequired;
+        }
+
+        @Override
+        public boolean handleAuditEntry(Long entryId, String applicationName, String user, long time, Map<String, Serializable> values)
+        {
+            results.add(entryId + " " + applicationName + " " + values);
+            return true;
+        }
+
+        @Override
+        public boolean handleAuditEntryError(Long entryId, String errorMsg, Throwable error)
+        {
+            results.add(entryId + " error " + errorMsg);
+            return true;
+        }
+    }
+}
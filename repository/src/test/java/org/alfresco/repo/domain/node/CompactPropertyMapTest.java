@@ -0,0 +1,218 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link CompactPropertyMap} class.
+ */
+public class CompactPropertyMapTest
+{
+    private static final QName PROP_UNKNOWN = QName.createQName("http://www.alfresco.org/test/1.0", "unknown");
+
+    private QNameDAO qnameDAO;
+    private Map<QName, Long> qnameIds;
+
+    @Before
+    public void setUp()
+    {
+        qnameIds = new HashMap<QName, Long>();
+        qnameIds.put(ContentModel.PROP_NAME, 10L);
+        qnameIds.put(ContentModel.PROP_CONTENT, 3L);
+        qnameIds.put(ContentModel.PROP_TITLE, 7L);
+        qnameIds.put(ContentModel.PROP_AUTHOR, 1L);
+        qnameIds.put(ContentModel.PROP_ARCHIVED_DATE, 5L);
+        qnameDAO = mock(QNameDAO.class);
+        when(qnameDAO.getQName(any(QName.class))).then(invocation ->
+        {
+            QName qname = invocation.getArgument(0);
+            Long id = qnameIds.get(qname);
+            return id == null ? null : new Pair<Long, QName>(id, qname);
+        });
+    }
+
+    private Map<QName, Serializable> newProperties(String name)
+    {
+        Map<QName, Serializable> properties = new HashMap<QName, Serializable>();
+        properties.put(ContentModel.PROP_NAME, name);
+        properties.put(ContentModel.PROP_CONTENT, new ContentData("store://" + name, new String("text/plain"), 12L, new String("UTF-8"), new Locale("fr")));
+        properties.put(ContentModel.PROP_TITLE, null);
+        properties.put(ContentModel.PROP_AUTHOR, new String("admin"));
+        properties.put(ContentModel.PROP_ARCHIVED_DATE, new Date(1234567890L));
+        return properties;
+    }
+
+    @Test
+    public void behavesAsTheOriginalMap()
+    {
+        Map<QName, Serializable> properties = newProperties("a.txt");
+        Map<QName, Serializable> compact = CompactPropertyMap.valueOf(properties, qnameDAO);
+
+        assertTrue(compact instanceof CompactPropertyMap);
+        assertEquals(properties, compact);
+        assertEquals(compact, properties);
+        assertEquals(properties.hashCode(), compact.hashCode());
+        assertEquals(5, compact.size());
+        assertEquals("a.txt", compact.get(ContentModel.PROP_NAME));
+        assertTrue(compact.containsKey(ContentModel.PROP_TITLE));
+        assertNull(compact.get(ContentModel.PROP_TITLE));
+        assertFalse(compact.containsKey(PROP_UNKNOWN));
+        assertNull(compact.get(PROP_UNKNOWN));
+        assertNull(compact.get("not a qname"));
+        assertEquals(properties.keySet(), compact.keySet());
+        assertEquals(properties, new HashMap<QName, Serializable>(compact));
+    }
+
+    @Test
+    public void isImmutable()
+    {
+        Map<QName, Serializable> compact = CompactPropertyMap.valueOf(newProperties("a.txt"), qnameDAO);
+        try
+        {
+            compact.put(ContentModel.PROP_NAME, "b.txt");
+            fail("Compact maps must be immutable");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            // Expected
+        }
+        try
+        {
+            compact.entrySet().iterator().next().setValue("b.txt");
+            fail("Compact maps must be immutable");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            // Expected
+        }
+        assertSame(compact, CompactPropertyMap.valueOf(compact, qnameDAO));
+    }
+
+    @Test
+    public void datesAreCopiedOnAccess()
+    {
+        Map<QName, Serializable> compact = CompactPropertyMap.valueOf(newProperties("a.txt"), qnameDAO);
+
+        Date date = (Date) compact.get(ContentModel.PROP_ARCHIVED_DATE);
+        assertEquals(new Date(1234567890L), date);
+        date.setTime(0L);
+        assertEquals(new Date(1234567890L), compact.get(ContentModel.PROP_ARCHIVED_DATE));
+        assertNotSame(compact.get(ContentModel.PROP_ARCHIVED_DATE), compact.get(ContentModel.PROP_ARCHIVED_DATE));
+    }
+
+    @Test
+    public void layoutsAndCommonValuesAreShared()
+    {
+        CompactPropertyMap compactA = (CompactPropertyMap) CompactPropertyMap.valueOf(newProperties("a.txt"), qnameDAO);
+        CompactPropertyMap compactB = (CompactPropertyMap) CompactPropertyMap.valueOf(newProperties("b.txt"), qnameDAO);
+
+        assertSame(compactA.get(ContentModel.PROP_AUTHOR), compactB.get(ContentModel.PROP_AUTHOR));
+        ContentData contentA = (ContentData) compactA.get(ContentModel.PROP_CONTENT);
+        ContentData contentB = (ContentData) compactB.get(ContentModel.PROP_CONTENT);
+        assertSame(contentA.getMimetype(), contentB.getMimetype());
+        assertSame(contentA.getEncoding(), contentB.getEncoding());
+        assertSame(contentA.getLocale(), contentB.getLocale());
+        assertEquals("store://b.txt", contentB.getContentUrl());
+
+        // The same keys in a different order of insertion give the same layout
+        Map<QName, Serializable> properties = new HashMap<QName, Serializable>(newProperties("c.txt"));
+        Map<QName, Serializable> reversed = new LinkedHashMap<QName, Serializable>();
+        reversed.put(ContentModel.PROP_ARCHIVED_DATE, properties.get(ContentModel.PROP_ARCHIVED_DATE));
+        reversed.put(ContentModel.PROP_TITLE, null);
+        reversed.put(ContentModel.PROP_NAME, "c.txt");
+        reversed.put(ContentModel.PROP_AUTHOR, "admin");
+        reversed.put(ContentModel.PROP_CONTENT, properties.get(ContentModel.PROP_CONTENT));
+        Map<QName, Serializable> compactC = CompactPropertyMap.valueOf(reversed, qnameDAO);
+        assertEquals(properties, compactC);
+        assertEquals(new ArrayList<QName>(compactA.keySet()), new ArrayList<QName>(compactC.keySet()));
+    }
+
+    @Test
+    public void unknownQNamesAreNotCompacted()
+    {
+        Map<QName, Serializable> properties = newProperties("a.txt");
+        properties.put(PROP_UNKNOWN, "x");
+
+        Map<QName, Serializable> result = CompactPropertyMap.valueOf(properties, qnameDAO);
+        assertFalse(result instanceof CompactPropertyMap);
+        assertEquals(properties, result);
+        try
+        {
+            result.remove(PROP_UNKNOWN);
+            fail("The result must be unmodifiable");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            // Expected
+        }
+        assertEquals(Collections.emptyMap(), CompactPropertyMap.valueOf(Collections.emptyMap(), qnameDAO));
+    }
+
+    @Test
+    public void serializationRoundTrip() throws Exception
+    {
+        Map<QName, Serializable> compact = CompactPropertyMap.valueOf(newProperties("a.txt"), qnameDAO);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(compact);
+        }
+        Object copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+        {
+            copy = in.readObject();
+        }
+        assertTrue(copy instanceof CompactPropertyMap);
+        assertEquals(compact, copy);
+        assertEquals(new Date(1234567890L), ((Map<?, ?>) copy).get(ContentModel.PROP_ARCHIVED_DATE));
+    }
+}
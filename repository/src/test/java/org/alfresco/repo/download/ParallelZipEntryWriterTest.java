@@ -0,0 +1,242 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.download;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.parallel.InputStreamSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ParallelZipEntryWriter}.
+ */
+public class ParallelZipEntryWriterTest
+{
+    private ExecutorService executor;
+    private ByteArrayOutputStream archive;
+    private ZipArchiveOutputStream zipStream;
+    private List<String> written;
+
+    @Before
+    public void setUp()
+    {
+        executor = Executors.newFixedThreadPool(4);
+        archive = new ByteArrayOutputStream();
+        zipStream = new ZipArchiveOutputStream(archive);
+        written = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testEntriesAreWrittenInOrder() throws Exception
+    {
+        ParallelZipEntryWriter writer = newWriter(3, Long.MAX_VALUE);
+        writer.addDirectory(directory("folder/"));
+        for (int i = 0; i < 10; i++)
+        {
+            // The first entries take the longest to read
+            writer.addEntry(file("folder/file" + i, ZipEntry.DEFLATED), 100, slowContent("content " + i, 10 - i));
+        }
+        writer.finish();
+        zipStream.close();
+
+        List<String> expected = new ArrayList<>();
+        expected.add("folder/");
+        for (int i = 0; i < 10; i++)
+        {
+            expected.add("folder/file" + i);
+        }
+        assertEquals(expected, written);
+        List<ZipArchiveEntry> entries = new ArrayList<>();
+        List<String> contents = readArchive(entries);
+        assertEquals(expected.size(), entries.size());
+        assertTrue(entries.get(0).isDirectory());
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals("folder/file" + i, entries.get(i + 1).getName());
+            assertEquals("content " + i, contents.get(i + 1));
+        }
+    }
+
+    @Test
+    public void testCompressionMethodIsKept() throws Exception
+    {
+        ParallelZipEntryWriter writer = newWriter(4, Long.MAX_VALUE);
+        String text = "some text that compresses well, some text that compresses well, some text";
+        writer.addEntry(file("stored.jpg", ZipEntry.STORED), text.length(), content(text));
+        writer.addEntry(file("deflated.txt", ZipEntry.DEFLATED), text.length(), content(text));
+        writer.finish();
+        zipStream.close();
+
+        List<ZipArchiveEntry> entries = new ArrayList<>();
+        List<String> contents = readArchive(entries);
+        assertEquals(ZipEntry.STORED, entries.get(0).getMethod());
+        assertEquals(text.length(), entries.get(0).getCompressedSize());
+        assertEquals(ZipEntry.DEFLATED, entries.get(1).getMethod());
+        assertTrue(entries.get(1).getCompressedSize() < text.length());
+        assertEquals(text, contents.get(0));
+        assertEquals(text, contents.get(1));
+    }
+
+    @Test
+    public void testLargeEntriesAreCompressedToTemporaryFiles() throws Exception
+    {
+        byte[] data = new byte[256 * 1024];
+        for (int i = 0; i < data.length; i++)
+        {
+            data[i] = (byte) (i % 251);
+        }
+        ParallelZipEntryWriter writer = newWriter(2, 1024);
+        writer.addEntry(file("small", ZipEntry.DEFLATED), 10, content("small"));
+        writer.addEntry(file("large", ZipEntry.DEFLATED), data.length, () -> new ByteArrayInputStream(data));
+        writer.finish();
+        zipStream.close();
+
+        try (ZipArchiveInputStream in = new ZipArchiveInputStream(new ByteArrayInputStream(archive.toByteArray())))
+        {
+            assertEquals("small", in.getNextZipEntry().getName());
+            assertEquals("small", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            assertEquals("large", in.getNextZipEntry().getName());
+            assertArrayEquals(data, in.readAllBytes());
+            assertNull(in.getNextZipEntry());
+        }
+    }
+
+    @Test
+    public void testReadFailureIsReported() throws Exception
+    {
+        ParallelZipEntryWriter writer = newWriter(4, Long.MAX_VALUE);
+        writer.addEntry(file("good", ZipEntry.DEFLATED), 4, content("good"));
+        writer.addEntry(file("bad", ZipEntry.DEFLATED), 4, () -> {
+            throw new UncheckedIOException(new IOException("Content missing"));
+        });
+        try
+        {
+            writer.finish();
+            fail("Expected the failure to read the content to be reported");
+        }
+        catch (IOException e)
+        {
+            assertEquals("Content missing", e.getMessage());
+        }
+        finally
+        {
+            writer.close();
+        }
+        assertEquals(List.of("good"), written);
+    }
+
+    @Test
+    public void testDirectExecutor() throws Exception
+    {
+        ParallelZipEntryWriter writer = new ParallelZipEntryWriter(zipStream, Runnable::run, 1, Long.MAX_VALUE, entry -> written.add(entry.getName()));
+        writer.addEntry(file("a", ZipEntry.DEFLATED), 1, content("a"));
+        writer.addDirectory(directory("b/"));
+        writer.addEntry(file("b/c", ZipEntry.STORED), 1, content("c"));
+        writer.finish();
+        zipStream.close();
+
+        assertEquals(List.of("a", "b/", "b/c"), written);
+        assertEquals(List.of("a", "", "c"), readArchive(new ArrayList<>()));
+    }
+
+    private ParallelZipEntryWriter newWriter(int maxPendingEntries, long maxInMemoryEntrySize)
+    {
+        return new ParallelZipEntryWriter(zipStream, executor, maxPendingEntries, maxInMemoryEntrySize, entry -> written.add(entry.getName()));
+    }
+
+    private static ZipArchiveEntry directory(String name)
+    {
+        return new ZipArchiveEntry(name);
+    }
+
+    private static ZipArchiveEntry file(String name, int method)
+    {
+        ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setMethod(method);
+        return entry;
+    }
+
+    private static InputStreamSupplier content(String text)
+    {
+        return () -> new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static InputStreamSupplier slowContent(String text, long delayMs)
+    {
+        return () -> {
+            try
+            {
+                Thread.sleep(delayMs);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+        };
+    }
+
+    private List<String> readArchive(List<ZipArchiveEntry> entries) throws IOException
+    {
+        List<String> contents = new ArrayList<>();
+        try (ZipArchiveInputStream in = new ZipArchiveInputStream(new ByteArrayInputStream(archive.toByteArray())))
+        {
+            ZipArchiveEntry entry;
+            while ((entry = in.getNextZipEntry()) != null)
+            {
+                entries.add(entry);
+                contents.add(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return contents;
+    }
+}
@@ -27,11 +27,13 @@ package org.alfresco.repo.event2;
 
 import static java.lang.Thread.sleep;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -43,6 +45,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.alfresco.repo.event.v1.model.RepoEvent;
 import org.junit.After;
@@ -101,6 +104,11 @@ public class EnqueuingEventSenderUnitTest
                 return null;
             }
         }).when(bus).send(any());
+        when(bus.sendAll(any())).then(invocation -> {
+            List<RepoEvent<?>> batch = invocation.getArgument(0);
+            recordedEvents.addAll(batch);
+            return batch.size();
+        });
     }
 
     @Test
@@ -219,6 +227,106 @@ public class EnqueuingEventSenderUnitTest
         assertEquals("C", recordedEvents.get(1).getId());
     }
 
+    @Test
+    public void shouldPreserveOrderPerPartitionKeyWithSeveralSenderThreads() throws Exception
+    {
+        eventSender.setSenderThreads(4);
+        eventSender.setMaxBatchSize(10);
+        for (int i = 0; i < 20; i++)
+        {
+            eventSender.accept("node" + (i % 3), messageWithDelay("N" + (i % 3) + "-" + i, (20 - i) * 5l));
+        }
+
+        sleep(1000l);
+
+        assertEquals(20, recordedEvents.size());
+        for (int node = 0; node < 3; node++)
+        {
+            List<Integer> sequence = new ArrayList<>();
+            for (RepoEvent<?> event : recordedEvents)
+            {
+                if (event.getId().startsWith("N" + node + "-"))
+                {
+                    sequence.add(Integer.valueOf(event.getId().substring(3)));
+                }
+            }
+            for (int i = 1; i < sequence.size(); i++)
+            {
+                assertTrue("Out of order for node" + node + ": " + sequence, sequence.get(i - 1) < sequence.get(i));
+            }
+        }
+        assertEquals(20, eventSender.getSentEventsCount());
+        assertEquals(0, eventSender.getQueueDepth());
+    }
+
+    @Test
+    public void shouldDropEventsWhenQueueIsFull() throws Exception
+    {
+        eventSender = new EnqueuingEventSender();
+        eventSender.setEvent2MessageProducer(bus);
+        eventSender.setEnqueueThreadPoolExecutor(SYNC_EXECUTOR_SAME_THREAD);
+        // Senders never start, so the queue only fills up
+        eventSender.setDequeueThreadPoolExecutor(command -> {});
+        eventSender.setQueueCapacity(2);
+        eventSender.setOverflowPolicy(EnqueuingEventSender.OverflowPolicy.DROP);
+
+        eventSender.accept(messageWithDelay("A", 0l));
+        eventSender.accept(messageWithDelay("B", 0l));
+        eventSender.accept(messageWithDelay("C", 0l));
+
+        assertEquals(2, eventSender.getQueueDepth());
+        assertEquals(1, eventSender.getDroppedEventsCount());
+    }
+
+    @Test
+    public void shouldStopBlockingAndDropEventsAfterTimeout() throws Exception
+    {
+        eventSender = new EnqueuingEventSender();
+        eventSender.setEvent2MessageProducer(bus);
+        eventSender.setEnqueueThreadPoolExecutor(SYNC_EXECUTOR_SAME_THREAD);
+        // Senders never start, so the queue only fills up
+        eventSender.setDequeueThreadPoolExecutor(command -> {});
+        eventSender.setQueueCapacity(2);
+        // BLOCK is the default overflow policy
+        eventSender.setBlockTimeoutMillis(100);
+
+        eventSender.accept(messageWithDelay("A", 0l));
+        eventSender.accept(messageWithDelay("B", 0l));
+        long start = System.currentTimeMillis();
+        eventSender.accept(messageWithDelay("C", 0l));
+
+        assertTrue(System.currentTimeMillis() - start >= 100);
+        assertEquals(2, eventSender.getQueueDepth());
+        assertEquals(1, eventSender.getDroppedEventsCount());
+    }
+
+    @Test
+    public void shouldHandReadyEventsToTheProducerTogether() throws Exception
+    {
+        AtomicReference<Runnable> senderTask = new AtomicReference<>();
+        eventSender = new EnqueuingEventSender();
+        eventSender.setEvent2MessageProducer(bus);
+        eventSender.setEnqueueThreadPoolExecutor(SYNC_EXECUTOR_SAME_THREAD);
+        eventSender.setDequeueThreadPoolExecutor(command -> senderTask.compareAndSet(null, command));
+        eventSender.setMaxBatchSize(10);
+
+        eventSender.accept(messageWithDelay("A", 0l));
+        eventSender.accept(messageWithDelay("B", 0l));
+        eventSender.accept(messageWithDelay("C", 0l));
+        dequeuePool.execute(senderTask.get());
+
+        sleep(150l);
+
+        Mockito.verify(bus).sendAll(any());
+        Mockito.verify(bus, Mockito.never()).send(any());
+        assertEquals(3, recordedEvents.size());
+        assertEquals("A", recordedEvents.get(0).getId());
+        assertEquals("B", recordedEvents.get(1).getId());
+        assertEquals("C", recordedEvents.get(2).getId());
+        assertEquals(3, eventSender.getSentEventsCount());
+        assertTrue(eventSender.getMaxEnqueueToSendMillis() >= eventSender.getAverageEnqueueToSendMillis());
+    }
+
     private Callable<Optional<RepoEvent<?>>> messageWithDelay(String id, long delay)
     {
         return new Callable<Optional<RepoEvent<?>>>()
@@ -0,0 +1,366 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.lock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.repo.domain.locks.LockDAO;
+import org.alfresco.repo.lock.JobLockService.JobLockRefreshCallback;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.namespace.QName;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the local lock state, backoff and lease renewal of {@link JobLockServiceImpl} against a lock table held
+ * in memory.  {@link JobLockServiceTest} tests the service against the database.
+ */
+public class JobLockServiceImplTest
+{
+    private static final String NAMESPACE = "http://www.alfresco.org/test/JobLockServiceImplTest";
+    private static final QName LOCK_A = QName.createQName(NAMESPACE, "a");
+    private static final QName LOCK_B = QName.createQName(NAMESPACE, "b");
+
+    private final Map<QName, String> lockTable = new ConcurrentHashMap<>();
+    private final AtomicInteger transactions = new AtomicInteger();
+    private final AtomicInteger rollbacks = new AtomicInteger();
+    private LockDAO lockDAO;
+    private JobLockServiceImpl jobLockService;
+    private ExecutorService executor;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp()
+    {
+        lockDAO = mock(LockDAO.class);
+        stubLockDAO();
+
+        RetryingTransactionHelper txnHelper = mock(RetryingTransactionHelper.class);
+        when(txnHelper.doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean())).thenAnswer(invocation -> {
+            transactions.incrementAndGet();
+            RetryingTransactionCallback<Object> callback = invocation.getArgument(0);
+            try
+            {
+                return callback.execute();
+            }
+            catch (RuntimeException e)
+            {
+                rollbacks.incrementAndGet();
+                throw e;
+            }
+            catch (Throwable e)
+            {
+                rollbacks.incrementAndGet();
+                throw new RuntimeException(e);
+            }
+        });
+
+        jobLockService = new JobLockServiceImpl();
+        jobLockService.setLockDAO(lockDAO);
+        jobLockService.setRetryingTransactionHelper(txnHelper);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+        jobLockService.shutdown();
+    }
+
+    /**
+     * A single holder per lock, as the database allows for the exclusive locks
+     */
+    private void stubLockDAO()
+    {
+        doAnswer(invocation -> {
+            QName lockQName = invocation.getArgument(0);
+            String lockToken = invocation.getArgument(1);
+            String holder = lockTable.putIfAbsent(lockQName, lockToken);
+            if (holder != null && !holder.equals(lockToken))
+            {
+                throw new LockAcquisitionException(lockQName, lockToken);
+            }
+            return null;
+        }).when(lockDAO).getLock(any(QName.class), anyString(), anyLong());
+        doAnswer(invocation -> {
+            QName lockQName = invocation.getArgument(0);
+            String lockToken = invocation.getArgument(1);
+            if (!lockToken.equals(lockTable.get(lockQName)))
+            {
+                throw new LockAcquisitionException(lockQName, lockToken);
+            }
+            return null;
+        }).when(lockDAO).refreshLock(any(QName.class), anyString(), anyLong());
+        when(lockDAO.releaseLock(any(QName.class), anyString(), anyBoolean())).thenAnswer(invocation -> {
+            QName lockQName = invocation.getArgument(0);
+            String lockToken = invocation.getArgument(1);
+            boolean optimistic = invocation.getArgument(2);
+            if (lockTable.remove(lockQName, lockToken))
+            {
+                return true;
+            }
+            else if (optimistic)
+            {
+                return false;
+            }
+            throw new LockAcquisitionException(LockAcquisitionException.ERR_FAILED_TO_RELEASE_LOCK, lockQName, lockToken);
+        });
+    }
+
+    @Test
+    public void testLocalFastPath()
+    {
+        jobLockService.setLocalFastPath(true);
+        String lockToken = jobLockService.getLock(LOCK_A, 10000L, 10L, 3);
+        try
+        {
+            jobLockService.getLock(LOCK_A, 10000L, 10L, 3);
+            fail("The lock is held");
+        }
+        catch (LockAcquisitionException e)
+        {
+            // Expected
+        }
+        // Only the first request went to the database
+        verify(lockDAO, times(1)).getLock(eq(LOCK_A), anyString(), anyLong());
+        assertEquals(3, jobLockService.getMetrics().getLocalContendedAttemptCount());
+        assertEquals(1, jobLockService.getMetrics().getAcquisitionFailureCount());
+
+        jobLockService.releaseLock(lockToken, LOCK_A);
+        jobLockService.getLock(LOCK_A, 10000L, 10L, 3);
+        assertEquals(2, jobLockService.getMetrics().getAcquisitionCount());
+    }
+
+    @Test
+    public void testLocalFastPathIgnoresExpiredLocks() throws Exception
+    {
+        jobLockService.setLocalFastPath(true);
+        jobLockService.getLock(LOCK_A, 10L, 10L, 1);
+        Thread.sleep(20L);
+        // The database still has the lock, but it is no longer answered locally
+        lockTable.clear();
+        jobLockService.getLock(LOCK_A, 10000L, 10L, 1);
+        verify(lockDAO, times(2)).getLock(eq(LOCK_A), anyString(), anyLong());
+        assertEquals(0, jobLockService.getMetrics().getContendedAttemptCount());
+    }
+
+    @Test
+    public void testLocalReleaseWakesWaiter() throws Exception
+    {
+        final String lockToken = jobLockService.getLock(LOCK_A, 10000L, 10L, 1);
+        final CountDownLatch waiting = new CountDownLatch(1);
+
+        long start = System.currentTimeMillis();
+        Future<String> waiter = executor.submit(() -> {
+            waiting.countDown();
+            // Waits between the attempts are longer than the test would allow
+            return jobLockService.getLock(LOCK_A, 10000L, 60000L, 2);
+        });
+        waiting.await();
+        Thread.sleep(100L);
+        jobLockService.releaseLock(lockToken, LOCK_A);
+
+        String waiterToken = waiter.get(10, TimeUnit.SECONDS);
+        assertTrue("The waiter must be woken by the release", System.currentTimeMillis() - start < 10000L);
+        assertEquals(waiterToken, lockTable.get(LOCK_A));
+        assertEquals(1, jobLockService.getMetrics().getLocalReleaseWakeupCount());
+    }
+
+    @Test
+    public void testInterruptEndsWait() throws Exception
+    {
+        jobLockService.getLock(LOCK_A, 10000L, 10L, 1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        Thread waiter = new Thread(() -> {
+            try
+            {
+                // Waits between the attempts are longer than the test would allow
+                jobLockService.getLock(LOCK_A, 10000L, 60000L, 5);
+            }
+            catch (LockAcquisitionException e)
+            {
+                // Expected
+            }
+            interrupted.set(Thread.currentThread().isInterrupted());
+        });
+
+        long start = System.currentTimeMillis();
+        waiter.start();
+        Thread.sleep(100L);
+        waiter.interrupt();
+        waiter.join(10000L);
+
+        assertFalse("The waiter must stop waiting when interrupted", waiter.isAlive());
+        assertTrue(System.currentTimeMillis() - start < 10000L);
+        assertTrue("The interrupted status must be kept", interrupted.get());
+        assertEquals("No attempts must follow the interrupt", 1, jobLockService.getMetrics().getContendedAttemptCount());
+    }
+
+    @Test
+    public void testRetryBackoff()
+    {
+        jobLockService.getLock(LOCK_A, 10000L, 10L, 1);
+
+        long start = System.currentTimeMillis();
+        try
+        {
+            jobLockService.getLock(LOCK_A, 10000L, 10L, 4);
+            fail("The lock is held");
+        }
+        catch (LockAcquisitionException e)
+        {
+            // Expected
+        }
+        long fixedMs = System.currentTimeMillis() - start;
+
+        jobLockService.setRetryBackoff(true);
+        jobLockService.setMaxRetryWait(60L);
+        start = System.currentTimeMillis();
+        try
+        {
+            jobLockService.getLock(LOCK_A, 10000L, 10L, 4);
+            fail("The lock is held");
+        }
+        catch (LockAcquisitionException e)
+        {
+            // Expected
+        }
+        long backoffMs = System.currentTimeMillis() - start;
+
+        // Three waits: 10 + 10 + 10 fixed; at least 5 + 10 + 20 backing off, at most 10 + 20 + 40
+        assertTrue("Fixed waits took " + fixedMs + "ms", fixedMs >= 30L);
+        assertTrue("Backoff waits took " + backoffMs + "ms", backoffMs >= 35L);
+        assertEquals(8, jobLockService.getMetrics().getContendedAttemptCount());
+    }
+
+    @Test
+    public void testBatchedLeaseRenewal() throws Exception
+    {
+        jobLockService.setLeaseRenewalBatching(true);
+        jobLockService.setLeaseRenewalWindow(1000L);
+        TestCallback callbackA = new TestCallback();
+        TestCallback callbackB = new TestCallback();
+        jobLockService.getLock(LOCK_A, 200L, callbackA);
+        jobLockService.getLock(LOCK_B, 200L, callbackB);
+        int transactionsBefore = transactions.get();
+
+        Thread.sleep(450L);
+
+        verify(lockDAO, atLeast(2)).refreshLock(eq(LOCK_A), anyString(), eq(200L));
+        verify(lockDAO, atLeast(2)).refreshLock(eq(LOCK_B), anyString(), eq(200L));
+        JobLockMetrics metrics = jobLockService.getMetrics();
+        assertEquals(transactions.get() - transactionsBefore, metrics.getLeaseRenewalTransactionCount());
+        assertEquals(2 * metrics.getLeaseRenewalTransactionCount(), metrics.getLeaseRenewalCount());
+        assertFalse(callbackA.released.get());
+        assertFalse(callbackB.released.get());
+
+        // A lock that is lost is reported without affecting the others
+        lockTable.remove(LOCK_A);
+        Thread.sleep(250L);
+        assertTrue("The shared transaction must roll back", rollbacks.get() > 0);
+        assertTrue(callbackA.released.get());
+        assertFalse(callbackB.released.get());
+        assertEquals(1, metrics.getLeaseRenewalFailureCount());
+
+        // An inactive callback releases its lock
+        callbackB.active.set(false);
+        Thread.sleep(250L);
+        assertTrue(callbackB.released.get());
+        assertFalse(lockTable.containsKey(LOCK_B));
+    }
+
+    @Test
+    public void testLeaseRenewalFallsBackToSingleRenewals() throws Exception
+    {
+        jobLockService.setLeaseRenewalBatching(true);
+        TestCallback callbackA = new TestCallback();
+        TestCallback callbackB = new TestCallback();
+        jobLockService.getLock(LOCK_A, 200L, callbackA);
+        jobLockService.getLock(LOCK_B, 200L, callbackB);
+        // The shared transaction fails once, e.g. on a deadlock
+        final AtomicBoolean failed = new AtomicBoolean();
+        doAnswer(invocation -> {
+            if (failed.compareAndSet(false, true))
+            {
+                throw new IllegalStateException("Test failure");
+            }
+            return null;
+        }).when(lockDAO).refreshLock(eq(LOCK_B), anyString(), anyLong());
+
+        Thread.sleep(250L);
+
+        assertTrue(failed.get());
+        assertFalse(callbackA.released.get());
+        assertFalse(callbackB.released.get());
+        verify(lockDAO, never()).releaseLock(any(QName.class), anyString(), anyBoolean());
+    }
+
+    private static class TestCallback implements JobLockRefreshCallback
+    {
+        private final AtomicBoolean active = new AtomicBoolean(true);
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        @Override
+        public boolean isActive()
+        {
+            return active.get();
+        }
+
+        @Override
+        public void lockReleased()
+        {
+            released.set(true);
+        }
+    }
+}
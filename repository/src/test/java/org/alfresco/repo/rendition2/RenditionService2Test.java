@@ -49,8 +49,10 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -165,8 +167,18 @@ public class RenditionService2Test
         new RenditionDefinition2Impl(TEST_RENDITION, JPEG, options, true, renditionDefinitionRegistry2);
     }
 
+    private final List<String> coalescableRequests = new ArrayList<>();
+
     private class RenditionRequestSchedulerMock extends PostTxnCallbackScheduler
     {
+        @Override
+        public void scheduleRendition(RetryingTransactionHelper.RetryingTransactionCallback callback, String uniqueId,
+                                      String batchKey, boolean interactive)
+        {
+            coalescableRequests.add(uniqueId);
+            super.scheduleRendition(callback, uniqueId, batchKey, interactive);
+        }
+
         @Override
         public void scheduleRendition(RetryingTransactionHelper.RetryingTransactionCallback callback, String uniqueId)
         {
@@ -234,6 +246,18 @@ public class RenditionService2Test
 
     }
 
+    @Test
+    public void onlyRenditionRequestsMayBeCoalesced()
+    {
+        renditionService2.render(nodeRef, TEST_RENDITION);
+        assertEquals(1, coalescableRequests.size());
+
+        // Each transform client waits for the reply to its own request
+        renditionService2.transform(nodeRef, TEST_TRANSFORM);
+        assertEquals(1, coalescableRequests.size());
+        verify(transformClient, times(2)).transform(any(), any(), nullable(String.class), anyInt());
+    }
+
     @Test(expected = UnsupportedOperationException.class)
     public void noTransformForRenditions()
     {
@@ -31,7 +31,9 @@ import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -39,11 +41,14 @@ import static org.mockito.Mockito.when;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
 import org.alfresco.repo.cache.lookup.EntityLookupCache;
 import org.alfresco.repo.domain.node.Node;
 import org.alfresco.repo.domain.node.NodeDAO;
 import org.alfresco.repo.domain.node.StoreEntity;
+import org.alfresco.repo.domain.permissions.AclCrudDAO;
+import org.alfresco.repo.domain.permissions.Authority;
 import org.alfresco.repo.search.impl.querymodel.QueryOptions;
 import org.alfresco.repo.security.permissions.impl.acegi.FilteringResultSet;
 import org.alfresco.service.cmr.repository.StoreRef;
@@ -211,6 +216,30 @@ public class DBQueryEngineTest
         verify(resultContext).stop();
     }
     
+    @Test
+    public void shouldFilterQueryByReadableAcls()
+    {
+        AclCrudDAO aclCrudDAO = mock(AclCrudDAO.class);
+        engine.setAclCrudDAO(aclCrudDAO);
+        Authority authority = mock(Authority.class);
+        when(authority.getAuthority()).thenReturn("bob");
+        when(assessor.getReadableAclIds(aclCrudDAO, 1000)).thenReturn(Set.of(1L, 2L));
+
+        engine.applyReadableAclFilter(dbQuery, assessor, authority);
+
+        verify(dbQuery).setReadableAclFilter(Set.of(1L, 2L), "bob");
+    }
+
+    @Test
+    public void shouldNotFilterQueryWhenReadableAclsAreNotKnown()
+    {
+        when(assessor.getReadableAclIds(any(), anyInt())).thenReturn(null);
+
+        engine.applyReadableAclFilter(dbQuery, assessor, null);
+
+        verify(dbQuery, never()).setReadableAclFilter(any(), any());
+    }
+
     private void prepareTemplate(DBQuery dbQuery, List<Node> nodes)
     {
         doAnswer(invocation -> {
@@ -25,7 +25,9 @@
  */
 package org.alfresco.repo.search.impl.querymodel.impl.db;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
@@ -33,10 +35,13 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 
+import java.util.List;
 import java.util.Set;
 
 import org.alfresco.repo.cache.lookup.EntityLookupCache;
 import org.alfresco.repo.domain.node.Node;
+import org.alfresco.repo.domain.permissions.AclCrudDAO;
+import org.alfresco.repo.domain.permissions.AclMember;
 import org.alfresco.repo.domain.permissions.Authority;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -50,8 +55,9 @@ public class NodePermissionAssessorPermissionsTest
     private PermissionService permissionService;
     
     @Before
-    public void setup()
+    public void setup() throws Exception
     {
+        new AuthenticationUtil().afterPropertiesSet();
         AuthenticationUtil.clearCurrentSecurityContext();
         permissionService = mock(PermissionService.class);
     }
@@ -101,6 +107,60 @@ public class NodePermissionAssessorPermissionsTest
         assertFalse(result);
     }
 
+    @Test
+    public void shouldFindReadableAclsAmongTheAclsOfTheUsersAuthorities()
+    {
+        AuthenticationUtil.setRunAsUser("bob");
+        AclCrudDAO aclCrudDAO = mockAclMembers();
+        when(permissionService.getReaders(1L)).thenReturn(Set.of("bob"));
+        when(permissionService.getReaders(2L)).thenReturn(Set.of("GROUP_other"));
+        when(permissionService.getReaders(3L)).thenReturn(Set.of("GROUP_EVERYONE"));
+        when(permissionService.getReadersDenied(3L)).thenReturn(Set.of("bob"));
+        NodePermissionAssessor assessor = createAssessor();
+
+        Set<Long> readableAclIds = assessor.getReadableAclIds(aclCrudDAO, 3);
+
+        assertEquals(Set.of(1L), readableAclIds);
+    }
+
+    @Test
+    public void shouldNotFindReadableAclsWhenTheUserHasEntriesInTooManyAcls()
+    {
+        AuthenticationUtil.setRunAsUser("bob");
+        AclCrudDAO aclCrudDAO = mockAclMembers();
+        NodePermissionAssessor assessor = createAssessor();
+
+        assertNull(assessor.getReadableAclIds(aclCrudDAO, 2));
+    }
+
+    @Test
+    public void shouldNotFindReadableAclsWhenSystemIsReading()
+    {
+        AuthenticationUtil.setRunAsUserSystem();
+        AclCrudDAO aclCrudDAO = mockAclMembers();
+        NodePermissionAssessor assessor = createAssessor();
+
+        assertNull(assessor.getReadableAclIds(aclCrudDAO, 10));
+    }
+
+    private AclCrudDAO mockAclMembers()
+    {
+        when(permissionService.getAuthorisations()).thenReturn(Set.of("bob", "GROUP_EVERYONE"));
+        List<AclMember> bobMembers = List.of(aclMember(1L), aclMember(2L));
+        List<AclMember> everyoneMembers = List.of(aclMember(2L), aclMember(3L));
+        AclCrudDAO aclCrudDAO = mock(AclCrudDAO.class);
+        when(aclCrudDAO.getAclMembersByAuthority("bob")).thenReturn(bobMembers);
+        when(aclCrudDAO.getAclMembersByAuthority("GROUP_EVERYONE")).thenReturn(everyoneMembers);
+        return aclCrudDAO;
+    }
+
+    private AclMember aclMember(long aclId)
+    {
+        AclMember aclMember = mock(AclMember.class);
+        when(aclMember.getAclId()).thenReturn(aclId);
+        return aclMember;
+    }
+
     private NodePermissionAssessor createAssessor()
     {
         NodeService nodeService = mock(NodeService.class);
@@ -0,0 +1,162 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search.impl.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.search.LimitBy;
+import org.alfresco.service.cmr.search.SearchParameters;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/** Unit tests for {@link SolrJSONResponseParser}. */
+@RunWith(MockitoJUnitRunner.class)
+public class SolrJSONResponseParserTest
+{
+    private static final String JSON = "{"
+            + "\"responseHeader\":{\"status\":0,\"QTime\":12,\"params\":{\"fq\":[\"a\",\"b\"],\"rows\":\"3\"}},"
+            + "\"response\":{\"numFound\":42,\"start\":0,\"maxScore\":2.5,\"docs\":["
+            + "{\"id\":\"_DEFAULT_!8000000000000000!800000000000000c\",\"DBID\":12,\"score\":2.5},"
+            + "{\"DBID\":[13,99],\"_version_\":1,\"score\":1.25,\"other\":{\"nested\":[1,2]}},"
+            + "{\"score\":1.0}]},"
+            + "\"lastIndexedTx\":26,"
+            + "\"processedDenies\":true,"
+            + "\"highlighting\":{\"_DEFAULT_!8000000000000000!800000000000000c\":{\"DBID\":\"12\",\"cm:name\":[\"<em>big</em> file\"]}},"
+            + "\"facet_counts\":{\"facet_fields\":{\"cm:creator\":[\"admin\",3,\"guest\",1]},\"facet_queries\":{}},"
+            + "\"stats\":{\"stats_fields\":{\"cm:content.size\":{\"min\":1.0E3,\"max\":12345678901,\"mean\":-0.5,\"missing\":null}}}"
+            + "}";
+
+    private @Mock NodeService nodeService;
+    private @Mock NodeDAO nodeDao;
+
+    @Test
+    public void testNonDocumentValuesMatchJSONTokener() throws Exception
+    {
+        JSONObject expected = new JSONObject(new JSONTokener(JSON));
+        expected.getJSONObject("response").put("docs", new org.json.JSONArray());
+
+        JSONObject actual = SolrJSONResponseParser.parse(new StringReader(JSON), new SolrJSONDocs());
+
+        assertTrue("Expected " + expected + " but got " + actual, expected.similar(actual));
+    }
+
+    @Test
+    public void testDocumentsAreRead() throws Exception
+    {
+        SolrJSONDocs docs = new SolrJSONDocs(1);
+        SolrJSONResponseParser.parse(new StringReader(JSON), docs);
+
+        assertEquals(3, docs.size());
+        assertEquals(List.of(12L, 13L, 0L), docs.getDbids());
+        assertEquals(2.5f, docs.getScore(0), 0f);
+        assertEquals(1.25f, docs.getScore(1), 0f);
+        assertEquals(1.0f, docs.getScore(2), 0f);
+    }
+
+    @Test
+    public void testDocumentsMatchJSONPath() throws Exception
+    {
+        SolrJSONDocs expected = SolrJSONDocs.fromJSON(new JSONObject(JSON).getJSONObject("response").getJSONArray("docs"));
+        SolrJSONDocs actual = new SolrJSONDocs();
+        SolrJSONResponseParser.parse(new StringReader(JSON), actual);
+
+        assertEquals(expected.getDbids(), actual.getDbids());
+        for (int i = 0; i < expected.size(); i++)
+        {
+            assertEquals(expected.getScore(i), actual.getScore(i), 0f);
+        }
+    }
+
+    @Test
+    public void testResultSetMatchesJSONPath() throws Exception
+    {
+        when(nodeService.getNodeRef(anyLong())).thenAnswer(invocation ->
+                new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "node" + invocation.getArgument(0)));
+        SearchParameters searchParameters = new SearchParameters();
+        searchParameters.setBulkFetchEnabled(false);
+
+        SolrJSONResultSet expected = new SolrJSONResultSet(new JSONObject(JSON), searchParameters, nodeService, nodeDao, LimitBy.UNLIMITED, 10);
+        SolrJSONDocs docs = new SolrJSONDocs();
+        JSONObject json = SolrJSONResponseParser.parse(new StringReader(JSON), docs);
+        SolrJSONResultSet actual = new SolrJSONResultSet(json, docs, searchParameters, nodeService, nodeDao, LimitBy.UNLIMITED, 10);
+
+        assertEquals(expected.getNumberFound(), actual.getNumberFound());
+        assertEquals(expected.length(), actual.length());
+        assertEquals(expected.getNodeRefs(), actual.getNodeRefs());
+        for (int i = 0; i < expected.length(); i++)
+        {
+            assertEquals(expected.getScore(i), actual.getScore(i), 0f);
+        }
+        assertEquals(expected.getFieldFacet("cm:creator"), actual.getFieldFacet("cm:creator"));
+        assertEquals(expected.getHighlighting(), actual.getHighlighting());
+        assertEquals(expected.getLastIndexedTxId(), actual.getLastIndexedTxId());
+    }
+
+    @Test
+    public void testMissingScoreIsRejected() throws IOException
+    {
+        try
+        {
+            SolrJSONResponseParser.parse(new StringReader("{\"response\":{\"docs\":[{\"DBID\":1}]}}"), new SolrJSONDocs());
+            fail("Expected a JSONException for a document without a score");
+        }
+        catch (JSONException e)
+        {
+            // Expected, as for SolrJSONDocs.fromJSON
+        }
+    }
+
+    @Test
+    public void testMalformedResponseIsRejected() throws IOException
+    {
+        try
+        {
+            SolrJSONResponseParser.parse(new StringReader("{\"response\":{\"docs\":[{\"DBID\":1,"), new SolrJSONDocs());
+            fail("Expected a JSONException for a truncated response");
+        }
+        catch (JSONException e)
+        {
+            // Expected
+        }
+    }
+}
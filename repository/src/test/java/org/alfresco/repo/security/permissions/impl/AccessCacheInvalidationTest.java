@@ -0,0 +1,288 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.MemoryCache;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.permissions.PermissionReference;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.AuthorityService;
+import org.alfresco.service.cmr.security.AuthorityType;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.service.namespace.QName;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Tests that changes of group membership and node moves only invalidate the affected entries of the
+ * {@link PermissionServiceImpl} access cache.
+ */
+public class AccessCacheInvalidationTest
+{
+    private static final NodeRef FOLDER = new NodeRef("workspace://SpacesStore/folder");
+    private static final NodeRef DOCUMENT = new NodeRef("workspace://SpacesStore/document");
+    private static final NodeRef GROUP_NODE = new NodeRef("workspace://SpacesStore/group");
+    private static final NodeRef PERSON_NODE = new NodeRef("workspace://SpacesStore/person");
+    private static final NodeRef PARENT_GROUP_NODE = new NodeRef("workspace://SpacesStore/parentGroup");
+
+    private PermissionServiceImpl permissionService;
+    private SimpleCache<Serializable, AccessStatus> accessCache;
+    private SimpleCache<Serializable, Long> accessGenerationCache;
+    private NodeService nodeService;
+    private AuthorityService authorityService;
+
+    @Before
+    public void setUp()
+    {
+        accessCache = new MemoryCache<Serializable, AccessStatus>();
+        accessGenerationCache = new MemoryCache<Serializable, Long>();
+        nodeService = mock(NodeService.class);
+        authorityService = mock(AuthorityService.class);
+        DictionaryService dictionaryService = mock(DictionaryService.class);
+        TenantService tenantService = mock(TenantService.class);
+        when(tenantService.getName(any(NodeRef.class))).then(invocation -> invocation.getArgument(0));
+        when(dictionaryService.isSubClass(ContentModel.TYPE_AUTHORITY_CONTAINER, ContentModel.TYPE_AUTHORITY_CONTAINER)).thenReturn(true);
+        when(dictionaryService.isSubClass(ContentModel.TYPE_PERSON, ContentModel.TYPE_PERSON)).thenReturn(true);
+        mockAuthority(GROUP_NODE, ContentModel.TYPE_AUTHORITY_CONTAINER, ContentModel.PROP_AUTHORITY_NAME, "GROUP_editors");
+        mockAuthority(PERSON_NODE, ContentModel.TYPE_PERSON, ContentModel.PROP_USERNAME, "Carol");
+        when(authorityService.getContainedAuthorities(AuthorityType.USER, "GROUP_editors", false))
+                .thenReturn(new HashSet<String>(Set.of("alice", "bob")));
+
+        permissionService = new PermissionServiceImpl();
+        permissionService.setAccessCache(accessCache);
+        permissionService.setAccessGenerationCache(accessGenerationCache);
+        permissionService.setNodeService(nodeService);
+        permissionService.setAuthorityService(authorityService);
+        permissionService.setDictionaryService(dictionaryService);
+        permissionService.setTenantService(tenantService);
+    }
+
+    private void mockAuthority(NodeRef nodeRef, QName type, QName nameProperty, String name)
+    {
+        when(nodeService.exists(nodeRef)).thenReturn(true);
+        when(nodeService.getType(nodeRef)).thenReturn(type);
+        when(nodeService.getProperty(nodeRef, nameProperty)).thenReturn(name);
+    }
+
+    /**
+     * An entry as cached for an explicit set of authorities
+     */
+    private Serializable cachedEntry(NodeRef nodeRef)
+    {
+        LinkedHashSet<Serializable> key = new LinkedHashSet<Serializable>();
+        key.add("Read");
+        key.add("erin");
+        key.add("GROUP_EVERYONE");
+        key.add(nodeRef);
+        key.add("txn");
+        key.add(PermissionServiceImpl.CacheType.SINGLE_PERMISSION);
+        accessCache.put(key, AccessStatus.DENIED);
+        return key;
+    }
+
+    @Test
+    public void groupMembershipChangeStartsNewGenerationsForTheUsersInTheGroup()
+    {
+        Long alice = permissionService.getAccessGeneration("alice");
+        Long bob = permissionService.getAccessGeneration("Bob");
+        Long dave = permissionService.getAccessGeneration("dave");
+        Serializable entry = cachedEntry(DOCUMENT);
+
+        permissionService.onCreateChildAssociation(new ChildAssociationRef(ContentModel.ASSOC_MEMBER, PARENT_GROUP_NODE, ContentModel.ASSOC_MEMBER, GROUP_NODE));
+
+        assertNotEquals(alice, permissionService.getAccessGeneration("alice"));
+        assertNotEquals(bob, permissionService.getAccessGeneration("bob"));
+        assertEquals(dave, permissionService.getAccessGeneration("dave"));
+        // The access cache itself is not scanned or changed
+        assertEquals(AccessStatus.DENIED, accessCache.get(entry));
+        AccessCacheMetrics metrics = permissionService.getAccessCacheMetrics();
+        assertEquals(0, metrics.getFullClears());
+        assertEquals(1, metrics.getTargetedInvalidations());
+        assertEquals(2, metrics.getUsersInvalidated());
+    }
+
+    @Test
+    public void userMembershipChangeIgnoresCase()
+    {
+        Long carol = permissionService.getAccessGeneration("carol");
+        Long dave = permissionService.getAccessGeneration("dave");
+
+        permissionService.beforeDeleteChildAssociation(new ChildAssociationRef(ContentModel.ASSOC_MEMBER, GROUP_NODE, ContentModel.ASSOC_MEMBER, PERSON_NODE));
+
+        assertNotEquals(carol, permissionService.getAccessGeneration("carol"));
+        assertEquals(dave, permissionService.getAccessGeneration("dave"));
+    }
+
+    @Test
+    public void evictedGenerationIsNotReused()
+    {
+        Long alice = permissionService.getAccessGeneration("alice");
+        assertEquals(alice, permissionService.getAccessGeneration("ALICE"));
+
+        accessGenerationCache.clear();
+
+        assertNotEquals(alice, permissionService.getAccessGeneration("alice"));
+    }
+
+    @Test
+    public void largeGroupsClearTheCache()
+    {
+        Serializable entry = cachedEntry(DOCUMENT);
+        permissionService.setAccessCacheInvalidationLimit(1);
+
+        permissionService.onCreateChildAssociation(new ChildAssociationRef(ContentModel.ASSOC_MEMBER, PARENT_GROUP_NODE, ContentModel.ASSOC_MEMBER, GROUP_NODE));
+
+        assertNull(accessCache.get(entry));
+        assertEquals(1, permissionService.getAccessCacheMetrics().getFullClears());
+    }
+
+    @Test
+    public void movingALeafNodeLeavesTheCache()
+    {
+        Serializable document = cachedEntry(DOCUMENT);
+        when(nodeService.countChildAssocs(DOCUMENT, true)).thenReturn(0);
+
+        ChildAssociationRef oldAssoc = new ChildAssociationRef(ContentModel.ASSOC_CONTAINS, FOLDER, ContentModel.ASSOC_CONTAINS, DOCUMENT);
+        ChildAssociationRef newAssoc = new ChildAssociationRef(ContentModel.ASSOC_CONTAINS, PARENT_GROUP_NODE, ContentModel.ASSOC_CONTAINS, DOCUMENT);
+        permissionService.onMoveNode(oldAssoc, newAssoc);
+
+        // The move gives the node a new change transaction, so its old entries can't be found
+        assertEquals(AccessStatus.DENIED, accessCache.get(document));
+        assertEquals(0, permissionService.getAccessCacheMetrics().getFullClears());
+    }
+
+    @Test
+    public void movingALeafNodeCachedInThisTransactionClearsTheCache()
+    {
+        Serializable document = cachedEntry(DOCUMENT);
+        when(nodeService.countChildAssocs(DOCUMENT, true)).thenReturn(0);
+        PermissionReference read = SimplePermissionReference.getPermissionReference(ContentModel.TYPE_CMOBJECT, PermissionService.READ);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try
+        {
+            String txnId = AlfrescoTransactionSupport.getTransactionId();
+            when(nodeService.getNodeStatus(DOCUMENT)).thenReturn(new NodeRef.Status(1L, DOCUMENT, txnId, 1L, false));
+            permissionService.generateKey(new HashSet<String>(Set.of("alice")), DOCUMENT, read, PermissionServiceImpl.CacheType.HAS_PERMISSION);
+
+            ChildAssociationRef oldAssoc = new ChildAssociationRef(ContentModel.ASSOC_CONTAINS, FOLDER, ContentModel.ASSOC_CONTAINS, DOCUMENT);
+            ChildAssociationRef newAssoc = new ChildAssociationRef(ContentModel.ASSOC_CONTAINS, PARENT_GROUP_NODE, ContentModel.ASSOC_CONTAINS, DOCUMENT);
+            permissionService.onMoveNode(oldAssoc, newAssoc);
+        }
+        finally
+        {
+            // Let the transaction support drop its resources
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations())
+            {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertNull(accessCache.get(document));
+        assertEquals(1, permissionService.getAccessCacheMetrics().getFullClears());
+    }
+
+    @Test
+    public void movingANodeWithChildrenClearsTheCache()
+    {
+        Serializable document = cachedEntry(DOCUMENT);
+        when(nodeService.countChildAssocs(FOLDER, true)).thenReturn(3);
+
+        ChildAssociationRef oldAssoc = new ChildAssociationRef(ContentModel.ASSOC_CONTAINS, PARENT_GROUP_NODE, ContentModel.ASSOC_CONTAINS, FOLDER);
+        ChildAssociationRef newAssoc = new ChildAssociationRef(ContentModel.ASSOC_CONTAINS, GROUP_NODE, ContentModel.ASSOC_CONTAINS, FOLDER);
+        permissionService.onMoveNode(oldAssoc, newAssoc);
+
+        assertNull(accessCache.get(document));
+        assertEquals(1, permissionService.getAccessCacheMetrics().getFullClears());
+    }
+
+    @Test
+    public void hasPermissionLooksUpTheAccessCache() throws Exception
+    {
+        new AuthenticationUtil().afterPropertiesSet();
+        ModelDAO modelDAO = mock(ModelDAO.class);
+        PermissionReference read = SimplePermissionReference.getPermissionReference(ContentModel.TYPE_CMOBJECT, PermissionService.READ);
+        when(modelDAO.getPermissionReference(any(), anyString())).thenReturn(read);
+        when(modelDAO.getAllPermissions(DOCUMENT)).then(invocation -> new HashSet<PermissionReference>(Set.of(read)));
+        when(nodeService.exists(DOCUMENT)).thenReturn(true);
+        when(nodeService.getType(DOCUMENT)).thenReturn(ContentModel.TYPE_CONTENT);
+        when(nodeService.getPrimaryParent(DOCUMENT)).thenReturn(new ChildAssociationRef(null, null, null, DOCUMENT));
+        when(authorityService.getAuthoritiesForUser("alice")).then(invocation -> new HashSet<String>());
+        permissionService.setModelDAO(modelDAO);
+        permissionService.setPermissionsDaoComponent(mock(PermissionsDaoComponent.class));
+
+        AuthenticationUtil.setFullyAuthenticatedUser("alice");
+        try
+        {
+            AccessStatus first = permissionService.hasPermission(DOCUMENT, read);
+            AccessStatus second = permissionService.hasPermission(DOCUMENT, read);
+            assertEquals(first, second);
+        }
+        finally
+        {
+            AuthenticationUtil.clearCurrentSecurityContext();
+        }
+
+        AccessCacheMetrics metrics = permissionService.getAccessCacheMetrics();
+        assertEquals(1, metrics.getMisses());
+        assertEquals(1, metrics.getHits());
+    }
+
+    @Test
+    public void hitRatio()
+    {
+        AccessCacheMetrics metrics = new AccessCacheMetrics();
+        assertEquals(0.0, metrics.getHitRatio(), 0.0);
+        metrics.recordLookup(true);
+        metrics.recordLookup(true);
+        metrics.recordLookup(true);
+        metrics.recordLookup(false);
+        assertEquals(0.75, metrics.getHitRatio(), 0.0);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.domain.node.NodeDAO.ChildAssocRefQueryCallback;
+import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.CyclicChildRelationshipException;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeRef.Status;
+import org.alfresco.service.cmr.repository.Path;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link AncestorPathIndex} builds the same paths as the node DAO and notices changes to ancestors.
+ */
+public class AncestorPathIndexTest
+{
+    private static final QName TYPE_FOLDER = QName.createQName("test", "folder");
+
+    private NodeDAO nodeDAO;
+    private AncestorPathIndex index;
+    private Map<Long, NodeRef> nodeRefs;
+    private Map<Long, String> changeTxnIds;
+    private Map<Long, List<Pair<Long, ChildAssociationRef>>> parents;
+
+    @Before
+    public void setUp()
+    {
+        nodeDAO = mock(NodeDAO.class);
+        nodeRefs = new HashMap<>();
+        changeTxnIds = new HashMap<>();
+        parents = new HashMap<>();
+
+        when(nodeDAO.getNodeIdStatus(anyLong())).then(invocation -> {
+            Long nodeId = invocation.getArgument(0);
+            return new Status(nodeId, nodeRefs.get(nodeId), changeTxnIds.get(nodeId), 1L, false);
+        });
+        when(nodeDAO.getNodeType(anyLong())).then(invocation ->
+                invocation.getArgument(0).equals(1L) ? ContentModel.TYPE_STOREROOT : TYPE_FOLDER);
+        when(nodeDAO.hasNodeAspect(anyLong(), eq(ContentModel.ASPECT_ROOT))).then(invocation ->
+                invocation.getArgument(0).equals(1L));
+        when(nodeDAO.getRootNode(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE)).then(invocation -> new Pair<>(1L, nodeRefs.get(1L)));
+        doAnswer(invocation -> {
+            Long nodeId = invocation.getArgument(0);
+            ChildAssocRefQueryCallback callback = invocation.getArgument(4);
+            for (Pair<Long, ChildAssociationRef> parent : parents.getOrDefault(nodeId, List.of()))
+            {
+                ChildAssociationRef assocRef = parent.getSecond();
+                callback.handle(new Pair<>(0L, assocRef), new Pair<>(parent.getFirst(), assocRef.getParentRef()),
+                        new Pair<>(nodeId, assocRef.getChildRef()));
+            }
+            callback.done();
+            return null;
+        }).when(nodeDAO).getParentAssocs(anyLong(), isNull(), isNull(), isNull(), any());
+
+        // 1 (store root) <- 2 (company home) <- 3 (site) <- 4, 5 (documents)
+        addNode(1L, null, null);
+        addNode(2L, 1L, "companyhome");
+        addNode(3L, 2L, "site");
+        addNode(4L, 3L, "doc4");
+        addNode(5L, 3L, "doc5");
+
+        index = new AncestorPathIndex();
+        index.setNodeDAO(nodeDAO);
+        index.setPolicyComponent(mock(PolicyComponent.class));
+        index.setEnabled(true);
+        index.init();
+    }
+
+    private void addNode(Long nodeId, Long parentId, String name)
+    {
+        nodeRefs.put(nodeId, new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "node-" + nodeId));
+        changeTxnIds.put(nodeId, "txn-1");
+        parents.put(nodeId, new ArrayList<>());
+        if (parentId != null)
+        {
+            addParent(nodeId, parentId, name, true);
+        }
+    }
+
+    private void addParent(Long nodeId, Long parentId, String name, boolean isPrimary)
+    {
+        parents.get(nodeId).add(new Pair<>(parentId, new ChildAssociationRef(ContentModel.ASSOC_CONTAINS,
+                nodeRefs.get(parentId), QName.createQName("test", name), nodeRefs.get(nodeId), isPrimary, 0)));
+    }
+
+    private List<Path> getPaths(Long nodeId)
+    {
+        return index.newLookup().getPaths(new Pair<>(nodeId, nodeRefs.get(nodeId)));
+    }
+
+    private static String toString(List<Path> paths)
+    {
+        List<String> strings = new ArrayList<>();
+        for (Path path : paths)
+        {
+            strings.add(path.toString());
+        }
+        return strings.toString();
+    }
+
+    @Test
+    public void testPathsMatchNodeDAO()
+    {
+        Path expected = new Path();
+        expected.append(new Path.ChildAssocElement(new ChildAssociationRef(null, null, null, nodeRefs.get(1L))));
+        expected.append(new Path.ChildAssocElement(new ChildAssociationRef(ContentModel.ASSOC_CHILDREN,
+                nodeRefs.get(1L), QName.createQName("test", "companyhome"), nodeRefs.get(2L))));
+        expected.append(new Path.ChildAssocElement(new ChildAssociationRef(ContentModel.ASSOC_CONTAINS,
+                nodeRefs.get(2L), QName.createQName("test", "site"), nodeRefs.get(3L), true, -1)));
+        expected.append(new Path.ChildAssocElement(new ChildAssociationRef(ContentModel.ASSOC_CONTAINS,
+                nodeRefs.get(3L), QName.createQName("test", "doc4"), nodeRefs.get(4L), true, -1)));
+
+        List<Path> paths = getPaths(4L);
+
+        assertEquals(Arrays.asList(expected), paths);
+        assertEquals(toString(Arrays.asList(expected)), toString(paths));
+        Path rootPath = getPaths(1L).get(0);
+        assertEquals(1, rootPath.size());
+    }
+
+    @Test
+    public void testAncestorsAreSharedBetweenLookups()
+    {
+        getPaths(4L);
+        getPaths(5L);
+
+        verify(nodeDAO, times(1)).getParentAssocs(eq(3L), isNull(), isNull(), isNull(), any());
+        verify(nodeDAO, times(1)).getParentAssocs(eq(2L), isNull(), isNull(), isNull(), any());
+        assertEquals(3, index.size());
+        assertEquals(3, index.getMisses());
+        assertEquals(1, index.getHits());
+        assertEquals(Arrays.toString(new long[] {2L, 1L}), Arrays.toString(index.getIndexedAncestorIds(3L)));
+        assertNull("Documents are not indexed", index.getIndexedAncestorIds(4L));
+    }
+
+    @Test
+    public void testMoveOfAncestorIsNoticed()
+    {
+        addNode(6L, 2L, "archive");
+        getPaths(4L);
+
+        // Move the site beneath the archive folder
+        parents.get(3L).clear();
+        addParent(3L, 6L, "site", true);
+        changeTxnIds.put(3L, "txn-2");
+
+        List<Path> paths = getPaths(4L);
+
+        assertEquals(1, paths.size());
+        assertEquals(nodeRefs.get(6L), ((Path.ChildAssocElement) paths.get(0).get(2)).getRef().getChildRef());
+        assertEquals(5, paths.get(0).size());
+    }
+
+    @Test
+    public void testEvictedAncestorIsRebuilt()
+    {
+        getPaths(4L);
+        index.evict(2L);
+
+        getPaths(4L);
+
+        verify(nodeDAO, times(2)).getParentAssocs(eq(2L), isNull(), isNull(), isNull(), any());
+        verify(nodeDAO, times(2)).getParentAssocs(eq(3L), isNull(), isNull(), isNull(), any());
+        assertEquals(1, index.getEvictions());
+    }
+
+    @Test
+    public void testSecondaryParentsGiveCopiedPaths()
+    {
+        addNode(6L, 2L, "tags");
+        addParent(4L, 6L, "doc4", false);
+
+        List<Path> paths = getPaths(4L);
+        assertEquals(2, paths.size());
+        assertEquals(nodeRefs.get(3L), ((Path.ChildAssocElement) paths.get(0).get(2)).getRef().getChildRef());
+        assertEquals(nodeRefs.get(6L), ((Path.ChildAssocElement) paths.get(1).get(2)).getRef().getChildRef());
+
+        // The caller may extend the paths without changing the index
+        paths.get(0).append(new Path.AttributeElement(QName.createQName("test", "member")));
+        assertEquals(4, getPaths(4L).get(0).size());
+    }
+
+    @Test
+    public void testCycleIsDetected()
+    {
+        addParent(2L, 3L, "loop", false);
+        try
+        {
+            getPaths(4L);
+            fail("Expected a cycle to be detected");
+        }
+        catch (CyclicChildRelationshipException e)
+        {
+            // Expected
+        }
+    }
+}
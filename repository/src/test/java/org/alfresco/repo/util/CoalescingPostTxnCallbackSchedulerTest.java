@@ -0,0 +1,239 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.transaction.TransactionService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Tests the coalescing, prioritisation and batching of post commit callbacks by the
+ * {@link CoalescingPostTxnCallbackScheduler}.
+ */
+public class CoalescingPostTxnCallbackSchedulerTest
+{
+    private CoalescingPostTxnCallbackScheduler scheduler;
+    private ExecutorService threadPoolExecutor;
+    private final List<String> executed = new CopyOnWriteArrayList<>();
+    private final Map<String, String> executedOnThread = new ConcurrentHashMap<>();
+
+    @Before
+    public void setUp() throws Throwable
+    {
+        RetryingTransactionHelper txnHelper = mock(RetryingTransactionHelper.class);
+        when(txnHelper.doInTransaction(any())).then(invocation -> {
+            RetryingTransactionCallback<?> callback = invocation.getArgument(0);
+            return callback.execute();
+        });
+        TransactionService transactionService = mock(TransactionService.class);
+        when(transactionService.getRetryingTransactionHelper()).thenReturn(txnHelper);
+
+        threadPoolExecutor = Executors.newFixedThreadPool(4);
+        scheduler = new CoalescingPostTxnCallbackScheduler();
+        scheduler.setTransactionService(transactionService);
+        scheduler.setThreadPoolExecutor(threadPoolExecutor);
+        scheduler.setEnabled(true);
+        scheduler.setPollIntervalMs(20);
+    }
+
+    @After
+    public void tearDown()
+    {
+        scheduler.shutdown();
+        threadPoolExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testDisabledRunsCallbackOnCommit()
+    {
+        scheduler.setEnabled(false);
+        scheduler.init();
+
+        scheduleInTransaction("node1 doclib", "v1", "doclib", false);
+
+        assertEquals(List.of("v1"), executed);
+        assertEquals(0, scheduler.getScheduledCount());
+    }
+
+    @Test
+    public void testRepeatedRequestsCoalesced()
+    {
+        scheduler.setQuietPeriodMs(500);
+        scheduler.init();
+
+        scheduleInTransaction("node1 doclib", "v1", "doclib", false);
+        scheduleInTransaction("node1 doclib", "v2", "doclib", false);
+        scheduleInTransaction("node1 doclib", "v3", "doclib", false);
+        scheduleInTransaction("node2 doclib", "other", "doclib", false);
+
+        waitFor(() -> scheduler.getExecutedCount() == 2);
+        assertEquals(2, executed.size());
+        assertTrue(executed.contains("v3"));
+        assertTrue(executed.contains("other"));
+        assertEquals(4, scheduler.getScheduledCount());
+        assertEquals(2, scheduler.getDiscardedCount());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testInteractiveRunsAheadOfBackground()
+    {
+        scheduler.setQuietPeriodMs(60000);
+        scheduler.init();
+
+        scheduleInTransaction("node1 doclib", "background", "doclib", false);
+        scheduleInTransaction("node2 doclib", "interactive", "doclib", true);
+
+        waitFor(() -> scheduler.getExecutedCount() == 1);
+        assertEquals(List.of("interactive"), executed);
+        assertEquals(1, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testInteractiveRequestPromotesWaitingBackgroundRequest()
+    {
+        scheduler.setQuietPeriodMs(60000);
+        scheduler.init();
+
+        scheduleInTransaction("node1 doclib", "background", "doclib", false);
+        scheduleInTransaction("node1 doclib", "interactive", "doclib", true);
+
+        waitFor(() -> scheduler.getExecutedCount() == 1);
+        assertEquals(List.of("interactive"), executed);
+        assertEquals(0, scheduler.getPendingCount());
+        assertEquals(1, scheduler.getDiscardedCount());
+    }
+
+    @Test
+    public void testCallbacksWithSameBatchKeyRunTogether()
+    {
+        scheduler.setQuietPeriodMs(100);
+        scheduler.setPollIntervalMs(1000);
+        scheduler.init();
+
+        scheduleInTransaction("node1 pdf", "pdf1", "pdf", false);
+        scheduleInTransaction("node2 pdf", "pdf2", "pdf", false);
+        scheduleInTransaction("node3 pdf", "pdf3", "pdf", false);
+        scheduleInTransaction("node1 doclib", "doclib1", "doclib", false);
+
+        waitFor(() -> scheduler.getExecutedCount() == 4);
+        String pdfThread = executedOnThread.get("pdf1");
+        assertEquals(pdfThread, executedOnThread.get("pdf2"));
+        assertEquals(pdfThread, executedOnThread.get("pdf3"));
+        assertEquals(List.of("pdf1", "pdf2", "pdf3"), executed.stream()
+                .filter(name -> name.startsWith("pdf")).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testShutdownRunsWaitingCallbacks()
+    {
+        scheduler.setQuietPeriodMs(60000);
+        scheduler.init();
+
+        scheduleInTransaction("node1 doclib", "first", "doclib", false);
+        scheduleInTransaction("node2 doclib", "second", "doclib", false);
+        assertEquals(2, scheduler.getPendingCount());
+
+        scheduler.shutdown();
+
+        assertEquals(List.of("first", "second"), executed);
+        assertEquals(0, scheduler.getPendingCount());
+
+        // Requests committed after the shutdown are not left waiting either
+        scheduleInTransaction("node3 doclib", "late", "doclib", false);
+        assertEquals(List.of("first", "second", "late"), executed);
+    }
+
+    private void scheduleInTransaction(String uniqueId, String name, String batchKey, boolean interactive)
+    {
+        RetryingTransactionCallback<Void> callback = () ->
+        {
+            executedOnThread.put(name, Thread.currentThread().getName());
+            executed.add(name);
+            return null;
+        };
+        TransactionSynchronizationManager.initSynchronization();
+        try
+        {
+            scheduler.scheduleRendition(callback, uniqueId, batchKey, interactive);
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            for (TransactionSynchronization synchronization : synchronizations)
+            {
+                synchronization.beforeCommit(false);
+            }
+            for (TransactionSynchronization synchronization : synchronizations)
+            {
+                synchronization.afterCommit();
+            }
+            for (TransactionSynchronization synchronization : synchronizations)
+            {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        }
+        finally
+        {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private void waitFor(BooleanSupplier condition)
+    {
+        long end = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean())
+        {
+            assertTrue("Timed out waiting for the callbacks", System.currentTimeMillis() < end);
+            try
+            {
+                Thread.sleep(10);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -37,6 +37,7 @@ import org.alfresco.repo.content.transform.AbstractLocalTransform;
 import org.alfresco.repo.content.transform.LocalPipelineTransform;
 import org.alfresco.repo.content.transform.LocalTransformImpl;
 import org.alfresco.repo.content.transform.LocalTransformServiceRegistry;
+import org.alfresco.repo.content.transform.RemoteTransformerConnectionPools;
 import org.alfresco.repo.content.transform.TransformerDebug;
 import org.alfresco.transform.config.SupportedSourceAndTarget;
 import org.alfresco.transform.config.TransformConfig;
@@ -51,6 +52,7 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.config.Configurator;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -209,6 +211,7 @@ public class LocalTransformServiceRegistryConfigTest extends TransformRegistryMo
     private List<Transformer> transformerList;
 
     protected TestLocalTransformServiceRegistry registry;
+    private RemoteTransformerConnectionPools connectionPools = new RemoteTransformerConnectionPools();
 
     private Properties properties = new Properties();
 
@@ -234,6 +237,12 @@ public class LocalTransformServiceRegistryConfigTest extends TransformRegistryMo
         Configurator.setLevel(LocalTransformServiceRegistryConfigTest.class, Level.DEBUG);
     }
 
+    @After
+    public void tearDown()
+    {
+        connectionPools.close();
+    }
+
     @Override
     protected LocalTransformServiceRegistry buildTransformServiceRegistryImpl() throws Exception
     {
@@ -242,6 +251,7 @@ public class LocalTransformServiceRegistryConfigTest extends TransformRegistryMo
         registry.setProperties(properties);
         registry.setTransformerDebug(transformerDebug);
         registry.setMimetypeService(mimetypeMap);
+        registry.setConnectionPools(connectionPools);
         registry.setPipelineConfigDir("");
         registry.setCronExpression(null); // just read it once
         registry.afterPropertiesSet();